@@ -2,10 +2,14 @@ package com.patorinaldi.wallet.account;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.persistence.autoconfigure.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
 @SpringBootApplication
 @ComponentScan(basePackages = "com.patorinaldi.wallet")
+@EntityScan(basePackages = "com.patorinaldi.wallet")
+@EnableJpaRepositories(basePackages = "com.patorinaldi.wallet")
 public class AccountServiceApplication {
 
     public static void main(String[] args) {
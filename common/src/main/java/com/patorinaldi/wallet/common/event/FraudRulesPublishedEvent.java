@@ -0,0 +1,55 @@
+package com.patorinaldi.wallet.common.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.patorinaldi.wallet.common.event.versioned.VersionedEvent;
+import lombok.Builder;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Snapshot of the active fraud rules and decision thresholds, republished periodically so
+ * services can evaluate low-risk transactions without calling fraud-service.
+ */
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record FraudRulesPublishedEvent(
+        UUID eventId,
+        List<Rule> rules,
+        int flagThreshold,
+        int blockThreshold,
+        Instant publishedAt,
+        int schemaVersion
+) implements VersionedEvent {
+
+    private static final int CURRENT_VERSION = 1;
+    private static final String EVENT_TYPE = "fraud-rules-published";
+
+    public FraudRulesPublishedEvent {
+        if (schemaVersion == 0) {
+            schemaVersion = CURRENT_VERSION;
+        }
+    }
+
+    @Override
+    public int schemaVersion() {
+        return schemaVersion;
+    }
+
+    @Override
+    public String eventType() {
+        return EVENT_TYPE;
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Rule(
+            String ruleCode,
+            String ruleType,
+            BigDecimal threshold,
+            int scoreImpact,
+            Integer timeWindowMinutes
+    ) {
+    }
+}
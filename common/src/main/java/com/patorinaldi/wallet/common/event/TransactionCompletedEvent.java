@@ -7,8 +7,15 @@ import lombok.Builder;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * A completed transaction. When fraud-service decided its synchronous fraud check,
+ * {@code fraudCheckId} identifies that check and {@code fraudRiskScore} and
+ * {@code fraudTriggeredRules} carry its result, which the async analysis reuses instead of
+ * evaluating the rules again; all three are null otherwise.
+ */
 @Builder
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record TransactionCompletedEvent(
@@ -23,6 +30,9 @@ public record TransactionCompletedEvent(
         UUID relatedWalletId,
         UUID relatedTransactionId,
         String description,
+        UUID fraudCheckId,
+        Integer fraudRiskScore,
+        List<String> fraudTriggeredRules,
         Instant completedAt,
         int schemaVersion
 ) implements VersionedEvent {
@@ -0,0 +1,47 @@
+package com.patorinaldi.wallet.common.event;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.patorinaldi.wallet.common.event.versioned.VersionedEvent;
+import lombok.Builder;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * What fraud-service knows about a wallet as of {@code asOf}: enough to evaluate the velocity,
+ * new-account and unusual-amount rules locally. {@code recentActivity} holds the newest
+ * transaction times inside the longest velocity window, at most one more than the highest
+ * velocity threshold, newest first.
+ */
+@Builder
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record WalletRiskProfileEvent(
+        UUID walletId,
+        Instant firstSeenAt,
+        BigDecimal averageAmount,
+        List<Instant> recentActivity,
+        Instant asOf,
+        int schemaVersion
+) implements VersionedEvent {
+
+    private static final int CURRENT_VERSION = 1;
+    private static final String EVENT_TYPE = "wallet-risk-profile";
+
+    public WalletRiskProfileEvent {
+        if (schemaVersion == 0) {
+            schemaVersion = CURRENT_VERSION;
+        }
+    }
+
+    @Override
+    public int schemaVersion() {
+        return schemaVersion;
+    }
+
+    @Override
+    public String eventType() {
+        return EVENT_TYPE;
+    }
+}
@@ -0,0 +1,212 @@
+package com.patorinaldi.wallet.common.fraud;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Fixed-layout binary encoding for the synchronous fraud check, served next to the JSON
+ * endpoint under {@link #MEDIA_TYPE}. All values are big-endian.
+ *
+ * <pre>
+ * check   (45 bytes): version:u8 | walletId:16 | userId:16 | amount:i64 | type:u8 | currency:3 ASCII
+ * verdict (13+ bytes): version:u8 | riskScore:u16 | decision:u8 | ruleMask:i64 | extraRules:u8
+ *                      | extraRules x (length:u16 | UTF-8 rule code)
+ * </pre>
+ *
+ * <p>Amounts travel as longs scaled by {@link #AMOUNT_SCALE}, the scale amounts are stored at.
+ * Triggered rules from {@link #RULE_CODES} travel as one bit each, at their position in the list;
+ * any other rule code is appended by name. Both lists are append-only, and so is
+ * {@link TransactionType}, whose ordinal is the type byte.
+ */
+public final class FraudCheckWireFormat {
+
+    public static final String MEDIA_TYPE = "application/vnd.wallet.fraud-check+binary";
+
+    /**
+     * Carries the optional check id of a binary check, which has no room for it in its layout.
+     */
+    public static final String CHECK_ID_HEADER = "X-Fraud-Check-Id";
+
+    public static final int AMOUNT_SCALE = 4;
+
+    public static final List<String> RULE_CODES = List.of(
+            "LARGE_AMOUNT",
+            "VERY_LARGE_AMOUNT",
+            "HIGH_VELOCITY",
+            "EXTREME_VELOCITY",
+            "NEW_WALLET",
+            "UNUSUAL_AMOUNT"
+    );
+
+    static final int CHECK_SIZE = 45;
+
+    private static final byte VERSION = 1;
+    private static final List<String> DECISIONS = List.of("APPROVE", "FLAG", "BLOCK");
+    private static final List<TransactionType> TRANSACTION_TYPES = List.of(TransactionType.values());
+
+    private FraudCheckWireFormat() {
+        // Utility class
+    }
+
+    public record Check(UUID walletId, UUID userId, BigDecimal amount, TransactionType transactionType,
+                        String currency) {
+    }
+
+    public record Verdict(int riskScore, String decision, List<String> triggeredRules) {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the check has no binary form, e.g. an amount with more
+     *                                  than {@link #AMOUNT_SCALE} decimals or a non-ISO currency
+     */
+    public static byte[] encode(Check check) {
+        ByteBuffer buffer = ByteBuffer.allocate(CHECK_SIZE);
+        buffer.put(VERSION);
+        putUuid(buffer, check.walletId());
+        putUuid(buffer, check.userId());
+        buffer.putLong(scaledAmount(check.amount()));
+        buffer.put((byte) check.transactionType().ordinal());
+        buffer.put(currencyCode(check.currency()));
+        return buffer.array();
+    }
+
+    public static Check decodeCheck(byte[] bytes) {
+        ByteBuffer buffer = open(bytes);
+        try {
+            Check check = new Check(
+                    getUuid(buffer),
+                    getUuid(buffer),
+                    BigDecimal.valueOf(buffer.getLong(), AMOUNT_SCALE),
+                    lookup(TRANSACTION_TYPES, buffer.get(), "transaction type"),
+                    new String(getBytes(buffer, 3), StandardCharsets.US_ASCII));
+            return close(buffer, check);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated fraud check of " + bytes.length + " bytes", e);
+        }
+    }
+
+    public static byte[] encode(Verdict verdict) {
+        if (verdict.riskScore() < 0 || verdict.riskScore() > 0xFFFF) {
+            throw new IllegalArgumentException("Risk score out of range: " + verdict.riskScore());
+        }
+        int decision = DECISIONS.indexOf(verdict.decision());
+        if (decision < 0) {
+            throw new IllegalArgumentException("Unknown decision: " + verdict.decision());
+        }
+
+        long ruleMask = 0;
+        List<byte[]> extraRules = new ArrayList<>();
+        for (String rule : verdict.triggeredRules()) {
+            int bit = RULE_CODES.indexOf(rule);
+            if (bit >= 0) {
+                ruleMask |= 1L << bit;
+            } else {
+                extraRules.add(rule.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (extraRules.size() > 0xFF) {
+            throw new IllegalArgumentException("Too many triggered rules: " + verdict.triggeredRules().size());
+        }
+
+        int size = 13 + extraRules.stream().mapToInt(rule -> 2 + rule.length).sum();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.putShort((short) verdict.riskScore());
+        buffer.put((byte) decision);
+        buffer.putLong(ruleMask);
+        buffer.put((byte) extraRules.size());
+        for (byte[] rule : extraRules) {
+            buffer.putShort((short) rule.length);
+            buffer.put(rule);
+        }
+        return buffer.array();
+    }
+
+    public static Verdict decodeVerdict(byte[] bytes) {
+        ByteBuffer buffer = open(bytes);
+        try {
+            int riskScore = Short.toUnsignedInt(buffer.getShort());
+            String decision = lookup(DECISIONS, buffer.get(), "decision");
+            long ruleMask = buffer.getLong();
+            int extraRules = Byte.toUnsignedInt(buffer.get());
+
+            List<String> triggeredRules = new ArrayList<>(Long.bitCount(ruleMask) + extraRules);
+            for (int bit = 0; bit < RULE_CODES.size(); bit++) {
+                if ((ruleMask & (1L << bit)) != 0) {
+                    triggeredRules.add(RULE_CODES.get(bit));
+                }
+            }
+            if ((ruleMask >>> RULE_CODES.size()) != 0) {
+                throw new IllegalArgumentException("Unknown rule bits in mask " + Long.toHexString(ruleMask));
+            }
+            for (int i = 0; i < extraRules; i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                triggeredRules.add(new String(getBytes(buffer, length), StandardCharsets.UTF_8));
+            }
+            return close(buffer, new Verdict(riskScore, decision, List.copyOf(triggeredRules)));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated fraud verdict of " + bytes.length + " bytes", e);
+        }
+    }
+
+    private static long scaledAmount(BigDecimal amount) {
+        try {
+            return amount.setScale(AMOUNT_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount + " does not fit the binary format", e);
+        }
+    }
+
+    private static byte[] currencyCode(String currency) {
+        if (currency == null || currency.length() != 3
+                || !currency.chars().allMatch(c -> c >= 'A' && c <= 'Z')) {
+            throw new IllegalArgumentException("Currency " + currency + " is not an ISO 4217 code");
+        }
+        return currency.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static ByteBuffer open(byte[] bytes) {
+        if (bytes.length == 0 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported fraud wire format version");
+        }
+        return ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+    }
+
+    private static <T> T close(ByteBuffer buffer, T decoded) {
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException(buffer.remaining() + " trailing bytes after " + decoded);
+        }
+        return decoded;
+    }
+
+    private static <T> T lookup(List<T> values, byte code, String what) {
+        int index = Byte.toUnsignedInt(code);
+        if (index >= values.size()) {
+            throw new IllegalArgumentException("Unknown " + what + " code " + index);
+        }
+        return values.get(index);
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
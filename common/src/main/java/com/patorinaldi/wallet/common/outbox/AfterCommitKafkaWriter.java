@@ -0,0 +1,38 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends events straight to Kafka once the caller's transaction has committed, for services
+ * running with {@code outbox.enabled=false}. An event is lost if the process stops between the
+ * commit and the send; the outbox exists to close that gap.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "false", matchIfMissing = true)
+public class AfterCommitKafkaWriter implements OutboxWriter {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Override
+    public void append(String topic, String key, Object event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            kafkaTemplate.send(topic, key, event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                kafkaTemplate.send(topic, key, event);
+                log.debug("Sent {} to topic: {}, key: {}", event.getClass().getSimpleName(), topic, key);
+            }
+        });
+    }
+}
@@ -0,0 +1,36 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables the transactional outbox when {@code outbox.enabled=true} is set.
+ *
+ * <p>With the flag off, {@link AfterCommitKafkaWriter} sends events directly after commit
+ * instead. Services that turn it on must also scan {@code com.patorinaldi.wallet} for entities and
+ * repositories so that {@link OutboxEvent} is mapped next to their own tables.
+ *
+ * <p>Configuration properties:
+ * <pre>
+ * outbox:
+ *   enabled: true
+ *   relay:
+ *     batch-size: 500        # rows sent per round
+ *     interval-ms: 100       # pause between drains once the table is empty
+ *     ack-timeout-ms: 10000  # how long a batch waits for broker acknowledgements
+ *     lease-ms: 30000        # how long a relay owns a partition; must exceed ack-timeout-ms
+ *     max-attempts: 10       # failed sends before a row is parked
+ * </pre>
+ */
+@Slf4j
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxConfig {
+
+    public OutboxConfig() {
+        log.info("Transactional outbox enabled - events will be relayed to Kafka from outbox_events");
+    }
+}
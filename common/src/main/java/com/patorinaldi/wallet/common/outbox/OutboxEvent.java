@@ -0,0 +1,79 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+
+/**
+ * A domain event waiting to be relayed to Kafka.
+ *
+ * <p>Rows are inserted in the same database transaction as the state change that produced
+ * the event and deleted once the broker has acknowledged them. The identity column gives a
+ * total insertion order, which the relay preserves per message key: keys are spread over
+ * {@link #PARTITIONS} partitions and only the relay holding a partition's lease sends its rows.
+ */
+@Entity
+@Table(name = "outbox_events",
+        indexes = {
+                @Index(name = "idx_outbox_partition", columnList = "partition_no, id")
+        })
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    public static final int PARTITIONS = 16;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(name = "message_key", nullable = false)
+    private String messageKey;
+
+    @Column(name = "payload_type", nullable = false)
+    private String payloadType;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "partition_no", nullable = false)
+    @ColumnDefault("0")
+    private int partition;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    private String lastError;
+
+    /**
+     * Set once the row has failed {@code outbox.relay.max-attempts} times; parked rows are no
+     * longer relayed and wait for an operator.
+     */
+    @Column(name = "parked_at")
+    private Instant parkedAt;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    static int partitionOf(String messageKey) {
+        return Math.floorMod(messageKey.hashCode(), PARTITIONS);
+    }
+}
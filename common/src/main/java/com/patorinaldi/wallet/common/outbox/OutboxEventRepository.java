@@ -0,0 +1,22 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * The oldest events of a partition that are still to be relayed. Callers hold the
+     * partition's {@link OutboxLease}, so no row lock is needed.
+     */
+    List<OutboxEvent> findByPartitionAndParkedAtIsNullOrderByIdAsc(int partition, Limit limit);
+
+    /**
+     * Partitions that have events still to be relayed; a read, so an idle relay writes nothing.
+     */
+    @Query(value = "SELECT DISTINCT partition_no FROM outbox_events WHERE parked_at IS NULL", nativeQuery = true)
+    List<Integer> findPendingPartitions();
+}
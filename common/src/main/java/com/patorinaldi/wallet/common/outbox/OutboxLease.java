@@ -0,0 +1,32 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Which relay instance may send an outbox partition, and until when. A relay takes or renews the
+ * lease in a short transaction before each batch, so a partition's rows, and with them each
+ * key's events, are only ever in flight from one instance.
+ */
+@Entity
+@Table(name = "outbox_leases")
+@Getter
+@NoArgsConstructor
+public class OutboxLease {
+
+    @Id
+    @Column(name = "partition_no")
+    private int partition;
+
+    @Column(nullable = false)
+    private String owner;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
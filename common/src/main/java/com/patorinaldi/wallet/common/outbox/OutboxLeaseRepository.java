@@ -0,0 +1,30 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface OutboxLeaseRepository extends JpaRepository<OutboxLease, Integer> {
+
+    /**
+     * Takes the partition's lease for {@code leaseMs}, or renews it if {@code owner} already
+     * holds it. Returns 0 while another owner's lease is still valid. Expiry is checked against
+     * the database clock, so relay instances need not agree on theirs.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO outbox_leases (partition_no, owner, expires_at) " +
+            "VALUES (:partition, :owner, now() + :leaseMs * interval '1 millisecond') " +
+            "ON CONFLICT (partition_no) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at " +
+            "WHERE outbox_leases.owner = EXCLUDED.owner OR outbox_leases.expires_at < now()",
+            nativeQuery = true)
+    int acquire(@Param("partition") int partition, @Param("owner") String owner, @Param("leaseMs") long leaseMs);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE outbox_leases SET expires_at = now() WHERE partition_no = :partition AND owner = :owner",
+            nativeQuery = true)
+    int release(@Param("partition") int partition, @Param("owner") String owner);
+}
@@ -0,0 +1,40 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * JSON round-trip for outbox payloads. The relay restores the original event type so the
+ * Kafka {@code JsonSerializer} keeps emitting the same type headers consumers rely on.
+ */
+final class OutboxPayloads {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private OutboxPayloads() {
+        // Utility class
+    }
+
+    static String serialize(Object event) {
+        try {
+            return MAPPER.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize outbox event " + event.getClass().getName(), e);
+        }
+    }
+
+    static Object deserialize(OutboxEvent outboxEvent) {
+        try {
+            return MAPPER.readValue(outboxEvent.getPayload(), Class.forName(outboxEvent.getPayloadType()));
+        } catch (JsonProcessingException | ClassNotFoundException e) {
+            throw new IllegalStateException("Cannot restore outbox event " + outboxEvent.getId()
+                    + " of type " + outboxEvent.getPayloadType(), e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the outbox into Kafka in batches, one partition at a time.
+ *
+ * <p>Each run first reads which partitions have rows to relay and skips the rest, so an idle
+ * outbox costs one query per run and no lease writes. A relay sends a partition only while it
+ * holds the partition's {@link OutboxLease}, taken and renewed in a short transaction before
+ * each batch, so with several instances each key's events still leave in order. A batch is grouped by message key and handed to the producer
+ * without waiting between sends, so the producer can fill its own record batches;
+ * acknowledgements are collected once the whole batch is in flight, with no database
+ * transaction open. Acknowledged rows are then deleted, and failures recorded, in a second
+ * short transaction. After the first failure for a key, later rows for that key stay in the
+ * table so the next run re-sends them in their original order. A row that has failed
+ * {@code max-attempts} times is parked instead, which lets the rest of its key through.
+ * Delivery is at-least-once, which every consumer in the system already tolerates through its
+ * own idempotency checks.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxLeaseRepository leaseRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long ackTimeoutMs;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final String owner = UUID.randomUUID().toString();
+
+    public OutboxRelay(
+            OutboxEventRepository outboxEventRepository,
+            OutboxLeaseRepository leaseRepository,
+            KafkaTemplate<String, Object> kafkaTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${outbox.relay.batch-size:500}") int batchSize,
+            @Value("${outbox.relay.ack-timeout-ms:10000}") long ackTimeoutMs,
+            @Value("${outbox.relay.lease-ms:30000}") long leaseMs,
+            @Value("${outbox.relay.max-attempts:10}") int maxAttempts) {
+
+        if (leaseMs <= ackTimeoutMs) {
+            throw new IllegalArgumentException("outbox.relay.lease-ms (" + leaseMs
+                    + ") must exceed outbox.relay.ack-timeout-ms (" + ackTimeoutMs + ")");
+        }
+        this.outboxEventRepository = outboxEventRepository;
+        this.leaseRepository = leaseRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.leaseMs = leaseMs;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:100}")
+    public void drain() {
+        for (int partition : outboxEventRepository.findPendingPartitions()) {
+            drain(partition);
+        }
+    }
+
+    /**
+     * Relays the partition's rows while batches come back full, if no other relay holds it.
+     */
+    void drain(int partition) {
+        if (leaseRepository.acquire(partition, owner, leaseMs) == 0) {
+            return;
+        }
+        try {
+            int delivered;
+            do {
+                delivered = relayBatch(partition);
+            } while (delivered == batchSize && leaseRepository.acquire(partition, owner, leaseMs) > 0);
+        } finally {
+            leaseRepository.release(partition, owner);
+        }
+    }
+
+    /**
+     * Relays one batch of a partition whose lease the caller holds and returns how many events
+     * were acknowledged by the broker.
+     */
+    int relayBatch(int partition) {
+        List<OutboxEvent> batch = outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(
+                partition, Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, List<OutboxEvent>> byKey = batch.stream()
+                .collect(Collectors.groupingBy(OutboxEvent::getMessageKey, LinkedHashMap::new, Collectors.toList()));
+
+        Map<Long, CompletableFuture<?>> acks = new HashMap<>();
+        byKey.values().forEach(events -> events.forEach(event -> acks.put(event.getId(), send(event))));
+        kafkaTemplate.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackTimeoutMs);
+        List<Long> delivered = new ArrayList<>(batch.size());
+        List<OutboxEvent> failed = new ArrayList<>();
+        for (List<OutboxEvent> events : byKey.values()) {
+            boolean keyBlocked = false;
+            for (OutboxEvent event : events) {
+                Throwable failure = awaitAck(acks.get(event.getId()), deadline);
+                if (failure == null && !keyBlocked) {
+                    delivered.add(event.getId());
+                    continue;
+                }
+                if (failure != null) {
+                    markFailed(event, failure);
+                    failed.add(event);
+                }
+                // a parked row no longer holds back the rest of its key
+                if (event.getParkedAt() == null) {
+                    keyBlocked = true;
+                }
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!delivered.isEmpty()) {
+                outboxEventRepository.deleteAllByIdInBatch(delivered);
+            }
+            if (!failed.isEmpty()) {
+                outboxEventRepository.saveAll(failed);
+            }
+        });
+
+        log.debug("Relayed {} of {} outbox events", delivered.size(), batch.size());
+        return delivered.size();
+    }
+
+    private CompletableFuture<?> send(OutboxEvent event) {
+        try {
+            return kafkaTemplate.send(event.getTopic(), event.getMessageKey(), OutboxPayloads.deserialize(event));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Throwable awaitAck(CompletableFuture<?> ack, long deadline) {
+        try {
+            ack.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (TimeoutException e) {
+            return e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    private void markFailed(OutboxEvent event, Throwable failure) {
+        String message = String.valueOf(failure.getMessage());
+        event.setAttempts(event.getAttempts() + 1);
+        event.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        if (event.getAttempts() >= maxAttempts) {
+            event.setParkedAt(Instant.now());
+            log.error("Parked outbox event {} for topic {} after {} failed attempts: {}",
+                    event.getId(), event.getTopic(), event.getAttempts(), message);
+            return;
+        }
+        log.warn("Failed to relay outbox event {} to topic {} (attempt {}): {}",
+                event.getId(), event.getTopic(), event.getAttempts(), message);
+    }
+}
@@ -0,0 +1,14 @@
+package com.patorinaldi.wallet.common.outbox;
+
+/**
+ * Hands a domain event to Kafka once the caller's transaction commits.
+ *
+ * <p>Publishers call this from a {@code BEFORE_COMMIT} transactional event listener. With
+ * {@code outbox.enabled=true} the event is written to the outbox in the same transaction
+ * ({@link TransactionalOutboxWriter}); otherwise it is sent directly after commit
+ * ({@link AfterCommitKafkaWriter}), as publishers did before the outbox.
+ */
+public interface OutboxWriter {
+
+    void append(String topic, String key, Object event);
+}
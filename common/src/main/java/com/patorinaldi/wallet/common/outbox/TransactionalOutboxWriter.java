@@ -0,0 +1,39 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Appends events to the outbox as part of the caller's transaction, so the event row commits or
+ * rolls back together with the business data.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class TransactionalOutboxWriter implements OutboxWriter {
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(String topic, String key, Object event) {
+        OutboxEvent outboxEvent = OutboxEvent.builder()
+                .topic(topic)
+                .messageKey(key)
+                .partition(OutboxEvent.partitionOf(key))
+                .payloadType(event.getClass().getName())
+                .payload(OutboxPayloads.serialize(event))
+                .createdAt(Instant.now())
+                .build();
+
+        outboxEventRepository.save(outboxEvent);
+        log.debug("Appended {} to outbox for topic: {}, key: {}", event.getClass().getSimpleName(), topic, key);
+    }
+}
@@ -0,0 +1,96 @@
+package com.patorinaldi.wallet.common.fraud;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat.Check;
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat.Verdict;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FraudCheckWireFormatTest {
+
+    @Test
+    void check_shouldRoundTrip() {
+        // Given
+        Check check = new Check(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("15000.25"),
+                TransactionType.TRANSFER_OUT, "EUR");
+
+        // When
+        byte[] encoded = FraudCheckWireFormat.encode(check);
+        Check decoded = FraudCheckWireFormat.decodeCheck(encoded);
+
+        // Then
+        assertEquals(FraudCheckWireFormat.CHECK_SIZE, encoded.length);
+        assertEquals(check.walletId(), decoded.walletId());
+        assertEquals(check.userId(), decoded.userId());
+        assertEquals(0, check.amount().compareTo(decoded.amount()));
+        assertEquals(TransactionType.TRANSFER_OUT, decoded.transactionType());
+        assertEquals("EUR", decoded.currency());
+    }
+
+    @Test
+    void encode_shouldReject_whenAmountHasMoreDecimalsThanScale() {
+        // Given
+        Check check = new Check(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("1.00001"),
+                TransactionType.DEPOSIT, "USD");
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> FraudCheckWireFormat.encode(check));
+    }
+
+    @Test
+    void encode_shouldReject_whenCurrencyIsNotIsoCode() {
+        // Given
+        Check check = new Check(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("1.00"),
+                TransactionType.DEPOSIT, "usdt");
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> FraudCheckWireFormat.encode(check));
+    }
+
+    @Test
+    void verdict_shouldRoundTrip_withKnownRulesAsBitsAndOthersByName() {
+        // Given
+        Verdict verdict = new Verdict(75, "BLOCK", List.of("VERY_LARGE_AMOUNT", "HIGH_VELOCITY", "CUSTOM_RULE"));
+
+        // When
+        byte[] encoded = FraudCheckWireFormat.encode(verdict);
+        Verdict decoded = FraudCheckWireFormat.decodeVerdict(encoded);
+
+        // Then
+        assertEquals(13 + 2 + "CUSTOM_RULE".length(), encoded.length);
+        assertEquals(75, decoded.riskScore());
+        assertEquals("BLOCK", decoded.decision());
+        assertEquals(verdict.triggeredRules(), decoded.triggeredRules());
+    }
+
+    @Test
+    void verdict_shouldTakeThirteenBytes_whenNoRulesTriggered() {
+        // When
+        byte[] encoded = FraudCheckWireFormat.encode(new Verdict(0, "APPROVE", List.of()));
+
+        // Then
+        assertEquals(13, encoded.length);
+        assertEquals(List.of(), FraudCheckWireFormat.decodeVerdict(encoded).triggeredRules());
+    }
+
+    @Test
+    void decode_shouldReject_truncatedOrForeignPayloads() {
+        // Given
+        byte[] check = FraudCheckWireFormat.encode(new Check(UUID.randomUUID(), UUID.randomUUID(),
+                BigDecimal.TEN, TransactionType.DEPOSIT, "USD"));
+        byte[] json = "{\"riskScore\":0}".getBytes();
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> FraudCheckWireFormat.decodeCheck(Arrays.copyOf(check, check.length - 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> FraudCheckWireFormat.decodeCheck(Arrays.copyOf(check, check.length + 1)));
+        assertThrows(IllegalArgumentException.class, () -> FraudCheckWireFormat.decodeVerdict(json));
+    }
+}
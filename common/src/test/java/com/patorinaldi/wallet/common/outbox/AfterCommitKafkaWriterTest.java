@@ -0,0 +1,53 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AfterCommitKafkaWriterTest {
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @InjectMocks
+    private AfterCommitKafkaWriter writer;
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void append_shouldSendOnlyAfterCommit() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        writer.append("user-registered", "key-a", "event");
+
+        // Then
+        verifyNoInteractions(kafkaTemplate);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(kafkaTemplate).send("user-registered", "key-a", "event");
+    }
+
+    @Test
+    void append_shouldSendImmediately_outsideTransaction() {
+        // When
+        writer.append("user-registered", "key-a", "event");
+
+        // Then
+        verify(kafkaTemplate).send("user-registered", "key-a", "event");
+    }
+}
@@ -0,0 +1,246 @@
+package com.patorinaldi.wallet.common.outbox;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    private static final int BATCH_SIZE = 3;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private OutboxLeaseRepository leaseRepository;
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setup() {
+        outboxRelay = new OutboxRelay(outboxEventRepository, leaseRepository, kafkaTemplate, transactionManager,
+                BATCH_SIZE, 1000, 3000, MAX_ATTEMPTS);
+    }
+
+    @Test
+    void relayBatch_shouldSendWholeBatchBeforeDeletingAcknowledgedRowsInTheirOwnTransaction() {
+        // Given
+        OutboxEvent first = outboxEvent(1L, "key-a");
+        OutboxEvent second = outboxEvent(2L, "key-b");
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of(first, second));
+        when(kafkaTemplate.send(eq("transaction-completed"), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        int delivered = outboxRelay.relayBatch(0);
+
+        // Then
+        assertEquals(2, delivered);
+        InOrder inOrder = inOrder(kafkaTemplate, transactionManager, outboxEventRepository);
+        inOrder.verify(kafkaTemplate, times(2)).send(eq("transaction-completed"), any(), any());
+        inOrder.verify(kafkaTemplate).flush();
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void relayBatch_shouldRestoreOriginalEventType() {
+        // Given
+        OutboxEvent outboxEvent = outboxEvent(1L, "key-a");
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of(outboxEvent));
+        when(kafkaTemplate.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        outboxRelay.relayBatch(0);
+
+        // Then
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(kafkaTemplate).send(eq("transaction-completed"), eq("key-a"), payload.capture());
+        TransactionCompletedEvent event = assertInstanceOf(TransactionCompletedEvent.class, payload.getValue());
+        assertEquals(new BigDecimal("100.00"), event.amount());
+    }
+
+    @Test
+    void relayBatch_shouldKeepLaterEventsForKeyAfterFailure() {
+        // Given
+        OutboxEvent a1 = outboxEvent(1L, "key-a");
+        OutboxEvent a2 = outboxEvent(2L, "key-a");
+        OutboxEvent a3 = outboxEvent(3L, "key-a");
+        OutboxEvent b1 = outboxEvent(4L, "key-b");
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of(a1, b1, a2, a3));
+        when(kafkaTemplate.send(any(), eq("key-a"), any()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaTemplate.send(any(), eq("key-b"), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        int delivered = outboxRelay.relayBatch(0);
+
+        // Then
+        assertEquals(2, delivered);
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L, 4L));
+        verify(outboxEventRepository).saveAll(List.of(a2));
+        assertEquals(1, a2.getAttempts());
+        assertEquals("broker unavailable", a2.getLastError());
+        assertNull(a2.getParkedAt());
+        assertEquals(0, a3.getAttempts());
+    }
+
+    @Test
+    void relayBatch_shouldParkRowAfterMaxAttempts_andReleaseTheRestOfItsKey() {
+        // Given
+        OutboxEvent a1 = outboxEvent(1L, "key-a");
+        a1.setAttempts(MAX_ATTEMPTS - 1);
+        OutboxEvent a2 = outboxEvent(2L, "key-a");
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of(a1, a2));
+        when(kafkaTemplate.send(any(), eq("key-a"), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("record too large")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        int delivered = outboxRelay.relayBatch(0);
+
+        // Then
+        assertEquals(1, delivered);
+        assertEquals(MAX_ATTEMPTS, a1.getAttempts());
+        assertNotNull(a1.getParkedAt());
+        verify(outboxEventRepository).saveAll(List.of(a1));
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(2L));
+    }
+
+    @Test
+    void drain_shouldOnlyLeasePartitionsWithPendingRows() {
+        // Given
+        when(outboxEventRepository.findPendingPartitions()).thenReturn(List.of(5));
+        when(leaseRepository.acquire(eq(5), any(), eq(3000L))).thenReturn(1);
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(5, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of());
+
+        // When
+        outboxRelay.drain();
+
+        // Then
+        verify(leaseRepository).acquire(eq(5), any(), eq(3000L));
+        verify(leaseRepository).release(eq(5), any());
+        verifyNoMoreInteractions(leaseRepository);
+    }
+
+    @Test
+    void drain_shouldNotTouchLeases_whenOutboxEmpty() {
+        // Given
+        when(outboxEventRepository.findPendingPartitions()).thenReturn(List.of());
+
+        // When
+        outboxRelay.drain();
+
+        // Then
+        verifyNoInteractions(leaseRepository, kafkaTemplate);
+    }
+
+    @Test
+    void drain_shouldSkipPartition_whileAnotherRelayHoldsItsLease() {
+        // Given
+        when(leaseRepository.acquire(eq(0), any(), eq(3000L))).thenReturn(0);
+
+        // When
+        outboxRelay.drain(0);
+
+        // Then
+        verifyNoInteractions(outboxEventRepository, kafkaTemplate);
+        verify(leaseRepository, never()).release(anyInt(), any());
+    }
+
+    @Test
+    void relayBatch_shouldDoNothing_whenOutboxEmpty() {
+        // Given
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE)))
+                .thenReturn(List.of());
+
+        // When
+        int delivered = outboxRelay.relayBatch(0);
+
+        // Then
+        assertEquals(0, delivered);
+        verifyNoInteractions(kafkaTemplate);
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void drain_shouldKeepDrainingWhileBatchesAreFull() {
+        // Given
+        when(leaseRepository.acquire(eq(0), any(), anyLong())).thenReturn(1);
+        when(outboxEventRepository.findByPartitionAndParkedAtIsNullOrderByIdAsc(eq(0), any()))
+                .thenReturn(List.of(outboxEvent(1L, "a"), outboxEvent(2L, "b"), outboxEvent(3L, "c")))
+                .thenReturn(List.of(outboxEvent(4L, "d")));
+        when(kafkaTemplate.send(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // When
+        outboxRelay.drain(0);
+
+        // Then - the lease is renewed before the second batch and released at the end
+        verify(outboxEventRepository, times(2)).findByPartitionAndParkedAtIsNullOrderByIdAsc(0, Limit.of(BATCH_SIZE));
+        verify(leaseRepository, times(2)).acquire(eq(0), any(), eq(3000L));
+        verify(leaseRepository).release(eq(0), any());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    private OutboxEvent outboxEvent(Long id, String key) {
+        TransactionCompletedEvent event = TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.DEPOSIT)
+                .walletId(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .amount(new BigDecimal("100.00"))
+                .currency("USD")
+                .balanceAfter(new BigDecimal("100.00"))
+                .completedAt(Instant.now())
+                .build();
+
+        return OutboxEvent.builder()
+                .id(id)
+                .topic("transaction-completed")
+                .messageKey(key)
+                .partition(OutboxEvent.partitionOf(key))
+                .payloadType(event.getClass().getName())
+                .payload(OutboxPayloads.serialize(event))
+                .createdAt(Instant.now())
+                .build();
+    }
+}
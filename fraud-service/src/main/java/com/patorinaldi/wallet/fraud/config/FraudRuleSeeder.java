@@ -5,10 +5,14 @@ import java.time.Instant;
 
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.patorinaldi.wallet.fraud.entity.FraudRule;
 import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.repository.FraudAnalysisRepository;
 import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import com.patorinaldi.wallet.fraud.service.FraudRuleRegistry;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
@@ -20,6 +24,8 @@ import lombok.extern.slf4j.Slf4j;
 public class FraudRuleSeeder implements CommandLineRunner {
 
     private final FraudRuleRepository fraudRuleRepository;
+    private final FraudAnalysisRepository fraudAnalysisRepository;
+    private final FraudRuleRegistry ruleRegistry;
     
     @Override
     @Transactional
@@ -53,10 +59,23 @@ public class FraudRuleSeeder implements CommandLineRunner {
                     BigDecimal.valueOf(3), 20, null);
 
             log.info("Default fraud rules created");
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ruleRegistry.refresh();
+                }
+            });
             
         } else {
             log.debug("Fraud rules already exist");
         }
+        ruleRegistry.assignMissingRuleIds();
+        if (fraudAnalysisRepository.hasLegacyTriggeredRules()) {
+            int backfilled = fraudAnalysisRepository.backfillTriggeredRuleMasks();
+            if (backfilled > 0) {
+                log.info("Backfilled triggered-rule masks of {} fraud analyses", backfilled);
+            }
+        }
         log.info("Fraud rules verified successfully");
     }
 
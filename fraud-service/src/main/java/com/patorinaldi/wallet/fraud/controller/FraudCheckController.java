@@ -1,16 +1,27 @@
 package com.patorinaldi.wallet.fraud.controller;
 
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckBatchRequest;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckBatchResponse;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckRequest;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckResponse;
 import com.patorinaldi.wallet.fraud.service.SyncFraudCheckService;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Set;
+import java.util.UUID;
 
 @Slf4j
 @RestController
@@ -19,6 +30,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class FraudCheckController {
 
     private final SyncFraudCheckService syncFraudCheckService;
+    private final Validator validator;
 
     @PostMapping("/check")
     public ResponseEntity<FraudCheckResponse> checkTransaction(
@@ -34,4 +46,57 @@ public class FraudCheckController {
 
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Same check as {@link #checkTransaction}, in the compact layout of {@link FraudCheckWireFormat}.
+     */
+    @PostMapping(value = "/check",
+            consumes = FraudCheckWireFormat.MEDIA_TYPE,
+            produces = FraudCheckWireFormat.MEDIA_TYPE)
+    public ResponseEntity<byte[]> checkTransactionBinary(
+            @RequestBody byte[] body,
+            @RequestHeader(value = FraudCheckWireFormat.CHECK_ID_HEADER, required = false) UUID checkId) {
+        FraudCheckRequest request = decode(body, checkId);
+
+        log.debug("Received binary fraud check request for wallet: {}, amount: {}",
+                request.walletId(), request.amount());
+
+        FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
+
+        log.debug("Binary fraud check response for wallet: {}: decision={}, riskScore={}",
+                request.walletId(), response.decision(), response.riskScore());
+
+        return ResponseEntity.ok(FraudCheckWireFormat.encode(new FraudCheckWireFormat.Verdict(
+                response.riskScore(), response.decision(), response.triggeredRules())));
+    }
+
+    @PostMapping("/check/batch")
+    public ResponseEntity<FraudCheckBatchResponse> checkTransactions(
+            @Valid @RequestBody FraudCheckBatchRequest request) {
+
+        log.info("Received fraud check batch of {} requests", request.checks().size());
+
+        FraudCheckBatchResponse response = new FraudCheckBatchResponse(
+                syncFraudCheckService.checkTransactions(request.checks()));
+
+        return ResponseEntity.ok(response);
+    }
+
+    private FraudCheckRequest decode(byte[] body, UUID checkId) {
+        FraudCheckRequest request;
+        try {
+            FraudCheckWireFormat.Check check = FraudCheckWireFormat.decodeCheck(body);
+            request = new FraudCheckRequest(check.walletId(), check.userId(), check.amount(),
+                    check.transactionType(), check.currency(), checkId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        Set<ConstraintViolation<FraudCheckRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    violations.iterator().next().getMessage());
+        }
+        return request;
+    }
 }
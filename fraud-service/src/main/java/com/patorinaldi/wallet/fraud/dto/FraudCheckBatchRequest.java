@@ -0,0 +1,15 @@
+package com.patorinaldi.wallet.fraud.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record FraudCheckBatchRequest(
+        @NotEmpty(message = "At least one check is required")
+        @Size(max = 1000, message = "At most 1000 checks per batch")
+        List<@Valid @NotNull FraudCheckRequest> checks
+) {
+}
@@ -0,0 +1,11 @@
+package com.patorinaldi.wallet.fraud.dto;
+
+import java.util.List;
+
+/**
+ * Results of a {@link FraudCheckBatchRequest}, one per check and in the same order.
+ */
+public record FraudCheckBatchResponse(
+        List<FraudCheckResponse> results
+) {
+}
@@ -7,6 +7,10 @@ import jakarta.validation.constraints.Positive;
 import java.math.BigDecimal;
 import java.util.UUID;
 
+/**
+ * A synchronous fraud check. The optional {@code checkId} is logged with the decision and comes
+ * back on the transaction, which carries the decision itself to the async analysis.
+ */
 public record FraudCheckRequest(
         @NotNull(message = "Wallet ID is required")
         UUID walletId,
@@ -22,6 +26,12 @@ public record FraudCheckRequest(
         TransactionType transactionType,
 
         @NotNull(message = "Currency is required")
-        String currency
+        String currency,
+
+        UUID checkId
 ) {
+    public FraudCheckRequest(UUID walletId, UUID userId, BigDecimal amount, TransactionType transactionType,
+                             String currency) {
+        this(walletId, userId, amount, transactionType, currency, null);
+    }
 }
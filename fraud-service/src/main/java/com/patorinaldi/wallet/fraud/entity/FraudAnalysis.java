@@ -3,10 +3,10 @@ package com.patorinaldi.wallet.fraud.entity;
 import com.patorinaldi.wallet.common.enums.TransactionType;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.List;
 import java.util.UUID;
 
 @Getter
@@ -16,7 +16,10 @@ import java.util.UUID;
 @AllArgsConstructor
 @Entity
 @Table(name = "fraud_analysis",
-       indexes = @Index(name = "idx_fraud_transaction", columnList = "transactionId", unique = true))
+       indexes = {
+               @Index(name = "idx_fraud_transaction", columnList = "transactionId", unique = true),
+               @Index(name = "idx_fraud_rule_mask", columnList = "triggered_rule_mask, analyzed_at")
+       })
 public class FraudAnalysis {
 
     @Id
@@ -42,10 +45,13 @@ public class FraudAnalysis {
     @Column(name = "risk_score", nullable = false)
     private int riskScore;
 
-    @ElementCollection
-    @CollectionTable(name = "fraud_triggered_rules", joinColumns = @JoinColumn(name = "fraud_analysis_id"))
-    @Column(name = "rule")
-    private List<String> triggeredRules;
+    /**
+     * One bit per triggered rule at its {@link FraudRule#getRuleId()}, decoded by
+     * {@link com.patorinaldi.wallet.fraud.service.FraudRuleRegistry#ruleCodes(long)}.
+     */
+    @Column(name = "triggered_rule_mask", nullable = false)
+    @ColumnDefault("0")
+    private long triggeredRuleMask;
 
     @Column(name = "decision", nullable = false)
     @Enumerated(EnumType.STRING)
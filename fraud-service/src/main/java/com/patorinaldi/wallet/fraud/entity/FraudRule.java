@@ -23,6 +23,14 @@ public class FraudRule {
     @Column(name = "rule_code", nullable = false, unique = true)
     private String ruleCode;
 
+    /**
+     * Stable small id, the rule's bit in {@link FraudAnalysis#getTriggeredRuleMask()}. Taken once
+     * from the {@code fraud_rule_id_seq} sequence and never reused; rules created without one get
+     * the next id on the next reload.
+     */
+    @Column(name = "rule_id", unique = true, updatable = false)
+    private Integer ruleId;
+
     @Column(name = "description", nullable = false)
     private String description;
 
@@ -16,7 +16,8 @@ import java.util.UUID;
 @Entity
 @Table(name = "fraud_transaction_history",
         indexes = {
-                @Index(name = "idx_wallet_occurred", columnList = "wallet_id, occurred_at")
+                @Index(name = "idx_wallet_occurred", columnList = "wallet_id, occurred_at"),
+                @Index(name = "idx_occurred", columnList = "occurred_at")
         })
 public class FraudTransactionHistory {
 
@@ -43,6 +44,9 @@ public class FraudTransactionHistory {
     @Column(name = "currency", nullable = false)
     private String currency;
 
+    @Column(name = "related_wallet_id")
+    private UUID relatedWalletId;
+
     @Column(name = "occurred_at", nullable = false)
     private Instant occurredAt;
 }
@@ -4,5 +4,6 @@ public enum RuleType {
     AMOUNT_THRESHOLD,
     VELOCITY,
     NEW_ACCOUNT,
-    UNUSUAL_PATTERN
+    UNUSUAL_PATTERN,
+    DISTINCT_COUNTERPARTIES
 }
@@ -0,0 +1,63 @@
+package com.patorinaldi.wallet.fraud.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A wallet's transactions over one hour or one day, rolled up from
+ * {@code fraud_transaction_history} once they are older than any rule window. Holds what amount
+ * aggregates need: count, sum, sum of squares, minimum and maximum.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "wallet_amount_bucket",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_wallet_bucket", columnNames = {"wallet_id", "granularity", "bucket_start"})
+        },
+        indexes = {
+                @Index(name = "idx_bucket_granularity_start", columnList = "granularity, bucket_start")
+        })
+public class WalletAmountBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "wallet_id", nullable = false)
+    private UUID walletId;
+
+    @Column(name = "granularity", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private Granularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private Instant bucketStart;
+
+    @Column(name = "transaction_count", nullable = false)
+    private long count;
+
+    @Column(name = "amount_sum", nullable = false, precision = 38, scale = 4)
+    private BigDecimal sum;
+
+    @Column(name = "amount_sum_squares", nullable = false, precision = 38, scale = 8)
+    private BigDecimal sumOfSquares;
+
+    @Column(name = "amount_min", nullable = false, precision = 19, scale = 4)
+    private BigDecimal min;
+
+    @Column(name = "amount_max", nullable = false, precision = 19, scale = 4)
+    private BigDecimal max;
+
+    public enum Granularity {
+        HOUR,
+        DAY
+    }
+}
@@ -0,0 +1,79 @@
+package com.patorinaldi.wallet.fraud.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Running statistics of a wallet's transaction amounts, updated one transaction at a time:
+ * count, mean and sum of squared deviations (Welford), plus an exponentially weighted mean
+ * that follows recent behaviour.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "wallet_amount_stats")
+public class WalletAmountStats {
+
+    @Id
+    @Column(name = "wallet_id")
+    private UUID walletId;
+
+    @Column(name = "transaction_count", nullable = false)
+    private long count;
+
+    @Column(nullable = false)
+    private double mean;
+
+    @Column(name = "sum_squared_deviations", nullable = false)
+    private double m2;
+
+    @Column(nullable = false)
+    private double ewma;
+
+    @Version
+    private Long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public void add(BigDecimal amount, double ewmaAlpha) {
+        double value = amount.doubleValue();
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        ewma = count == 1 ? value : ewma + ewmaAlpha * (value - ewma);
+        updatedAt = Instant.now();
+    }
+
+    public BigDecimal meanAmount() {
+        return count == 0 ? null : BigDecimal.valueOf(mean);
+    }
+
+    /**
+     * Sample variance; zero until there are two transactions.
+     */
+    public double variance() {
+        return count < 2 ? 0 : m2 / (count - 1);
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * How many standard deviations {@code amount} lies above the mean, or zero while the
+     * deviation is still zero.
+     */
+    public double zScore(BigDecimal amount) {
+        double deviation = standardDeviation();
+        return deviation == 0 ? 0 : (amount.doubleValue() - mean) / deviation;
+    }
+}
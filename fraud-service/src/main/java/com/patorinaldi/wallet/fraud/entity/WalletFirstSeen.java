@@ -0,0 +1,27 @@
+package com.patorinaldi.wallet.fraud.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * When a wallet was first seen: its creation or its first transaction, whichever came first.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "wallet_first_seen")
+public class WalletFirstSeen {
+
+    @Id
+    @Column(name = "wallet_id")
+    private UUID walletId;
+
+    @Column(name = "first_seen_at", nullable = false)
+    private Instant firstSeenAt;
+}
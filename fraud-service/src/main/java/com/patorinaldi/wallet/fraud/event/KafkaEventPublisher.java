@@ -1,10 +1,12 @@
 package com.patorinaldi.wallet.fraud.event;
 
 import com.patorinaldi.wallet.common.event.FraudAlertEvent;
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
 import com.patorinaldi.wallet.common.event.UserBlockedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
+import com.patorinaldi.wallet.common.outbox.OutboxWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
@@ -14,19 +16,31 @@ import org.springframework.transaction.event.TransactionalEventListener;
 @Slf4j
 public class KafkaEventPublisher {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final OutboxWriter outboxWriter;
 
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handleFraudAlert(FraudAlertEvent event) {
         log.debug("Publishing FraudAlertEvent for analysisId: {}", event.analysisId());
-        kafkaTemplate.send("fraud-alert", event.analysisId().toString(), event);
-        log.info("Published FraudAlertEvent for analysisId: {}", event.analysisId());
+        outboxWriter.append("fraud-alert", event.analysisId().toString(), event);
+        log.info("Queued FraudAlertEvent for analysisId: {}", event.analysisId());
     }
 
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handleUserBlocked(UserBlockedEvent event) {
         log.debug("Publishing UserBlockedEvent for userId: {}", event.userId());
-        kafkaTemplate.send("user-blocked", event.userId().toString(), event);
-        log.info("Published UserBlockedEvent for userId: {}", event.userId());
+        outboxWriter.append("user-blocked", event.userId().toString(), event);
+        log.info("Queued UserBlockedEvent for userId: {}", event.userId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handleFraudRulesPublished(FraudRulesPublishedEvent event) {
+        outboxWriter.append("fraud-rules", "fraud-rules", event);
+        log.debug("Queued FraudRulesPublishedEvent with {} rules", event.rules().size());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void handleWalletRiskProfile(WalletRiskProfileEvent event) {
+        outboxWriter.append("wallet-risk-profile", event.walletId().toString(), event);
+        log.debug("Queued WalletRiskProfileEvent for walletId: {}", event.walletId());
     }
 }
\ No newline at end of file
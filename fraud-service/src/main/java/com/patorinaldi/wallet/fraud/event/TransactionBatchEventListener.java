@@ -0,0 +1,51 @@
+package com.patorinaldi.wallet.fraud.event;
+
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.fraud.service.FraudAnalysisService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Consumes {@code transaction-completed} a poll at a time in place of
+ * {@link TransactionEventListener}. If the batch fails as a whole, its events are analysed one by
+ * one so only the event that fails again is retried and, after that, dead-lettered; the ones
+ * before it are committed. Enable with {@code fraud.analysis.batch.enabled=true}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "fraud.analysis.batch.enabled", havingValue = "true")
+public class TransactionBatchEventListener {
+
+    private final FraudAnalysisService fraudAnalysisService;
+
+    @KafkaListener(topics = "transaction-completed", groupId = "fraud-service", batch = "true",
+            properties = "max.poll.records=${fraud.analysis.batch.max-records:500}")
+    public void handleTransactionsCompleted(List<TransactionCompletedEvent> events) {
+        log.info("Received {} TransactionCompletedEvents", events.size());
+        try {
+            fraudAnalysisService.analyzeTransactions(events);
+        } catch (RuntimeException e) {
+            log.warn("Fraud analysis of batch of {} failed, analysing one by one: {}", events.size(), e.getMessage());
+            analyzeOneByOne(events);
+        }
+        log.info("Completed fraud analysis for {} transactions", events.size());
+    }
+
+    private void analyzeOneByOne(List<TransactionCompletedEvent> events) {
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                fraudAnalysisService.analyzeTransaction(events.get(i));
+            } catch (RuntimeException e) {
+                throw new BatchListenerFailedException(
+                        "Fraud analysis failed for transaction " + events.get(i).transactionId(), e, i);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.patorinaldi.wallet.fraud.event;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
@@ -12,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "fraud.analysis.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class TransactionEventListener {
 
     private final FraudAnalysisService fraudAnalysisService;
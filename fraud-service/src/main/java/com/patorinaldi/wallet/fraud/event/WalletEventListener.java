@@ -0,0 +1,25 @@
+package com.patorinaldi.wallet.fraud.event;
+
+import com.patorinaldi.wallet.common.event.WalletCreatedEvent;
+import com.patorinaldi.wallet.fraud.service.RedisFeatureStore;
+import com.patorinaldi.wallet.fraud.service.WalletFirstSeenService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WalletEventListener {
+
+    private final WalletFirstSeenService firstSeenService;
+    private final RedisFeatureStore featureStore;
+
+    @KafkaListener(topics = "wallet-created", groupId = "fraud-service")
+    public void handleWalletCreated(WalletCreatedEvent event) {
+        log.debug("Received WalletCreatedEvent for wallet: {}", event.walletId());
+        firstSeenService.record(event.walletId(), event.createdAt());
+        featureStore.recordFirstSeen(event.walletId(), firstSeenService.firstSeen(event.walletId()).orElse(event.createdAt()));
+    }
+}
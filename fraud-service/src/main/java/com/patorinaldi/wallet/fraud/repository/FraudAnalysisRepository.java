@@ -2,8 +2,14 @@ package com.patorinaldi.wallet.fraud.repository;
 
 import com.patorinaldi.wallet.fraud.entity.FraudAnalysis;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 public interface FraudAnalysisRepository extends JpaRepository<FraudAnalysis, UUID> {
@@ -12,4 +18,39 @@ public interface FraudAnalysisRepository extends JpaRepository<FraudAnalysis, UU
 
     Optional<FraudAnalysis> findByTransactionId(UUID transactionId);
 
+    @Query("SELECT f.transactionId FROM FraudAnalysis f WHERE f.transactionId IN :transactionIds")
+    Set<UUID> findTransactionIdsIn(Collection<UUID> transactionIds);
+
+    /**
+     * Analyses since {@code since} that triggered any rule in {@code ruleMask}, newest first. The
+     * distinct masks are walked through {@code idx_fraud_rule_mask} one index probe each, and
+     * only the matching ones are read, so the cost follows the analyses returned rather than
+     * the table.
+     */
+    @Query(value = "WITH RECURSIVE masks AS (" +
+            "(SELECT triggered_rule_mask AS mask FROM fraud_analysis WHERE triggered_rule_mask > 0 " +
+            "ORDER BY triggered_rule_mask LIMIT 1) " +
+            "UNION ALL SELECT (SELECT f.triggered_rule_mask FROM fraud_analysis f " +
+            "WHERE f.triggered_rule_mask > masks.mask ORDER BY f.triggered_rule_mask LIMIT 1) " +
+            "FROM masks WHERE masks.mask IS NOT NULL) " +
+            "SELECT a.* FROM masks JOIN fraud_analysis a ON a.triggered_rule_mask = masks.mask " +
+            "WHERE (masks.mask & :ruleMask) <> 0 AND a.analyzed_at >= :since " +
+            "ORDER BY a.analyzed_at DESC LIMIT :limit", nativeQuery = true)
+    List<FraudAnalysis> findTriggeredSince(long ruleMask, Instant since, int limit);
+
+    @Query(value = "SELECT to_regclass('fraud_triggered_rules') IS NOT NULL", nativeQuery = true)
+    boolean hasLegacyTriggeredRules();
+
+    /**
+     * Fills the mask of analyses stored before it replaced the {@code fraud_triggered_rules}
+     * collection table. Codes of rules that no longer exist are dropped.
+     */
+    @Modifying
+    @Query(value = "UPDATE fraud_analysis a SET triggered_rule_mask = legacy.mask FROM (" +
+            "SELECT t.fraud_analysis_id, BIT_OR(CAST(1 AS bigint) << r.rule_id) AS mask " +
+            "FROM fraud_triggered_rules t JOIN fraud_rules r ON r.rule_code = t.rule " +
+            "WHERE r.rule_id < 63 GROUP BY t.fraud_analysis_id) legacy " +
+            "WHERE a.id = legacy.fraud_analysis_id AND a.triggered_rule_mask = 0", nativeQuery = true)
+    int backfillTriggeredRuleMasks();
+
 }
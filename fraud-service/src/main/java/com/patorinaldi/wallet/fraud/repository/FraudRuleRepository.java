@@ -2,6 +2,9 @@ package com.patorinaldi.wallet.fraud.repository;
 
 import com.patorinaldi.wallet.fraud.entity.FraudRule;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.UUID;
@@ -12,4 +15,33 @@ public interface FraudRuleRepository extends JpaRepository<FraudRule, UUID> {
 
     boolean existsByRuleCode(String ruleCode);
 
+    @Transactional
+    @Modifying
+    @Query(value = "CREATE SEQUENCE IF NOT EXISTS fraud_rule_id_seq MINVALUE 0 START WITH 0", nativeQuery = true)
+    void createRuleIdSequence();
+
+    /**
+     * Moves the rule id sequence past every id already taken, such as ids assigned before the
+     * sequence existed. Never moves it back, so ids of deleted rules are not handed out again.
+     */
+    @Transactional
+    @Query(value = "SELECT setval('fraud_rule_id_seq', GREATEST(" +
+            "(SELECT COALESCE(MAX(rule_id) + 1, 0) FROM fraud_rules), " +
+            "(SELECT CASE WHEN is_called THEN last_value + 1 ELSE last_value END FROM fraud_rule_id_seq)), false)",
+            nativeQuery = true)
+    long syncRuleIdSequence();
+
+    /**
+     * Gives rules without an id the next ones from {@code fraud_rule_id_seq}, in creation order.
+     *
+     * @return the number of rules given an id
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE fraud_rules r SET rule_id = assigned.rule_id FROM (" +
+            "SELECT id, nextval('fraud_rule_id_seq') AS rule_id FROM (" +
+            "SELECT id FROM fraud_rules WHERE rule_id IS NULL ORDER BY created_at, rule_code) pending) assigned " +
+            "WHERE r.id = assigned.id AND r.rule_id IS NULL", nativeQuery = true)
+    int assignRuleIds();
+
 }
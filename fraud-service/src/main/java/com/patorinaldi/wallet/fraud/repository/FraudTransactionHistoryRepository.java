@@ -1,11 +1,16 @@
 package com.patorinaldi.wallet.fraud.repository;
 
+import com.patorinaldi.wallet.common.enums.TransactionType;
 import com.patorinaldi.wallet.fraud.entity.FraudTransactionHistory;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface FraudTransactionHistoryRepository extends JpaRepository<FraudTransactionHistory, UUID> {
@@ -14,9 +19,99 @@ public interface FraudTransactionHistoryRepository extends JpaRepository<FraudTr
 
     FraudTransactionHistory findFirstByWalletIdOrderByOccurredAtAsc(UUID walletId);
 
-    @Query("SELECT AVG(f.amount) FROM FraudTransactionHistory f WHERE f.walletId = :walletId")
+    List<FraudTransactionHistory> findByWalletIdAndOccurredAtAfterOrderByOccurredAtDesc(UUID walletId, Instant since,
+                                                                                        Limit limit);
+
+    /**
+     * Mean of the wallet's amounts over its history rows and its rolled-up buckets.
+     */
+    @Query(value = "SELECT SUM(s) / NULLIF(SUM(n), 0) FROM (" +
+            "SELECT COUNT(*) AS n, SUM(amount) AS s FROM fraud_transaction_history WHERE wallet_id = :walletId " +
+            "UNION ALL SELECT SUM(transaction_count), SUM(amount_sum) FROM wallet_amount_bucket " +
+            "WHERE wallet_id = :walletId) amounts", nativeQuery = true)
     BigDecimal findAverageAmountByWalletId(UUID walletId);
 
+    /**
+     * Count, mean and sum of squared deviations of the wallet's amounts over its history rows and
+     * its rolled-up buckets, to seed its {@link com.patorinaldi.wallet.fraud.entity.WalletAmountStats}.
+     */
+    @Query(value = "SELECT COALESCE(SUM(n), 0) AS count, COALESCE(SUM(s) / NULLIF(SUM(n), 0), 0) AS mean, " +
+            "COALESCE(SUM(sq) - SUM(s) * SUM(s) / NULLIF(SUM(n), 0), 0) AS m2 FROM (" +
+            "SELECT COUNT(*) AS n, SUM(amount) AS s, SUM(amount * amount) AS sq FROM fraud_transaction_history " +
+            "WHERE wallet_id = :walletId " +
+            "UNION ALL SELECT SUM(transaction_count), SUM(amount_sum), SUM(amount_sum_squares) " +
+            "FROM wallet_amount_bucket WHERE wallet_id = :walletId) amounts", nativeQuery = true)
+    AmountAggregate aggregateAmountsByWalletId(UUID walletId);
+
+    @Query("SELECT MIN(f.occurredAt) FROM FraudTransactionHistory f")
+    Instant findOldestOccurredAt();
+
     boolean existsByTransactionId(UUID transactionId);
 
+    @Query("SELECT f.transactionId FROM FraudTransactionHistory f WHERE f.transactionId IN :transactionIds")
+    Set<UUID> findTransactionIdsIn(Collection<UUID> transactionIds);
+
+    @Query("SELECT f.walletId AS walletId, COUNT(f) AS count FROM FraudTransactionHistory f " +
+            "WHERE f.walletId IN :walletIds AND f.occurredAt > :since GROUP BY f.walletId")
+    List<WalletCount> countByWalletIdInAndOccurredAtAfter(Collection<UUID> walletIds, Instant since);
+
+    @Query("SELECT f.walletId AS walletId, MIN(f.occurredAt) AS firstSeen FROM FraudTransactionHistory f " +
+            "WHERE f.walletId IN :walletIds GROUP BY f.walletId")
+    List<WalletFirstSeen> findFirstSeenByWalletIdIn(Collection<UUID> walletIds);
+
+    @Query("SELECT f.walletId AS walletId, f.occurredAt AS occurredAt FROM FraudTransactionHistory f " +
+            "WHERE f.occurredAt > :since")
+    List<WalletOccurrence> findOccurrencesAfter(Instant since);
+
+    @Query("SELECT COUNT(DISTINCT f.relatedWalletId) FROM FraudTransactionHistory f " +
+            "WHERE f.walletId = :walletId AND f.transactionType = :type AND f.occurredAt > :since")
+    Integer countDistinctRelatedWalletIds(UUID walletId, TransactionType type, Instant since);
+
+    @Query("SELECT f.walletId AS walletId, f.relatedWalletId AS relatedWalletId, f.occurredAt AS occurredAt " +
+            "FROM FraudTransactionHistory f WHERE f.transactionType = :type AND f.relatedWalletId IS NOT NULL " +
+            "AND f.occurredAt > :since")
+    List<WalletCounterparty> findCounterpartiesAfter(TransactionType type, Instant since);
+
+    /**
+     * Batch form of {@link #findAverageAmountByWalletId(UUID)}; wallets without transactions are absent.
+     */
+    @Query(value = "SELECT wallet_id AS \"walletId\", SUM(s) / SUM(n) AS average FROM (" +
+            "SELECT wallet_id, COUNT(*) AS n, SUM(amount) AS s FROM fraud_transaction_history " +
+            "WHERE wallet_id IN :walletIds GROUP BY wallet_id " +
+            "UNION ALL SELECT wallet_id, SUM(transaction_count), SUM(amount_sum) FROM wallet_amount_bucket " +
+            "WHERE wallet_id IN :walletIds GROUP BY wallet_id) amounts GROUP BY wallet_id", nativeQuery = true)
+    List<WalletAverage> findAverageAmountByWalletIdIn(Collection<UUID> walletIds);
+
+    interface WalletCount {
+        UUID getWalletId();
+        long getCount();
+    }
+
+    interface WalletFirstSeen {
+        UUID getWalletId();
+        Instant getFirstSeen();
+    }
+
+    interface WalletOccurrence {
+        UUID getWalletId();
+        Instant getOccurredAt();
+    }
+
+    interface WalletCounterparty {
+        UUID getWalletId();
+        UUID getRelatedWalletId();
+        Instant getOccurredAt();
+    }
+
+    interface AmountAggregate {
+        long getCount();
+        double getMean();
+        double getM2();
+    }
+
+    interface WalletAverage {
+        UUID getWalletId();
+        BigDecimal getAverage();
+    }
+
 }
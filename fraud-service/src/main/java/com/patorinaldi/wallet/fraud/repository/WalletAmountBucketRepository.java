@@ -0,0 +1,68 @@
+package com.patorinaldi.wallet.fraud.repository;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface WalletAmountBucketRepository extends JpaRepository<WalletAmountBucket, UUID> {
+
+    /**
+     * Adds rolled-up rows to the bucket they fall in if it already exists.
+     */
+    String MERGE = "ON CONFLICT (wallet_id, granularity, bucket_start) DO UPDATE SET " +
+            "transaction_count = wallet_amount_bucket.transaction_count + EXCLUDED.transaction_count, " +
+            "amount_sum = wallet_amount_bucket.amount_sum + EXCLUDED.amount_sum, " +
+            "amount_sum_squares = wallet_amount_bucket.amount_sum_squares + EXCLUDED.amount_sum_squares, " +
+            "amount_min = LEAST(wallet_amount_bucket.amount_min, EXCLUDED.amount_min), " +
+            "amount_max = GREATEST(wallet_amount_bucket.amount_max, EXCLUDED.amount_max)";
+
+    /**
+     * Moves the history rows that occurred in {@code [start, end)} into hourly buckets, keeping
+     * their wallets' first-seen times, in one statement. Rows are deleted and added up together,
+     * so a concurrent run cannot count them twice.
+     *
+     * @return the number of buckets written
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (" +
+            "DELETE FROM fraud_transaction_history WHERE occurred_at >= :start AND occurred_at < :end " +
+            "RETURNING wallet_id, amount, occurred_at), " +
+            "first_seen AS (" +
+            "INSERT INTO wallet_first_seen (wallet_id, first_seen_at) " +
+            "SELECT wallet_id, MIN(occurred_at) FROM moved GROUP BY wallet_id " +
+            "ON CONFLICT (wallet_id) DO UPDATE SET first_seen_at = " +
+            "LEAST(wallet_first_seen.first_seen_at, EXCLUDED.first_seen_at)) " +
+            "INSERT INTO wallet_amount_bucket (id, wallet_id, granularity, bucket_start, transaction_count, " +
+            "amount_sum, amount_sum_squares, amount_min, amount_max) " +
+            "SELECT gen_random_uuid(), wallet_id, 'HOUR', date_trunc('hour', occurred_at, 'UTC'), COUNT(*), " +
+            "SUM(amount), SUM(amount * amount), MIN(amount), MAX(amount) " +
+            "FROM moved GROUP BY wallet_id, date_trunc('hour', occurred_at, 'UTC') " +
+            MERGE, nativeQuery = true)
+    int rollUpHistory(Instant start, Instant end);
+
+    /**
+     * Merges the hourly buckets starting in {@code [start, end)} into daily buckets.
+     *
+     * @return the number of buckets written
+     */
+    @Modifying
+    @Query(value = "WITH moved AS (" +
+            "DELETE FROM wallet_amount_bucket WHERE granularity = 'HOUR' " +
+            "AND bucket_start >= :start AND bucket_start < :end " +
+            "RETURNING wallet_id, bucket_start, transaction_count, amount_sum, amount_sum_squares, " +
+            "amount_min, amount_max) " +
+            "INSERT INTO wallet_amount_bucket (id, wallet_id, granularity, bucket_start, transaction_count, " +
+            "amount_sum, amount_sum_squares, amount_min, amount_max) " +
+            "SELECT gen_random_uuid(), wallet_id, 'DAY', date_trunc('day', bucket_start, 'UTC'), " +
+            "SUM(transaction_count), SUM(amount_sum), SUM(amount_sum_squares), MIN(amount_min), MAX(amount_max) " +
+            "FROM moved GROUP BY wallet_id, date_trunc('day', bucket_start, 'UTC') " +
+            MERGE, nativeQuery = true)
+    int rollUpHourlyBuckets(Instant start, Instant end);
+
+    @Query("SELECT MIN(b.bucketStart) FROM WalletAmountBucket b WHERE b.granularity = :granularity")
+    Instant findOldestBucketStart(WalletAmountBucket.Granularity granularity);
+}
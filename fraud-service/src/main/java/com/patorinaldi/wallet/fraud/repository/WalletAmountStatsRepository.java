@@ -0,0 +1,10 @@
+package com.patorinaldi.wallet.fraud.repository;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.UUID;
+
+public interface WalletAmountStatsRepository extends JpaRepository<WalletAmountStats, UUID> {
+
+}
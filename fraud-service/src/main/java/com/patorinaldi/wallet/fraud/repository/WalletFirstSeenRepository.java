@@ -0,0 +1,21 @@
+package com.patorinaldi.wallet.fraud.repository;
+
+import com.patorinaldi.wallet.fraud.entity.WalletFirstSeen;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface WalletFirstSeenRepository extends JpaRepository<WalletFirstSeen, UUID> {
+
+    /**
+     * Stores {@code firstSeenAt} unless an earlier time is already stored for the wallet.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO wallet_first_seen (wallet_id, first_seen_at) VALUES (:walletId, :firstSeenAt) " +
+            "ON CONFLICT (wallet_id) DO UPDATE SET first_seen_at = " +
+            "LEAST(wallet_first_seen.first_seen_at, EXCLUDED.first_seen_at)", nativeQuery = true)
+    void upsertEarliest(UUID walletId, Instant firstSeenAt);
+}
@@ -0,0 +1,223 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distinct wallets each wallet has transferred to over the last
+ * {@code fraud.counterparties.horizon-minutes}, kept in memory as {@link CounterpartySketch}es so
+ * DISTINCT_COUNTERPARTIES rules need no {@code COUNT(DISTINCT ...)} over
+ * {@code fraud_transaction_history}.
+ *
+ * <p>Each wallet has a ring of {@code bucket-minutes} sketches. A window up to the horizon is
+ * answered by merging the sketches of the buckets it touches; the oldest of those may reach up to
+ * one bucket past the window, so counts err on the high side by at most the counterparties only
+ * that bucket has. Below {@value CounterpartySketch#SPARSE_LIMIT} counterparties per bucket the
+ * count is exact, above it within the sketch's error. Windows longer than the horizon are not
+ * answered and go to the table.
+ *
+ * <p>Like {@link VelocityWindows}, the rings are rebuilt from the table before the application
+ * starts serving, then fed by {@link FraudTransactionHistoryService#saveTransaction}, and only see
+ * transfers recorded by this instance.
+ *
+ * <p>Unlike velocity counts, nothing is taken back on rollback: adding a counterparty already in
+ * the bucket changes nothing, so a transfer retried after a failed batch is counted once. One
+ * whose transaction never commits may leave its counterparty behind, erring high like the
+ * buckets do.
+ */
+@Slf4j
+@Component
+public class CounterpartyWindows {
+
+    /**
+     * Object header, array references and newest-bucket field of a ring, plus its map entry and
+     * UUID key.
+     */
+    private static final long WALLET_OVERHEAD_BYTES = 32 + 32 + 32;
+
+    private final FraudTransactionHistoryRepository historyRepository;
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int horizonBuckets;
+
+    private final Map<UUID, Ring> rings = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("counterparty-window-sweeper").daemon().factory());
+    private final Timer hydrationTimer;
+    private volatile boolean ready;
+
+    public CounterpartyWindows(
+            FraudTransactionHistoryRepository historyRepository,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.counterparties.enabled:false}") boolean enabled,
+            @Value("${fraud.counterparties.horizon-minutes:60}") int horizonMinutes,
+            @Value("${fraud.counterparties.bucket-minutes:15}") int bucketMinutes) {
+        this.historyRepository = historyRepository;
+        this.enabled = enabled;
+        this.bucketMillis = bucketMinutes * 60_000L;
+        this.horizonBuckets = (int) Math.ceil(horizonMinutes * 60_000.0 / bucketMillis);
+        this.hydrationTimer = meterRegistry.timer("fraud.counterparties.hydration");
+        meterRegistry.gaugeMapSize("fraud.counterparties.wallets", List.of(), rings);
+        meterRegistry.gauge("fraud.counterparties.bytes", List.of(), this, CounterpartyWindows::bytes);
+    }
+
+    @PostConstruct
+    public void hydrate() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        Instant now = Instant.now();
+        List<FraudTransactionHistoryRepository.WalletCounterparty> transfers =
+                historyRepository.findCounterpartiesAfter(TransactionType.TRANSFER_OUT,
+                        now.minusMillis(horizonBuckets * bucketMillis));
+        for (FraudTransactionHistoryRepository.WalletCounterparty transfer : transfers) {
+            record(transfer.getWalletId(), transfer.getRelatedWalletId(), transfer.getOccurredAt(), now);
+        }
+        ready = true;
+        long elapsed = System.nanoTime() - started;
+        hydrationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+
+        long periodMs = Math.max(horizonBuckets * bucketMillis / 4, 1_000);
+        sweeper.scheduleAtFixedRate(this::evictIdle, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        log.info("Counterparty windows loaded {} transfers for {} wallets in {}ms, {} bytes in total",
+                transfers.size(), rings.size(), elapsed / 1_000_000, (long) bytes());
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public void record(UUID walletId, UUID counterpartyId, Instant occurredAt) {
+        if (enabled) {
+            record(walletId, counterpartyId, occurredAt, Instant.now());
+        }
+    }
+
+    /**
+     * Distinct counterparties of the wallet in the last {@code windowMinutes}, or empty if the
+     * window is longer than the horizon or the windows are not loaded yet.
+     */
+    public OptionalInt count(UUID walletId, int windowMinutes) {
+        return count(walletId, windowMinutes, Instant.now());
+    }
+
+    OptionalInt count(UUID walletId, int windowMinutes, Instant now) {
+        if (!covers(windowMinutes)) {
+            return OptionalInt.empty();
+        }
+        Ring ring = rings.get(walletId);
+        long fromBucket = (now.toEpochMilli() - windowMinutes * 60_000L) / bucketMillis;
+        return OptionalInt.of(ring == null ? 0 : ring.countFrom(fromBucket));
+    }
+
+    /**
+     * Whether windows of {@code windowMinutes} are answered from memory.
+     */
+    public boolean covers(int windowMinutes) {
+        return ready && windowMinutes * 60_000L <= horizonBuckets * bucketMillis;
+    }
+
+    /**
+     * Approximate heap held by all rings; unlike velocity rings this varies by wallet, since
+     * sketches grow with the counterparties they hold.
+     */
+    public double bytes() {
+        long bytes = 0;
+        for (Ring ring : rings.values()) {
+            bytes += WALLET_OVERHEAD_BYTES + ring.bytes();
+        }
+        return bytes;
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    void evictIdle() {
+        evictIdle(Instant.now());
+    }
+
+    void evictIdle(Instant now) {
+        long oldest = now.toEpochMilli() / bucketMillis - horizonBuckets;
+        for (UUID walletId : rings.keySet()) {
+            rings.computeIfPresent(walletId, (id, ring) -> ring.newest < oldest ? null : ring);
+        }
+    }
+
+    void record(UUID walletId, UUID counterpartyId, Instant occurredAt, Instant now) {
+        long bucket = occurredAt.toEpochMilli() / bucketMillis;
+        if (bucket < now.toEpochMilli() / bucketMillis - horizonBuckets) {
+            return;
+        }
+        // compute, not computeIfAbsent + add, so an eviction cannot drop the ring mid-update
+        rings.compute(walletId, (id, ring) -> {
+            Ring target = ring == null ? new Ring(horizonBuckets + 1) : ring;
+            target.add(bucket, counterpartyId);
+            return target;
+        });
+    }
+
+    private static final class Ring {
+
+        private final long[] buckets;
+        private final CounterpartySketch[] sketches;
+        private volatile long newest;
+
+        private Ring(int size) {
+            this.buckets = new long[size];
+            this.sketches = new CounterpartySketch[size];
+        }
+
+        private synchronized void add(long bucket, UUID counterpartyId) {
+            int index = (int) Math.floorMod(bucket, (long) buckets.length);
+            if (sketches[index] == null || buckets[index] < bucket) {
+                buckets[index] = bucket;
+                sketches[index] = new CounterpartySketch();
+            } else if (buckets[index] > bucket) {
+                // the slot already holds a newer bucket; this one has left the horizon
+                return;
+            }
+            sketches[index].add(counterpartyId);
+            newest = Math.max(newest, bucket);
+        }
+
+        private synchronized int countFrom(long fromBucket) {
+            CounterpartySketch window = new CounterpartySketch();
+            for (int i = 0; i < sketches.length; i++) {
+                if (sketches[i] != null && buckets[i] >= fromBucket) {
+                    window.merge(sketches[i]);
+                }
+            }
+            return (int) window.estimate();
+        }
+
+        private synchronized long bytes() {
+            long bytes = 16 + 8L * buckets.length + (16 + 4L * sketches.length + 7) / 8 * 8;
+            for (CounterpartySketch sketch : sketches) {
+                if (sketch != null) {
+                    bytes += sketch.bytes();
+                }
+            }
+            return bytes;
+        }
+    }
+}
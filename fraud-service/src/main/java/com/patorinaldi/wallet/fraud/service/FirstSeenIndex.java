@@ -0,0 +1,157 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash table from wallet id to an epoch-millis timestamp, held in a single
+ * {@code long[]} of three words per slot (the two halves of the UUID, then the value). At the
+ * maximum load of 0.7 that is about 34 bytes per wallet, against roughly 100 for a
+ * {@code ConcurrentHashMap<UUID, Long>} entry with its key and boxed value.
+ *
+ * <p>Reads are optimistic and do not block; writes take an exclusive lock. A value of zero marks
+ * an empty slot, so zero cannot be stored.
+ */
+final class FirstSeenIndex {
+
+    private static final int WORDS = 3;
+    private static final double MAX_LOAD = 0.7;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] slots;
+    private int size;
+
+    FirstSeenIndex(int expectedSize) {
+        this.slots = new long[capacityFor(expectedSize) * WORDS];
+    }
+
+    /**
+     * The stored value, or zero if the wallet is not in the index.
+     */
+    long get(UUID walletId) {
+        long msb = walletId.getMostSignificantBits();
+        long lsb = walletId.getLeastSignificantBits();
+        long stamp = lock.tryOptimisticRead();
+        long value = find(slots, msb, lsb);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(slots, msb, lsb);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stores {@code value} if the wallet is absent or has a later value.
+     *
+     * @return whether the index changed
+     */
+    boolean putIfEarlier(UUID walletId, long value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("zero marks an empty slot");
+        }
+        long msb = walletId.getMostSignificantBits();
+        long lsb = walletId.getLeastSignificantBits();
+        long stamp = lock.writeLock();
+        try {
+            if (size + 1 > slots.length / WORDS * MAX_LOAD) {
+                slots = rehash(slots, slots.length / WORDS * 2);
+            }
+            int mask = slots.length / WORDS - 1;
+            for (int index = index(msb, lsb, mask); ; index = (index + 1) & mask) {
+                int base = index * WORDS;
+                long current = slots[base + 2];
+                if (current == 0) {
+                    slots[base] = msb;
+                    slots[base + 1] = lsb;
+                    slots[base + 2] = value;
+                    size++;
+                    return true;
+                }
+                if (slots[base] == msb && slots[base + 1] == lsb) {
+                    if (value < current) {
+                        slots[base + 2] = value;
+                        return true;
+                    }
+                    return false;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long bytes() {
+        long stamp = lock.readLock();
+        try {
+            return 16 + 8L * slots.length;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Probes for the wallet; bounded by the capacity so a read racing a writer cannot spin.
+     */
+    private static long find(long[] table, long msb, long lsb) {
+        int capacity = table.length / WORDS;
+        int mask = capacity - 1;
+        int index = index(msb, lsb, mask);
+        for (int probes = 0; probes < capacity; probes++) {
+            int base = index * WORDS;
+            long value = table[base + 2];
+            if (value == 0) {
+                return 0;
+            }
+            if (table[base] == msb && table[base + 1] == lsb) {
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static long[] rehash(long[] old, int capacity) {
+        long[] table = new long[capacity * WORDS];
+        int mask = capacity - 1;
+        for (int base = 0; base < old.length; base += WORDS) {
+            if (old[base + 2] == 0) {
+                continue;
+            }
+            int index = index(old[base], old[base + 1], mask);
+            while (table[index * WORDS + 2] != 0) {
+                index = (index + 1) & mask;
+            }
+            System.arraycopy(old, base, table, index * WORDS, WORDS);
+        }
+        return table;
+    }
+
+    private static int index(long msb, long lsb, int mask) {
+        long hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -2,13 +2,18 @@ package com.patorinaldi.wallet.fraud.service;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import com.patorinaldi.wallet.common.event.FraudAlertEvent;
 import com.patorinaldi.wallet.common.event.UserBlockedEvent;
 import com.patorinaldi.wallet.fraud.entity.FraudDecision;
-import com.patorinaldi.wallet.fraud.entity.FraudRule;
-import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
@@ -26,13 +31,18 @@ import org.springframework.transaction.annotation.Transactional;
 public class FraudAnalysisService {
 
     private final FraudAnalysisRepository fraudAnalysisRepository;
-    private final FraudRuleRepository fraudRuleRepository;
+    private final FraudRuleRegistry ruleRegistry;
     private final FraudTransactionHistoryService historyService;
     private final ApplicationEventPublisher eventPublisher;
-
-    private static final int FLAG_THRESHOLD = 50;
-    private static final int BLOCK_THRESHOLD = 80;
-
+    private final RiskFeedPublisher riskFeedPublisher;
+    private final RedisFeatureStore featureStore;
+
+    /**
+     * Records the transaction in the wallet's history and persists its analysis. A transaction
+     * carrying the result of its sync check keeps that result and only has the rules whose answer
+     * changes once it is in the history evaluated on top; any other is evaluated against every
+     * rule here.
+     */
     @Transactional
     public void analyzeTransaction(TransactionCompletedEvent event) {
 
@@ -43,51 +53,93 @@ public class FraudAnalysisService {
 
         historyService.saveTransaction(event);
 
-        List<String> triggeredRules = new ArrayList<>();
-        int riskScore = 0;
+        FraudRuleSet ruleSet = ruleRegistry.current();
+        FraudAnalysis savedAnalysis = fraudAnalysisRepository.save(analyze(event, ruleSet));
+        riskFeedPublisher.publishProfile(event.walletId(), ruleSet);
+        raiseAlerts(savedAnalysis);
 
-        List<FraudRule> activeRules = fraudRuleRepository.findByActiveTrue();
+        log.info("Fraud analysis for transaction ID: {} saved with decision: {} and risk score: {}",
+                event.transactionId(), savedAnalysis.getDecision(), savedAnalysis.getRiskScore());
+
+    }
 
-        for (FraudRule rule : activeRules) {
-            boolean triggered = evaluateRule(rule, event);
+    /**
+     * Batch form of {@link #analyzeTransaction} for one poll of {@code transaction-completed}, in
+     * one transaction. Already analysed and already recorded transactions are found with one
+     * {@code IN} query each, and analyses are inserted together at the end. Events are handled in
+     * the order given, each evaluated right after it is recorded, so a wallet's transactions see
+     * the same features as when consumed one at a time.
+     */
+    @Transactional
+    public void analyzeTransactions(List<TransactionCompletedEvent> events) {
+        Map<UUID, TransactionCompletedEvent> pending = new LinkedHashMap<>();
+        events.forEach(event -> pending.putIfAbsent(event.transactionId(), event));
+        for (UUID transactionId : fraudAnalysisRepository.findTransactionIdsIn(pending.keySet())) {
+            log.warn("Fraud transaction analysis for transaction ID: {} already exists. Skipping.", transactionId);
+            pending.remove(transactionId);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
 
-            if (triggered) {
-                riskScore += rule.getScoreImpact();
-                triggeredRules.add(rule.getRuleCode());
-                log.info("Rule {} triggered for transaction {}. Score impact: +{}",
-                        rule.getRuleCode(), event.transactionId(), rule.getScoreImpact());
+        Set<UUID> saved = historyService.findSavedTransactionIds(pending.keySet());
+        FraudRuleSet ruleSet = ruleRegistry.current();
+        List<FraudAnalysis> analyses = new ArrayList<>(pending.size());
+        Set<UUID> walletIds = new LinkedHashSet<>();
+        for (TransactionCompletedEvent event : pending.values()) {
+            if (!saved.contains(event.transactionId())) {
+                historyService.saveNewTransaction(event);
             }
+            analyses.add(analyze(event, ruleSet));
+            walletIds.add(event.walletId());
         }
 
+        List<FraudAnalysis> savedAnalyses = fraudAnalysisRepository.saveAll(analyses);
+        walletIds.forEach(walletId -> riskFeedPublisher.publishProfile(walletId, ruleSet));
+        savedAnalyses.forEach(this::raiseAlerts);
 
-        FraudDecision decision;
-        if (riskScore >= BLOCK_THRESHOLD) {
-            decision = FraudDecision.BLOCK;
-        } else if (riskScore >= FLAG_THRESHOLD) {
-            decision = FraudDecision.FLAG;
-        } else {
-            decision = FraudDecision.APPROVE;
-        }
+        log.info("Fraud analysis saved for {} of {} transactions in batch", savedAnalyses.size(), events.size());
+    }
+
+    /**
+     * Analyses since {@code since} that triggered the rule, newest first, for review.
+     */
+    @Transactional(readOnly = true)
+    public List<FraudAnalysis> findTriggered(String ruleCode, Instant since, int limit) {
+        long ruleMask = ruleRegistry.ruleMask(List.of(ruleCode));
+        return ruleMask == 0 ? List.of() : fraudAnalysisRepository.findTriggeredSince(ruleMask, since, limit);
+    }
 
-        FraudAnalysis analysis = FraudAnalysis.builder()
+    private FraudAnalysis analyze(TransactionCompletedEvent event, FraudRuleSet ruleSet) {
+        Optional<FraudRuleSet.Result> syncResult = syncResult(event);
+        FraudRuleSet.Result result = syncResult
+                .map(sync -> rescore(event, ruleSet, sync))
+                .orElseGet(() -> evaluate(event, ruleSet));
+
+        FraudDecision decision = result.decision();
+        int riskScore = result.riskScore();
+
+        return FraudAnalysis.builder()
                 .transactionId(event.transactionId())
                 .walletId(event.walletId())
                 .userId(event.userId())
                 .riskScore(riskScore)
-                .triggeredRules(triggeredRules)
+                .triggeredRuleMask(ruleRegistry.ruleMask(result.triggeredRules()))
                 .decision(decision)
                 .amount(event.amount())
                 .transactionType(event.type())
                 .analyzedAt(java.time.Instant.now())
+                .notes(syncResult.isPresent() ? "Rescored from sync check " + event.fraudCheckId() : null)
                 .build();
+    }
 
-        FraudAnalysis savedAnalysis = fraudAnalysisRepository.save(analysis);
-
+    private void raiseAlerts(FraudAnalysis savedAnalysis) {
+        FraudDecision decision = savedAnalysis.getDecision();
         if (decision == FraudDecision.BLOCK) {
             UserBlockedEvent userBlockedEvent = UserBlockedEvent.builder()
                     .userId(savedAnalysis.getUserId())
                     .triggeredByTransactionId(savedAnalysis.getTransactionId())
-                    .reason("Fraudulent activity detected: " + String.join(", ", savedAnalysis.getTriggeredRules()))
+                    .reason("Fraudulent activity detected: " + String.join(", ", ruleRegistry.ruleCodes(savedAnalysis.getTriggeredRuleMask())))
                     .riskScore(savedAnalysis.getRiskScore())
                     .blockedAt(Instant.now())
                     .build();
@@ -103,45 +155,92 @@ public class FraudAnalysisService {
                     .build();
             eventPublisher.publishEvent(fraudAlertEvent);
         }
+    }
 
-        log.info("Fraud analysis for transaction ID: {} saved with decision: {} and risk score: {}",
-                event.transactionId(), decision, riskScore);
+    private static Optional<FraudRuleSet.Result> syncResult(TransactionCompletedEvent event) {
+        if (event.fraudRiskScore() == null) {
+            return Optional.empty();
+        }
+        List<String> triggeredRules = event.fraudTriggeredRules() == null ? List.of() : event.fraudTriggeredRules();
+        return Optional.of(new FraudRuleSet.Result(FraudRuleSet.decide(event.fraudRiskScore()),
+                event.fraudRiskScore(), triggeredRules));
+    }
+
+    /**
+     * The sync result stands as it was. Only rules whose answer this transaction changes by being
+     * in the history, and that the sync check did not trigger, are evaluated on top, so velocity,
+     * counterparty and unusual-amount rules count it and can still turn a FLAG into a BLOCK.
+     */
+    private FraudRuleSet.Result rescore(TransactionCompletedEvent event, FraudRuleSet ruleSet,
+                                        FraudRuleSet.Result syncResult) {
+        WalletFeatureLookup features = new WalletFeatureLookup(historyService, featureStore, event.walletId(),
+                ruleSet.velocityWindows());
+        List<String> triggeredRules = new ArrayList<>(syncResult.triggeredRules());
+        int riskScore = syncResult.riskScore();
+        for (FraudRuleSet.Rule rule : ruleSet.rules()) {
+            if (changesAfterCommit(rule.ruleType()) && !triggeredRules.contains(rule.ruleCode())
+                    && evaluateLogged(rule, event, features)) {
+                riskScore += rule.scoreImpact();
+                triggeredRules.add(rule.ruleCode());
+            }
+        }
+        return new FraudRuleSet.Result(FraudRuleSet.decide(riskScore), riskScore, triggeredRules);
+    }
 
+    private static boolean changesAfterCommit(RuleType ruleType) {
+        return switch (ruleType) {
+            case VELOCITY, DISTINCT_COUNTERPARTIES, UNUSUAL_PATTERN -> true;
+            case AMOUNT_THRESHOLD, NEW_ACCOUNT -> false;
+        };
+    }
+
+    private FraudRuleSet.Result evaluate(TransactionCompletedEvent event, FraudRuleSet ruleSet) {
+        WalletFeatureLookup features = new WalletFeatureLookup(historyService, featureStore, event.walletId(),
+                ruleSet.velocityWindows());
+        return ruleSet.evaluateAll(rule -> evaluateLogged(rule, event, features));
+    }
+
+    private boolean evaluateLogged(FraudRuleSet.Rule rule, TransactionCompletedEvent event,
+                                   WalletFeatureLookup features) {
+        boolean triggered = evaluateRule(rule, event, features);
+        if (triggered) {
+            log.info("Rule {} triggered for transaction {}. Score impact: +{}",
+                    rule.ruleCode(), event.transactionId(), rule.scoreImpact());
+        }
+        return triggered;
     }
 
-    private boolean evaluateRule(FraudRule rule, TransactionCompletedEvent event) {
-        return switch (rule.getRuleType()) {
+    private boolean evaluateRule(FraudRuleSet.Rule rule, TransactionCompletedEvent event, WalletFeatureLookup features) {
+        return switch (rule.ruleType()) {
             case AMOUNT_THRESHOLD -> evaluateAmountThreshold(rule, event);
-            case VELOCITY -> evaluateVelocity(rule, event);
-            case NEW_ACCOUNT -> evaluateNewAccount(rule, event);
-            case UNUSUAL_PATTERN -> evaluateUnusualPattern(rule, event);
+            case VELOCITY -> evaluateVelocity(rule, features);
+            case NEW_ACCOUNT -> evaluateNewAccount(rule, features);
+            case UNUSUAL_PATTERN -> evaluateUnusualPattern(rule, event, features);
+            case DISTINCT_COUNTERPARTIES -> evaluateDistinctCounterparties(rule, features);
         };
     }
 
-    private boolean evaluateUnusualPattern(FraudRule rule, TransactionCompletedEvent event) {
-        return historyService.isUnusualAmount(
-                event.walletId(),
-                event.amount(),
-                rule.getThreshold()
-        );
+    private boolean evaluateUnusualPattern(FraudRuleSet.Rule rule, TransactionCompletedEvent event,
+                                           WalletFeatureLookup features) {
+        return features.isUnusualAmount(event.amount(), rule.threshold());
+    }
+
+    private boolean evaluateNewAccount(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        return features.isNewWallet(rule.timeWindowMinutes());
     }
 
-    private boolean evaluateNewAccount(FraudRule rule, TransactionCompletedEvent event) {
-        return historyService.isNewWallet(
-                event.walletId(),
-                rule.getTimeWindowMinutes());
+    private boolean evaluateVelocity(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        int count = features.countTransactionsInWindow(rule.timeWindowMinutes());
+        return count > rule.threshold().intValue();
     }
 
-    private boolean evaluateVelocity(FraudRule rule, TransactionCompletedEvent event) {
-        Integer count = historyService.countTransactionsInWindow(
-                event.walletId(),
-                rule.getTimeWindowMinutes()
-        );
-        return count > rule.getThreshold().intValue();
+    private boolean evaluateDistinctCounterparties(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        int count = features.countDistinctCounterparties(rule.timeWindowMinutes());
+        return count > rule.threshold().intValue();
     }
 
-    private boolean evaluateAmountThreshold(FraudRule rule, TransactionCompletedEvent event) {
-        return event.amount().compareTo(rule.getThreshold()) > 0;
+    private boolean evaluateAmountThreshold(FraudRuleSet.Rule rule, TransactionCompletedEvent event) {
+        return event.amount().compareTo(rule.threshold()) > 0;
     }
 
 }
@@ -0,0 +1,189 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the compiled {@link FraudRuleSet} every check evaluates, so checks no longer load the
+ * active rules themselves. The set is loaded on first use and reloaded every
+ * {@code fraud.rules.refresh-ms}, or at once through {@link #refresh()} by whoever changes the
+ * rules; a new set replaces the current one only if the rules differ.
+ *
+ * <p>Also translates between rule codes and the triggered-rule masks analyses are stored with.
+ * Rule ids come from their own sequence, unrelated to the bits of the sync check's wire format,
+ * and never change, so they are cached from every load and, for rules no longer active, read
+ * once from the table. Codes and ids the table does not know are remembered until the next
+ * reload rather than looked up again on every analysis.
+ */
+@Slf4j
+@Component
+public class FraudRuleRegistry {
+
+    // bit 63 would make masks negative, which the triggered-rule index walk skips
+    private static final int MAX_RULE_ID = 62;
+
+    private final FraudRuleRepository fraudRuleRepository;
+    private final long refreshMs;
+    private final Counter reloads;
+
+    private final ConcurrentMap<String, Integer> idsByCode = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> codesById = new AtomicReferenceArray<>(MAX_RULE_ID + 1);
+    private final Set<String> unknownCodes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong unknownIds = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("fraud-rules-refresh").daemon().factory());
+    private volatile FraudRuleSet current;
+    private volatile boolean sequenceReady;
+
+    public FraudRuleRegistry(
+            FraudRuleRepository fraudRuleRepository,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.rules.refresh-ms:10000}") long refreshMs) {
+        this.fraudRuleRepository = fraudRuleRepository;
+        this.refreshMs = refreshMs;
+        this.reloads = meterRegistry.counter("fraud.rules.reloads");
+        meterRegistry.gauge("fraud.rules.active", this, registry -> registry.current == null ? 0 : registry.current.rules().size());
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public FraudRuleSet current() {
+        FraudRuleSet ruleSet = current;
+        return ruleSet != null ? ruleSet : refresh();
+    }
+
+    /**
+     * Reloads the active rules, swapping them in if they changed.
+     */
+    public synchronized FraudRuleSet refresh() {
+        List<FraudRule> activeRules = fraudRuleRepository.findByActiveTrue();
+        if (activeRules.stream().anyMatch(rule -> rule.getRuleId() == null) && assignMissingRuleIds() > 0) {
+            activeRules = fraudRuleRepository.findByActiveTrue();
+        }
+        activeRules.forEach(this::cacheId);
+        unknownCodes.clear();
+        unknownIds.set(0);
+        FraudRuleSet loaded = FraudRuleSet.compile(activeRules);
+        if (!loaded.equals(current)) {
+            current = loaded;
+            reloads.increment();
+            log.info("Loaded {} active fraud rules: {}", loaded.rules().size(),
+                    loaded.rules().stream().map(FraudRuleSet.Rule::ruleCode).toList());
+        }
+        return current;
+    }
+
+    /**
+     * Gives every rule created without an id the next one from the rule id sequence, creating
+     * the sequence on first use.
+     *
+     * @return the number of rules given an id
+     */
+    public int assignMissingRuleIds() {
+        if (!sequenceReady) {
+            fraudRuleRepository.createRuleIdSequence();
+            fraudRuleRepository.syncRuleIdSequence();
+            sequenceReady = true;
+        }
+        int assigned = fraudRuleRepository.assignRuleIds();
+        if (assigned > 0) {
+            log.info("Assigned ids to {} fraud rules", assigned);
+        }
+        return assigned;
+    }
+
+    /**
+     * The mask with the bit of each of {@code ruleCodes} set. Codes of rules that do not exist,
+     * or whose id does not fit the mask, are left out.
+     */
+    public long ruleMask(Collection<String> ruleCodes) {
+        long mask = 0;
+        for (String ruleCode : ruleCodes) {
+            Integer id = idsByCode.get(ruleCode);
+            if (id == null && !unknownCodes.contains(ruleCode)) {
+                loadIds();
+                id = idsByCode.get(ruleCode);
+                if (id == null && unknownCodes.add(ruleCode)) {
+                    log.warn("Fraud rule {} has no id within the triggered-rule mask, leaving it out", ruleCode);
+                }
+            }
+            if (id == null) {
+                continue;
+            }
+            mask |= 1L << id;
+        }
+        return mask;
+    }
+
+    /**
+     * Codes of the rules whose bits are set in {@code mask}, by ascending id.
+     */
+    public List<String> ruleCodes(long mask) {
+        List<String> ruleCodes = new ArrayList<>(Long.bitCount(mask));
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            int id = Long.numberOfTrailingZeros(remaining);
+            long bit = 1L << id;
+            String ruleCode = id <= MAX_RULE_ID ? codesById.get(id) : null;
+            if (ruleCode == null && id <= MAX_RULE_ID && (unknownIds.get() & bit) == 0) {
+                loadIds();
+                ruleCode = codesById.get(id);
+            }
+            if (ruleCode == null) {
+                if ((unknownIds.getAndUpdate(ids -> ids | bit) & bit) == 0) {
+                    log.warn("No fraud rule has id {}, leaving it out", id);
+                }
+                continue;
+            }
+            ruleCodes.add(ruleCode);
+        }
+        return ruleCodes;
+    }
+
+    private void loadIds() {
+        fraudRuleRepository.findAll().forEach(this::cacheId);
+    }
+
+    private void cacheId(FraudRule rule) {
+        Integer id = rule.getRuleId();
+        if (id == null || id < 0 || id > MAX_RULE_ID) {
+            return;
+        }
+        idsByCode.put(rule.getRuleCode(), id);
+        codesById.set(id, rule.getRuleCode());
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh fraud rules, keeping the current set", e);
+        }
+    }
+}
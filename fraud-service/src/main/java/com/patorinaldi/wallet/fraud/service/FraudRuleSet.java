@@ -0,0 +1,143 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudDecision;
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The active fraud rules compiled for evaluation: an immutable snapshot, ordered cheapest first
+ * and, within the same cost, by largest score impact, so the decision settles as early as
+ * possible.
+ */
+public final class FraudRuleSet {
+
+    static final int FLAG_THRESHOLD = 50;
+    static final int BLOCK_THRESHOLD = 80;
+
+    private final List<Rule> rules;
+    private final List<Integer> velocityWindows;
+    // largest and smallest score the rules from each position onwards can still add
+    private final int[] remainingMax;
+    private final int[] remainingMin;
+
+    private FraudRuleSet(List<Rule> rules) {
+        this.rules = rules;
+        this.velocityWindows = rules.stream()
+                .filter(rule -> rule.ruleType() == RuleType.VELOCITY)
+                .map(Rule::timeWindowMinutes)
+                .distinct()
+                .toList();
+        this.remainingMax = new int[rules.size() + 1];
+        this.remainingMin = new int[rules.size() + 1];
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            int impact = rules.get(i).scoreImpact();
+            remainingMax[i] = remainingMax[i + 1] + Math.max(impact, 0);
+            remainingMin[i] = remainingMin[i + 1] + Math.min(impact, 0);
+        }
+    }
+
+    public static FraudRuleSet compile(List<FraudRule> activeRules) {
+        List<Rule> rules = new ArrayList<>(activeRules.size());
+        for (FraudRule rule : activeRules) {
+            rules.add(new Rule(rule.getRuleCode(), rule.getRuleType(), rule.getThreshold(),
+                    rule.getScoreImpact(), rule.getTimeWindowMinutes()));
+        }
+        rules.sort(Comparator.comparingInt((Rule rule) -> cost(rule.ruleType()))
+                .thenComparing(rule -> -Math.abs(rule.scoreImpact()))
+                .thenComparing(Rule::ruleCode));
+        return new FraudRuleSet(List.copyOf(rules));
+    }
+
+    /**
+     * Rules in evaluation order.
+     */
+    public List<Rule> rules() {
+        return rules;
+    }
+
+    /**
+     * Distinct windows of the VELOCITY rules, to fetch their counts together.
+     */
+    public List<Integer> velocityWindows() {
+        return velocityWindows;
+    }
+
+    /**
+     * Evaluates rules until the ones left cannot change the decision any more, whether because
+     * BLOCK has been reached or because no threshold above the current one can be. The risk score
+     * and triggered rules of the result cover only the rules that were evaluated.
+     */
+    public Result evaluate(Predicate<Rule> evaluator) {
+        return evaluate(evaluator, true);
+    }
+
+    /**
+     * Evaluates every rule, for when the full risk score is recorded rather than just acted on.
+     */
+    public Result evaluateAll(Predicate<Rule> evaluator) {
+        return evaluate(evaluator, false);
+    }
+
+    private Result evaluate(Predicate<Rule> evaluator, boolean stopEarly) {
+        List<String> triggeredRules = new ArrayList<>();
+        int riskScore = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            if (stopEarly && decide(riskScore + remainingMin[i]) == decide(riskScore + remainingMax[i])) {
+                break;
+            }
+            Rule rule = rules.get(i);
+            if (evaluator.test(rule)) {
+                riskScore += rule.scoreImpact();
+                triggeredRules.add(rule.ruleCode());
+            }
+        }
+        return new Result(decide(riskScore), riskScore, triggeredRules);
+    }
+
+    static FraudDecision decide(int riskScore) {
+        if (riskScore >= BLOCK_THRESHOLD) {
+            return FraudDecision.BLOCK;
+        } else if (riskScore >= FLAG_THRESHOLD) {
+            return FraudDecision.FLAG;
+        } else {
+            return FraudDecision.APPROVE;
+        }
+    }
+
+    /**
+     * Relative cost of evaluating a rule: amount thresholds need nothing but the request,
+     * first-seen times are held in memory, velocity and counterparty counts may be, and unusual
+     * amounts need the wallet's statistics.
+     */
+    private static int cost(RuleType ruleType) {
+        return switch (ruleType) {
+            case AMOUNT_THRESHOLD -> 0;
+            case NEW_ACCOUNT -> 1;
+            case VELOCITY, DISTINCT_COUNTERPARTIES -> 2;
+            case UNUSUAL_PATTERN -> 3;
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof FraudRuleSet ruleSet && rules.equals(ruleSet.rules);
+    }
+
+    @Override
+    public int hashCode() {
+        return rules.hashCode();
+    }
+
+    public record Rule(String ruleCode, RuleType ruleType, BigDecimal threshold, int scoreImpact,
+                       Integer timeWindowMinutes) {
+    }
+
+    public record Result(FraudDecision decision, int riskScore, List<String> triggeredRules) {
+    }
+}
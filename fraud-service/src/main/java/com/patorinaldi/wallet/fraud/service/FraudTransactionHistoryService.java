@@ -1,7 +1,11 @@
 package com.patorinaldi.wallet.fraud.service;
 
+import com.patorinaldi.wallet.common.enums.TransactionType;
 import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
 import com.patorinaldi.wallet.fraud.entity.FraudTransactionHistory;
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
@@ -12,6 +16,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
 import java.util.UUID;
 
 @Slf4j
@@ -20,6 +32,11 @@ import java.util.UUID;
 public class FraudTransactionHistoryService {
     
     private final FraudTransactionHistoryRepository fraudTransactionHistoryRepository;
+    private final VelocityWindows velocityWindows;
+    private final CounterpartyWindows counterpartyWindows;
+    private final WalletAmountStatsService amountStatsService;
+    private final WalletFirstSeenService firstSeenService;
+    private final RedisFeatureStore featureStore;
 
     @Transactional
     public void saveTransaction(TransactionCompletedEvent event) {
@@ -27,7 +44,22 @@ public class FraudTransactionHistoryService {
             log.warn("Fraud transaction history for transaction ID: {} already exists. Skipping.", event.transactionId());
             return;
         }
+        saveNewTransaction(event);
+    }
+
+    /**
+     * The transactions among {@code transactionIds} already in the history, in one query.
+     */
+    public Set<UUID> findSavedTransactionIds(Collection<UUID> transactionIds) {
+        return fraudTransactionHistoryRepository.findTransactionIdsIn(transactionIds);
+    }
 
+    /**
+     * {@link #saveTransaction} without the check for an existing row, for callers that have
+     * already checked with {@link #findSavedTransactionIds}.
+     */
+    @Transactional
+    public void saveNewTransaction(TransactionCompletedEvent event) {
         log.info("Saving fraud transaction history for transaction ID: {}", event.transactionId());
 
         FraudTransactionHistory fraudEvent = FraudTransactionHistory.builder()
@@ -37,14 +69,27 @@ public class FraudTransactionHistoryService {
                 .amount(event.amount())
                 .transactionType(event.type())
                 .currency(event.currency())
+                .relatedWalletId(event.relatedWalletId())
                 .occurredAt(event.completedAt())
                 .build();
 
+        WalletAmountStats stats = amountStatsService.record(event.walletId(), event.amount());
+        firstSeenService.record(event.walletId(), event.completedAt());
         fraudTransactionHistoryRepository.save(fraudEvent);
+        velocityWindows.record(event.walletId(), event.completedAt());
+        if (event.type() == TransactionType.TRANSFER_OUT && event.relatedWalletId() != null) {
+            counterpartyWindows.record(event.walletId(), event.relatedWalletId(), event.completedAt());
+        }
+        featureStore.record(event.walletId(), event.transactionId(), event.completedAt(), stats,
+                firstSeenService.firstSeen(event.walletId()).orElse(event.completedAt()));
         log.info("Fraud transaction history for transaction ID: {} saved successfully.", event.transactionId());
     }
 
     public Integer countTransactionsInWindow(UUID walletId, Integer minutes) {
+        OptionalInt inMemory = velocityWindows.count(walletId, minutes);
+        if (inMemory.isPresent()) {
+            return inMemory.getAsInt();
+        }
         Integer count = fraudTransactionHistoryRepository.countByWalletIdAndOccurredAtAfter(
                 walletId,
                 Instant.now().minusSeconds(minutes * 60L)
@@ -56,20 +101,105 @@ public class FraudTransactionHistoryService {
         return count;
     }
 
+    /**
+     * Distinct wallets the wallet has transferred to in the last {@code minutes}.
+     */
+    public int countDistinctCounterparties(UUID walletId, int minutes) {
+        OptionalInt inMemory = counterpartyWindows.count(walletId, minutes);
+        if (inMemory.isPresent()) {
+            return inMemory.getAsInt();
+        }
+        Integer count = fraudTransactionHistoryRepository.countDistinctRelatedWalletIds(
+                walletId, TransactionType.TRANSFER_OUT, Instant.now().minusSeconds(minutes * 60L));
+        log.debug("Counted {} counterparties for wallet ID: {} in the last {} minutes.", count, walletId, minutes);
+        return count == null ? 0 : count;
+    }
+
     public boolean isNewWallet(UUID walletId, Integer thresholdMinutes) {
-        FraudTransactionHistory firstTransaction = fraudTransactionHistoryRepository.findFirstByWalletIdOrderByOccurredAtAsc(walletId);
-        if (firstTransaction == null) {
+        Optional<Instant> firstSeen = firstSeenService.firstSeen(walletId);
+        if (firstSeen.isEmpty()) {
             log.debug("No transactions found for wallet ID: {}. Considering it as new wallet.", walletId);
             return true;
         }
         Instant thresholdTime = Instant.now().minusSeconds(thresholdMinutes * 60L);
-        boolean isNew = firstTransaction.getOccurredAt().isAfter(thresholdTime);
+        boolean isNew = firstSeen.get().isAfter(thresholdTime);
         log.debug("Wallet ID: {} is new: {}", walletId, isNew);
         return isNew;
     }
 
+    /**
+     * Batch form of {@link #countTransactionsInWindow(UUID, Integer)}: one grouped query for all
+     * wallets. Wallets without transactions in the window are absent from the map.
+     */
+    public Map<UUID, Integer> countTransactionsInWindowByWallet(Collection<UUID> walletIds, Integer minutes) {
+        Map<UUID, Integer> counts = new HashMap<>();
+        if (velocityWindows.covers(minutes)) {
+            for (UUID walletId : walletIds) {
+                int count = velocityWindows.count(walletId, minutes).orElse(0);
+                if (count > 0) {
+                    counts.put(walletId, count);
+                }
+            }
+            return counts;
+        }
+        fraudTransactionHistoryRepository.countByWalletIdInAndOccurredAtAfter(
+                walletIds, Instant.now().minusSeconds(minutes * 60L))
+                .forEach(row -> counts.put(row.getWalletId(), (int) row.getCount()));
+        return counts;
+    }
+
+    /**
+     * Batch form of {@link #isNewWallet(UUID, Integer)}: returns the wallets among
+     * {@code walletIds} that are new.
+     */
+    public Set<UUID> findNewWallets(Collection<UUID> walletIds, Integer thresholdMinutes) {
+        Instant thresholdTime = Instant.now().minusSeconds(thresholdMinutes * 60L);
+        Set<UUID> newWallets = new HashSet<>(walletIds);
+        firstSeenService.firstSeen(walletIds).forEach((walletId, firstSeen) -> {
+            if (!firstSeen.isAfter(thresholdTime)) {
+                newWallets.remove(walletId);
+            }
+        });
+        return newWallets;
+    }
+
+    /**
+     * Average transaction amount per wallet, for evaluating
+     * {@link #isUnusualAmount(UUID, BigDecimal, BigDecimal)} over a batch.
+     */
+    public Map<UUID, BigDecimal> findAverageAmounts(Collection<UUID> walletIds) {
+        return amountStatsService.averageAmounts(walletIds);
+    }
+
+    /**
+     * The wallet's history as a {@link WalletRiskProfileEvent}, with at most {@code recentLimit}
+     * transaction times from the last {@code recentWindowMinutes}.
+     */
+    public WalletRiskProfileEvent riskProfile(UUID walletId, int recentWindowMinutes, int recentLimit) {
+        Instant asOf = Instant.now();
+        List<Instant> recentActivity = recentLimit == 0 ? List.of() : fraudTransactionHistoryRepository
+                .findByWalletIdAndOccurredAtAfterOrderByOccurredAtDesc(walletId,
+                        asOf.minusSeconds(recentWindowMinutes * 60L), Limit.of(recentLimit))
+                .stream()
+                .map(FraudTransactionHistory::getOccurredAt)
+                .toList();
+
+        return WalletRiskProfileEvent.builder()
+                .walletId(walletId)
+                .firstSeenAt(firstSeenService.firstSeen(walletId).orElse(null))
+                .averageAmount(amountStatsService.averageAmount(walletId))
+                .recentActivity(recentActivity)
+                .asOf(asOf)
+                .build();
+    }
+
     public boolean isUnusualAmount(UUID walletId, BigDecimal transactionAmount, BigDecimal multiplier) {
-        BigDecimal averageAmount = fraudTransactionHistoryRepository.findAverageAmountByWalletId(walletId);
+        BigDecimal averageAmount = amountStatsService.averageAmount(walletId);
+        return isUnusualAmount(walletId, transactionAmount, averageAmount, multiplier);
+    }
+
+    public boolean isUnusualAmount(UUID walletId, BigDecimal transactionAmount, BigDecimal averageAmount,
+                                   BigDecimal multiplier) {
         if (averageAmount == null || averageAmount.compareTo(BigDecimal.ZERO) == 0) {
             log.debug("No average amount found for wallet ID: {}. Cannot determine unusual amount.", walletId);
             return false;
@@ -0,0 +1,141 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.entity.WalletAmountBucket;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountBucketRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@code fraud_transaction_history} to the rows rules still count. Rows older than the
+ * longest VELOCITY or DISTINCT_COUNTERPARTIES window, and at least {@code raw-retention-hours} old, are moved into per-wallet
+ * hourly {@link WalletAmountBucket}s; hourly buckets older than {@code hourly-retention-days} are
+ * merged into daily ones. Amount aggregates read rows and buckets together, and first-seen times
+ * of compacted wallets are kept in {@code wallet_first_seen}.
+ *
+ * <p>Each run moves one hour of rows, or one day of hourly buckets, per transaction, oldest first,
+ * until it reaches the cutoff. Enable with {@code fraud.history.compaction.enabled=true}.
+ */
+@Slf4j
+@Component
+public class HistoryCompactor {
+
+    private final FraudTransactionHistoryRepository historyRepository;
+    private final WalletAmountBucketRepository bucketRepository;
+    private final FraudRuleRegistry ruleRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final Duration rawRetention;
+    private final Duration hourlyRetention;
+    private final Counter hourlyBuckets;
+    private final Counter dailyBuckets;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("fraud-history-compaction").daemon().factory());
+
+    public HistoryCompactor(
+            FraudTransactionHistoryRepository historyRepository,
+            WalletAmountBucketRepository bucketRepository,
+            FraudRuleRegistry ruleRegistry,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.history.compaction.enabled:false}") boolean enabled,
+            @Value("${fraud.history.compaction.interval-ms:3600000}") long intervalMs,
+            @Value("${fraud.history.compaction.raw-retention-hours:24}") int rawRetentionHours,
+            @Value("${fraud.history.compaction.hourly-retention-days:30}") int hourlyRetentionDays) {
+        this.historyRepository = historyRepository;
+        this.bucketRepository = bucketRepository;
+        this.ruleRegistry = ruleRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.rawRetention = Duration.ofHours(rawRetentionHours);
+        this.hourlyRetention = Duration.ofDays(hourlyRetentionDays);
+        this.hourlyBuckets = meterRegistry.counter("fraud.history.buckets", "granularity", "hour");
+        this.dailyBuckets = meterRegistry.counter("fraud.history.buckets", "granularity", "day");
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::compactSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Rolls up everything past the cutoffs as of {@code now}.
+     */
+    public void compact(Instant now) {
+        Instant rawCutoff = now.minus(rawRetention()).truncatedTo(ChronoUnit.HOURS);
+        int hours = 0;
+        for (Instant oldest = historyRepository.findOldestOccurredAt();
+             oldest != null && oldest.isBefore(rawCutoff);
+             oldest = historyRepository.findOldestOccurredAt()) {
+            Instant start = oldest.truncatedTo(ChronoUnit.HOURS);
+            Integer written = transactionTemplate.execute(status ->
+                    bucketRepository.rollUpHistory(start, start.plus(1, ChronoUnit.HOURS)));
+            hourlyBuckets.increment(written == null ? 0 : written);
+            hours++;
+        }
+
+        Instant hourlyCutoff = now.minus(hourlyRetention).truncatedTo(ChronoUnit.DAYS);
+        int days = 0;
+        for (Instant oldest = bucketRepository.findOldestBucketStart(WalletAmountBucket.Granularity.HOUR);
+             oldest != null && oldest.isBefore(hourlyCutoff);
+             oldest = bucketRepository.findOldestBucketStart(WalletAmountBucket.Granularity.HOUR)) {
+            Instant start = oldest.truncatedTo(ChronoUnit.DAYS);
+            Integer written = transactionTemplate.execute(status ->
+                    bucketRepository.rollUpHourlyBuckets(start, start.plus(1, ChronoUnit.DAYS)));
+            dailyBuckets.increment(written == null ? 0 : written);
+            days++;
+        }
+
+        if (hours > 0 || days > 0) {
+            log.info("Compacted {} hours of history before {} and {} days of hourly buckets before {}",
+                    hours, rawCutoff, days, hourlyCutoff);
+        }
+    }
+
+    /**
+     * Raw rows are kept for the longest VELOCITY or DISTINCT_COUNTERPARTIES window, which count
+     * them, and risk profiles, which list them, but never for less than {@code raw-retention-hours}.
+     */
+    Duration rawRetention() {
+        int longestWindow = ruleRegistry.current().rules().stream()
+                .filter(rule -> rule.ruleType() == RuleType.VELOCITY
+                        || rule.ruleType() == RuleType.DISTINCT_COUNTERPARTIES)
+                .mapToInt(FraudRuleSet.Rule::timeWindowMinutes)
+                .max()
+                .orElse(0);
+        Duration window = Duration.ofMinutes(longestWindow);
+        return window.compareTo(rawRetention) > 0 ? window : rawRetention;
+    }
+
+    private void compactSafely() {
+        try {
+            compact(Instant.now());
+        } catch (RuntimeException e) {
+            log.error("Failed to compact fraud transaction history", e);
+        }
+    }
+}
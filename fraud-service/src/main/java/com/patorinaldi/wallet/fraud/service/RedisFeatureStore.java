@@ -0,0 +1,311 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wallet features kept in Redis, so every fraud-service replica reads the same velocity counts,
+ * amount statistics and first-seen times instead of its own in-process copy.
+ *
+ * <p>Each wallet has three keys sharing a hash tag, so they live in one cluster slot:
+ * <ul>
+ *   <li>{@code fraud:{wallet}:velocity}, a sorted set of transaction ids scored by time, trimmed
+ *   to {@code horizon-minutes}. Ids make recording idempotent under redelivery.</li>
+ *   <li>{@code fraud:{wallet}:amounts}, a hash copying the wallet's {@link WalletAmountStats},
+ *   only ever replaced by one with a higher count.</li>
+ *   <li>{@code fraud:{wallet}:first-seen}, epoch millis, only ever moved earlier.</li>
+ *   <li>{@code fraud:{wallet}:gap}, epoch millis of the last failed write, expiring after
+ *   {@code horizon-minutes}.</li>
+ * </ul>
+ * A transaction is recorded with one script call. A fetch sends every read for a wallet, or for a
+ * batch of wallets, without waiting for the replies in between, so it costs one round trip.
+ *
+ * <p>Velocity windows reaching back before the store started recording are not answered, and
+ * wallets not recorded since then have no statistics or first-seen time; callers fall back to the
+ * database for those. Failures are logged and counted, never thrown. A failed write may have lost
+ * a transaction, so the wallet's windows reaching back to it are not answered either until it
+ * leaves the horizon: the failure is noted locally and, if Redis takes it, in the wallet's gap
+ * key for the other replicas. Its statistics catch up with its next transaction. A failed fetch
+ * falls back. Enable with {@code fraud.features.redis.enabled=true}.
+ */
+@Slf4j
+@Component
+public class RedisFeatureStore {
+
+    static final String SINCE_KEY = "fraud:features:since";
+
+    private static final RedisScript<Long> RECORD = RedisScript.of("""
+            redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[3])
+            redis.call('PEXPIRE', KEYS[1], ARGV[4])
+            local stored = tonumber(redis.call('HGET', KEYS[2], 'count') or '0')
+            if tonumber(ARGV[5]) > stored then
+              redis.call('HSET', KEYS[2], 'count', ARGV[5], 'mean', ARGV[6], 'm2', ARGV[7], 'ewma', ARGV[8])
+            end
+            local seen = redis.call('GET', KEYS[3])
+            if not seen or tonumber(ARGV[9]) < tonumber(seen) then
+              redis.call('SET', KEYS[3], ARGV[9])
+            end
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> RECORD_FIRST_SEEN = RedisScript.of("""
+            local seen = redis.call('GET', KEYS[1])
+            if not seen or tonumber(ARGV[1]) < tonumber(seen) then
+              redis.call('SET', KEYS[1], ARGV[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final ReactiveStringRedisTemplate redis;
+    private final boolean enabled;
+    private final long horizonMillis;
+    private final Duration timeout;
+    private final Timer fetchTimer;
+    private final Counter writeErrors;
+    private final Counter fetchErrors;
+    // wallets whose last failed write is still within the horizon, to when it failed
+    private final Map<UUID, Long> gaps = new ConcurrentHashMap<>();
+    private volatile Long since;
+
+    public RedisFeatureStore(
+            ReactiveStringRedisTemplate redis,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.features.redis.enabled:false}") boolean enabled,
+            @Value("${fraud.features.redis.horizon-minutes:60}") int horizonMinutes,
+            @Value("${fraud.features.redis.timeout-ms:50}") long timeoutMs) {
+        this.redis = redis;
+        this.enabled = enabled;
+        this.horizonMillis = horizonMinutes * 60_000L;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.fetchTimer = meterRegistry.timer("fraud.features.redis.fetch");
+        this.writeErrors = meterRegistry.counter("fraud.features.redis.errors", "operation", "write");
+        this.fetchErrors = meterRegistry.counter("fraud.features.redis.errors", "operation", "fetch");
+    }
+
+    /**
+     * Notes when recording started, unless another replica already has; velocity windows are
+     * only answered from then on.
+     */
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            since();
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a transaction, the wallet's statistics after it and its first-seen time.
+     */
+    public void record(UUID walletId, UUID transactionId, Instant occurredAt, WalletAmountStats stats,
+                       Instant firstSeen) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            redis.execute(RECORD,
+                    List.of(key(walletId, "velocity"), key(walletId, "amounts"), key(walletId, "first-seen")),
+                    List.of(String.valueOf(occurredAt.toEpochMilli()), transactionId.toString(),
+                            String.valueOf(now - horizonMillis), String.valueOf(horizonMillis),
+                            String.valueOf(stats.getCount()), String.valueOf(stats.getMean()),
+                            String.valueOf(stats.getM2()), String.valueOf(stats.getEwma()),
+                            String.valueOf(firstSeen.toEpochMilli())))
+                    .then()
+                    .block(timeout);
+        } catch (RuntimeException e) {
+            writeErrors.increment();
+            log.warn("Failed to record features of wallet {} in Redis: {}", walletId, e.getMessage());
+            markGap(walletId, now);
+        }
+    }
+
+    /**
+     * Stops windows of the wallet reaching back to {@code failedAt} from being answered, here
+     * and, if Redis takes the write, on every replica.
+     */
+    private void markGap(UUID walletId, long failedAt) {
+        gaps.merge(walletId, failedAt, Math::max);
+        try {
+            redis.opsForValue()
+                    .set(key(walletId, "gap"), String.valueOf(failedAt), Duration.ofMillis(horizonMillis))
+                    .block(timeout);
+        } catch (RuntimeException e) {
+            log.debug("Failed to mark gap of wallet {} in Redis: {}", walletId, e.getMessage());
+        }
+    }
+
+    public void recordFirstSeen(UUID walletId, Instant firstSeen) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            redis.execute(RECORD_FIRST_SEEN, List.of(key(walletId, "first-seen")),
+                            List.of(String.valueOf(firstSeen.toEpochMilli())))
+                    .then()
+                    .block(timeout);
+        } catch (RuntimeException e) {
+            writeErrors.increment();
+            log.warn("Failed to record first-seen time of wallet {} in Redis: {}", walletId, e.getMessage());
+        }
+    }
+
+    /**
+     * The wallet's features with its counts for each of {@code windowMinutes}, or empty if the
+     * store is disabled or unreachable.
+     */
+    public Optional<WalletFeatures> fetch(UUID walletId, Collection<Integer> windowMinutes) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long started = System.nanoTime();
+        try {
+            return Optional.ofNullable(fetch(walletId, windowMinutes, System.currentTimeMillis(), since()).block(timeout));
+        } catch (RuntimeException e) {
+            fetchErrors.increment();
+            log.warn("Failed to fetch features of wallet {} from Redis: {}", walletId, e.getMessage());
+            return Optional.empty();
+        } finally {
+            fetchTimer.record(Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Batch form of {@link #fetch(UUID, Collection)}, all wallets in one round trip. Empty if the
+     * store is disabled or unreachable.
+     */
+    public Map<UUID, WalletFeatures> fetch(Collection<UUID> walletIds, Collection<Integer> windowMinutes) {
+        if (!enabled || walletIds.isEmpty()) {
+            return Map.of();
+        }
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Long recordingSince = since();
+        try {
+            Map<UUID, WalletFeatures> features = Flux.fromIterable(walletIds)
+                    .flatMap(walletId -> fetch(walletId, windowMinutes, now, recordingSince)
+                                    .map(found -> Map.entry(walletId, found)),
+                            Math.max(walletIds.size(), 1))
+                    .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                    .block(timeout);
+            return features == null ? Map.of() : features;
+        } catch (RuntimeException e) {
+            fetchErrors.increment();
+            log.warn("Failed to fetch features of {} wallets from Redis: {}", walletIds.size(), e.getMessage());
+            return Map.of();
+        } finally {
+            fetchTimer.record(Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    private Mono<WalletFeatures> fetch(UUID walletId, Collection<Integer> windowMinutes, long now, Long recordingSince) {
+        String velocityKey = key(walletId, "velocity");
+        long localGap = gap(walletId, now);
+        Mono<Long> sharedGap = redis.opsForValue()
+                .get(key(walletId, "gap"))
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L);
+        Mono<Map<Integer, Integer>> counts = Flux.fromIterable(windowMinutes)
+                .filter(minutes -> covers(minutes, now, recordingSince))
+                .flatMap(minutes -> redis.opsForZSet()
+                        .count(velocityKey, Range.rightUnbounded(Range.Bound.exclusive((double) (now - minutes * 60_000L))))
+                        .map(count -> Map.entry(minutes, count.intValue())))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+        Mono<Optional<BigDecimal>> average = redis.<String, String>opsForHash()
+                .get(key(walletId, "amounts"), "mean")
+                .map(mean -> Optional.of(BigDecimal.valueOf(Double.parseDouble(mean))))
+                .defaultIfEmpty(Optional.empty());
+        Mono<Optional<Instant>> firstSeen = redis.opsForValue()
+                .get(key(walletId, "first-seen"))
+                .map(millis -> Optional.of(Instant.ofEpochMilli(Long.parseLong(millis))))
+                .defaultIfEmpty(Optional.empty());
+        return Mono.zip(counts, firstSeen, average, sharedGap)
+                .map(features -> new WalletFeatures(
+                        afterGap(features.getT1(), now, Math.max(localGap, features.getT4())),
+                        features.getT2().orElse(null), features.getT3().orElse(null)));
+    }
+
+    private long gap(UUID walletId, long now) {
+        Long failedAt = gaps.get(walletId);
+        if (failedAt == null) {
+            return 0;
+        }
+        if (failedAt < now - horizonMillis) {
+            gaps.remove(walletId, failedAt);
+            return 0;
+        }
+        return failedAt;
+    }
+
+    /**
+     * Drops the counts of windows starting at or before a failed write, which may have missed it.
+     */
+    private static Map<Integer, Integer> afterGap(Map<Integer, Integer> counts, long now, long gap) {
+        if (gap == 0) {
+            return counts;
+        }
+        Map<Integer, Integer> complete = new HashMap<>(counts);
+        complete.keySet().removeIf(minutes -> now - minutes * 60_000L <= gap);
+        return complete;
+    }
+
+    private boolean covers(int windowMinutes, long now, Long recordingSince) {
+        long windowMillis = windowMinutes * 60_000L;
+        return windowMillis <= horizonMillis && recordingSince != null && now - windowMillis >= recordingSince;
+    }
+
+    /**
+     * When the store started recording, shared by all replicas; {@code null} until Redis has
+     * been reached once.
+     */
+    private Long since() {
+        Long recordingSince = since;
+        if (recordingSince != null) {
+            return recordingSince;
+        }
+        try {
+            String stored = redis.opsForValue()
+                    .setIfAbsent(SINCE_KEY, String.valueOf(System.currentTimeMillis()))
+                    .then(redis.opsForValue().get(SINCE_KEY))
+                    .block(timeout);
+            if (stored != null) {
+                since = Long.parseLong(stored);
+                log.info("Redis feature store recording since {}", Instant.ofEpochMilli(since));
+            }
+            return since;
+        } catch (RuntimeException e) {
+            log.warn("Redis feature store not reachable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    static String key(UUID walletId, String feature) {
+        return "fraud:{" + walletId + "}:" + feature;
+    }
+}
@@ -0,0 +1,119 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes what transaction-service needs to pre-decide fraud checks locally: a snapshot of the
+ * active rules every {@code interval-ms}, and a wallet's risk profile after each transaction it
+ * makes. Both go through the outbox. Enable with {@code fraud.feed.enabled=true}.
+ */
+@Slf4j
+@Component
+public class RiskFeedPublisher {
+
+    private final FraudRuleRegistry ruleRegistry;
+    private final FraudTransactionHistoryService historyService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long intervalMs;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("fraud-rules-publisher").daemon().factory());
+
+    public RiskFeedPublisher(
+            FraudRuleRegistry ruleRegistry,
+            FraudTransactionHistoryService historyService,
+            ApplicationEventPublisher eventPublisher,
+            TransactionTemplate transactionTemplate,
+            @Value("${fraud.feed.enabled:false}") boolean enabled,
+            @Value("${fraud.feed.rules-interval-ms:30000}") long intervalMs) {
+        this.ruleRegistry = ruleRegistry;
+        this.historyService = historyService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Starts once the application is ready, so the first snapshot includes seeded rules.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler.scheduleAtFixedRate(this::publishRulesSafely, 0, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Publishing fraud rules every {}ms", intervalMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public void publishRules() {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<FraudRulesPublishedEvent.Rule> rules = ruleRegistry.current().rules().stream()
+                    .map(rule -> new FraudRulesPublishedEvent.Rule(
+                            rule.ruleCode(),
+                            rule.ruleType().name(),
+                            rule.threshold(),
+                            rule.scoreImpact(),
+                            rule.timeWindowMinutes()))
+                    .toList();
+
+            eventPublisher.publishEvent(FraudRulesPublishedEvent.builder()
+                    .eventId(UUID.randomUUID())
+                    .rules(rules)
+                    .flagThreshold(FraudRuleSet.FLAG_THRESHOLD)
+                    .blockThreshold(FraudRuleSet.BLOCK_THRESHOLD)
+                    .publishedAt(Instant.now())
+                    .build());
+        });
+    }
+
+    /**
+     * Publishes the wallet's risk profile as part of the caller's transaction, keeping enough
+     * recent activity to evaluate every active velocity rule exactly.
+     */
+    public void publishProfile(UUID walletId, FraudRuleSet ruleSet) {
+        if (!enabled) {
+            return;
+        }
+        int windowMinutes = 0;
+        int recentLimit = 0;
+        for (FraudRuleSet.Rule rule : ruleSet.rules()) {
+            if (rule.ruleType() == RuleType.VELOCITY) {
+                windowMinutes = Math.max(windowMinutes, rule.timeWindowMinutes());
+                recentLimit = Math.max(recentLimit, rule.threshold().intValue() + 1);
+            }
+        }
+        eventPublisher.publishEvent(historyService.riskProfile(walletId, windowMinutes, recentLimit));
+    }
+
+    private void publishRulesSafely() {
+        try {
+            publishRules();
+        } catch (RuntimeException e) {
+            log.error("Failed to publish fraud rules", e);
+        }
+    }
+}
@@ -2,108 +2,161 @@ package com.patorinaldi.wallet.fraud.service;
 
 import com.patorinaldi.wallet.fraud.dto.FraudCheckRequest;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckResponse;
-import com.patorinaldi.wallet.fraud.entity.FraudDecision;
-import com.patorinaldi.wallet.fraud.entity.FraudRule;
-import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SyncFraudCheckService {
 
-    private final FraudRuleRepository fraudRuleRepository;
+    private final FraudRuleRegistry ruleRegistry;
     private final FraudTransactionHistoryService historyService;
-
-    private static final int FLAG_THRESHOLD = 50;
-    private static final int BLOCK_THRESHOLD = 80;
+    private final RedisFeatureStore featureStore;
 
     @Transactional(readOnly = true)
     public FraudCheckResponse checkTransaction(FraudCheckRequest request) {
         log.info("Performing sync fraud check for wallet: {}, amount: {}, type: {}",
                 request.walletId(), request.amount(), request.transactionType());
 
-        List<String> triggeredRules = new ArrayList<>();
-        int riskScore = 0;
+        FraudRuleSet ruleSet = ruleRegistry.current();
+        WalletFeatureLookup features = new WalletFeatureLookup(historyService, featureStore, request.walletId(),
+                ruleSet.velocityWindows());
+        return evaluate(request, ruleSet, rule -> evaluateRule(rule, request, features));
+    }
+
+    /**
+     * Checks a batch of transactions with one grouped history query per rule, or one feature
+     * store fetch, shared by every transaction in the batch. Results are in request order.
+     */
+    @Transactional(readOnly = true)
+    public List<FraudCheckResponse> checkTransactions(List<FraudCheckRequest> requests) {
+        log.info("Performing sync fraud check for batch of {} transactions", requests.size());
 
-        List<FraudRule> activeRules = fraudRuleRepository.findByActiveTrue();
+        FraudRuleSet ruleSet = ruleRegistry.current();
+        BatchHistory history = new BatchHistory(requests.stream().map(FraudCheckRequest::walletId).collect(Collectors.toSet()),
+                ruleSet.velocityWindows());
 
-        for (FraudRule rule : activeRules) {
-            boolean triggered = evaluateRule(rule, request);
+        List<FraudCheckResponse> responses = new ArrayList<>(requests.size());
+        for (FraudCheckRequest request : requests) {
+            responses.add(evaluate(request, ruleSet, rule -> history.evaluateRule(rule, request)));
+        }
+        return responses;
+    }
 
+    private FraudCheckResponse evaluate(FraudCheckRequest request, FraudRuleSet ruleSet,
+                                        Predicate<FraudRuleSet.Rule> evaluator) {
+        FraudRuleSet.Result result = ruleSet.evaluate(rule -> {
+            boolean triggered = evaluator.test(rule);
             if (triggered) {
-                riskScore += rule.getScoreImpact();
-                triggeredRules.add(rule.getRuleCode());
                 log.info("Rule {} triggered for sync check (wallet: {}). Score impact: +{}",
-                        rule.getRuleCode(), request.walletId(), rule.getScoreImpact());
+                        rule.ruleCode(), request.walletId(), rule.scoreImpact());
             }
-        }
-
-        FraudDecision decision = determineDecision(riskScore);
+            return triggered;
+        });
 
-        log.info("Sync fraud check completed for wallet: {}. Decision: {}, Risk Score: {}, Triggered Rules: {}",
-                request.walletId(), decision, riskScore, triggeredRules);
+        log.info("Sync fraud check {} completed for wallet: {}. Decision: {}, Risk Score: {}, Triggered Rules: {}",
+                request.checkId(), request.walletId(), result.decision(), result.riskScore(), result.triggeredRules());
 
-        return buildResponse(decision, riskScore, triggeredRules);
-    }
-
-    private FraudDecision determineDecision(int riskScore) {
-        if (riskScore >= BLOCK_THRESHOLD) {
-            return FraudDecision.BLOCK;
-        } else if (riskScore >= FLAG_THRESHOLD) {
-            return FraudDecision.FLAG;
-        } else {
-            return FraudDecision.APPROVE;
-        }
+        return buildResponse(result);
     }
 
-    private FraudCheckResponse buildResponse(FraudDecision decision, int riskScore, List<String> triggeredRules) {
-        return switch (decision) {
-            case APPROVE -> FraudCheckResponse.approve(riskScore, triggeredRules);
-            case FLAG -> FraudCheckResponse.flag(riskScore, triggeredRules);
-            case BLOCK -> FraudCheckResponse.block(riskScore, triggeredRules);
+    private FraudCheckResponse buildResponse(FraudRuleSet.Result result) {
+        return switch (result.decision()) {
+            case APPROVE -> FraudCheckResponse.approve(result.riskScore(), result.triggeredRules());
+            case FLAG -> FraudCheckResponse.flag(result.riskScore(), result.triggeredRules());
+            case BLOCK -> FraudCheckResponse.block(result.riskScore(), result.triggeredRules());
         };
     }
 
-    private boolean evaluateRule(FraudRule rule, FraudCheckRequest request) {
-        return switch (rule.getRuleType()) {
+    private boolean evaluateRule(FraudRuleSet.Rule rule, FraudCheckRequest request, WalletFeatureLookup features) {
+        return switch (rule.ruleType()) {
             case AMOUNT_THRESHOLD -> evaluateAmountThreshold(rule, request);
-            case VELOCITY -> evaluateVelocity(rule, request);
-            case NEW_ACCOUNT -> evaluateNewAccount(rule, request);
-            case UNUSUAL_PATTERN -> evaluateUnusualPattern(rule, request);
+            case VELOCITY -> evaluateVelocity(rule, features);
+            case NEW_ACCOUNT -> evaluateNewAccount(rule, features);
+            case UNUSUAL_PATTERN -> evaluateUnusualPattern(rule, request, features);
+            case DISTINCT_COUNTERPARTIES -> evaluateDistinctCounterparties(rule, features);
         };
     }
 
-    private boolean evaluateAmountThreshold(FraudRule rule, FraudCheckRequest request) {
-        return request.amount().compareTo(rule.getThreshold()) > 0;
+    private boolean evaluateAmountThreshold(FraudRuleSet.Rule rule, FraudCheckRequest request) {
+        return request.amount().compareTo(rule.threshold()) > 0;
     }
 
-    private boolean evaluateVelocity(FraudRule rule, FraudCheckRequest request) {
-        Integer count = historyService.countTransactionsInWindow(
-                request.walletId(),
-                rule.getTimeWindowMinutes()
-        );
-        return count > rule.getThreshold().intValue();
+    private boolean evaluateVelocity(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        int count = features.countTransactionsInWindow(rule.timeWindowMinutes());
+        return count > rule.threshold().intValue();
     }
 
-    private boolean evaluateNewAccount(FraudRule rule, FraudCheckRequest request) {
-        return historyService.isNewWallet(
-                request.walletId(),
-                rule.getTimeWindowMinutes()
-        );
+    private boolean evaluateDistinctCounterparties(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        int count = features.countDistinctCounterparties(rule.timeWindowMinutes());
+        return count > rule.threshold().intValue();
     }
 
-    private boolean evaluateUnusualPattern(FraudRule rule, FraudCheckRequest request) {
-        return historyService.isUnusualAmount(
-                request.walletId(),
-                request.amount(),
-                rule.getThreshold()
-        );
+    private boolean evaluateNewAccount(FraudRuleSet.Rule rule, WalletFeatureLookup features) {
+        return features.isNewWallet(rule.timeWindowMinutes());
+    }
+
+    private boolean evaluateUnusualPattern(FraudRuleSet.Rule rule, FraudCheckRequest request,
+                                           WalletFeatureLookup features) {
+        return features.isUnusualAmount(request.amount(), rule.threshold());
+    }
+
+    /**
+     * History features for the wallets of one batch: fetched from the feature store together up
+     * front when it is enabled, otherwise each loaded with a single grouped query the first time a
+     * rule needs it.
+     */
+    private final class BatchHistory {
+
+        private final Set<UUID> walletIds;
+        private final Map<UUID, WalletFeatures> prefetched;
+        private final Map<Integer, Map<UUID, Integer>> velocityCounts = new HashMap<>();
+        private final Map<Integer, Set<UUID>> newWallets = new HashMap<>();
+        private Map<UUID, BigDecimal> averageAmounts;
+
+        private BatchHistory(Set<UUID> walletIds, List<Integer> velocityWindows) {
+            this.walletIds = walletIds;
+            this.prefetched = featureStore.enabled() ? featureStore.fetch(walletIds, velocityWindows) : Map.of();
+        }
+
+        private boolean evaluateRule(FraudRuleSet.Rule rule, FraudCheckRequest request) {
+            if (!prefetched.isEmpty()) {
+                return SyncFraudCheckService.this.evaluateRule(rule, request,
+                        new WalletFeatureLookup(historyService, request.walletId(), prefetched.get(request.walletId())));
+            }
+            return switch (rule.ruleType()) {
+                case AMOUNT_THRESHOLD -> evaluateAmountThreshold(rule, request);
+                case VELOCITY -> velocityCounts
+                        .computeIfAbsent(rule.timeWindowMinutes(), minutes -> historyService.countTransactionsInWindowByWallet(walletIds, minutes))
+                        .getOrDefault(request.walletId(), 0) > rule.threshold().intValue();
+                case NEW_ACCOUNT -> newWallets
+                        .computeIfAbsent(rule.timeWindowMinutes(), minutes -> historyService.findNewWallets(walletIds, minutes))
+                        .contains(request.walletId());
+                case UNUSUAL_PATTERN -> historyService.isUnusualAmount(request.walletId(), request.amount(),
+                        averageAmounts().get(request.walletId()), rule.threshold());
+                case DISTINCT_COUNTERPARTIES -> historyService.countDistinctCounterparties(
+                        request.walletId(), rule.timeWindowMinutes()) > rule.threshold().intValue();
+            };
+        }
+
+        private Map<UUID, BigDecimal> averageAmounts() {
+            if (averageAmounts == null) {
+                averageAmounts = historyService.findAverageAmounts(walletIds);
+            }
+            return averageAmounts;
+        }
     }
 }
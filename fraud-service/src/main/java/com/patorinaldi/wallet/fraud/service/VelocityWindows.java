@@ -0,0 +1,245 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-wallet transaction counts over the last {@code fraud.velocity.horizon-minutes}, kept in
+ * memory so VELOCITY rules need no range count against {@code fraud_transaction_history}.
+ *
+ * <p>Each wallet has a ring of {@code bucket-seconds} buckets, each slot one {@code long}
+ * packing the bucket number with its count. Any window up to the horizon is answered by
+ * summing the buckets it touches; the oldest of those may reach up to one bucket past the
+ * window, so counts err on the high side by at most the transactions of that bucket. Windows
+ * longer than the horizon are not answered and go to the table.
+ *
+ * <p>The rings are rebuilt from the table before the application starts serving and then fed by
+ * {@link FraudTransactionHistoryService#saveTransaction}. Only transactions recorded by this
+ * instance are seen, so enable it only where a single instance handles both the
+ * {@code transaction-completed} topic and the sync checks.
+ *
+ * <p>A count is taken as soon as it is recorded, so the analysis right after and later events of
+ * the same batch see it, and taken back if the surrounding transaction rolls back, so an event
+ * retried after a failed batch is counted once.
+ */
+@Slf4j
+@Component
+public class VelocityWindows {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * Object header, array reference and newest-bucket field of a ring, plus its map entry and
+     * UUID key.
+     */
+    private static final long WALLET_OVERHEAD_BYTES = 24 + 32 + 32;
+
+    private final FraudTransactionHistoryRepository historyRepository;
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int horizonBuckets;
+
+    private final Map<UUID, Ring> rings = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("velocity-window-sweeper").daemon().factory());
+    private final Timer hydrationTimer;
+    private volatile boolean ready;
+
+    public VelocityWindows(
+            FraudTransactionHistoryRepository historyRepository,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.velocity.in-memory:false}") boolean enabled,
+            @Value("${fraud.velocity.horizon-minutes:60}") int horizonMinutes,
+            @Value("${fraud.velocity.bucket-seconds:60}") int bucketSeconds) {
+        this.historyRepository = historyRepository;
+        this.enabled = enabled;
+        this.bucketMillis = bucketSeconds * 1000L;
+        this.horizonBuckets = (int) Math.ceil(horizonMinutes * 60_000.0 / bucketMillis);
+        this.hydrationTimer = meterRegistry.timer("fraud.velocity.hydration");
+        meterRegistry.gaugeMapSize("fraud.velocity.wallets", List.of(), rings);
+        meterRegistry.gauge("fraud.velocity.bytes", List.of(), rings,
+                walletRings -> walletRings.size() * (double) bytesPerWallet());
+    }
+
+    @PostConstruct
+    public void hydrate() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        Instant now = Instant.now();
+        List<FraudTransactionHistoryRepository.WalletOccurrence> occurrences =
+                historyRepository.findOccurrencesAfter(now.minusMillis(horizonBuckets * bucketMillis));
+        for (FraudTransactionHistoryRepository.WalletOccurrence occurrence : occurrences) {
+            record(occurrence.getWalletId(), occurrence.getOccurredAt(), now);
+        }
+        ready = true;
+        long elapsed = System.nanoTime() - started;
+        hydrationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+
+        long periodMs = Math.max(horizonBuckets * bucketMillis / 4, 1_000);
+        sweeper.scheduleAtFixedRate(this::evictIdle, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        log.info("Velocity windows loaded {} transactions for {} wallets in {}ms, about {} bytes per wallet",
+                occurrences.size(), rings.size(), elapsed / 1_000_000, bytesPerWallet());
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public void record(UUID walletId, Instant occurredAt) {
+        if (!enabled || !record(walletId, occurredAt, Instant.now())
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    unrecord(walletId, occurredAt);
+                }
+            }
+        });
+    }
+
+    /**
+     * Transactions of the wallet in the last {@code windowMinutes}, or empty if the window is
+     * longer than the horizon or the windows are not loaded yet.
+     */
+    public OptionalInt count(UUID walletId, int windowMinutes) {
+        return count(walletId, windowMinutes, Instant.now());
+    }
+
+    OptionalInt count(UUID walletId, int windowMinutes, Instant now) {
+        if (!covers(windowMinutes)) {
+            return OptionalInt.empty();
+        }
+        Ring ring = rings.get(walletId);
+        long fromBucket = (now.toEpochMilli() - windowMinutes * 60_000L) / bucketMillis;
+        return OptionalInt.of(ring == null ? 0 : ring.countFrom(fromBucket));
+    }
+
+    /**
+     * Whether windows of {@code windowMinutes} are answered from memory.
+     */
+    public boolean covers(int windowMinutes) {
+        return ready && windowMinutes * 60_000L <= horizonBuckets * bucketMillis;
+    }
+
+    /**
+     * Approximate heap held per tracked wallet.
+     */
+    public long bytesPerWallet() {
+        long slots = 16 + 8L * (horizonBuckets + 1);
+        return WALLET_OVERHEAD_BYTES + (slots + 7) / 8 * 8;
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    void evictIdle() {
+        evictIdle(Instant.now());
+    }
+
+    void evictIdle(Instant now) {
+        long oldest = now.toEpochMilli() / bucketMillis - horizonBuckets;
+        for (UUID walletId : rings.keySet()) {
+            rings.computeIfPresent(walletId, (id, ring) -> ring.newest < oldest ? null : ring);
+        }
+    }
+
+    /**
+     * Counts the transaction, returning whether it was; one already past the horizon is not.
+     */
+    boolean record(UUID walletId, Instant occurredAt, Instant now) {
+        long bucket = occurredAt.toEpochMilli() / bucketMillis;
+        if (bucket < now.toEpochMilli() / bucketMillis - horizonBuckets) {
+            return false;
+        }
+        boolean[] counted = new boolean[1];
+        // compute, not computeIfAbsent + add, so an eviction cannot drop the ring mid-update
+        rings.compute(walletId, (id, ring) -> {
+            Ring target = ring == null ? new Ring(horizonBuckets + 1) : ring;
+            counted[0] = target.add(bucket);
+            return target;
+        });
+        return counted[0];
+    }
+
+    void unrecord(UUID walletId, Instant occurredAt) {
+        Ring ring = rings.get(walletId);
+        if (ring != null) {
+            ring.remove(occurredAt.toEpochMilli() / bucketMillis);
+        }
+    }
+
+    private static final class Ring {
+
+        private final long[] slots;
+        private volatile long newest;
+
+        private Ring(int size) {
+            this.slots = new long[size];
+        }
+
+        private synchronized boolean add(long bucket) {
+            int index = (int) Math.floorMod(bucket, (long) slots.length);
+            long slot = slots[index];
+            long slotBucket = slot >>> COUNT_BITS;
+            boolean counted = true;
+            if (slotBucket == bucket) {
+                counted = (slot & COUNT_MASK) < COUNT_MASK;
+                if (counted) {
+                    slots[index] = slot + 1;
+                }
+            } else if (slotBucket < bucket) {
+                slots[index] = bucket << COUNT_BITS | 1;
+            } else {
+                // the slot already holds a newer bucket; this one has left the horizon
+                return false;
+            }
+            newest = Math.max(newest, bucket);
+            return counted;
+        }
+
+        private synchronized void remove(long bucket) {
+            int index = (int) Math.floorMod(bucket, (long) slots.length);
+            long slot = slots[index];
+            // once the slot holds a newer bucket the count has already left the horizon
+            if (slot >>> COUNT_BITS == bucket && (slot & COUNT_MASK) > 0) {
+                slots[index] = slot - 1;
+            }
+        }
+
+        private synchronized int countFrom(long fromBucket) {
+            int count = 0;
+            for (long slot : slots) {
+                if (slot >>> COUNT_BITS >= fromBucket) {
+                    count += (int) (slot & COUNT_MASK);
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps {@link WalletAmountStats} current as transactions are recorded, so amount features are a
+ * primary-key lookup instead of an aggregate over the wallet's whole history.
+ *
+ * <p>A wallet seen for the first time is seeded from its existing history in one aggregate query;
+ * its EWMA starts at the historical mean. Wallets that have not transacted since the statistics
+ * were introduced are answered with the old {@code AVG} query until they do.
+ */
+@Slf4j
+@Service
+public class WalletAmountStatsService {
+
+    private final WalletAmountStatsRepository statsRepository;
+    private final FraudTransactionHistoryRepository historyRepository;
+    private final double ewmaAlpha;
+
+    public WalletAmountStatsService(
+            WalletAmountStatsRepository statsRepository,
+            FraudTransactionHistoryRepository historyRepository,
+            @Value("${fraud.amount-stats.ewma-alpha:0.1}") double ewmaAlpha) {
+        this.statsRepository = statsRepository;
+        this.historyRepository = historyRepository;
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    /**
+     * Adds a transaction to the wallet's statistics, within the caller's transaction. Call it
+     * before the transaction's history row is saved, so seeding does not count it twice.
+     *
+     * @return the statistics including the transaction
+     */
+    public WalletAmountStats record(UUID walletId, BigDecimal amount) {
+        WalletAmountStats stats = statsRepository.findById(walletId).orElseGet(() -> seed(walletId));
+        stats.add(amount, ewmaAlpha);
+        return statsRepository.save(stats);
+    }
+
+    public Optional<WalletAmountStats> find(UUID walletId) {
+        return statsRepository.findById(walletId);
+    }
+
+    /**
+     * Mean transaction amount of the wallet, or {@code null} if it has none.
+     */
+    public BigDecimal averageAmount(UUID walletId) {
+        return statsRepository.findById(walletId)
+                .map(WalletAmountStats::meanAmount)
+                .orElseGet(() -> historyRepository.findAverageAmountByWalletId(walletId));
+    }
+
+    /**
+     * Batch form of {@link #averageAmount(UUID)}; wallets without transactions are absent.
+     */
+    public Map<UUID, BigDecimal> averageAmounts(Collection<UUID> walletIds) {
+        Map<UUID, BigDecimal> averages = new HashMap<>();
+        for (WalletAmountStats stats : statsRepository.findAllById(walletIds)) {
+            if (stats.getCount() > 0) {
+                averages.put(stats.getWalletId(), stats.meanAmount());
+            }
+        }
+        if (averages.size() < walletIds.size()) {
+            Set<UUID> missing = new HashSet<>(walletIds);
+            missing.removeAll(averages.keySet());
+            historyRepository.findAverageAmountByWalletIdIn(missing)
+                    .forEach(row -> averages.put(row.getWalletId(), row.getAverage()));
+        }
+        return averages;
+    }
+
+    private WalletAmountStats seed(UUID walletId) {
+        FraudTransactionHistoryRepository.AmountAggregate history = historyRepository.aggregateAmountsByWalletId(walletId);
+        log.debug("Seeding amount statistics for wallet {} from {} transactions", walletId, history.getCount());
+        return WalletAmountStats.builder()
+                .walletId(walletId)
+                .count(history.getCount())
+                .mean(history.getMean())
+                .m2(history.getM2())
+                .ewma(history.getMean())
+                .updatedAt(Instant.now())
+                .build();
+    }
+}
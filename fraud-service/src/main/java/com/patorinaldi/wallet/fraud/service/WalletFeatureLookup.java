@@ -0,0 +1,72 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+/**
+ * The history features one fraud check asks of one wallet. With the {@link RedisFeatureStore}
+ * enabled, the first feature asked for fetches all of them in one round trip; whatever the store
+ * cannot answer, and everything while it is disabled, comes from
+ * {@link FraudTransactionHistoryService}.
+ */
+final class WalletFeatureLookup {
+
+    private final FraudTransactionHistoryService historyService;
+    private final RedisFeatureStore featureStore;
+    private final UUID walletId;
+    private final Collection<Integer> velocityWindows;
+    private Optional<WalletFeatures> features;
+
+    WalletFeatureLookup(FraudTransactionHistoryService historyService, RedisFeatureStore featureStore,
+                        UUID walletId, Collection<Integer> velocityWindows) {
+        this.historyService = historyService;
+        this.featureStore = featureStore;
+        this.walletId = walletId;
+        this.velocityWindows = velocityWindows;
+    }
+
+    /**
+     * A lookup over features already fetched for a batch.
+     */
+    WalletFeatureLookup(FraudTransactionHistoryService historyService, UUID walletId, WalletFeatures prefetched) {
+        this(historyService, null, walletId, List.of());
+        this.features = Optional.ofNullable(prefetched);
+    }
+
+    int countTransactionsInWindow(int windowMinutes) {
+        OptionalInt count = features().map(found -> found.count(windowMinutes)).orElse(OptionalInt.empty());
+        return count.isPresent() ? count.getAsInt() : historyService.countTransactionsInWindow(walletId, windowMinutes);
+    }
+
+    int countDistinctCounterparties(int windowMinutes) {
+        return historyService.countDistinctCounterparties(walletId, windowMinutes);
+    }
+
+    boolean isNewWallet(int thresholdMinutes) {
+        Optional<Instant> firstSeen = features().flatMap(WalletFeatures::firstSeenAt);
+        if (firstSeen.isEmpty()) {
+            return historyService.isNewWallet(walletId, thresholdMinutes);
+        }
+        return firstSeen.get().isAfter(Instant.now().minusSeconds(thresholdMinutes * 60L));
+    }
+
+    boolean isUnusualAmount(BigDecimal amount, BigDecimal multiplier) {
+        Optional<BigDecimal> average = features().flatMap(WalletFeatures::average);
+        if (average.isEmpty()) {
+            return historyService.isUnusualAmount(walletId, amount, multiplier);
+        }
+        return historyService.isUnusualAmount(walletId, amount, average.get(), multiplier);
+    }
+
+    private Optional<WalletFeatures> features() {
+        if (features == null) {
+            features = featureStore.enabled() ? featureStore.fetch(walletId, velocityWindows) : Optional.empty();
+        }
+        return features;
+    }
+}
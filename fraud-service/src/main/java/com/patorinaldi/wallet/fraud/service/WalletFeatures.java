@@ -0,0 +1,32 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * A wallet's features as read from {@link RedisFeatureStore} in one fetch. Anything the store
+ * could not answer is missing: windows it has not covered since it started recording, and
+ * amount statistics or first-seen times of wallets it has not seen yet.
+ *
+ * @param velocityCounts transactions per window length in minutes
+ * @param firstSeen      when the wallet was first seen, or {@code null}
+ * @param averageAmount  mean transaction amount, or {@code null}
+ */
+public record WalletFeatures(Map<Integer, Integer> velocityCounts, Instant firstSeen, BigDecimal averageAmount) {
+
+    public OptionalInt count(int windowMinutes) {
+        Integer count = velocityCounts.get(windowMinutes);
+        return count == null ? OptionalInt.empty() : OptionalInt.of(count);
+    }
+
+    public Optional<Instant> firstSeenAt() {
+        return Optional.ofNullable(firstSeen);
+    }
+
+    public Optional<BigDecimal> average() {
+        return Optional.ofNullable(averageAmount);
+    }
+}
@@ -0,0 +1,136 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudTransactionHistory;
+import com.patorinaldi.wallet.fraud.entity.WalletFirstSeen;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletFirstSeenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * When each wallet was first seen, for the NEW_ACCOUNT rule. Filled from {@code wallet-created}
+ * and from recorded transactions, persisted in {@code wallet_first_seen} and held in memory in a
+ * {@link FirstSeenIndex}, so evaluating the rule needs no query once a wallet is known.
+ *
+ * <p>The table is loaded at startup. A wallet the index does not know yet is looked up in the
+ * table, or failing that in its history, once, and cached if found. A first-seen time only ever
+ * moves earlier. Wallets never seen are not cached, so each check of one still queries.
+ */
+@Slf4j
+@Service
+public class WalletFirstSeenService {
+
+    private final WalletFirstSeenRepository firstSeenRepository;
+    private final FraudTransactionHistoryRepository historyRepository;
+    private final FirstSeenIndex index = new FirstSeenIndex(1 << 16);
+    private final Counter hits;
+    private final Counter misses;
+
+    public WalletFirstSeenService(
+            WalletFirstSeenRepository firstSeenRepository,
+            FraudTransactionHistoryRepository historyRepository,
+            MeterRegistry meterRegistry) {
+        this.firstSeenRepository = firstSeenRepository;
+        this.historyRepository = historyRepository;
+        this.hits = meterRegistry.counter("fraud.first-seen.lookups", "result", "hit");
+        this.misses = meterRegistry.counter("fraud.first-seen.lookups", "result", "miss");
+        meterRegistry.gauge("fraud.first-seen.wallets", index, FirstSeenIndex::size);
+        meterRegistry.gauge("fraud.first-seen.bytes", index, FirstSeenIndex::bytes);
+    }
+
+    @PostConstruct
+    public void hydrate() {
+        long started = System.nanoTime();
+        for (WalletFirstSeen firstSeen : firstSeenRepository.findAll()) {
+            index.putIfEarlier(firstSeen.getWalletId(), firstSeen.getFirstSeenAt().toEpochMilli());
+        }
+        log.info("First-seen index loaded {} wallets in {}ms, {} bytes",
+                index.size(), (System.nanoTime() - started) / 1_000_000, index.bytes());
+    }
+
+    /**
+     * Notes that the wallet existed at {@code at}, storing it if it is earlier than what is known.
+     */
+    @Transactional
+    public void record(UUID walletId, Instant at) {
+        if (index.get(walletId) == 0) {
+            // first sight on this instance: make sure the table holds the earliest known time
+            Instant earliest = firstSeen(walletId).filter(seen -> seen.isBefore(at)).orElse(at);
+            index.putIfEarlier(walletId, earliest.toEpochMilli());
+            firstSeenRepository.upsertEarliest(walletId, earliest);
+        } else if (index.putIfEarlier(walletId, at.toEpochMilli())) {
+            firstSeenRepository.upsertEarliest(walletId, at);
+        }
+    }
+
+    public Optional<Instant> firstSeen(UUID walletId) {
+        long millis = index.get(walletId);
+        if (millis != 0) {
+            hits.increment();
+            return Optional.of(Instant.ofEpochMilli(millis));
+        }
+        misses.increment();
+        Optional<Instant> stored = load(walletId);
+        stored.ifPresent(at -> index.putIfEarlier(walletId, at.toEpochMilli()));
+        return stored;
+    }
+
+    /**
+     * Batch form of {@link #firstSeen(UUID)}: wallets the index does not know are read from the
+     * table in one query, and those not stored from their history in one grouped query. Wallets
+     * never seen are absent.
+     */
+    public Map<UUID, Instant> firstSeen(Collection<UUID> walletIds) {
+        Map<UUID, Instant> result = new HashMap<>();
+        List<UUID> unknown = new ArrayList<>();
+        for (UUID walletId : walletIds) {
+            long millis = index.get(walletId);
+            if (millis != 0) {
+                result.put(walletId, Instant.ofEpochMilli(millis));
+            } else {
+                unknown.add(walletId);
+            }
+        }
+        hits.increment(result.size());
+        if (unknown.isEmpty()) {
+            return result;
+        }
+        misses.increment(unknown.size());
+        List<UUID> notStored = new ArrayList<>(unknown);
+        for (WalletFirstSeen stored : firstSeenRepository.findAllById(unknown)) {
+            result.put(stored.getWalletId(), stored.getFirstSeenAt());
+            index.putIfEarlier(stored.getWalletId(), stored.getFirstSeenAt().toEpochMilli());
+            notStored.remove(stored.getWalletId());
+        }
+        if (!notStored.isEmpty()) {
+            historyRepository.findFirstSeenByWalletIdIn(notStored).forEach(row -> {
+                result.put(row.getWalletId(), row.getFirstSeen());
+                index.putIfEarlier(row.getWalletId(), row.getFirstSeen().toEpochMilli());
+            });
+        }
+        return result;
+    }
+
+    /**
+     * A stored time is never later than the wallet's history, so history is only read without one.
+     */
+    private Optional<Instant> load(UUID walletId) {
+        return firstSeenRepository.findById(walletId)
+                .map(WalletFirstSeen::getFirstSeenAt)
+                .or(() -> Optional.ofNullable(historyRepository.findFirstByWalletIdOrderByOccurredAtAsc(walletId))
+                        .map(FraudTransactionHistory::getOccurredAt));
+    }
+}
@@ -0,0 +1,119 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountStatsRepository;
+import com.patorinaldi.wallet.fraud.service.WalletAmountStatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the wallet average used by UNUSUAL_PATTERN from the running statistics with the
+ * {@code AVG} over the wallet's history it replaces, for wallets with long histories.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class AmountStatsLatencyIntegrationTest {
+
+    private static final int HISTORY_ROWS = 20_000;
+    private static final int ITERATIONS = 500;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private FraudTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private WalletAmountStatsRepository statsRepository;
+
+    @Autowired
+    private WalletAmountStatsService amountStatsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @BeforeEach
+    void setup() {
+        historyRepository.deleteAll();
+        statsRepository.deleteAll();
+        Instant now = Instant.now();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < HISTORY_ROWS; i++) {
+            rows.add(new Object[]{UUID.randomUUID(), UUID.randomUUID(), walletId, UUID.randomUUID(),
+                    new BigDecimal(10 + i % 990), Timestamp.from(now.minusSeconds(i * 60L))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO fraud_transaction_history (id, transaction_id, wallet_id, user_id, "
+                + "amount, transaction_type, currency, occurred_at) VALUES (?, ?, ?, ?, ?, 'DEPOSIT', 'USD', ?)", rows);
+    }
+
+    @Test
+    void runningStats_shouldMatchHistoryAverageAndBeFaster() {
+        // Given - the wallet's first recorded transaction seeds its statistics from history
+        BigDecimal amount = new BigDecimal("500.00");
+        transactionTemplate.executeWithoutResult(status -> amountStatsService.record(walletId, amount));
+        jdbcTemplate.update("INSERT INTO fraud_transaction_history (id, transaction_id, wallet_id, user_id, "
+                        + "amount, transaction_type, currency, occurred_at) VALUES (?, ?, ?, ?, ?, 'DEPOSIT', 'USD', ?)",
+                UUID.randomUUID(), UUID.randomUUID(), walletId, UUID.randomUUID(), amount, Timestamp.from(Instant.now()));
+
+        // When
+        long sqlNanos = 0;
+        long statsNanos = 0;
+        BigDecimal sqlAverage = null;
+        BigDecimal statsAverage = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long started = System.nanoTime();
+            sqlAverage = historyRepository.findAverageAmountByWalletId(walletId);
+            sqlNanos += System.nanoTime() - started;
+
+            started = System.nanoTime();
+            statsAverage = amountStatsService.averageAmount(walletId);
+            statsNanos += System.nanoTime() - started;
+        }
+
+        // Then
+        long sqlMicros = sqlNanos / ITERATIONS / 1_000;
+        long statsMicros = statsNanos / ITERATIONS / 1_000;
+        System.out.printf("Wallet average over %d rows: AVG=%dus, running stats=%dus%n",
+                HISTORY_ROWS + 1, sqlMicros, statsMicros);
+
+        assertEquals(sqlAverage.doubleValue(), statsAverage.doubleValue(), 1e-6);
+        assertTrue(statsNanos * 2 < sqlNanos, "stats " + statsMicros + "us vs AVG " + sqlMicros + "us");
+    }
+}
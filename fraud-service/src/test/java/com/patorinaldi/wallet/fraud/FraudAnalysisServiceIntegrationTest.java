@@ -12,6 +12,8 @@ import com.patorinaldi.wallet.fraud.entity.RuleType;
 import com.patorinaldi.wallet.fraud.repository.FraudAnalysisRepository;
 import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
 import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.service.FraudAnalysisService;
+import com.patorinaldi.wallet.fraud.service.FraudRuleRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -71,6 +73,12 @@ public class FraudAnalysisServiceIntegrationTest {
     @Autowired
     private FraudRuleRepository fraudRuleRepository;
 
+    @Autowired
+    private FraudRuleRegistry ruleRegistry;
+
+    @Autowired
+    private FraudAnalysisService fraudAnalysisService;
+
     @Autowired
     private FraudAnalysisRepository fraudAnalysisRepository;
 
@@ -85,6 +93,7 @@ public class FraudAnalysisServiceIntegrationTest {
         fraudAnalysisRepository.deleteAll();
         fraudRuleRepository.deleteAll();
         fraudTransactionHistoryRepository.deleteAll();
+        ruleRegistry.refresh();
         testKafkaConsumer.clear();
     }
 
@@ -145,6 +154,7 @@ public class FraudAnalysisServiceIntegrationTest {
     void shouldSaveFlagDecisionAndPublishAlertEvent() {
         // Given - AMOUNT_THRESHOLD_SCORE (60) >= FLAG_THRESHOLD (50) but < BLOCK_THRESHOLD (80)
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, AMOUNT_THRESHOLD_SCORE, new BigDecimal("500"), 60));
+        ruleRegistry.refresh();
         TransactionCompletedEvent event = createTransactionEvent(new BigDecimal("600.00"));
 
         // When
@@ -166,6 +176,13 @@ public class FraudAnalysisServiceIntegrationTest {
             assertEquals(AMOUNT_THRESHOLD_SCORE, alert.riskScore());
             assertEquals("FLAG", alert.decision());
         });
+
+        // Verify triggered rules are stored as a mask and found through it
+        FraudAnalysis analysis = fraudAnalysisRepository.findByTransactionId(event.transactionId()).orElseThrow();
+        String ruleCode = fraudRuleRepository.findByActiveTrue().getFirst().getRuleCode();
+        assertEquals(List.of(ruleCode), ruleRegistry.ruleCodes(analysis.getTriggeredRuleMask()));
+        assertEquals(List.of(analysis.getId()), fraudAnalysisService.findTriggered(ruleCode, Instant.now().minusSeconds(60), 10)
+                .stream().map(FraudAnalysis::getId).toList());
     }
 
     @Test
@@ -174,6 +191,7 @@ public class FraudAnalysisServiceIntegrationTest {
         int expectedCombinedScore = AMOUNT_THRESHOLD_SCORE + VELOCITY_SCORE; // 85
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, AMOUNT_THRESHOLD_SCORE, new BigDecimal("1000"), 60));
         fraudRuleRepository.save(createRule(RuleType.VELOCITY, VELOCITY_SCORE, new BigDecimal("5"), 60));
+        ruleRegistry.refresh();
 
         UUID userId = UUID.randomUUID();
         UUID walletId = UUID.randomUUID();
@@ -255,6 +273,7 @@ public class FraudAnalysisServiceIntegrationTest {
     void shouldTriggerNewAccountRule_whenWalletHasNoHistory() {
         // Given - NEW_ACCOUNT rule that triggers for wallets with no transaction history
         fraudRuleRepository.save(createRule(RuleType.NEW_ACCOUNT, NEW_ACCOUNT_SCORE, null, 1440)); // 24 hours window
+        ruleRegistry.refresh();
 
         // Create a brand new wallet with no history
         UUID userId = UUID.randomUUID();
@@ -280,6 +299,7 @@ public class FraudAnalysisServiceIntegrationTest {
         // so we need to ensure the new transaction significantly exceeds the updated average.
         BigDecimal multiplier = new BigDecimal("2");
         fraudRuleRepository.save(createRule(RuleType.UNUSUAL_PATTERN, UNUSUAL_PATTERN_SCORE, multiplier, 60));
+        ruleRegistry.refresh();
 
         UUID userId = UUID.randomUUID();
         UUID walletId = UUID.randomUUID();
@@ -325,6 +345,7 @@ public class FraudAnalysisServiceIntegrationTest {
         // Given - Score of 49 (just below FLAG_THRESHOLD of 50)
         int belowFlagScore = FLAG_THRESHOLD - 1; // 49
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, belowFlagScore, new BigDecimal("100"), 60));
+        ruleRegistry.refresh();
         TransactionCompletedEvent event = createTransactionEvent(new BigDecimal("150.00"));
 
         // When
@@ -346,6 +367,7 @@ public class FraudAnalysisServiceIntegrationTest {
     void shouldFlag_whenScoreIsExactlyAtFlagThreshold() {
         // Given - Score of exactly 50 (FLAG_THRESHOLD)
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, FLAG_THRESHOLD, new BigDecimal("100"), 60));
+        ruleRegistry.refresh();
         TransactionCompletedEvent event = createTransactionEvent(new BigDecimal("150.00"));
 
         // When
@@ -368,6 +390,7 @@ public class FraudAnalysisServiceIntegrationTest {
         // Given - Score of 79 (just below BLOCK_THRESHOLD of 80)
         int belowBlockScore = BLOCK_THRESHOLD - 1; // 79
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, belowBlockScore, new BigDecimal("100"), 60));
+        ruleRegistry.refresh();
         TransactionCompletedEvent event = createTransactionEvent(new BigDecimal("150.00"));
 
         // When
@@ -389,6 +412,7 @@ public class FraudAnalysisServiceIntegrationTest {
     void shouldBlock_whenScoreIsExactlyAtBlockThreshold() {
         // Given - Score of exactly 80 (BLOCK_THRESHOLD)
         fraudRuleRepository.save(createRule(RuleType.AMOUNT_THRESHOLD, BLOCK_THRESHOLD, new BigDecimal("100"), 60));
+        ruleRegistry.refresh();
         TransactionCompletedEvent event = createTransactionEvent(new BigDecimal("150.00"));
 
         // When
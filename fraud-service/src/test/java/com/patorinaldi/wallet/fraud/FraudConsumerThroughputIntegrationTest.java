@@ -0,0 +1,181 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.fraud.entity.FraudAnalysis;
+import com.patorinaldi.wallet.fraud.entity.FraudDecision;
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.repository.FraudAnalysisRepository;
+import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import com.patorinaldi.wallet.fraud.service.FraudAnalysisService;
+import com.patorinaldi.wallet.fraud.service.FraudRuleRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Analyses the same stream of transactions, on two sets of wallets, one event at a time as
+ * {@code TransactionEventListener} does and in polls of {@link #BATCH_SIZE} as
+ * {@code TransactionBatchEventListener} does, and compares throughput and decisions.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class FraudConsumerThroughputIntegrationTest {
+
+    private static final int WALLETS = 100;
+    private static final int TRANSACTIONS_PER_WALLET = 20;
+    private static final int BATCH_SIZE = 500;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private FraudAnalysisService fraudAnalysisService;
+
+    @Autowired
+    private FraudAnalysisRepository fraudAnalysisRepository;
+
+    @Autowired
+    private FraudRuleRepository fraudRuleRepository;
+
+    @Autowired
+    private FraudRuleRegistry ruleRegistry;
+
+    @BeforeEach
+    void setup() {
+        fraudRuleRepository.deleteAll();
+        fraudRuleRepository.saveAll(List.of(
+                createRule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30, new BigDecimal("10000"), null),
+                createRule("HIGH_VELOCITY", RuleType.VELOCITY, 25, new BigDecimal("10"), 60),
+                createRule("NEW_WALLET", RuleType.NEW_ACCOUNT, 15, null, 1440),
+                createRule("UNUSUAL_AMOUNT", RuleType.UNUSUAL_PATTERN, 20, new BigDecimal("3"), null)));
+        ruleRegistry.refresh();
+    }
+
+    @Test
+    void batchConsumer_shouldOutpaceSingleEvents_withTheSameDecisions() {
+        // Given
+        List<TransactionCompletedEvent> single = createStream();
+        List<TransactionCompletedEvent> batched = createStream();
+
+        // When
+        long started = System.nanoTime();
+        single.forEach(fraudAnalysisService::analyzeTransaction);
+        long singleNanos = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        for (int from = 0; from < batched.size(); from += BATCH_SIZE) {
+            fraudAnalysisService.analyzeTransactions(batched.subList(from, Math.min(from + BATCH_SIZE, batched.size())));
+        }
+        long batchNanos = System.nanoTime() - started;
+
+        // Then
+        long singlePerSecond = single.size() * 1_000_000_000L / singleNanos;
+        long batchPerSecond = batched.size() * 1_000_000_000L / batchNanos;
+        System.out.printf("Fraud analysis: %d events/s one at a time, %d events/s in batches of %d%n",
+                singlePerSecond, batchPerSecond, BATCH_SIZE);
+
+        assertEquals(decisions(single), decisions(batched));
+        assertTrue(batchNanos < singleNanos, "batch " + batchPerSecond + "/s vs single " + singlePerSecond + "/s");
+    }
+
+    @Test
+    void batchConsumer_shouldSkipTransactionsAlreadyAnalysed() {
+        // Given
+        List<TransactionCompletedEvent> events = createStream().subList(0, 50);
+        fraudAnalysisService.analyzeTransactions(events.subList(0, 20));
+
+        // When
+        fraudAnalysisService.analyzeTransactions(events);
+
+        // Then
+        for (TransactionCompletedEvent event : events) {
+            assertTrue(fraudAnalysisRepository.existsByTransactionId(event.transactionId()));
+        }
+        assertEquals(50, fraudAnalysisRepository.findTransactionIdsIn(
+                events.stream().map(TransactionCompletedEvent::transactionId).toList()).size());
+    }
+
+    /**
+     * Transactions interleaved across fresh wallets, each wallet's amounts rising and then one
+     * spike, so velocity and unusual-amount rules trigger part way through.
+     */
+    private List<TransactionCompletedEvent> createStream() {
+        List<UUID> walletIds = new ArrayList<>();
+        for (int w = 0; w < WALLETS; w++) {
+            walletIds.add(UUID.randomUUID());
+        }
+        List<TransactionCompletedEvent> events = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS_PER_WALLET; i++) {
+            BigDecimal amount = i == TRANSACTIONS_PER_WALLET - 1 ? new BigDecimal("15000") : new BigDecimal(100 + i);
+            for (UUID walletId : walletIds) {
+                events.add(createEvent(walletId, amount));
+            }
+        }
+        return events;
+    }
+
+    private List<FraudDecision> decisions(List<TransactionCompletedEvent> events) {
+        return events.stream()
+                .map(event -> fraudAnalysisRepository.findByTransactionId(event.transactionId())
+                        .map(FraudAnalysis::getDecision)
+                        .orElseThrow())
+                .toList();
+    }
+
+    private TransactionCompletedEvent createEvent(UUID walletId, BigDecimal amount) {
+        return TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.DEPOSIT)
+                .walletId(walletId)
+                .userId(UUID.randomUUID())
+                .amount(amount)
+                .currency("USD")
+                .balanceAfter(amount)
+                .completedAt(Instant.now())
+                .build();
+    }
+
+    private FraudRule createRule(String code, RuleType type, int score, BigDecimal threshold, Integer timeWindowMinutes) {
+        return FraudRule.builder()
+                .ruleCode(code)
+                .description("Test rule " + code)
+                .ruleType(type)
+                .scoreImpact(score)
+                .threshold(threshold)
+                .timeWindowMinutes(timeWindowMinutes)
+                .active(true)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,117 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.fraud.entity.FraudTransactionHistory;
+import com.patorinaldi.wallet.fraud.entity.WalletAmountBucket;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountBucketRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletFirstSeenRepository;
+import com.patorinaldi.wallet.fraud.service.HistoryCompactor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compacts 60 days of a wallet's history and checks the amount aggregates and first-seen time
+ * read the same from buckets as they did from raw rows.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class HistoryCompactionIntegrationTest {
+
+    private static final int DAYS = 60;
+    private static final int TRANSACTIONS_PER_DAY = 24;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private HistoryCompactor compactor;
+
+    @Autowired
+    private FraudTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private WalletAmountBucketRepository bucketRepository;
+
+    @Autowired
+    private WalletFirstSeenRepository firstSeenRepository;
+
+    private final UUID walletId = UUID.randomUUID();
+    private Instant now;
+
+    @BeforeEach
+    void setup() {
+        historyRepository.deleteAll();
+        bucketRepository.deleteAll();
+        now = Instant.now();
+        List<FraudTransactionHistory> rows = new ArrayList<>();
+        for (int day = 0; day < DAYS; day++) {
+            for (int hour = 0; hour < TRANSACTIONS_PER_DAY; hour++) {
+                rows.add(FraudTransactionHistory.builder()
+                        .transactionId(UUID.randomUUID())
+                        .walletId(walletId)
+                        .userId(UUID.randomUUID())
+                        .amount(new BigDecimal(10 + (day * TRANSACTIONS_PER_DAY + hour) % 97))
+                        .transactionType(TransactionType.DEPOSIT)
+                        .currency("USD")
+                        .occurredAt(now.minus(day, ChronoUnit.DAYS).minus(hour, ChronoUnit.HOURS))
+                        .build());
+            }
+        }
+        historyRepository.saveAll(rows);
+    }
+
+    @Test
+    void compact_shouldKeepAggregates_andShrinkRawHistory() {
+        // Given
+        BigDecimal averageBefore = historyRepository.findAverageAmountByWalletId(walletId);
+        var aggregateBefore = historyRepository.aggregateAmountsByWalletId(walletId);
+        Instant firstSeenBefore = historyRepository.findFirstByWalletIdOrderByOccurredAtAsc(walletId).getOccurredAt();
+
+        // When
+        compactor.compact(now);
+
+        // Then
+        assertTrue(historyRepository.count() <= 2 * TRANSACTIONS_PER_DAY, "raw rows left: " + historyRepository.count());
+        assertNotNull(bucketRepository.findOldestBucketStart(WalletAmountBucket.Granularity.HOUR));
+        assertNotNull(bucketRepository.findOldestBucketStart(WalletAmountBucket.Granularity.DAY));
+
+        assertEquals(0, averageBefore.compareTo(historyRepository.findAverageAmountByWalletId(walletId)));
+        var aggregateAfter = historyRepository.aggregateAmountsByWalletId(walletId);
+        assertEquals(aggregateBefore.getCount(), aggregateAfter.getCount());
+        assertEquals(aggregateBefore.getMean(), aggregateAfter.getMean(), 1e-9);
+        assertEquals(aggregateBefore.getM2(), aggregateAfter.getM2(), 1e-6);
+        assertEquals(firstSeenBefore.truncatedTo(ChronoUnit.MILLIS),
+                firstSeenRepository.findById(walletId).orElseThrow().getFirstSeenAt().truncatedTo(ChronoUnit.MILLIS));
+    }
+}
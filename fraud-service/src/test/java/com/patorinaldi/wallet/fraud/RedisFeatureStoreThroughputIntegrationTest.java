@@ -0,0 +1,132 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import com.patorinaldi.wallet.fraud.service.RedisFeatureStore;
+import com.patorinaldi.wallet.fraud.service.WalletFeatures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records transactions for many wallets in {@link RedisFeatureStore} and measures how many
+ * wallets' features can be fetched per second, one check at a time and as batches.
+ */
+@Testcontainers
+public class RedisFeatureStoreThroughputIntegrationTest {
+
+    private static final int WALLETS = 2_000;
+    private static final int TRANSACTIONS_PER_WALLET = 20;
+    private static final int BATCH_SIZE = 100;
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisFeatureStore store;
+    private static final List<UUID> walletIds = new ArrayList<>();
+
+    @BeforeAll
+    static void setup() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        ReactiveStringRedisTemplate template = new ReactiveStringRedisTemplate(connectionFactory);
+        // backdate the start of recording so the 60-minute window is answered
+        template.opsForValue().set("fraud:features:since",
+                String.valueOf(System.currentTimeMillis() - 2 * 3_600_000L)).block();
+        store = new RedisFeatureStore(template, new SimpleMeterRegistry(), true, 60, 1_000);
+        store.start();
+
+        Instant now = Instant.now();
+        for (int w = 0; w < WALLETS; w++) {
+            UUID walletId = UUID.randomUUID();
+            walletIds.add(walletId);
+            WalletAmountStats stats = WalletAmountStats.builder().walletId(walletId).build();
+            for (int i = 0; i < TRANSACTIONS_PER_WALLET; i++) {
+                stats.add(new BigDecimal("100.00"), 0.1);
+                store.record(walletId, UUID.randomUUID(), now.minusSeconds(i * 60L), stats, now.minusSeconds(86_400));
+            }
+        }
+    }
+
+    @AfterAll
+    static void teardown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void fetch_shouldReturnRecordedFeatures() {
+        // Given
+        UUID walletId = walletIds.getFirst();
+
+        // When
+        Optional<WalletFeatures> features = store.fetch(walletId, List.of(10, 60));
+
+        // Then
+        assertTrue(features.isPresent());
+        assertEquals(10, features.get().count(10).getAsInt());
+        assertEquals(TRANSACTIONS_PER_WALLET, features.get().count(60).getAsInt());
+        assertEquals(0, new BigDecimal("100.0").compareTo(features.get().averageAmount()));
+        assertNotNull(features.get().firstSeen());
+    }
+
+    @Test
+    void record_shouldBeIdempotentPerTransaction() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        UUID transactionId = UUID.randomUUID();
+        WalletAmountStats stats = WalletAmountStats.builder().walletId(walletId).build();
+        stats.add(BigDecimal.TEN, 0.1);
+
+        // When
+        store.record(walletId, transactionId, Instant.now(), stats, Instant.now());
+        store.record(walletId, transactionId, Instant.now(), stats, Instant.now());
+
+        // Then
+        assertEquals(1, store.fetch(walletId, List.of(60)).orElseThrow().count(60).getAsInt());
+    }
+
+    @Test
+    void batchFetch_shouldOutpaceSingleFetches() {
+        // When
+        long started = System.nanoTime();
+        for (UUID walletId : walletIds) {
+            store.fetch(walletId, List.of(10, 60));
+        }
+        long singleNanos = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        int fetched = 0;
+        for (int from = 0; from < walletIds.size(); from += BATCH_SIZE) {
+            Map<UUID, WalletFeatures> batch = store.fetch(walletIds.subList(from, from + BATCH_SIZE), List.of(10, 60));
+            fetched += batch.size();
+        }
+        long batchNanos = System.nanoTime() - started;
+
+        // Then
+        long singlePerSecond = WALLETS * 1_000_000_000L / singleNanos;
+        long batchPerSecond = WALLETS * 1_000_000_000L / batchNanos;
+        System.out.printf("Redis feature fetches: %d wallets/s one at a time, %d wallets/s in batches of %d%n",
+                singlePerSecond, batchPerSecond, BATCH_SIZE);
+
+        assertEquals(WALLETS, fetched);
+        assertTrue(batchNanos < singleNanos, "batch " + batchPerSecond + "/s vs single " + singlePerSecond + "/s");
+    }
+}
@@ -0,0 +1,170 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckRequest;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckResponse;
+import com.patorinaldi.wallet.fraud.entity.FraudAnalysis;
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.repository.FraudAnalysisRepository;
+import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import com.patorinaldi.wallet.fraud.service.FraudAnalysisService;
+import com.patorinaldi.wallet.fraud.service.FraudRuleRegistry;
+import com.patorinaldi.wallet.fraud.service.SyncFraudCheckService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the statements fraud-service runs per transaction, sync check plus async analysis,
+ * with the analysis evaluating every rule again and with it reusing the sync result the event
+ * carries.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class SyncDecisionReuseIntegrationTest {
+
+    private static final int TRANSACTIONS = 50;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+    }
+
+    @Autowired
+    private SyncFraudCheckService syncFraudCheckService;
+
+    @Autowired
+    private FraudAnalysisService fraudAnalysisService;
+
+    @Autowired
+    private FraudAnalysisRepository fraudAnalysisRepository;
+
+    @Autowired
+    private FraudRuleRepository fraudRuleRepository;
+
+    @Autowired
+    private FraudRuleRegistry ruleRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setup() {
+        fraudRuleRepository.deleteAll();
+        fraudRuleRepository.saveAll(List.of(
+                createRule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30, new BigDecimal("10000"), null),
+                createRule("HIGH_VELOCITY", RuleType.VELOCITY, 25, new BigDecimal("10"), 60),
+                createRule("NEW_WALLET", RuleType.NEW_ACCOUNT, 15, null, 1440),
+                createRule("UNUSUAL_AMOUNT", RuleType.UNUSUAL_PATTERN, 20, new BigDecimal("3"), null)));
+        ruleRegistry.refresh();
+    }
+
+    @Test
+    void reusingSyncDecision_shouldAddNoRoundTrips() {
+        // When
+        long evaluated = statementsPerTransaction(false);
+        long reused = statementsPerTransaction(true);
+
+        // Then - the result rides on the event, and amount and new-account rules are not run again
+        System.out.printf("fraud-service statements per transaction: %.1f re-evaluating, %.1f reusing the sync result%n",
+                (double) evaluated / TRANSACTIONS, (double) reused / TRANSACTIONS);
+
+        assertTrue(reused <= evaluated, "reused " + reused + " vs evaluated " + evaluated);
+    }
+
+    @Test
+    void reusingSyncDecision_shouldPersistTheSyncDecision() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        UUID checkId = UUID.randomUUID();
+        BigDecimal amount = new BigDecimal("20000.00");
+        FraudCheckResponse response = syncFraudCheckService.checkTransaction(new FraudCheckRequest(walletId,
+                UUID.randomUUID(), amount, TransactionType.WITHDRAWAL, "USD", checkId));
+
+        // When
+        TransactionCompletedEvent event = createEvent(walletId, amount, checkId, response);
+        fraudAnalysisService.analyzeTransaction(event);
+
+        // Then
+        FraudAnalysis analysis = fraudAnalysisRepository.findByTransactionId(event.transactionId()).orElseThrow();
+        assertEquals(response.decision(), analysis.getDecision().name());
+        assertEquals(response.riskScore(), analysis.getRiskScore());
+        assertEquals("Rescored from sync check " + checkId, analysis.getNotes());
+    }
+
+    private long statementsPerTransaction(boolean carryResult) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            UUID walletId = UUID.randomUUID();
+            UUID checkId = UUID.randomUUID();
+            BigDecimal amount = new BigDecimal(100 + i);
+            FraudCheckResponse response = syncFraudCheckService.checkTransaction(new FraudCheckRequest(walletId,
+                    UUID.randomUUID(), amount, TransactionType.DEPOSIT, "USD", checkId));
+            fraudAnalysisService.analyzeTransaction(createEvent(walletId, amount, checkId, carryResult ? response : null));
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private TransactionCompletedEvent createEvent(UUID walletId, BigDecimal amount, UUID checkId,
+                                                  FraudCheckResponse syncResponse) {
+        return TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.DEPOSIT)
+                .walletId(walletId)
+                .userId(UUID.randomUUID())
+                .amount(amount)
+                .currency("USD")
+                .balanceAfter(amount)
+                .fraudCheckId(syncResponse == null ? null : checkId)
+                .fraudRiskScore(syncResponse == null ? null : syncResponse.riskScore())
+                .fraudTriggeredRules(syncResponse == null ? null : syncResponse.triggeredRules())
+                .completedAt(Instant.now())
+                .build();
+    }
+
+    private FraudRule createRule(String code, RuleType type, int score, BigDecimal threshold, Integer timeWindowMinutes) {
+        return FraudRule.builder()
+                .ruleCode(code)
+                .description("Test rule " + code)
+                .ruleType(type)
+                .scoreImpact(score)
+                .threshold(threshold)
+                .timeWindowMinutes(timeWindowMinutes)
+                .active(true)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
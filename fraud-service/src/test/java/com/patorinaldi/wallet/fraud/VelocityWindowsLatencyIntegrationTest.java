@@ -0,0 +1,119 @@
+package com.patorinaldi.wallet.fraud;
+
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.service.VelocityWindows;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the VELOCITY count from the in-memory windows with the range count on
+ * {@code fraud_transaction_history} it replaces, for a busy wallet among many others.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+public class VelocityWindowsLatencyIntegrationTest {
+
+    private static final int BUSY_WALLET_ROWS = 10_000;
+    private static final int OTHER_WALLETS = 5_000;
+    private static final int ROWS_PER_OTHER_WALLET = 10;
+    private static final int ITERATIONS = 500;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @Autowired
+    private FraudTransactionHistoryRepository historyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final UUID busyWallet = UUID.randomUUID();
+
+    @BeforeEach
+    void setup() {
+        historyRepository.deleteAll();
+        Instant now = Instant.now();
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < BUSY_WALLET_ROWS; i++) {
+            // spread over the last 55 minutes, clear of the window edge
+            rows.add(row(busyWallet, now.minusMillis(i * 330L)));
+        }
+        for (int w = 0; w < OTHER_WALLETS; w++) {
+            UUID walletId = UUID.randomUUID();
+            for (int i = 0; i < ROWS_PER_OTHER_WALLET; i++) {
+                rows.add(row(walletId, now.minusSeconds(i * 300L)));
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO fraud_transaction_history (id, transaction_id, wallet_id, user_id, "
+                + "amount, transaction_type, currency, occurred_at) VALUES (?, ?, ?, ?, 10.00, 'DEPOSIT', 'USD', ?)", rows);
+    }
+
+    @Test
+    void inMemoryCount_shouldMatchSqlAndBeFaster() {
+        // Given
+        VelocityWindows windows = new VelocityWindows(historyRepository, new SimpleMeterRegistry(), true, 60, 60);
+        windows.hydrate();
+
+        // When
+        long sqlNanos = 0;
+        long memoryNanos = 0;
+        int sqlCount = 0;
+        int memoryCount = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long started = System.nanoTime();
+            sqlCount = historyRepository.countByWalletIdAndOccurredAtAfter(busyWallet, Instant.now().minusSeconds(3600));
+            sqlNanos += System.nanoTime() - started;
+
+            started = System.nanoTime();
+            memoryCount = windows.count(busyWallet, 60).getAsInt();
+            memoryNanos += System.nanoTime() - started;
+        }
+
+        // Then
+        long sqlMicros = sqlNanos / ITERATIONS / 1_000;
+        long memoryMicros = memoryNanos / ITERATIONS / 1_000;
+        System.out.printf("VELOCITY count over %d rows: sql=%dus, in-memory=%dus; %d wallets at ~%d bytes each%n",
+                BUSY_WALLET_ROWS, sqlMicros, memoryMicros, windows.size(), windows.bytesPerWallet());
+
+        assertEquals(BUSY_WALLET_ROWS, sqlCount);
+        assertEquals(sqlCount, memoryCount);
+        assertEquals(OTHER_WALLETS + 1, windows.size());
+        assertTrue(memoryNanos * 10 < sqlNanos, "in-memory " + memoryMicros + "us vs sql " + sqlMicros + "us");
+    }
+
+    private static Object[] row(UUID walletId, Instant occurredAt) {
+        return new Object[]{UUID.randomUUID(), UUID.randomUUID(), walletId, UUID.randomUUID(),
+                Timestamp.from(occurredAt)};
+    }
+}
@@ -1,15 +1,21 @@
 package com.patorinaldi.wallet.fraud.controller;
 
 import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckBatchRequest;
+import com.patorinaldi.wallet.fraud.dto.FraudCheckBatchResponse;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckRequest;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckResponse;
 import com.patorinaldi.wallet.fraud.service.SyncFraudCheckService;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.util.Collections;
@@ -18,6 +24,9 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,6 +35,9 @@ class FraudCheckControllerTest {
     @Mock
     private SyncFraudCheckService syncFraudCheckService;
 
+    @Mock
+    private Validator validator;
+
     @InjectMocks
     private FraudCheckController fraudCheckController;
 
@@ -90,6 +102,80 @@ class FraudCheckControllerTest {
         assertEquals("Transaction blocked due to high risk", result.getBody().message());
     }
 
+    @Test
+    void checkTransactions_shouldReturnResultsInRequestOrder() {
+        // Given
+        FraudCheckRequest low = createRequest(new BigDecimal("100.00"));
+        FraudCheckRequest high = createRequest(new BigDecimal("60000.00"));
+        List<FraudCheckResponse> responses = List.of(
+                FraudCheckResponse.approve(0, Collections.emptyList()),
+                FraudCheckResponse.block(85, List.of("VERY_LARGE_AMOUNT")));
+
+        when(syncFraudCheckService.checkTransactions(List.of(low, high))).thenReturn(responses);
+
+        // When
+        ResponseEntity<FraudCheckBatchResponse> result =
+                fraudCheckController.checkTransactions(new FraudCheckBatchRequest(List.of(low, high)));
+
+        // Then
+        assertEquals(200, result.getStatusCode().value());
+        assertNotNull(result.getBody());
+        assertEquals(responses, result.getBody().results());
+    }
+
+    @Test
+    void checkTransactionBinary_shouldDecodeRequest_andEncodeVerdict() {
+        // Given
+        FraudCheckRequest request = createRequest(new BigDecimal("15000.00"));
+        byte[] body = FraudCheckWireFormat.encode(new FraudCheckWireFormat.Check(request.walletId(),
+                request.userId(), request.amount(), request.transactionType(), request.currency()));
+
+        when(syncFraudCheckService.checkTransaction(any()))
+                .thenReturn(FraudCheckResponse.flag(55, List.of("LARGE_AMOUNT", "HIGH_VELOCITY")));
+
+        // When
+        ResponseEntity<byte[]> result = fraudCheckController.checkTransactionBinary(body, null);
+
+        // Then
+        assertEquals(200, result.getStatusCode().value());
+        FraudCheckWireFormat.Verdict verdict = FraudCheckWireFormat.decodeVerdict(result.getBody());
+        assertEquals(55, verdict.riskScore());
+        assertEquals("FLAG", verdict.decision());
+        assertEquals(List.of("LARGE_AMOUNT", "HIGH_VELOCITY"), verdict.triggeredRules());
+        verify(syncFraudCheckService).checkTransaction(argThat(decoded ->
+                decoded.walletId().equals(request.walletId())
+                        && decoded.amount().compareTo(request.amount()) == 0));
+    }
+
+    @Test
+    void checkTransactionBinary_shouldRejectMalformedBody() {
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> fraudCheckController.checkTransactionBinary(new byte[]{1, 2, 3}, null));
+
+        // Then
+        assertEquals(400, exception.getStatusCode().value());
+        verifyNoInteractions(syncFraudCheckService);
+    }
+
+    @Test
+    void checkTransactionBinary_shouldApplyRequestValidation() {
+        // Given
+        FraudCheckController controller = new FraudCheckController(syncFraudCheckService,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        byte[] body = FraudCheckWireFormat.encode(new FraudCheckWireFormat.Check(UUID.randomUUID(),
+                UUID.randomUUID(), BigDecimal.ZERO, TransactionType.DEPOSIT, "USD"));
+
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> controller.checkTransactionBinary(body, null));
+
+        // Then
+        assertEquals(400, exception.getStatusCode().value());
+        assertEquals("Amount must be positive", exception.getReason());
+        verifyNoInteractions(syncFraudCheckService);
+    }
+
     private FraudCheckRequest createRequest(BigDecimal amount) {
         return new FraudCheckRequest(
                 UUID.randomUUID(),
@@ -0,0 +1,74 @@
+package com.patorinaldi.wallet.fraud.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletAmountStatsTest {
+
+    @Test
+    void add_shouldMatchTwoPassMeanAndVariance() {
+        // Given
+        WalletAmountStats stats = WalletAmountStats.builder().walletId(UUID.randomUUID()).build();
+        Random random = new Random(42);
+        double[] amounts = new double[10_000];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = 1_000_000 + random.nextInt(100_000) / 100.0;
+        }
+
+        // When
+        for (double amount : amounts) {
+            stats.add(BigDecimal.valueOf(amount), 0.1);
+        }
+
+        // Then
+        double mean = 0;
+        for (double amount : amounts) {
+            mean += amount;
+        }
+        mean /= amounts.length;
+        double squares = 0;
+        for (double amount : amounts) {
+            squares += (amount - mean) * (amount - mean);
+        }
+        assertEquals(amounts.length, stats.getCount());
+        assertEquals(mean, stats.getMean(), 1e-6);
+        assertEquals(squares / (amounts.length - 1), stats.variance(), 1e-3);
+    }
+
+    @Test
+    void add_shouldWeightRecentAmountsInEwma() {
+        // Given
+        WalletAmountStats stats = WalletAmountStats.builder().walletId(UUID.randomUUID()).build();
+
+        // When
+        stats.add(new BigDecimal("100"), 0.5);
+        stats.add(new BigDecimal("200"), 0.5);
+        stats.add(new BigDecimal("200"), 0.5);
+
+        // Then
+        assertEquals(175.0, stats.getEwma(), 1e-9);
+        assertEquals(500.0 / 3, stats.getMean(), 1e-9);
+    }
+
+    @Test
+    void zScore_shouldBeZero_untilThereIsSpread() {
+        // Given
+        WalletAmountStats stats = WalletAmountStats.builder().walletId(UUID.randomUUID()).build();
+        stats.add(new BigDecimal("100"), 0.1);
+
+        // When & Then
+        assertEquals(0.0, stats.zScore(new BigDecimal("1000")));
+        stats.add(new BigDecimal("300"), 0.1);
+        assertEquals((1000 - 200) / Math.sqrt(20_000), stats.zScore(new BigDecimal("1000")), 1e-9);
+    }
+
+    @Test
+    void meanAmount_shouldBeNull_withoutTransactions() {
+        assertNull(WalletAmountStats.builder().walletId(UUID.randomUUID()).build().meanAmount());
+    }
+}
@@ -0,0 +1,118 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CounterpartySketchTest {
+
+    @Test
+    void estimate_shouldBeExact_whileSparse() {
+        // Given
+        CounterpartySketch sketch = new CounterpartySketch();
+        List<UUID> counterparties = new ArrayList<>();
+        for (int i = 0; i < CounterpartySketch.SPARSE_LIMIT; i++) {
+            counterparties.add(UUID.randomUUID());
+        }
+
+        // When - every counterparty twice
+        counterparties.forEach(sketch::add);
+        counterparties.forEach(sketch::add);
+
+        // Then
+        assertTrue(sketch.isSparse());
+        assertEquals(CounterpartySketch.SPARSE_LIMIT, sketch.estimate());
+    }
+
+    @Test
+    void estimate_shouldStayWithinErrorBounds_onceDense() {
+        for (int distinct : new int[]{CounterpartySketch.SPARSE_LIMIT + 1, 100, 1_000, 100_000}) {
+            // Given
+            CounterpartySketch sketch = new CounterpartySketch();
+
+            // When
+            for (int i = 0; i < distinct; i++) {
+                sketch.add(UUID.randomUUID());
+            }
+
+            // Then - four standard errors of 1.04 / sqrt(256)
+            assertFalse(sketch.isSparse());
+            long estimate = sketch.estimate();
+            assertEquals(distinct, estimate, distinct * 0.26, "estimate of " + distinct + ": " + estimate);
+        }
+    }
+
+    @Test
+    void merge_shouldCountTheUnion() {
+        // Given - 20 counterparties in each bucket, 10 of them in both
+        List<UUID> shared = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            shared.add(UUID.randomUUID());
+        }
+        CounterpartySketch first = new CounterpartySketch();
+        CounterpartySketch second = new CounterpartySketch();
+        shared.forEach(first::add);
+        shared.forEach(second::add);
+        for (int i = 0; i < 10; i++) {
+            first.add(UUID.randomUUID());
+            second.add(UUID.randomUUID());
+        }
+
+        // When
+        CounterpartySketch window = new CounterpartySketch();
+        window.merge(first);
+        window.merge(second);
+
+        // Then
+        assertEquals(30, window.estimate());
+        assertEquals(20, first.estimate());
+    }
+
+    @Test
+    void merge_shouldTakeRegisterMaxima_whenEitherSideIsDense() {
+        // Given
+        CounterpartySketch dense = new CounterpartySketch();
+        CounterpartySketch all = new CounterpartySketch();
+        for (int i = 0; i < 5_000; i++) {
+            UUID counterparty = UUID.randomUUID();
+            dense.add(counterparty);
+            all.add(counterparty);
+        }
+        CounterpartySketch sparse = new CounterpartySketch();
+        for (int i = 0; i < 10; i++) {
+            UUID counterparty = UUID.randomUUID();
+            sparse.add(counterparty);
+            all.add(counterparty);
+        }
+
+        // When
+        sparse.merge(dense);
+
+        // Then - same registers as adding everything to one sketch
+        assertFalse(sparse.isSparse());
+        assertEquals(all.estimate(), sparse.estimate());
+    }
+
+    @Test
+    void bytes_shouldGrowWithCounterparties_upToTheRegisters() {
+        // Given
+        CounterpartySketch sketch = new CounterpartySketch();
+        long empty = sketch.bytes();
+
+        // When
+        sketch.add(UUID.randomUUID());
+        long one = sketch.bytes();
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add(UUID.randomUUID());
+        }
+
+        // Then - two hashes' room while small, 256 one-byte registers however many are added
+        assertEquals(56, empty);
+        assertEquals(56, one);
+        assertEquals(296, sketch.bytes());
+    }
+}
@@ -0,0 +1,235 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CounterpartyWindowsTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Mock
+    private FraudTransactionHistoryRepository historyRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void count_shouldIncludeTransfersLoadedAtStartupAndRecordedSince() {
+        // Given
+        Instant now = Instant.now();
+        UUID repeated = UUID.randomUUID();
+        when(historyRepository.findCounterpartiesAfter(eq(TransactionType.TRANSFER_OUT), any())).thenReturn(List.of(
+                transfer(walletId, repeated, now.minus(Duration.ofMinutes(50))),
+                transfer(walletId, UUID.randomUUID(), now.minus(Duration.ofMinutes(40))),
+                transfer(UUID.randomUUID(), repeated, now.minus(Duration.ofMinutes(5)))));
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+
+        // When
+        windows.record(walletId, repeated, now);
+        windows.record(walletId, UUID.randomUUID(), now);
+
+        // Then - the repeated counterparty counts once across buckets
+        assertEquals(OptionalInt.of(3), windows.count(walletId, 60));
+        assertEquals(OptionalInt.of(2), windows.count(walletId, 10));
+        assertEquals(OptionalInt.of(0), windows.count(UUID.randomUUID(), 60));
+    }
+
+    @Test
+    void count_shouldErOnTheHighSideByAtMostOneBucket() {
+        // Given
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+        Instant now = Instant.parse("2026-01-01T10:40:00Z");
+        windows.record(walletId, UUID.randomUUID(), Instant.parse("2026-01-01T10:16:00Z"), now);
+        windows.record(walletId, UUID.randomUUID(), Instant.parse("2026-01-01T10:35:00Z"), now);
+        windows.record(walletId, UUID.randomUUID(), Instant.parse("2026-01-01T10:14:00Z"), now);
+
+        // When
+        OptionalInt count = windows.count(walletId, 20, now);
+
+        // Then - the 10:15 bucket is counted whole; 10:14 is outside it
+        assertEquals(OptionalInt.of(2), count);
+    }
+
+    @Test
+    void count_shouldNotAnswer_beforeLoadOrBeyondHorizon() {
+        // Given
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(60, 15);
+
+        // When & Then
+        assertTrue(windows.count(walletId, 60).isEmpty());
+        windows.hydrate();
+        assertTrue(windows.count(walletId, 60).isPresent());
+        assertTrue(windows.count(walletId, 61).isEmpty());
+        assertFalse(windows.covers(120));
+    }
+
+    @Test
+    void record_shouldReplaceSketchesAsTheRingWrapsAround() {
+        // Given
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(30, 15);
+        windows.hydrate();
+        Instant at = Instant.parse("2026-01-01T10:00:00Z");
+
+        // When - a new counterparty every five minutes for two hours
+        for (int minute = 0; minute <= 120; minute += 5) {
+            at = Instant.parse("2026-01-01T10:00:00Z").plus(Duration.ofMinutes(minute));
+            windows.record(walletId, UUID.randomUUID(), at, at);
+        }
+
+        // Then - the 11:30, 11:45 and 12:00 buckets
+        assertEquals(OptionalInt.of(7), windows.count(walletId, 30, at));
+    }
+
+    @Test
+    void evictIdle_shouldDropWalletsWithNothingInTheHorizon() {
+        // Given
+        Instant now = Instant.now();
+        when(historyRepository.findCounterpartiesAfter(any(), any()))
+                .thenReturn(List.of(transfer(walletId, UUID.randomUUID(), now.minus(Duration.ofMinutes(59)))));
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+        UUID recent = UUID.randomUUID();
+        windows.record(recent, UUID.randomUUID(), now);
+
+        // When
+        windows.evictIdle(now.plus(Duration.ofMinutes(30)));
+
+        // Then
+        assertEquals(1, windows.size());
+        assertEquals(1.0, meterRegistry.get("fraud.counterparties.wallets").gauge().value());
+        assertEquals(OptionalInt.of(0), windows.count(walletId, 60));
+        assertEquals(OptionalInt.of(1), windows.count(recent, 60));
+    }
+
+    @Test
+    void record_shouldDoNothing_whenDisabled() {
+        // Given
+        CounterpartyWindows disabled = new CounterpartyWindows(historyRepository, meterRegistry, false, 60, 15);
+        disabled.hydrate();
+
+        // When
+        disabled.record(walletId, UUID.randomUUID(), Instant.now());
+
+        // Then
+        assertEquals(0, disabled.size());
+        assertTrue(disabled.count(walletId, 60).isEmpty());
+        verifyNoInteractions(historyRepository);
+    }
+
+    @Test
+    void bytes_shouldReportMemoryPerWallet_sparseAndDense() {
+        // Given
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+        Instant now = Instant.now();
+        windows.record(walletId, UUID.randomUUID(), now);
+        double oneTransfer = windows.bytes();
+        UUID fanOut = UUID.randomUUID();
+        for (int bucket = 0; bucket < 5; bucket++) {
+            for (int i = 0; i < 1_000; i++) {
+                windows.record(fanOut, UUID.randomUUID(), now.minus(Duration.ofMinutes(15L * bucket)));
+            }
+        }
+
+        // When
+        double bothWallets = windows.bytes();
+
+        // Then - one small sketch, against five full 256-register ones
+        System.out.printf("Counterparty windows: %.0f bytes for one transfer, %.0f bytes with all buckets dense%n",
+                oneTransfer, bothWallets - oneTransfer);
+        assertEquals(248, oneTransfer);
+        assertEquals(1_672, bothWallets - oneTransfer);
+        assertEquals(bothWallets, meterRegistry.get("fraud.counterparties.bytes").gauge().value());
+    }
+
+    @Test
+    void count_shouldAnswerInMicroseconds_withDenseBuckets() {
+        // Given
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+        Instant now = Instant.now();
+        for (int i = 0; i < 2_000; i++) {
+            windows.record(walletId, UUID.randomUUID(), now.minusSeconds(i));
+        }
+
+        // When
+        long sink = 0;
+        for (int i = 0; i < 100_000; i++) {
+            sink += windows.count(walletId, 60).getAsInt();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            sink += windows.count(walletId, 60).getAsInt();
+        }
+        long nanosPerCount = (System.nanoTime() - started) / 100_000;
+
+        // Then
+        System.out.printf("Counterparty window count: %dns per call%n", nanosPerCount);
+        assertTrue(sink > 0);
+        assertTrue(nanosPerCount < 20_000, "in-memory count took " + nanosPerCount + "ns");
+    }
+
+    @Test
+    void record_shouldCountRetriedTransferOnce_afterFailedBatch() {
+        // Given - the batch recorded the transfer before rolling back
+        when(historyRepository.findCounterpartiesAfter(any(), any())).thenReturn(List.of());
+        CounterpartyWindows windows = windows(60, 15);
+        windows.hydrate();
+        Instant now = Instant.now();
+        UUID counterparty = UUID.randomUUID();
+        windows.record(walletId, counterparty, now);
+
+        // When - the one-by-one fallback records it again
+        windows.record(walletId, counterparty, now);
+
+        // Then
+        assertEquals(OptionalInt.of(1), windows.count(walletId, 60));
+    }
+
+    private CounterpartyWindows windows(int horizonMinutes, int bucketMinutes) {
+        return new CounterpartyWindows(historyRepository, meterRegistry, true, horizonMinutes, bucketMinutes);
+    }
+
+    private static FraudTransactionHistoryRepository.WalletCounterparty transfer(UUID walletId, UUID relatedWalletId,
+                                                                                 Instant occurredAt) {
+        return new FraudTransactionHistoryRepository.WalletCounterparty() {
+            @Override
+            public UUID getWalletId() {
+                return walletId;
+            }
+
+            @Override
+            public UUID getRelatedWalletId() {
+                return relatedWalletId;
+            }
+
+            @Override
+            public Instant getOccurredAt() {
+                return occurredAt;
+            }
+        };
+    }
+}
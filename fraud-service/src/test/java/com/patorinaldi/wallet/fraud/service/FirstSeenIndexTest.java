@@ -0,0 +1,90 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FirstSeenIndexTest {
+
+    @Test
+    void get_shouldReturnZero_whenWalletUnknown() {
+        // Given
+        FirstSeenIndex index = new FirstSeenIndex(16);
+
+        // When
+        long value = index.get(UUID.randomUUID());
+
+        // Then
+        assertEquals(0, value);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void putIfEarlier_shouldOnlyMoveValueEarlier() {
+        // Given
+        FirstSeenIndex index = new FirstSeenIndex(16);
+        UUID walletId = UUID.randomUUID();
+
+        // When
+        boolean first = index.putIfEarlier(walletId, 2_000);
+        boolean later = index.putIfEarlier(walletId, 3_000);
+        boolean earlier = index.putIfEarlier(walletId, 1_000);
+
+        // Then
+        assertTrue(first);
+        assertFalse(later);
+        assertTrue(earlier);
+        assertEquals(1_000, index.get(walletId));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void putIfEarlier_shouldRejectZero() {
+        // Given
+        FirstSeenIndex index = new FirstSeenIndex(16);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> index.putIfEarlier(UUID.randomUUID(), 0));
+    }
+
+    @Test
+    void putIfEarlier_shouldKeepEveryWallet_whenTableGrows() {
+        // Given
+        FirstSeenIndex index = new FirstSeenIndex(16);
+        List<UUID> walletIds = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            walletIds.add(UUID.randomUUID());
+        }
+
+        // When
+        for (int i = 0; i < walletIds.size(); i++) {
+            index.putIfEarlier(walletIds.get(i), i + 1);
+        }
+
+        // Then
+        assertEquals(walletIds.size(), index.size());
+        for (int i = 0; i < walletIds.size(); i++) {
+            assertEquals(i + 1, index.get(walletIds.get(i)));
+        }
+    }
+
+    @Test
+    void bytes_shouldStayUnderSeventyPerWallet() {
+        // Given
+        FirstSeenIndex index = new FirstSeenIndex(16);
+        int wallets = 100_000;
+
+        // When
+        for (int i = 0; i < wallets; i++) {
+            index.putIfEarlier(UUID.randomUUID(), i + 1);
+        }
+
+        // Then
+        long perWallet = index.bytes() / wallets;
+        assertTrue(perWallet >= 34 && perWallet < 70, "bytes per wallet: " + perWallet);
+    }
+}
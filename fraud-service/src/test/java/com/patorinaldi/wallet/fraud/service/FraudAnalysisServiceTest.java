@@ -9,11 +9,11 @@ import com.patorinaldi.wallet.fraud.entity.FraudDecision;
 import com.patorinaldi.wallet.fraud.entity.FraudRule;
 import com.patorinaldi.wallet.fraud.entity.RuleType;
 import com.patorinaldi.wallet.fraud.repository.FraudAnalysisRepository;
-import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -23,6 +23,7 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,7 +36,7 @@ class FraudAnalysisServiceTest {
     private FraudAnalysisRepository fraudAnalysisRepository;
 
     @Mock
-    private FraudRuleRepository fraudRuleRepository;
+    private FraudRuleRegistry ruleRegistry;
 
     @Mock
     private FraudTransactionHistoryService historyService;
@@ -43,6 +44,12 @@ class FraudAnalysisServiceTest {
     @Mock
     private ApplicationEventPublisher eventPublisher;
 
+    @Mock
+    private RiskFeedPublisher riskFeedPublisher;
+
+    @Mock
+    private RedisFeatureStore featureStore;
+
     @InjectMocks
     private FraudAnalysisService fraudAnalysisService;
 
@@ -52,6 +59,9 @@ class FraudAnalysisServiceTest {
     @Captor
     private ArgumentCaptor<Object> eventCaptor;
 
+    @Captor
+    private ArgumentCaptor<List<FraudAnalysis>> analysesCaptor;
+
     @Test
     void analyzeTransaction_shouldSkip_whenAnalysisAlreadyExists() {
         // Given
@@ -64,9 +74,10 @@ class FraudAnalysisServiceTest {
         // Then
         verify(fraudAnalysisRepository).existsByTransactionId(event.transactionId());
         verify(fraudAnalysisRepository, never()).save(any());
-        verify(fraudRuleRepository, never()).findByActiveTrue();
+        verify(ruleRegistry, never()).current();
         verify(historyService, never()).saveTransaction(any());
         verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(riskFeedPublisher);
     }
 
     @Test
@@ -74,7 +85,7 @@ class FraudAnalysisServiceTest {
         // Given
         TransactionCompletedEvent event = createDummyEvent();
         when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(Collections.emptyList());
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(Collections.emptyList()));
 
         when(fraudAnalysisRepository.save(any(FraudAnalysis.class)))
                 .thenAnswer(invocation -> invocation.getArgument(0));
@@ -87,10 +98,12 @@ class FraudAnalysisServiceTest {
         FraudAnalysis capturedAnalysis = analysisCaptor.getValue();
         assertEquals(FraudDecision.APPROVE, capturedAnalysis.getDecision());
         assertEquals(0, capturedAnalysis.getRiskScore());
-        assertTrue(capturedAnalysis.getTriggeredRules().isEmpty());
+        assertEquals(0L, capturedAnalysis.getTriggeredRuleMask());
+        verify(ruleRegistry).ruleMask(List.of());
 
         assertEquals(event.transactionId(), capturedAnalysis.getTransactionId());
         verify(eventPublisher, never()).publishEvent(any());
+        verify(riskFeedPublisher).publishProfile(event.walletId(), FraudRuleSet.compile(Collections.emptyList()));
     }
 
     @Test
@@ -101,7 +114,8 @@ class FraudAnalysisServiceTest {
 
         when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
         when(fraudAnalysisRepository.save(any(FraudAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(Collections.singletonList(rule));
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(Collections.singletonList(rule)));
+        when(ruleRegistry.ruleMask(List.of("LARGE_TRANSACTION"))).thenReturn(0b1L);
 
         // When
         fraudAnalysisService.analyzeTransaction(event);
@@ -111,7 +125,7 @@ class FraudAnalysisServiceTest {
         FraudAnalysis capturedAnalysis = analysisCaptor.getValue();
         assertEquals(FraudDecision.FLAG, capturedAnalysis.getDecision());
         assertEquals(60, capturedAnalysis.getRiskScore());
-        assertTrue(capturedAnalysis.getTriggeredRules().contains("LARGE_TRANSACTION"));
+        assertEquals(0b1L, capturedAnalysis.getTriggeredRuleMask());
 
         verify(eventPublisher).publishEvent(eventCaptor.capture());
         Object capturedEvent = eventCaptor.getValue();
@@ -131,8 +145,10 @@ class FraudAnalysisServiceTest {
 
         when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
         when(fraudAnalysisRepository.save(any(FraudAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(largeAmountRule, highVelocityRule));
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(largeAmountRule, highVelocityRule)));
         when(historyService.countTransactionsInWindow(any(), anyInt())).thenReturn(15);
+        when(ruleRegistry.ruleMask(List.of("LARGE_TRANSACTION", "HIGH_VELOCITY"))).thenReturn(0b101L);
+        when(ruleRegistry.ruleCodes(0b101L)).thenReturn(List.of("LARGE_TRANSACTION", "HIGH_VELOCITY"));
 
         // When
         fraudAnalysisService.analyzeTransaction(event);
@@ -142,7 +158,7 @@ class FraudAnalysisServiceTest {
         FraudAnalysis capturedAnalysis = analysisCaptor.getValue();
         assertEquals(FraudDecision.BLOCK, capturedAnalysis.getDecision());
         assertEquals(85, capturedAnalysis.getRiskScore());
-        assertEquals(2, capturedAnalysis.getTriggeredRules().size());
+        assertEquals(0b101L, capturedAnalysis.getTriggeredRuleMask());
 
         verify(eventPublisher, times(2)).publishEvent(eventCaptor.capture());
         List<Object> capturedEvents = eventCaptor.getAllValues();
@@ -156,6 +172,7 @@ class FraudAnalysisServiceTest {
 
         assertEquals(event.userId(), blockedEvent.userId());
         assertEquals(85, blockedEvent.riskScore());
+        assertEquals("Fraudulent activity detected: LARGE_TRANSACTION, HIGH_VELOCITY", blockedEvent.reason());
 
         FraudAlertEvent alertEvent = capturedEvents.stream()
                 .filter(FraudAlertEvent.class::isInstance)
@@ -168,6 +185,171 @@ class FraudAnalysisServiceTest {
 
     }
 
+    @Test
+    void analyzeTransaction_shouldKeepSyncResult_andOnlyEvaluateRulesThatChangeAfterCommit() {
+        // Given - the sync check approved; the amount rule would trigger if it were evaluated again
+        UUID checkId = UUID.randomUUID();
+        TransactionCompletedEvent event = createEventWithCheck(BigDecimal.valueOf(7000), checkId, 0, List.of());
+        FraudRuleSet ruleSet = FraudRuleSet.compile(List.of(createLargeAmountRule(), createHighVelocityRule()));
+
+        when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
+        when(fraudAnalysisRepository.save(any(FraudAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ruleRegistry.current()).thenReturn(ruleSet);
+        when(historyService.countTransactionsInWindow(event.walletId(), 60)).thenReturn(3);
+
+        // When
+        fraudAnalysisService.analyzeTransaction(event);
+
+        // Then
+        InOrder inOrder = inOrder(historyService);
+        inOrder.verify(historyService).saveTransaction(event);
+        inOrder.verify(historyService).countTransactionsInWindow(event.walletId(), 60);
+        verify(fraudAnalysisRepository).save(analysisCaptor.capture());
+        FraudAnalysis capturedAnalysis = analysisCaptor.getValue();
+        assertEquals(FraudDecision.APPROVE, capturedAnalysis.getDecision());
+        assertEquals(0, capturedAnalysis.getRiskScore());
+        assertEquals(0L, capturedAnalysis.getTriggeredRuleMask());
+        assertEquals("Rescored from sync check " + checkId, capturedAnalysis.getNotes());
+
+        verify(riskFeedPublisher).publishProfile(event.walletId(), ruleSet);
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void analyzeTransaction_shouldBlock_whenSyncFlagPlusRecordedTransactionCrossesBlockThreshold() {
+        // Given - the sync check flagged on amount alone, before this transaction was the 11th in the hour
+        TransactionCompletedEvent event = createEventWithCheck(BigDecimal.valueOf(7000), UUID.randomUUID(),
+                60, List.of("LARGE_TRANSACTION"));
+        FraudRuleSet ruleSet = FraudRuleSet.compile(List.of(createLargeAmountRule(), createHighVelocityRule()));
+
+        when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
+        when(fraudAnalysisRepository.save(any(FraudAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ruleRegistry.current()).thenReturn(ruleSet);
+        when(historyService.countTransactionsInWindow(event.walletId(), 60)).thenReturn(11);
+        when(ruleRegistry.ruleMask(List.of("LARGE_TRANSACTION", "HIGH_VELOCITY"))).thenReturn(0b11L);
+        when(ruleRegistry.ruleCodes(0b11L)).thenReturn(List.of("LARGE_TRANSACTION", "HIGH_VELOCITY"));
+
+        // When
+        fraudAnalysisService.analyzeTransaction(event);
+
+        // Then
+        verify(fraudAnalysisRepository).save(analysisCaptor.capture());
+        FraudAnalysis capturedAnalysis = analysisCaptor.getValue();
+        assertEquals(FraudDecision.BLOCK, capturedAnalysis.getDecision());
+        assertEquals(85, capturedAnalysis.getRiskScore());
+        assertEquals(0b11L, capturedAnalysis.getTriggeredRuleMask());
+
+        verify(eventPublisher, times(2)).publishEvent(eventCaptor.capture());
+        UserBlockedEvent blocked = eventCaptor.getAllValues().stream()
+                .filter(UserBlockedEvent.class::isInstance)
+                .map(UserBlockedEvent.class::cast)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("UserBlockedEvent not found"));
+        assertEquals(event.userId(), blocked.userId());
+        assertEquals(85, blocked.riskScore());
+    }
+
+    @Test
+    void analyzeTransaction_shouldEvaluateEveryRule_whenEventCarriesNoSyncResult() {
+        // Given
+        TransactionCompletedEvent event = createHighAmountEvent(BigDecimal.valueOf(7000));
+
+        when(fraudAnalysisRepository.existsByTransactionId(event.transactionId())).thenReturn(false);
+        when(fraudAnalysisRepository.save(any(FraudAnalysis.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(createLargeAmountRule())));
+
+        // When
+        fraudAnalysisService.analyzeTransaction(event);
+
+        // Then
+        verify(fraudAnalysisRepository).save(analysisCaptor.capture());
+        assertEquals(FraudDecision.FLAG, analysisCaptor.getValue().getDecision());
+        assertNull(analysisCaptor.getValue().getNotes());
+    }
+
+    @Test
+    void analyzeTransactions_shouldSkipAnalysedTransactions_andRecordHistoryOnlyOnce() {
+        // Given
+        TransactionCompletedEvent analysed = createDummyEvent();
+        TransactionCompletedEvent recorded = createDummyEvent();
+        TransactionCompletedEvent fresh = createDummyEvent();
+        FraudRuleSet ruleSet = FraudRuleSet.compile(Collections.emptyList());
+
+        when(fraudAnalysisRepository.findTransactionIdsIn(any())).thenReturn(Set.of(analysed.transactionId()));
+        when(historyService.findSavedTransactionIds(any())).thenReturn(Set.of(recorded.transactionId()));
+        when(ruleRegistry.current()).thenReturn(ruleSet);
+        when(fraudAnalysisRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        fraudAnalysisService.analyzeTransactions(List.of(analysed, recorded, fresh, fresh));
+
+        // Then
+        verify(historyService).saveNewTransaction(fresh);
+        verify(historyService, never()).saveNewTransaction(recorded);
+        verify(historyService, never()).saveNewTransaction(analysed);
+        verify(fraudAnalysisRepository, never()).save(any());
+        verify(fraudAnalysisRepository).saveAll(analysesCaptor.capture());
+        assertEquals(List.of(recorded.transactionId(), fresh.transactionId()),
+                analysesCaptor.getValue().stream().map(FraudAnalysis::getTransactionId).toList());
+    }
+
+    @Test
+    void analyzeTransactions_shouldRecordEachEventBeforeEvaluatingTheNext_andPublishEachWalletOnce() {
+        // Given
+        TransactionCompletedEvent first = createHighAmountEvent(BigDecimal.valueOf(7000));
+        TransactionCompletedEvent second = TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.DEPOSIT)
+                .walletId(first.walletId())
+                .userId(first.userId())
+                .amount(BigDecimal.valueOf(100))
+                .currency("USD")
+                .balanceAfter(BigDecimal.valueOf(7100))
+                .completedAt(Instant.now())
+                .build();
+        FraudRuleSet ruleSet = FraudRuleSet.compile(List.of(createLargeAmountRule()));
+
+        when(ruleRegistry.current()).thenReturn(ruleSet);
+        when(fraudAnalysisRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        fraudAnalysisService.analyzeTransactions(List.of(first, second));
+
+        // Then
+        InOrder inOrder = inOrder(historyService, fraudAnalysisRepository);
+        inOrder.verify(historyService).saveNewTransaction(first);
+        inOrder.verify(historyService).saveNewTransaction(second);
+        inOrder.verify(fraudAnalysisRepository).saveAll(analysesCaptor.capture());
+        List<FraudAnalysis> analyses = analysesCaptor.getValue();
+        assertEquals(FraudDecision.FLAG, analyses.get(0).getDecision());
+        assertEquals(FraudDecision.APPROVE, analyses.get(1).getDecision());
+
+        verify(riskFeedPublisher, times(1)).publishProfile(first.walletId(), ruleSet);
+        verify(eventPublisher, times(1)).publishEvent(any(FraudAlertEvent.class));
+    }
+
+    @Test
+    void analyzeTransactions_shouldReuseSyncResultsCarriedOnEvents() {
+        // Given
+        UUID checkId = UUID.randomUUID();
+        TransactionCompletedEvent withCheck = createEventWithCheck(BigDecimal.valueOf(100), checkId,
+                60, List.of("LARGE_TRANSACTION"));
+        TransactionCompletedEvent withoutCheck = createDummyEvent();
+
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(createLargeAmountRule())));
+        when(fraudAnalysisRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        fraudAnalysisService.analyzeTransactions(List.of(withCheck, withoutCheck));
+
+        // Then
+        verify(fraudAnalysisRepository).saveAll(analysesCaptor.capture());
+        assertEquals(FraudDecision.FLAG, analysesCaptor.getValue().get(0).getDecision());
+        assertEquals("Rescored from sync check " + checkId, analysesCaptor.getValue().get(0).getNotes());
+        assertEquals(FraudDecision.APPROVE, analysesCaptor.getValue().get(1).getDecision());
+    }
+
     private TransactionCompletedEvent createDummyEvent() {
         return TransactionCompletedEvent.builder()
                 .eventId(UUID.randomUUID())
@@ -183,6 +365,24 @@ class FraudAnalysisServiceTest {
                 .build();
     }
 
+    private TransactionCompletedEvent createEventWithCheck(BigDecimal amount, UUID checkId, int riskScore,
+                                                           List<String> triggeredRules) {
+        return TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.WITHDRAWAL)
+                .walletId(UUID.randomUUID())
+                .userId(UUID.randomUUID())
+                .amount(amount)
+                .currency("USD")
+                .balanceAfter(BigDecimal.ZERO)
+                .fraudCheckId(checkId)
+                .fraudRiskScore(riskScore)
+                .fraudTriggeredRules(triggeredRules)
+                .completedAt(Instant.now())
+                .build();
+    }
+
     private TransactionCompletedEvent createHighAmountEvent(BigDecimal amount) {
         return TransactionCompletedEvent.builder()
                 .eventId(UUID.randomUUID())
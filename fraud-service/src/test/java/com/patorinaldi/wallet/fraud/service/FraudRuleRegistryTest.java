@@ -0,0 +1,226 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FraudRuleRegistryTest {
+
+    @Mock
+    private FraudRuleRepository fraudRuleRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private FraudRuleRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new FraudRuleRegistry(fraudRuleRepository, meterRegistry, 10_000);
+    }
+
+    @Test
+    void current_shouldLoadOnce_andServeFromMemory() {
+        // Given
+        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30)));
+
+        // When
+        FraudRuleSet first = registry.current();
+        FraudRuleSet second = registry.current();
+
+        // Then
+        assertSame(first, second);
+        assertEquals(1, first.rules().size());
+        verify(fraudRuleRepository, times(1)).findByActiveTrue();
+    }
+
+    @Test
+    void refresh_shouldKeepCurrentSet_whenRulesAreUnchanged() {
+        // Given
+        when(fraudRuleRepository.findByActiveTrue())
+                .thenReturn(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30)))
+                .thenReturn(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30)));
+        FraudRuleSet loaded = registry.current();
+
+        // When
+        FraudRuleSet refreshed = registry.refresh();
+
+        // Then
+        assertSame(loaded, refreshed);
+        assertEquals(1, meterRegistry.counter("fraud.rules.reloads").count());
+    }
+
+    @Test
+    void refresh_shouldSwapInNewSet_whenRulesChange() {
+        // Given
+        when(fraudRuleRepository.findByActiveTrue())
+                .thenReturn(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30)))
+                .thenReturn(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 40),
+                        rule("HIGH_VELOCITY", RuleType.VELOCITY, 25)));
+        registry.current();
+
+        // When
+        registry.refresh();
+
+        // Then
+        FraudRuleSet current = registry.current();
+        assertEquals(List.of("LARGE_AMOUNT", "HIGH_VELOCITY"),
+                current.rules().stream().map(FraudRuleSet.Rule::ruleCode).toList());
+        assertEquals(40, current.rules().getFirst().scoreImpact());
+        assertEquals(2, meterRegistry.counter("fraud.rules.reloads").count());
+    }
+
+    @Test
+    void compile_shouldOrderCheapestRulesFirst() {
+        // Given
+        List<FraudRule> rules = List.of(
+                rule("UNUSUAL_AMOUNT", RuleType.UNUSUAL_PATTERN, 20),
+                rule("HIGH_VELOCITY", RuleType.VELOCITY, 25),
+                rule("NEW_WALLET", RuleType.NEW_ACCOUNT, 15),
+                rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30),
+                rule("VERY_LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 50));
+
+        // When
+        FraudRuleSet ruleSet = FraudRuleSet.compile(rules);
+
+        // Then
+        assertEquals(List.of("VERY_LARGE_AMOUNT", "LARGE_AMOUNT", "NEW_WALLET", "HIGH_VELOCITY", "UNUSUAL_AMOUNT"),
+                ruleSet.rules().stream().map(FraudRuleSet.Rule::ruleCode).toList());
+    }
+
+    @Test
+    void evaluateAll_shouldEvaluateEveryRule_evenOnceDecided() {
+        // Given
+        FraudRuleSet ruleSet = FraudRuleSet.compile(List.of(
+                rule("VERY_LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 80),
+                rule("NEW_WALLET", RuleType.NEW_ACCOUNT, 15)));
+
+        // When
+        FraudRuleSet.Result early = ruleSet.evaluate(rule -> true);
+        FraudRuleSet.Result all = ruleSet.evaluateAll(rule -> true);
+
+        // Then
+        assertEquals(List.of("VERY_LARGE_AMOUNT"), early.triggeredRules());
+        assertEquals(80, early.riskScore());
+        assertEquals(List.of("VERY_LARGE_AMOUNT", "NEW_WALLET"), all.triggeredRules());
+        assertEquals(95, all.riskScore());
+        assertEquals(early.decision(), all.decision());
+    }
+
+    @Test
+    void ruleMask_shouldSetBitOfEachRuleId_andDecodeBack() {
+        // Given
+        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(
+                rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, 30, 0),
+                rule("UNUSUAL_AMOUNT", RuleType.UNUSUAL_PATTERN, 20, 5)));
+        registry.current();
+
+        // When
+        long mask = registry.ruleMask(List.of("UNUSUAL_AMOUNT", "LARGE_AMOUNT"));
+
+        // Then
+        assertEquals(0b100001L, mask);
+        assertEquals(List.of("LARGE_AMOUNT", "UNUSUAL_AMOUNT"), registry.ruleCodes(mask));
+        verify(fraudRuleRepository, never()).findAll();
+    }
+
+    @Test
+    void ruleCodes_shouldLoadInactiveRulesOnce() {
+        // Given
+        when(fraudRuleRepository.findAll()).thenReturn(List.of(rule("RETIRED_RULE", RuleType.VELOCITY, 10, 9)));
+
+        // When
+        List<String> first = registry.ruleCodes(1L << 9);
+        List<String> second = registry.ruleCodes(1L << 9);
+
+        // Then
+        assertEquals(List.of("RETIRED_RULE"), first);
+        assertEquals(first, second);
+        verify(fraudRuleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void ruleMask_shouldLeaveOutUnknownRules() {
+        // Given
+        when(fraudRuleRepository.findAll()).thenReturn(List.of());
+
+        // When
+        long mask = registry.ruleMask(List.of("NO_SUCH_RULE"));
+
+        // Then
+        assertEquals(0L, mask);
+    }
+
+    @Test
+    void ruleMask_shouldLookUpUnknownRuleOnce_untilNextReload() {
+        // Given
+        when(fraudRuleRepository.findAll()).thenReturn(List.of());
+        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of());
+
+        // When
+        registry.ruleMask(List.of("NO_SUCH_RULE"));
+        registry.ruleMask(List.of("NO_SUCH_RULE"));
+        registry.refresh();
+        registry.ruleMask(List.of("NO_SUCH_RULE"));
+
+        // Then
+        verify(fraudRuleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void assignMissingRuleIds_shouldPrepareSequenceOnce() {
+        // When
+        registry.assignMissingRuleIds();
+        registry.assignMissingRuleIds();
+
+        // Then
+        verify(fraudRuleRepository, times(1)).createRuleIdSequence();
+        verify(fraudRuleRepository, times(1)).syncRuleIdSequence();
+        verify(fraudRuleRepository, times(2)).assignRuleIds();
+    }
+
+    @Test
+    void refresh_shouldAssignMissingIds_andReload() {
+        // Given
+        when(fraudRuleRepository.findByActiveTrue())
+                .thenReturn(List.of(rule("CUSTOM_RULE", RuleType.AMOUNT_THRESHOLD, 30)))
+                .thenReturn(List.of(rule("CUSTOM_RULE", RuleType.AMOUNT_THRESHOLD, 30, 6)));
+        when(fraudRuleRepository.assignRuleIds()).thenReturn(1);
+
+        // When
+        registry.refresh();
+
+        // Then
+        verify(fraudRuleRepository).assignRuleIds();
+        assertEquals(1L << 6, registry.ruleMask(List.of("CUSTOM_RULE")));
+    }
+
+    private FraudRule rule(String code, RuleType type, int scoreImpact, int ruleId) {
+        FraudRule rule = rule(code, type, scoreImpact);
+        rule.setRuleId(ruleId);
+        return rule;
+    }
+
+    private FraudRule rule(String code, RuleType type, int scoreImpact) {
+        return FraudRule.builder()
+                .ruleCode(code)
+                .ruleType(type)
+                .threshold(BigDecimal.TEN)
+                .scoreImpact(scoreImpact)
+                .timeWindowMinutes(type == RuleType.VELOCITY || type == RuleType.NEW_ACCOUNT ? 60 : null)
+                .active(true)
+                .build();
+    }
+}
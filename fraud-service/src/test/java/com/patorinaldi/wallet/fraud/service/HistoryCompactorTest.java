@@ -0,0 +1,125 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import com.patorinaldi.wallet.fraud.entity.WalletAmountBucket;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountBucketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryCompactorTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-10T12:34:56Z");
+
+    @Mock
+    private FraudTransactionHistoryRepository historyRepository;
+
+    @Mock
+    private WalletAmountBucketRepository bucketRepository;
+
+    @Mock
+    private FraudRuleRegistry ruleRegistry;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private HistoryCompactor compactor;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        compactor = new HistoryCompactor(historyRepository, bucketRepository, ruleRegistry,
+                new TransactionTemplate(transactionManager), meterRegistry, true, 3_600_000, 24, 30);
+    }
+
+    @Test
+    void compact_shouldRollUpOneHourAtATime_upToTheCutoff() {
+        // Given
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of()));
+        when(historyRepository.findOldestOccurredAt()).thenReturn(
+                Instant.parse("2026-03-09T09:15:00Z"),
+                Instant.parse("2026-03-09T11:05:00Z"),
+                Instant.parse("2026-03-09T12:00:00Z"));
+        when(bucketRepository.rollUpHistory(any(), any())).thenReturn(3, 2);
+
+        // When
+        compactor.compact(NOW);
+
+        // Then
+        verify(bucketRepository).rollUpHistory(Instant.parse("2026-03-09T09:00:00Z"), Instant.parse("2026-03-09T10:00:00Z"));
+        verify(bucketRepository).rollUpHistory(Instant.parse("2026-03-09T11:00:00Z"), Instant.parse("2026-03-09T12:00:00Z"));
+        verify(bucketRepository, times(2)).rollUpHistory(any(), any());
+        assertEquals(5, meterRegistry.counter("fraud.history.buckets", "granularity", "hour").count());
+    }
+
+    @Test
+    void compact_shouldMergeHourlyBucketsIntoDays_pastHourlyRetention() {
+        // Given
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of()));
+        when(bucketRepository.findOldestBucketStart(WalletAmountBucket.Granularity.HOUR)).thenReturn(
+                Instant.parse("2026-02-07T05:00:00Z"),
+                Instant.parse("2026-02-08T00:00:00Z"));
+        when(bucketRepository.rollUpHourlyBuckets(any(), any())).thenReturn(4);
+
+        // When
+        compactor.compact(NOW);
+
+        // Then
+        verify(bucketRepository).rollUpHourlyBuckets(Instant.parse("2026-02-07T00:00:00Z"), Instant.parse("2026-02-08T00:00:00Z"));
+        verify(bucketRepository, times(1)).rollUpHourlyBuckets(any(), any());
+        verify(bucketRepository, never()).rollUpHistory(any(), any());
+    }
+
+    @Test
+    void rawRetention_shouldCoverLongestVelocityWindow() {
+        // Given
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(
+                rule("HIGH_VELOCITY", 60), rule("WEEKLY_VELOCITY", 7 * 24 * 60))));
+
+        // When
+        Duration retention = compactor.rawRetention();
+
+        // Then
+        assertEquals(Duration.ofDays(7), retention);
+    }
+
+    @Test
+    void rawRetention_shouldNotDropBelowConfiguredHours() {
+        // Given
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(rule("HIGH_VELOCITY", 60))));
+
+        // When
+        Duration retention = compactor.rawRetention();
+
+        // Then
+        assertEquals(Duration.ofHours(24), retention);
+    }
+
+    private FraudRule rule(String code, int windowMinutes) {
+        return FraudRule.builder()
+                .ruleCode(code)
+                .ruleType(RuleType.VELOCITY)
+                .threshold(new BigDecimal("10"))
+                .scoreImpact(25)
+                .timeWindowMinutes(windowMinutes)
+                .active(true)
+                .build();
+    }
+}
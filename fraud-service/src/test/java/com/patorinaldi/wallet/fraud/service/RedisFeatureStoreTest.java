@@ -0,0 +1,114 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisFeatureStoreTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Mock
+    private ReactiveStringRedisTemplate redis;
+
+    @Mock
+    private ReactiveValueOperations<String, String> valueOperations;
+
+    @Mock
+    private ReactiveZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private ReactiveHashOperations<String, Object, Object> hashOperations;
+
+    private RedisFeatureStore store;
+
+    @BeforeEach
+    void setup() {
+        when(redis.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redis.opsForZSet()).thenReturn(zSetOperations);
+        lenient().when(redis.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        when(valueOperations.setIfAbsent(eq(RedisFeatureStore.SINCE_KEY), anyString())).thenReturn(Mono.just(false));
+        when(valueOperations.get(RedisFeatureStore.SINCE_KEY))
+                .thenReturn(Mono.just(String.valueOf(System.currentTimeMillis() - Duration.ofHours(2).toMillis())));
+        lenient().when(valueOperations.get(RedisFeatureStore.key(walletId, "first-seen"))).thenReturn(Mono.empty());
+        lenient().when(zSetOperations.count(eq(RedisFeatureStore.key(walletId, "velocity")), any()))
+                .thenReturn(Mono.just(4L));
+        lenient().when(hashOperations.get(RedisFeatureStore.key(walletId, "amounts"), "mean")).thenReturn(Mono.empty());
+        store = new RedisFeatureStore(redis, new SimpleMeterRegistry(), true, 60, 1_000);
+        store.start();
+    }
+
+    @Test
+    void fetch_shouldAnswerWindows_whenNoWriteFailed() {
+        // Given
+        when(valueOperations.get(RedisFeatureStore.key(walletId, "gap"))).thenReturn(Mono.empty());
+
+        // When
+        WalletFeatures features = store.fetch(walletId, List.of(10, 60)).orElseThrow();
+
+        // Then
+        assertEquals(OptionalInt.of(4), features.count(10));
+        assertEquals(OptionalInt.of(4), features.count(60));
+    }
+
+    @Test
+    void fetch_shouldNotAnswerWindowsReachingBackToFailedWrite() {
+        // Given - the record and the shared gap marker both fail
+        when(redis.execute(any(RedisScript.class), anyList(), anyList()))
+                .thenReturn(Flux.error(new RedisConnectionFailureException("connection reset")));
+        when(valueOperations.set(eq(RedisFeatureStore.key(walletId, "gap")), anyString(), any(Duration.class)))
+                .thenReturn(Mono.error(new RedisConnectionFailureException("connection reset")));
+        when(valueOperations.get(RedisFeatureStore.key(walletId, "gap"))).thenReturn(Mono.empty());
+        WalletAmountStats stats = WalletAmountStats.builder().walletId(walletId).build();
+        stats.add(new BigDecimal("100.00"), 0.1);
+        store.record(walletId, UUID.randomUUID(), Instant.now(), stats, Instant.now());
+
+        // When
+        WalletFeatures features = store.fetch(walletId, List.of(10, 60)).orElseThrow();
+
+        // Then
+        assertEquals(OptionalInt.empty(), features.count(10));
+        assertEquals(OptionalInt.empty(), features.count(60));
+    }
+
+    @Test
+    void fetch_shouldOnlyAnswerWindowsAfterGapMarkedByAnotherReplica() {
+        // Given
+        long failedAt = System.currentTimeMillis() - Duration.ofMinutes(30).toMillis();
+        when(valueOperations.get(RedisFeatureStore.key(walletId, "gap"))).thenReturn(Mono.just(String.valueOf(failedAt)));
+
+        // When
+        WalletFeatures features = store.fetch(walletId, List.of(10, 60)).orElseThrow();
+
+        // Then
+        assertEquals(OptionalInt.of(4), features.count(10));
+        assertEquals(OptionalInt.empty(), features.count(60));
+    }
+}
@@ -0,0 +1,112 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
+import com.patorinaldi.wallet.fraud.entity.FraudRule;
+import com.patorinaldi.wallet.fraud.entity.RuleType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RiskFeedPublisherTest {
+
+    @Mock
+    private FraudRuleRegistry ruleRegistry;
+
+    @Mock
+    private FraudTransactionHistoryService historyService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private RiskFeedPublisher publisher;
+
+    @BeforeEach
+    void setup() {
+        publisher = new RiskFeedPublisher(ruleRegistry, historyService, eventPublisher,
+                new TransactionTemplate(transactionManager), true, 30_000);
+    }
+
+    @Test
+    void publishRules_shouldPublishActiveRulesWithThresholds() {
+        // Given
+        when(ruleRegistry.current())
+                .thenReturn(FraudRuleSet.compile(List.of(rule("LARGE_AMOUNT", RuleType.AMOUNT_THRESHOLD, "10000", null))));
+
+        // When
+        publisher.publishRules();
+
+        // Then
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(eventPublisher).publishEvent(captor.capture());
+        FraudRulesPublishedEvent event = assertInstanceOf(FraudRulesPublishedEvent.class, captor.getValue());
+        assertEquals(FraudRuleSet.FLAG_THRESHOLD, event.flagThreshold());
+        assertEquals(FraudRuleSet.BLOCK_THRESHOLD, event.blockThreshold());
+        assertEquals(1, event.rules().size());
+        assertEquals("AMOUNT_THRESHOLD", event.rules().getFirst().ruleType());
+        assertEquals(0, new BigDecimal("10000").compareTo(event.rules().getFirst().threshold()));
+    }
+
+    @Test
+    void publishProfile_shouldKeepEnoughActivityForEveryVelocityRule() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletRiskProfileEvent profile = WalletRiskProfileEvent.builder()
+                .walletId(walletId)
+                .recentActivity(List.of())
+                .asOf(Instant.now())
+                .build();
+        when(historyService.riskProfile(walletId, 120, 21)).thenReturn(profile);
+
+        // When
+        publisher.publishProfile(walletId, FraudRuleSet.compile(List.of(
+                rule("HIGH_VELOCITY", RuleType.VELOCITY, "10", 60),
+                rule("EXTREME_VELOCITY", RuleType.VELOCITY, "20", 120),
+                rule("NEW_WALLET", RuleType.NEW_ACCOUNT, null, 1440))));
+
+        // Then
+        verify(eventPublisher).publishEvent(profile);
+    }
+
+    @Test
+    void publishProfile_shouldDoNothing_whenFeedIsDisabled() {
+        // Given
+        RiskFeedPublisher disabled = new RiskFeedPublisher(ruleRegistry, historyService, eventPublisher,
+                new TransactionTemplate(transactionManager), false, 30_000);
+
+        // When
+        disabled.publishProfile(UUID.randomUUID(), FraudRuleSet.compile(List.of(rule("HIGH_VELOCITY", RuleType.VELOCITY, "10", 60))));
+
+        // Then
+        verifyNoInteractions(historyService, eventPublisher);
+    }
+
+    private FraudRule rule(String code, RuleType type, String threshold, Integer windowMinutes) {
+        return FraudRule.builder()
+                .ruleCode(code)
+                .ruleType(type)
+                .threshold(threshold == null ? null : new BigDecimal(threshold))
+                .scoreImpact(25)
+                .timeWindowMinutes(windowMinutes)
+                .active(true)
+                .build();
+    }
+}
@@ -5,7 +5,6 @@ import com.patorinaldi.wallet.fraud.dto.FraudCheckRequest;
 import com.patorinaldi.wallet.fraud.dto.FraudCheckResponse;
 import com.patorinaldi.wallet.fraud.entity.FraudRule;
 import com.patorinaldi.wallet.fraud.entity.RuleType;
-import com.patorinaldi.wallet.fraud.repository.FraudRuleRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -13,8 +12,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
-import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -24,11 +24,14 @@ import static org.mockito.Mockito.*;
 class SyncFraudCheckServiceTest {
 
     @Mock
-    private FraudRuleRepository fraudRuleRepository;
+    private FraudRuleRegistry ruleRegistry;
 
     @Mock
     private FraudTransactionHistoryService historyService;
 
+    @Mock
+    private RedisFeatureStore featureStore;
+
     @InjectMocks
     private SyncFraudCheckService syncFraudCheckService;
 
@@ -36,7 +39,7 @@ class SyncFraudCheckServiceTest {
     void checkTransaction_shouldReturnApprove_whenNoRulesTriggered() {
         // Given
         FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("100.00"));
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(Collections.emptyList());
+        givenRules();
 
         // When
         FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
@@ -49,37 +52,41 @@ class SyncFraudCheckServiceTest {
     }
 
     @Test
-    void checkTransaction_shouldReturnApprove_whenScoreBelowFlagThreshold() {
+    void checkTransaction_shouldSkipRules_whenTheyCannotReachFlagThreshold() {
         // Given
         FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("100.00"));
         FraudRule newWalletRule = createNewWalletRule(); // Score impact: 15
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(newWalletRule));
-        when(historyService.isNewWallet(any(), anyInt())).thenReturn(true);
+        givenRules(newWalletRule);
 
         // When
         FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
 
         // Then
-        assertEquals("APPROVE", response.decision());
-        assertEquals(15, response.riskScore());
-        assertTrue(response.triggeredRules().contains("NEW_WALLET"));
+        assertEquals("APPROVE", response.decision()); // 15 < 50 even if triggered
+        assertEquals(0, response.riskScore());
+        verify(historyService, never()).isNewWallet(any(), anyInt());
     }
 
     @Test
-    void checkTransaction_shouldReturnFlag_whenScoreReachesFlagThreshold() {
+    void checkTransaction_shouldReturnApprove_whenScoreBelowFlagThreshold() {
         // Given
         FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("15000.00"));
         FraudRule largeAmountRule = createLargeAmountRule(); // Score impact: 30
+        FraudRule newWalletRule = createNewWalletRule(); // Score impact: 15
+        FraudRule unusualPatternRule = createUnusualPatternRule(); // Score impact: 20
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(largeAmountRule));
+        givenRules(largeAmountRule, newWalletRule, unusualPatternRule);
+        when(historyService.isNewWallet(any(), anyInt())).thenReturn(true);
+        when(historyService.isUnusualAmount(any(), any(), any())).thenReturn(false);
 
         // When
         FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
 
         // Then
-        assertEquals("APPROVE", response.decision()); // 30 < 50, still approved
-        assertEquals(30, response.riskScore());
+        assertEquals("APPROVE", response.decision()); // 45 < 50, still approved
+        assertEquals(45, response.riskScore());
+        assertEquals(List.of("LARGE_AMOUNT", "NEW_WALLET"), response.triggeredRules());
     }
 
     @Test
@@ -89,7 +96,7 @@ class SyncFraudCheckServiceTest {
         FraudRule largeAmountRule = createLargeAmountRule(); // Score impact: 30
         FraudRule velocityRule = createVelocityRule(); // Score impact: 25
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(largeAmountRule, velocityRule));
+        givenRules(largeAmountRule, velocityRule);
         when(historyService.countTransactionsInWindow(any(), anyInt())).thenReturn(15); // Exceeds threshold of 10
 
         // When
@@ -111,7 +118,7 @@ class SyncFraudCheckServiceTest {
         FraudRule velocityRule = createVelocityRule(); // Score impact: 25
         FraudRule newWalletRule = createNewWalletRule(); // Score impact: 15
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(veryLargeAmountRule, velocityRule, newWalletRule));
+        givenRules(veryLargeAmountRule, velocityRule, newWalletRule);
         when(historyService.countTransactionsInWindow(any(), anyInt())).thenReturn(15);
         when(historyService.isNewWallet(any(), anyInt())).thenReturn(true);
 
@@ -128,28 +135,48 @@ class SyncFraudCheckServiceTest {
     @Test
     void checkTransaction_shouldEvaluateUnusualPatternRule() {
         // Given
-        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("5000.00"));
+        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("15000.00"));
+        FraudRule largeAmountRule = createLargeAmountRule(); // Score impact: 30
         FraudRule unusualPatternRule = createUnusualPatternRule(); // Score impact: 20
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(unusualPatternRule));
+        givenRules(unusualPatternRule, largeAmountRule);
         when(historyService.isUnusualAmount(any(), any(), any())).thenReturn(true);
 
         // When
         FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
 
         // Then
-        assertEquals("APPROVE", response.decision());
-        assertEquals(20, response.riskScore());
-        assertTrue(response.triggeredRules().contains("UNUSUAL_AMOUNT"));
+        assertEquals("FLAG", response.decision()); // 50 >= 50
+        assertEquals(50, response.riskScore());
+        assertEquals(List.of("LARGE_AMOUNT", "UNUSUAL_AMOUNT"), response.triggeredRules());
+    }
+
+    @Test
+    void checkTransaction_shouldEvaluateDistinctCounterpartiesRule() {
+        // Given
+        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("15000.00"));
+        FraudRule largeAmountRule = createLargeAmountRule(); // Score impact: 30
+        FraudRule fanOutRule = createDistinctCounterpartiesRule(); // Score impact: 25
+
+        givenRules(largeAmountRule, fanOutRule);
+        when(historyService.countDistinctCounterparties(any(), eq(60))).thenReturn(6); // Exceeds threshold of 5
+
+        // When
+        FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
+
+        // Then
+        assertEquals("FLAG", response.decision()); // 55 >= 50
+        assertEquals(List.of("LARGE_AMOUNT", "FAN_OUT"), response.triggeredRules());
     }
 
     @Test
     void checkTransaction_shouldNotTriggerVelocityRule_whenBelowThreshold() {
         // Given
-        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("100.00"));
-        FraudRule velocityRule = createVelocityRule();
+        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("15000.00"));
+        FraudRule largeAmountRule = createLargeAmountRule(); // Score impact: 30
+        FraudRule velocityRule = createVelocityRule(); // Score impact: 25
 
-        when(fraudRuleRepository.findByActiveTrue()).thenReturn(List.of(velocityRule));
+        givenRules(largeAmountRule, velocityRule);
         when(historyService.countTransactionsInWindow(any(), anyInt())).thenReturn(5); // Below threshold of 10
 
         // When
@@ -157,12 +184,64 @@ class SyncFraudCheckServiceTest {
 
         // Then
         assertEquals("APPROVE", response.decision());
-        assertEquals(0, response.riskScore());
-        assertTrue(response.triggeredRules().isEmpty());
+        assertEquals(30, response.riskScore());
+        assertEquals(List.of("LARGE_AMOUNT"), response.triggeredRules());
+    }
+
+    @Test
+    void checkTransaction_shouldSkipCostlyRules_whenAmountRulesAlreadyBlock() {
+        // Given
+        FraudCheckRequest request = createFraudCheckRequest(new BigDecimal("60000.00"));
+        givenRules(createUnusualPatternRule(), createVelocityRule(), createNewWalletRule(),
+                createLargeAmountRule(), createVeryLargeAmountRule()); // 50 + 30 = 80 from amounts alone
+
+        // When
+        FraudCheckResponse response = syncFraudCheckService.checkTransaction(request);
+
+        // Then
+        assertEquals("BLOCK", response.decision());
+        assertEquals(80, response.riskScore());
+        assertEquals(List.of("VERY_LARGE_AMOUNT", "LARGE_AMOUNT"), response.triggeredRules());
+        verifyNoInteractions(historyService);
     }
 
     // ========== HELPER METHODS ==========
 
+    @Test
+    void checkTransactions_shouldShareRuleAndHistoryLookupsAcrossBatch() {
+        // Given
+        FraudCheckRequest busy = createFraudCheckRequest(new BigDecimal("15000.00"));
+        FraudCheckRequest large = createFraudCheckRequest(new BigDecimal("15000.00"));
+        FraudCheckRequest unusual = createFraudCheckRequest(new BigDecimal("15000.00"));
+        List<FraudCheckRequest> requests = List.of(busy, large, unusual);
+        Set<UUID> walletIds = Set.of(busy.walletId(), large.walletId(), unusual.walletId());
+
+        givenRules(
+                createLargeAmountRule(), createVelocityRule(), createNewWalletRule(), createUnusualPatternRule());
+        when(historyService.countTransactionsInWindowByWallet(walletIds, 60)).thenReturn(Map.of(busy.walletId(), 11));
+        when(historyService.findNewWallets(walletIds, 1440)).thenReturn(Set.of(large.walletId()));
+        when(historyService.findAverageAmounts(walletIds)).thenReturn(Map.of(unusual.walletId(), new BigDecimal("1000.00")));
+        when(historyService.isUnusualAmount(any(), any(), any(), any())).thenCallRealMethod();
+
+        // When
+        List<FraudCheckResponse> responses = syncFraudCheckService.checkTransactions(requests);
+
+        // Then
+        assertEquals(3, responses.size());
+        assertEquals(List.of("LARGE_AMOUNT", "HIGH_VELOCITY"), responses.get(0).triggeredRules());
+        assertEquals(List.of("LARGE_AMOUNT", "NEW_WALLET"), responses.get(1).triggeredRules());
+        assertEquals(List.of("LARGE_AMOUNT", "UNUSUAL_AMOUNT"), responses.get(2).triggeredRules());
+        verify(ruleRegistry, times(1)).current();
+        verify(historyService, times(1)).countTransactionsInWindowByWallet(walletIds, 60);
+        verify(historyService, times(1)).findNewWallets(walletIds, 1440);
+        verify(historyService, times(1)).findAverageAmounts(walletIds);
+        verify(historyService, never()).countTransactionsInWindow(any(), anyInt());
+    }
+
+    private void givenRules(FraudRule... rules) {
+        when(ruleRegistry.current()).thenReturn(FraudRuleSet.compile(List.of(rules)));
+    }
+
     private FraudCheckRequest createFraudCheckRequest(BigDecimal amount) {
         return new FraudCheckRequest(
                 UUID.randomUUID(),
@@ -223,4 +302,15 @@ class SyncFraudCheckServiceTest {
                 .active(true)
                 .build();
     }
+
+    private FraudRule createDistinctCounterpartiesRule() {
+        return FraudRule.builder()
+                .ruleCode("FAN_OUT")
+                .ruleType(RuleType.DISTINCT_COUNTERPARTIES)
+                .threshold(new BigDecimal("5"))
+                .scoreImpact(25)
+                .timeWindowMinutes(60)
+                .active(true)
+                .build();
+    }
 }
@@ -0,0 +1,250 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VelocityWindowsTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Mock
+    private FraudTransactionHistoryRepository historyRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void count_shouldIncludeHistoryLoadedAtStartupAndTransactionsRecordedSince() {
+        // Given
+        Instant now = Instant.now();
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of(
+                occurrence(walletId, now.minus(Duration.ofMinutes(50))),
+                occurrence(walletId, now.minus(Duration.ofMinutes(5))),
+                occurrence(UUID.randomUUID(), now.minus(Duration.ofMinutes(5)))));
+        VelocityWindows windows = windows(60, 60);
+        windows.hydrate();
+
+        // When
+        windows.record(walletId, now);
+
+        // Then
+        assertEquals(OptionalInt.of(3), windows.count(walletId, 60));
+        assertEquals(OptionalInt.of(2), windows.count(walletId, 10));
+        assertEquals(OptionalInt.of(0), windows.count(UUID.randomUUID(), 60));
+    }
+
+    @Test
+    void count_shouldErOnTheHighSideByAtMostOneBucket() {
+        // Given
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(60, 60);
+        windows.hydrate();
+        Instant now = Instant.parse("2026-01-01T10:30:30Z");
+        windows.record(walletId, Instant.parse("2026-01-01T10:20:10Z"), now);
+        windows.record(walletId, Instant.parse("2026-01-01T10:20:40Z"), now);
+        windows.record(walletId, Instant.parse("2026-01-01T10:19:50Z"), now);
+
+        // When
+        OptionalInt count = windows.count(walletId, 10, now);
+
+        // Then - the 10:20 bucket is counted whole; 10:19:50 is outside it
+        assertEquals(OptionalInt.of(2), count);
+    }
+
+    @Test
+    void count_shouldNotAnswer_beforeLoadOrBeyondHorizon() {
+        // Given
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(60, 60);
+
+        // When & Then
+        assertTrue(windows.count(walletId, 60).isEmpty());
+        windows.hydrate();
+        assertTrue(windows.count(walletId, 60).isPresent());
+        assertTrue(windows.count(walletId, 61).isEmpty());
+        assertFalse(windows.covers(120));
+    }
+
+    @Test
+    void record_shouldReuseSlotsAsTheRingWrapsAround() {
+        // Given
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(5, 60);
+        windows.hydrate();
+        Instant at = Instant.parse("2026-01-01T10:00:00Z");
+
+        // When - one per minute for twenty minutes, more than the ring holds
+        for (int minute = 0; minute <= 20; minute++) {
+            at = Instant.parse("2026-01-01T10:00:00Z").plus(Duration.ofMinutes(minute));
+            windows.record(walletId, at, at);
+        }
+
+        // Then - 10:15 to 10:20
+        assertEquals(OptionalInt.of(6), windows.count(walletId, 5, at));
+    }
+
+    @Test
+    void evictIdle_shouldDropWalletsWithNothingInTheHorizon() {
+        // Given
+        Instant now = Instant.now();
+        when(historyRepository.findOccurrencesAfter(any()))
+                .thenReturn(List.of(occurrence(walletId, now.minus(Duration.ofMinutes(59)))));
+        VelocityWindows windows = windows(60, 60);
+        windows.hydrate();
+        UUID recent = UUID.randomUUID();
+        windows.record(recent, now);
+
+        // When
+        windows.evictIdle(now.plus(Duration.ofMinutes(30)));
+
+        // Then
+        assertEquals(1, windows.size());
+        assertEquals(1.0, meterRegistry.get("fraud.velocity.wallets").gauge().value());
+        assertEquals(OptionalInt.of(0), windows.count(walletId, 60));
+        assertEquals(OptionalInt.of(1), windows.count(recent, 60));
+    }
+
+    @Test
+    void record_shouldDoNothing_whenDisabled() {
+        // Given
+        VelocityWindows disabled = new VelocityWindows(historyRepository, meterRegistry, false, 60, 60);
+        disabled.hydrate();
+
+        // When
+        disabled.record(walletId, Instant.now());
+
+        // Then
+        assertEquals(0, disabled.size());
+        assertTrue(disabled.count(walletId, 60).isEmpty());
+        verifyNoInteractions(historyRepository);
+    }
+
+    @Test
+    void bytesPerWallet_shouldReportMemoryForOneHourOfMinuteBuckets() {
+        // Given
+        VelocityWindows windows = windows(60, 60);
+
+        // When
+        long bytes = windows.bytesPerWallet();
+
+        // Then - 61 eight-byte slots plus ring, map entry and key
+        assertEquals(592, bytes);
+        assertEquals(0.0, meterRegistry.get("fraud.velocity.bytes").gauge().value());
+    }
+
+    @Test
+    void count_shouldAnswerInMicroseconds() {
+        // Given
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(60, 60);
+        windows.hydrate();
+        Instant now = Instant.now();
+        for (int i = 0; i < 500; i++) {
+            windows.record(walletId, now.minusSeconds(i * 7L));
+        }
+
+        // When
+        long sink = 0;
+        for (int i = 0; i < 100_000; i++) {
+            sink += windows.count(walletId, 60).getAsInt();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            sink += windows.count(walletId, 60).getAsInt();
+        }
+        long nanosPerCount = (System.nanoTime() - started) / 100_000;
+
+        // Then
+        System.out.printf("Velocity window count: %dns per call%n", nanosPerCount);
+        assertTrue(sink > 0);
+        assertTrue(nanosPerCount < 20_000, "in-memory count took " + nanosPerCount + "ns");
+    }
+
+    @Test
+    void record_shouldBeTakenBack_whenBatchRollsBack_soTheRetryCountsOnce() {
+        // Given - a batch of two events for the wallet that fails after both are recorded
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(60, 60);
+        windows.hydrate();
+        Instant now = Instant.now();
+        TransactionSynchronizationManager.initSynchronization();
+        windows.record(walletId, now);
+        windows.record(walletId, now);
+        assertEquals(OptionalInt.of(2), windows.count(walletId, 10));
+
+        // When - the batch rolls back and the events are retried one by one
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+        for (int event = 0; event < 2; event++) {
+            TransactionSynchronizationManager.initSynchronization();
+            windows.record(walletId, now);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertEquals(OptionalInt.of(2), windows.count(walletId, 10));
+    }
+
+    @Test
+    void unrecord_shouldLeaveNewerBucketAlone_onceTheSlotWrapped() {
+        // Given
+        when(historyRepository.findOccurrencesAfter(any())).thenReturn(List.of());
+        VelocityWindows windows = windows(5, 60);
+        windows.hydrate();
+        Instant old = Instant.parse("2026-01-01T10:00:00Z");
+        Instant wrapped = old.plus(Duration.ofMinutes(6));
+        windows.record(walletId, old, old);
+        windows.record(walletId, wrapped, wrapped);
+
+        // When
+        windows.unrecord(walletId, old);
+
+        // Then
+        assertEquals(OptionalInt.of(1), windows.count(walletId, 5, wrapped));
+    }
+
+    private VelocityWindows windows(int horizonMinutes, int bucketSeconds) {
+        return new VelocityWindows(historyRepository, meterRegistry, true, horizonMinutes, bucketSeconds);
+    }
+
+    private static FraudTransactionHistoryRepository.WalletOccurrence occurrence(UUID walletId, Instant occurredAt) {
+        return new FraudTransactionHistoryRepository.WalletOccurrence() {
+            @Override
+            public UUID getWalletId() {
+                return walletId;
+            }
+
+            @Override
+            public Instant getOccurredAt() {
+                return occurredAt;
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.WalletAmountStats;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletAmountStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletAmountStatsServiceTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Mock
+    private WalletAmountStatsRepository statsRepository;
+
+    @Mock
+    private FraudTransactionHistoryRepository historyRepository;
+
+    private WalletAmountStatsService service;
+
+    @BeforeEach
+    void setup() {
+        service = new WalletAmountStatsService(statsRepository, historyRepository, 0.1);
+    }
+
+    @Test
+    void record_shouldSeedFromHistory_whenWalletHasNoStatsYet() {
+        // Given
+        when(statsRepository.findById(walletId)).thenReturn(Optional.empty());
+        when(historyRepository.aggregateAmountsByWalletId(walletId)).thenReturn(aggregate(3, 100.0, 200.0));
+
+        // When
+        service.record(walletId, new BigDecimal("500.00"));
+
+        // Then
+        ArgumentCaptor<WalletAmountStats> captor = ArgumentCaptor.forClass(WalletAmountStats.class);
+        verify(statsRepository).save(captor.capture());
+        WalletAmountStats saved = captor.getValue();
+        assertEquals(4, saved.getCount());
+        assertEquals(200.0, saved.getMean(), 1e-9);
+        assertEquals(140.0, saved.getEwma(), 1e-9);
+    }
+
+    @Test
+    void record_shouldUpdateExistingStatsWithoutTouchingHistory() {
+        // Given
+        WalletAmountStats stats = stats(2, 100.0);
+        when(statsRepository.findById(walletId)).thenReturn(Optional.of(stats));
+
+        // When
+        service.record(walletId, new BigDecimal("400.00"));
+
+        // Then
+        assertEquals(3, stats.getCount());
+        assertEquals(200.0, stats.getMean(), 1e-9);
+        verify(statsRepository).save(stats);
+        verifyNoInteractions(historyRepository);
+    }
+
+    @Test
+    void averageAmount_shouldUseStats_andFallBackToHistoryAverage() {
+        // Given
+        UUID legacyWallet = UUID.randomUUID();
+        when(statsRepository.findById(walletId)).thenReturn(Optional.of(stats(5, 250.0)));
+        when(statsRepository.findById(legacyWallet)).thenReturn(Optional.empty());
+        when(historyRepository.findAverageAmountByWalletId(legacyWallet)).thenReturn(new BigDecimal("80.00"));
+
+        // When & Then
+        assertEquals(0, new BigDecimal("250").compareTo(service.averageAmount(walletId)));
+        assertEquals(0, new BigDecimal("80.00").compareTo(service.averageAmount(legacyWallet)));
+        verify(historyRepository, never()).findAverageAmountByWalletId(walletId);
+    }
+
+    @Test
+    void averageAmounts_shouldQueryHistoryOnlyForWalletsWithoutStats() {
+        // Given
+        UUID legacyWallet = UUID.randomUUID();
+        when(statsRepository.findAllById(Set.of(walletId, legacyWallet))).thenReturn(List.of(stats(5, 250.0)));
+        FraudTransactionHistoryRepository.WalletAverage legacyAverage = mock(FraudTransactionHistoryRepository.WalletAverage.class);
+        when(legacyAverage.getWalletId()).thenReturn(legacyWallet);
+        when(legacyAverage.getAverage()).thenReturn(new BigDecimal("80.00"));
+        when(historyRepository.findAverageAmountByWalletIdIn(Set.of(legacyWallet))).thenReturn(List.of(legacyAverage));
+
+        // When
+        Map<UUID, BigDecimal> averages = service.averageAmounts(Set.of(walletId, legacyWallet));
+
+        // Then
+        assertEquals(2, averages.size());
+        assertEquals(0, new BigDecimal("250").compareTo(averages.get(walletId)));
+        assertEquals(0, new BigDecimal("80.00").compareTo(averages.get(legacyWallet)));
+    }
+
+    private WalletAmountStats stats(long count, double mean) {
+        return WalletAmountStats.builder()
+                .walletId(walletId)
+                .count(count)
+                .mean(mean)
+                .ewma(mean)
+                .updatedAt(Instant.now())
+                .build();
+    }
+
+    private static FraudTransactionHistoryRepository.AmountAggregate aggregate(long count, double mean, double m2) {
+        return new FraudTransactionHistoryRepository.AmountAggregate() {
+            @Override
+            public long getCount() {
+                return count;
+            }
+
+            @Override
+            public double getMean() {
+                return mean;
+            }
+
+            @Override
+            public double getM2() {
+                return m2;
+            }
+        };
+    }
+}
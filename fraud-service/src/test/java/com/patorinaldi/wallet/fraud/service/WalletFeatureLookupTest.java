@@ -0,0 +1,88 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletFeatureLookupTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    @Mock
+    private FraudTransactionHistoryService historyService;
+
+    @Mock
+    private RedisFeatureStore featureStore;
+
+    @Test
+    void lookup_shouldFetchAllFeaturesOnce_whenStoreEnabled() {
+        // Given
+        when(featureStore.enabled()).thenReturn(true);
+        when(featureStore.fetch(walletId, List.of(60))).thenReturn(Optional.of(new WalletFeatures(
+                Map.of(60, 12), Instant.now().minusSeconds(600), new BigDecimal("100.00"))));
+        when(historyService.isUnusualAmount(walletId, new BigDecimal("500.00"), new BigDecimal("100.00"), BigDecimal.TWO))
+                .thenReturn(true);
+        WalletFeatureLookup lookup = new WalletFeatureLookup(historyService, featureStore, walletId, List.of(60));
+
+        // When
+        int count = lookup.countTransactionsInWindow(60);
+        boolean isNew = lookup.isNewWallet(1440);
+        boolean unusual = lookup.isUnusualAmount(new BigDecimal("500.00"), BigDecimal.TWO);
+
+        // Then
+        assertEquals(12, count);
+        assertTrue(isNew);
+        assertTrue(unusual);
+        verify(featureStore, times(1)).fetch(walletId, List.of(60));
+        verify(historyService, never()).countTransactionsInWindow(any(), any());
+        verify(historyService, never()).isNewWallet(any(), any());
+    }
+
+    @Test
+    void lookup_shouldFallBackPerFeature_whenStoreCannotAnswer() {
+        // Given
+        when(featureStore.enabled()).thenReturn(true);
+        when(featureStore.fetch(walletId, List.of(60))).thenReturn(Optional.of(new WalletFeatures(Map.of(), null, null)));
+        when(historyService.countTransactionsInWindow(walletId, 60)).thenReturn(3);
+        when(historyService.isNewWallet(walletId, 1440)).thenReturn(false);
+        WalletFeatureLookup lookup = new WalletFeatureLookup(historyService, featureStore, walletId, List.of(60));
+
+        // When
+        int count = lookup.countTransactionsInWindow(60);
+        boolean isNew = lookup.isNewWallet(1440);
+        lookup.isUnusualAmount(BigDecimal.TEN, BigDecimal.TWO);
+
+        // Then
+        assertEquals(3, count);
+        assertFalse(isNew);
+        verify(historyService).isUnusualAmount(walletId, BigDecimal.TEN, BigDecimal.TWO);
+    }
+
+    @Test
+    void lookup_shouldNotTouchStore_whenDisabled() {
+        // Given
+        when(featureStore.enabled()).thenReturn(false);
+        when(historyService.countTransactionsInWindow(walletId, 60)).thenReturn(7);
+        WalletFeatureLookup lookup = new WalletFeatureLookup(historyService, featureStore, walletId, List.of(60));
+
+        // When
+        int count = lookup.countTransactionsInWindow(60);
+
+        // Then
+        assertEquals(7, count);
+        verify(featureStore, never()).fetch(any(UUID.class), any());
+    }
+}
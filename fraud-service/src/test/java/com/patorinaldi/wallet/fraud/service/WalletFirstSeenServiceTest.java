@@ -0,0 +1,140 @@
+package com.patorinaldi.wallet.fraud.service;
+
+import com.patorinaldi.wallet.fraud.entity.FraudTransactionHistory;
+import com.patorinaldi.wallet.fraud.entity.WalletFirstSeen;
+import com.patorinaldi.wallet.fraud.repository.FraudTransactionHistoryRepository;
+import com.patorinaldi.wallet.fraud.repository.WalletFirstSeenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WalletFirstSeenServiceTest {
+
+    private final UUID walletId = UUID.randomUUID();
+    private final Instant createdAt = Instant.now().minus(2, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS);
+
+    @Mock
+    private WalletFirstSeenRepository firstSeenRepository;
+
+    @Mock
+    private FraudTransactionHistoryRepository historyRepository;
+
+    private WalletFirstSeenService service;
+
+    @BeforeEach
+    void setup() {
+        service = new WalletFirstSeenService(firstSeenRepository, historyRepository, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void firstSeen_shouldAnswerFromIndex_afterHydration() {
+        // Given
+        when(firstSeenRepository.findAll()).thenReturn(List.of(new WalletFirstSeen(walletId, createdAt)));
+        service.hydrate();
+
+        // When
+        Optional<Instant> firstSeen = service.firstSeen(walletId);
+
+        // Then
+        assertEquals(Optional.of(createdAt), firstSeen);
+        verify(firstSeenRepository, never()).findById(any());
+        verifyNoInteractions(historyRepository);
+    }
+
+    @Test
+    void firstSeen_shouldLoadFromHistoryOnce_whenNotStored() {
+        // Given
+        when(firstSeenRepository.findById(walletId)).thenReturn(Optional.empty());
+        when(historyRepository.findFirstByWalletIdOrderByOccurredAtAsc(walletId))
+                .thenReturn(FraudTransactionHistory.builder().walletId(walletId).occurredAt(createdAt).build());
+
+        // When
+        Optional<Instant> first = service.firstSeen(walletId);
+        Optional<Instant> second = service.firstSeen(walletId);
+
+        // Then
+        assertEquals(Optional.of(createdAt), first);
+        assertEquals(first, second);
+        verify(firstSeenRepository, times(1)).findById(walletId);
+        verify(historyRepository, times(1)).findFirstByWalletIdOrderByOccurredAtAsc(walletId);
+    }
+
+    @Test
+    void firstSeen_shouldNotCache_whenWalletNeverSeen() {
+        // Given
+        when(firstSeenRepository.findById(walletId)).thenReturn(Optional.empty());
+
+        // When
+        service.firstSeen(walletId);
+        Optional<Instant> firstSeen = service.firstSeen(walletId);
+
+        // Then
+        assertTrue(firstSeen.isEmpty());
+        verify(firstSeenRepository, times(2)).findById(walletId);
+    }
+
+    @Test
+    void record_shouldKeepEarliest_whenTransactionFollowsCreation() {
+        // Given
+        when(firstSeenRepository.findAll()).thenReturn(List.of(new WalletFirstSeen(walletId, createdAt)));
+        service.hydrate();
+
+        // When
+        service.record(walletId, createdAt.plusSeconds(60));
+
+        // Then
+        assertEquals(Optional.of(createdAt), service.firstSeen(walletId));
+        verify(firstSeenRepository, never()).upsertEarliest(any(), any());
+    }
+
+    @Test
+    void record_shouldStoreEarlierTime_forUnknownWallet() {
+        // Given
+        Instant stored = createdAt.plusSeconds(3600);
+        when(firstSeenRepository.findById(walletId)).thenReturn(Optional.of(new WalletFirstSeen(walletId, stored)));
+
+        // When
+        service.record(walletId, createdAt);
+
+        // Then
+        verify(firstSeenRepository).upsertEarliest(walletId, createdAt);
+        assertEquals(Optional.of(createdAt), service.firstSeen(walletId));
+    }
+
+    @Test
+    void firstSeenBatch_shouldQueryOnlyUnknownWallets() {
+        // Given
+        UUID stored = UUID.randomUUID();
+        UUID historyOnly = UUID.randomUUID();
+        UUID unseen = UUID.randomUUID();
+        when(firstSeenRepository.findAll()).thenReturn(List.of(new WalletFirstSeen(walletId, createdAt)));
+        service.hydrate();
+        when(firstSeenRepository.findAllById(List.of(stored, historyOnly, unseen)))
+                .thenReturn(List.of(new WalletFirstSeen(stored, createdAt)));
+        FraudTransactionHistoryRepository.WalletFirstSeen row = mock(FraudTransactionHistoryRepository.WalletFirstSeen.class);
+        when(row.getWalletId()).thenReturn(historyOnly);
+        when(row.getFirstSeen()).thenReturn(createdAt);
+        when(historyRepository.findFirstSeenByWalletIdIn(List.of(historyOnly, unseen))).thenReturn(List.of(row));
+
+        // When
+        Map<UUID, Instant> firstSeen = service.firstSeen(List.of(walletId, stored, historyOnly, unseen));
+
+        // Then
+        assertEquals(Map.of(walletId, createdAt, stored, createdAt, historyOnly, createdAt), firstSeen);
+    }
+}
@@ -0,0 +1,192 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fraud client that coalesces concurrent checks into calls to {@code /api/fraud/check/batch}.
+ *
+ * <p>Callers enqueue their check and wait for its own result. A dispatcher thread collects
+ * checks for up to {@code window-ms} (or until {@code max-size} is reached) and sends them as
+ * one request, without waiting for earlier batches to return, so several batches can be in
+ * flight at once. A failed or timed-out batch fails every check in it, and each caller then
+ * falls back through the circuit breaker as with {@link FraudClientImpl}. Enable with
+ * {@code fraud.service.batch.enabled=true}.
+ */
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "fraud.service.batch.enabled", havingValue = "true")
+public class CoalescingFraudClient implements FraudClient {
+
+    private final WebClient webClient;
+    private final Duration timeout;
+    private final long windowNanos;
+    private final int maxSize;
+
+    private final BlockingQueue<PendingCheck> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher = Thread.ofPlatform().name("fraud-check-batcher").daemon().unstarted(this::run);
+    private final Timer batchTimer;
+    private final DistributionSummary batchSize;
+    private volatile boolean running = true;
+
+    public CoalescingFraudClient(
+            WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${fraud.service.url:http://localhost:8085}") String fraudServiceUrl,
+            @Value("${fraud.service.timeout-ms:1000}") long timeoutMs,
+            @Value("${fraud.service.batch.window-ms:2}") long windowMs,
+            @Value("${fraud.service.batch.max-size:128}") int maxSize) {
+
+        this.webClient = webClientBuilder
+                .baseUrl(fraudServiceUrl)
+                .build();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxSize = maxSize;
+        this.batchTimer = meterRegistry.timer("fraud.client.batch");
+        this.batchSize = meterRegistry.summary("fraud.client.batch.size");
+        meterRegistry.gaugeCollectionSize("fraud.client.batch.pending", List.of(), queue);
+
+        log.info("Coalescing FraudClient initialized with URL: {}, window: {}ms, max batch: {}",
+                fraudServiceUrl, windowMs, maxSize);
+    }
+
+    @PostConstruct
+    void start() {
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Override
+    @CircuitBreaker(name = "fraudService", fallbackMethod = "fallbackCheck")
+    public FraudCheckResponse checkTransaction(FraudCheckRequest request) {
+        if (!running) {
+            throw new IllegalStateException("Fraud check batcher is shutting down");
+        }
+        PendingCheck check = new PendingCheck(request, new CompletableFuture<>());
+        queue.add(check);
+        try {
+            FraudCheckResponse response = check.result().get(timeout.toNanos() + windowNanos, TimeUnit.NANOSECONDS);
+
+            log.info("Fraud check result for wallet {}: decision={}, riskScore={}",
+                    request.walletId(), response.decision(), response.riskScore());
+
+            return response;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Fraud check timed out for wallet " + request.walletId(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for fraud check", e);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private FraudCheckResponse fallbackCheck(FraudCheckRequest request, Throwable throwable) {
+        log.warn("Fraud service unavailable for wallet {}. Applying fail-open with FLAG. Error: {}",
+                request.walletId(), throwable.getMessage());
+
+        return FraudCheckResponse.serviceUnavailable();
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCheck first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    send(collect(first));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Fraud check batch loop failed", e);
+            }
+        }
+    }
+
+    private List<PendingCheck> collect(PendingCheck first) throws InterruptedException {
+        List<PendingCheck> batch = new ArrayList<>();
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingCheck next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    void send(List<PendingCheck> batch) {
+        long started = System.nanoTime();
+        batchSize.record(batch.size());
+        FraudCheckBatchRequest request = new FraudCheckBatchRequest(batch.stream().map(PendingCheck::request).toList());
+
+        webClient.post()
+                .uri("/api/fraud/check/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(FraudCheckBatchResponse.class)
+                .timeout(timeout)
+                .subscribe(
+                        response -> {
+                            batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                            complete(batch, response);
+                        },
+                        error -> {
+                            log.error("Fraud check batch of {} failed: {}", batch.size(), error.getMessage());
+                            batch.forEach(check -> check.result().completeExceptionally(error));
+                        });
+    }
+
+    private static void complete(List<PendingCheck> batch, FraudCheckBatchResponse response) {
+        List<FraudCheckResponse> results = response.results();
+        if (results == null || results.size() != batch.size()) {
+            IllegalStateException mismatch = new IllegalStateException("Fraud service returned "
+                    + (results == null ? 0 : results.size()) + " results for " + batch.size() + " checks");
+            batch.forEach(check -> check.result().completeExceptionally(mismatch));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result().complete(results.get(i));
+        }
+    }
+
+    record PendingCheck(FraudCheckRequest request, CompletableFuture<FraudCheckResponse> result) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import java.util.List;
+
+public record FraudCheckBatchRequest(
+        List<FraudCheckRequest> checks
+) {
+}
@@ -5,11 +5,20 @@ import com.patorinaldi.wallet.common.enums.TransactionType;
 import java.math.BigDecimal;
 import java.util.UUID;
 
+/**
+ * A synchronous fraud check. fraud-service logs its decision under {@code checkId}; the id and
+ * the decision then travel with the transaction so the async analysis can reuse the decision.
+ */
 public record FraudCheckRequest(
         UUID walletId,
         UUID userId,
         BigDecimal amount,
         TransactionType transactionType,
-        String currency
+        String currency,
+        UUID checkId
 ) {
+    public FraudCheckRequest(UUID walletId, UUID userId, BigDecimal amount, TransactionType transactionType,
+                             String currency) {
+        this(walletId, userId, amount, transactionType, currency, null);
+    }
 }
@@ -1,5 +1,6 @@
 package com.patorinaldi.wallet.transaction.client;
 
+import java.util.Collections;
 import java.util.List;
 
 public record FraudCheckResponse(
@@ -8,6 +9,25 @@ public record FraudCheckResponse(
         List<String> triggeredRules,
         String message
 ) {
+    private static final String SERVICE_UNAVAILABLE = "FRAUD_SERVICE_UNAVAILABLE";
+
+    /**
+     * Fail-open answer used when the fraud service cannot be reached: the transaction goes
+     * through but is flagged for manual review.
+     */
+    public static FraudCheckResponse serviceUnavailable() {
+        return new FraudCheckResponse(
+                0,
+                "FLAG",
+                Collections.singletonList(SERVICE_UNAVAILABLE),
+                "Fraud service unavailable - transaction flagged for manual review"
+        );
+    }
+
+    public boolean isServiceUnavailable() {
+        return triggeredRules != null && triggeredRules.contains(SERVICE_UNAVAILABLE);
+    }
+
     public boolean isBlocked() {
         return "BLOCK".equals(decision);
     }
@@ -1,34 +1,100 @@
 package com.patorinaldi.wallet.transaction.client;
 
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat;
+import com.patorinaldi.wallet.transaction.web.RequestDeadline;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Calls {@code /api/fraud/check} one check at a time. With {@code fraud.service.binary.enabled}
+ * the check travels in the compact {@link FraudCheckWireFormat} layout; checks without a binary
+ * form go as JSON, and a fraud service that answers 415 or 406 to the binary layout is spoken
+ * to in JSON from then on.
+ *
+ * <p>Checks are spread round-robin over {@code fraud.service.url} and any
+ * {@code fraud.service.replica-urls}. With {@code fraud.service.hedge.enabled}, a check that has
+ * not been answered within the recent p95 latency is sent again to the next endpoint; whichever
+ * answers first is used and the other call is cancelled. The whole exchange is bounded by
+ * {@code timeout-ms} or, inside an API request, by what is left of its {@link RequestDeadline}
+ * minus {@code deadline-reserve-ms}, whichever is shorter.
+ */
 @Slf4j
 @Component
 public class FraudClientImpl implements FraudClient {
 
-    private final WebClient webClient;
+    private static final MediaType BINARY = MediaType.parseMediaType(FraudCheckWireFormat.MEDIA_TYPE);
+    private static final long P95_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MIN_HEDGE_SAMPLES = 20;
+
+    private final List<WebClient> endpoints;
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
     private final Duration timeout;
+    private final Duration deadlineReserve;
+    private final AtomicBoolean binary;
+    private final boolean hedgeEnabled;
+    private final Duration minHedgeDelay;
+
+    private final Timer latency;
+    private final Counter calls;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter budgetExhausted;
+
+    private volatile long p95Nanos;
+    private volatile long p95RefreshedAt = System.nanoTime() - P95_REFRESH_NANOS;
 
     public FraudClientImpl(
             WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
             @Value("${fraud.service.url:http://localhost:8085}") String fraudServiceUrl,
-            @Value("${fraud.service.timeout-ms:1000}") long timeoutMs) {
+            @Value("${fraud.service.replica-urls:}") List<String> replicaUrls,
+            @Value("${fraud.service.timeout-ms:1000}") long timeoutMs,
+            @Value("${fraud.service.deadline-reserve-ms:100}") long deadlineReserveMs,
+            @Value("${fraud.service.binary.enabled:false}") boolean binaryEnabled,
+            @Value("${fraud.service.hedge.enabled:false}") boolean hedgeEnabled,
+            @Value("${fraud.service.hedge.min-delay-ms:10}") long minHedgeDelayMs) {
 
-        this.webClient = webClientBuilder
-                .baseUrl(fraudServiceUrl)
-                .build();
+        List<String> urls = new ArrayList<>();
+        urls.add(fraudServiceUrl);
+        replicaUrls.stream().map(String::trim).filter(url -> !url.isEmpty()).forEach(urls::add);
+        this.endpoints = urls.stream()
+                .map(url -> webClientBuilder.clone().baseUrl(url).build())
+                .toList();
         this.timeout = Duration.ofMillis(timeoutMs);
+        this.deadlineReserve = Duration.ofMillis(deadlineReserveMs);
+        this.binary = new AtomicBoolean(binaryEnabled);
+        this.hedgeEnabled = hedgeEnabled;
+        this.minHedgeDelay = Duration.ofMillis(minHedgeDelayMs);
 
-        log.info("FraudClient initialized with URL: {}, timeout: {}ms", fraudServiceUrl, timeoutMs);
+        this.latency = Timer.builder("fraud.client.latency")
+                .publishPercentiles(0.95)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .distributionStatisticBufferLength(3)
+                .register(meterRegistry);
+        this.calls = meterRegistry.counter("fraud.client.calls");
+        this.hedgesSent = meterRegistry.counter("fraud.client.hedge.sent");
+        this.hedgesWon = meterRegistry.counter("fraud.client.hedge.won");
+        this.budgetExhausted = meterRegistry.counter("fraud.client.budget.exhausted");
+
+        log.info("FraudClient initialized with URLs: {}, timeout: {}ms, binary: {}, hedge: {}",
+                urls, timeoutMs, binaryEnabled, hedgeEnabled);
     }
 
     @Override
@@ -37,25 +103,145 @@ public class FraudClientImpl implements FraudClient {
         log.debug("Calling fraud service for wallet: {}, amount: {}",
                 request.walletId(), request.amount());
 
+        Duration budget = budget();
+        if (budget.isZero() || budget.isNegative()) {
+            budgetExhausted.increment();
+            log.warn("No time left in the request deadline to check wallet {} with the fraud service",
+                    request.walletId());
+            return FraudCheckResponse.serviceUnavailable();
+        }
+
+        calls.increment();
+        Attempt answer = exchange(request, budget);
+        if (answer.hedge()) {
+            hedgesWon.increment();
+        }
+
+        FraudCheckResponse response = answer.response();
+        log.info("Fraud check result for wallet {}: decision={}, riskScore={}",
+                request.walletId(), response.decision(), response.riskScore());
+
+        return response;
+    }
+
+    private Duration budget() {
+        return RequestDeadline.remaining()
+                .map(remaining -> remaining.minus(deadlineReserve))
+                .filter(remaining -> remaining.compareTo(timeout) < 0)
+                .orElse(timeout);
+    }
+
+    private Attempt exchange(FraudCheckRequest request, Duration budget) {
+        int first = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+        Mono<Attempt> primary = attempt(endpoints.get(first), request, false);
+
+        Duration hedgeDelay = hedgeDelay();
+        if (hedgeDelay == null || hedgeDelay.compareTo(budget) >= 0) {
+            return primary.timeout(budget).block();
+        }
+
+        WebClient hedgeEndpoint = endpoints.get((first + 1) % endpoints.size());
+        Mono<Attempt> hedge = Mono.delay(hedgeDelay)
+                .then(Mono.defer(() -> {
+                    hedgesSent.increment();
+                    log.debug("Fraud check for wallet {} not answered within {}ms, hedging",
+                            request.walletId(), hedgeDelay.toMillis());
+                    return attempt(hedgeEndpoint, request, true);
+                }));
+
+        return Mono.firstWithValue(primary, hedge)
+                .timeout(budget)
+                .block();
+    }
+
+    /**
+     * The recent p95 latency, refreshed at most once a second, or {@code null} while hedging is
+     * off or there are too few samples to trust it.
+     */
+    private Duration hedgeDelay() {
+        if (!hedgeEnabled || latency.count() < MIN_HEDGE_SAMPLES) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - p95RefreshedAt >= P95_REFRESH_NANOS) {
+            p95RefreshedAt = now;
+            for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+                p95Nanos = (long) percentile.value(TimeUnit.NANOSECONDS);
+            }
+        }
+        if (p95Nanos <= 0) {
+            return null;
+        }
+        Duration p95 = Duration.ofNanos(p95Nanos);
+        return p95.compareTo(minHedgeDelay) < 0 ? minHedgeDelay : p95;
+    }
+
+    private Mono<Attempt> attempt(WebClient webClient, FraudCheckRequest request, boolean hedge) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return send(webClient, request)
+                    .doOnNext(response -> latency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS))
+                    .doOnError(WebClientResponseException.class, e -> log.error(
+                            "Fraud service returned error status {}: {}",
+                            e.getStatusCode(), e.getResponseBodyAsString()))
+                    .map(response -> new Attempt(response, hedge));
+        });
+    }
+
+    private Mono<FraudCheckResponse> send(WebClient webClient, FraudCheckRequest request) {
+        if (!binary.get()) {
+            return sendJson(webClient, request);
+        }
+
+        byte[] body;
         try {
-            FraudCheckResponse response = webClient.post()
-                    .uri("/api/fraud/check")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(FraudCheckResponse.class)
-                    .timeout(timeout)
-                    .block();
-
-            log.info("Fraud check result for wallet {}: decision={}, riskScore={}",
-                    request.walletId(), response.decision(), response.riskScore());
-
-            return response;
-        } catch (WebClientResponseException e) {
-            log.error("Fraud service returned error status {}: {}",
-                    e.getStatusCode(), e.getResponseBodyAsString());
-            throw e;
+            body = FraudCheckWireFormat.encode(new FraudCheckWireFormat.Check(request.walletId(),
+                    request.userId(), request.amount(), request.transactionType(), request.currency()));
+        } catch (IllegalArgumentException e) {
+            log.debug("Fraud check for wallet {} has no binary form, sending JSON: {}",
+                    request.walletId(), e.getMessage());
+            return sendJson(webClient, request);
         }
+
+        return webClient.post()
+                .uri("/api/fraud/check")
+                .contentType(BINARY)
+                .accept(BINARY)
+                .headers(headers -> {
+                    if (request.checkId() != null) {
+                        headers.set(FraudCheckWireFormat.CHECK_ID_HEADER, request.checkId().toString());
+                    }
+                })
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .map(verdict -> toResponse(FraudCheckWireFormat.decodeVerdict(verdict)))
+                .onErrorResume(e -> e instanceof WebClientResponseException.UnsupportedMediaType
+                        || e instanceof WebClientResponseException.NotAcceptable, e -> {
+                    if (binary.compareAndSet(true, false)) {
+                        log.warn("Fraud service does not speak the binary protocol ({}), switching to JSON",
+                                ((WebClientResponseException) e).getStatusCode());
+                    }
+                    return sendJson(webClient, request);
+                });
+    }
+
+    private static Mono<FraudCheckResponse> sendJson(WebClient webClient, FraudCheckRequest request) {
+        return webClient.post()
+                .uri("/api/fraud/check")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(FraudCheckResponse.class);
+    }
+
+    private static FraudCheckResponse toResponse(FraudCheckWireFormat.Verdict verdict) {
+        String message = switch (verdict.decision()) {
+            case "BLOCK" -> "Transaction blocked due to high risk";
+            case "FLAG" -> "Transaction flagged for review";
+            default -> "Transaction approved";
+        };
+        return new FraudCheckResponse(verdict.riskScore(), verdict.decision(), verdict.triggeredRules(), message);
     }
 
     /**
@@ -67,11 +253,9 @@ public class FraudClientImpl implements FraudClient {
         log.warn("Fraud service unavailable for wallet {}. Applying fail-open with FLAG. Error: {}",
                 request.walletId(), throwable.getMessage());
 
-        return new FraudCheckResponse(
-                0,
-                "FLAG",
-                Collections.singletonList("FRAUD_SERVICE_UNAVAILABLE"),
-                "Fraud service unavailable - transaction flagged for manual review"
-        );
+        return FraudCheckResponse.serviceUnavailable();
+    }
+
+    private record Attempt(FraudCheckResponse response, boolean hedge) {
     }
 }
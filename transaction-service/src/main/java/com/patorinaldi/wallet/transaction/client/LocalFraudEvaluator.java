@@ -0,0 +1,267 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates fraud rules against the rule snapshots and wallet risk profiles fraud-service
+ * pushes (see {@code FraudFeedListener}).
+ *
+ * <p>With {@code fraud.local.pre-decide}, a check whose local score is at most
+ * {@code approve-max-score} is approved without calling fraud-service. Strictness is set by
+ * that score, by {@code velocity-headroom} (extra transactions assumed on top of the profile, for
+ * activity fraud-service has not reported yet) and by {@code max-age-ms} (older rules or
+ * profiles are not trusted). Anything the evaluator cannot judge goes to fraud-service.
+ *
+ * <p>When fraud-service cannot be reached, {@link #evaluateDuringOutage} scores the check with
+ * whatever was last pushed, instead of flagging everything.
+ */
+@Slf4j
+@Component
+public class LocalFraudEvaluator {
+
+    private final boolean preDecide;
+    private final int approveMaxScore;
+    private final int velocityHeadroom;
+    private final Duration maxAge;
+    private final Duration profileTtl;
+    private final MeterRegistry meterRegistry;
+    private final Counter rpcSkipped;
+
+    private final Map<UUID, Profile> profiles = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("risk-profile-sweeper").daemon().factory());
+    private volatile FraudRulesPublishedEvent rules;
+
+    public LocalFraudEvaluator(
+            MeterRegistry meterRegistry,
+            @Value("${fraud.local.pre-decide:false}") boolean preDecide,
+            @Value("${fraud.local.approve-max-score:0}") int approveMaxScore,
+            @Value("${fraud.local.velocity-headroom:2}") int velocityHeadroom,
+            @Value("${fraud.local.max-age-ms:300000}") long maxAgeMs,
+            @Value("${fraud.local.profile-ttl-ms:3600000}") long profileTtlMs) {
+        this.preDecide = preDecide;
+        this.approveMaxScore = approveMaxScore;
+        this.velocityHeadroom = velocityHeadroom;
+        this.maxAge = Duration.ofMillis(maxAgeMs);
+        this.profileTtl = Duration.ofMillis(profileTtlMs);
+        this.meterRegistry = meterRegistry;
+        this.rpcSkipped = meterRegistry.counter("fraud.local.rpc.skipped");
+        meterRegistry.gaugeMapSize("fraud.local.profiles", List.of(), profiles);
+    }
+
+    @PostConstruct
+    void start() {
+        long periodMs = Math.max(profileTtl.toMillis() / 4, 1_000);
+        sweeper.scheduleAtFixedRate(this::evictExpired, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public void updateRules(FraudRulesPublishedEvent event) {
+        FraudRulesPublishedEvent current = rules;
+        if (current != null && current.publishedAt().isAfter(event.publishedAt())) {
+            return;
+        }
+        rules = event;
+        log.debug("Fraud rules updated: {} rules published at {}", event.rules().size(), event.publishedAt());
+    }
+
+    public void updateProfile(WalletRiskProfileEvent event) {
+        profiles.merge(event.walletId(), new Profile(event, List.of()),
+                (current, received) -> current.snapshot().asOf().isAfter(event.asOf())
+                        ? current
+                        : new Profile(event, current.localActivitySince(event.asOf())));
+    }
+
+    /**
+     * Approves the check locally if it is clearly low risk, or returns empty if fraud-service
+     * has to decide.
+     */
+    public Optional<FraudCheckResponse> preDecide(FraudCheckRequest request) {
+        if (!preDecide) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        FraudRulesPublishedEvent currentRules = rules;
+        Profile profile = profiles.get(request.walletId());
+
+        String reason = null;
+        Score score = null;
+        if (currentRules == null) {
+            reason = "no_rules";
+        } else if (currentRules.publishedAt().isBefore(now.minus(maxAge))) {
+            reason = "stale_rules";
+        } else if (profile == null) {
+            reason = "no_profile";
+        } else if (profile.snapshot().asOf().isBefore(now.minus(maxAge))) {
+            reason = "stale_profile";
+        } else {
+            score = score(request, currentRules, profile, velocityHeadroom, now);
+            if (score.incomplete()) {
+                reason = "unknown_rule";
+            } else if (score.points() > approveMaxScore || score.points() >= currentRules.flagThreshold()) {
+                reason = "risk";
+            }
+        }
+
+        if (reason != null) {
+            meterRegistry.counter("fraud.local.rpc.required", "reason", reason).increment();
+            return Optional.empty();
+        }
+
+        recordLocalActivity(request.walletId(), now);
+        rpcSkipped.increment();
+        log.debug("Fraud check for wallet {} approved locally with score {}", request.walletId(), score.points());
+        return Optional.of(new FraudCheckResponse(score.points(), "APPROVE", score.triggeredRules(),
+                "Transaction approved locally"));
+    }
+
+    /**
+     * Scores the check with the last pushed rules and profile while fraud-service is down.
+     * Returns empty if no rules have been received. Without a profile only rules that need no
+     * history are scored, and the decision is at least FLAG.
+     */
+    public Optional<FraudCheckResponse> evaluateDuringOutage(FraudCheckRequest request) {
+        FraudRulesPublishedEvent currentRules = rules;
+        if (currentRules == null) {
+            meterRegistry.counter("fraud.local.outage", "decision", "UNKNOWN").increment();
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        Score score = score(request, currentRules, profiles.get(request.walletId()), 0, now);
+
+        String decision;
+        if (score.points() >= currentRules.blockThreshold()) {
+            decision = "BLOCK";
+        } else if (score.points() >= currentRules.flagThreshold() || score.incomplete()) {
+            decision = "FLAG";
+        } else {
+            decision = "APPROVE";
+        }
+        if (!"BLOCK".equals(decision)) {
+            recordLocalActivity(request.walletId(), now);
+        }
+
+        meterRegistry.counter("fraud.local.outage", "decision", decision).increment();
+        log.info("Fraud check for wallet {} evaluated locally during outage: decision={}, riskScore={}, rules={}",
+                request.walletId(), decision, score.points(), score.triggeredRules());
+        return Optional.of(new FraudCheckResponse(score.points(), decision, score.triggeredRules(),
+                "Evaluated locally - fraud service unavailable"));
+    }
+
+    void evictExpired() {
+        Instant cutoff = Instant.now().minus(profileTtl);
+        profiles.values().removeIf(profile -> profile.lastActivity().isBefore(cutoff));
+    }
+
+    private void recordLocalActivity(UUID walletId, Instant at) {
+        profiles.computeIfPresent(walletId, (id, profile) -> profile.withLocalActivity(at, at.minus(profileTtl)));
+    }
+
+    private static Score score(FraudCheckRequest request, FraudRulesPublishedEvent rules, Profile profile,
+                               int velocityHeadroom, Instant now) {
+        int points = 0;
+        boolean incomplete = false;
+        List<String> triggeredRules = new ArrayList<>();
+
+        for (FraudRulesPublishedEvent.Rule rule : rules.rules()) {
+            Boolean triggered = switch (rule.ruleType()) {
+                case "AMOUNT_THRESHOLD" -> request.amount().compareTo(rule.threshold()) > 0;
+                case "VELOCITY" -> profile == null ? null
+                        : profile.countSince(since(now, rule)) + velocityHeadroom > rule.threshold().intValue();
+                case "NEW_ACCOUNT" -> profile == null ? null
+                        : profile.snapshot().firstSeenAt() == null
+                        || profile.snapshot().firstSeenAt().isAfter(since(now, rule));
+                case "UNUSUAL_PATTERN" -> profile == null ? null
+                        : isUnusualAmount(request.amount(), profile.snapshot().averageAmount(), rule.threshold());
+                default -> null;
+            };
+
+            if (triggered == null) {
+                incomplete = true;
+            } else if (triggered) {
+                points += rule.scoreImpact();
+                triggeredRules.add(rule.ruleCode());
+            }
+        }
+        return new Score(points, triggeredRules, incomplete);
+    }
+
+    private static boolean isUnusualAmount(BigDecimal amount, BigDecimal averageAmount, BigDecimal multiplier) {
+        if (averageAmount == null || averageAmount.compareTo(BigDecimal.ZERO) == 0) {
+            return false;
+        }
+        return amount.compareTo(averageAmount.multiply(multiplier)) > 0;
+    }
+
+    private static Instant since(Instant now, FraudRulesPublishedEvent.Rule rule) {
+        return now.minusSeconds(rule.timeWindowMinutes() * 60L);
+    }
+
+    private record Score(int points, List<String> triggeredRules, boolean incomplete) {
+    }
+
+    /**
+     * A pushed profile plus the transactions this instance let through after it was taken.
+     */
+    record Profile(WalletRiskProfileEvent snapshot, List<Instant> localActivity) {
+
+        int countSince(Instant since) {
+            int count = 0;
+            for (Instant at : snapshot.recentActivity()) {
+                if (at.isAfter(since)) {
+                    count++;
+                }
+            }
+            for (Instant at : localActivity) {
+                if (at.isAfter(since)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        List<Instant> localActivitySince(Instant asOf) {
+            return localActivity.stream().filter(at -> at.isAfter(asOf)).toList();
+        }
+
+        Profile withLocalActivity(Instant at, Instant keepAfter) {
+            List<Instant> activity = new ArrayList<>(localActivity.size() + 1);
+            for (Instant earlier : localActivity) {
+                if (earlier.isAfter(keepAfter)) {
+                    activity.add(earlier);
+                }
+            }
+            activity.add(at);
+            return new Profile(snapshot, List.copyOf(activity));
+        }
+
+        Instant lastActivity() {
+            return localActivity.isEmpty() ? snapshot.asOf() : localActivity.getLast();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped write-ahead journal for {@link InMemoryBalanceEngine}.
+ *
+ * <p>The journal is a sequence of fixed-size segment files named after the first sequence
+ * number they hold. Each record is {@code int length, int crc32c, long seq, payload}; a zero
+ * length marks the end of a segment, and a checksum mismatch marks a torn write from a crash,
+ * after which replay stops.
+ *
+ * <p>Appends only copy into the mapped region, moving on to a new segment when the current one
+ * is full. {@link #sync(long)} makes a record durable with group commit: the first caller to
+ * arrive forces the mapping for everything appended so far, and callers that queued behind it
+ * usually find their record already covered and return without another fsync.
+ *
+ * <p>If an fsync fails, the journal zeroes the length of the first record that was not durable,
+ * and the first record of every later segment, so replay will not bring back records whose
+ * callers were told they failed. From then on every append and sync throws until the process
+ * restarts and recovers from disk. Zeroing is best effort: if the disk is gone for good, those
+ * records stay in doubt, as with a lost commit acknowledgement.
+ */
+@Slf4j
+class BalanceJournal implements Closeable {
+
+    static final int HEADER_BYTES = 16;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+    // full segments whose records may not all be durable yet, oldest first
+    private final List<MappedByteBuffer> filled = new ArrayList<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private Path segment;
+    private long lastAppendedSeq;
+    private long durableSeq;
+    private MappedByteBuffer durableBuffer;
+    private int durablePosition;
+    private long syncCount;
+    private volatile boolean failed;
+
+    BalanceJournal(Path directory, int segmentBytes, long firstSeq) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.lastAppendedSeq = firstSeq - 1;
+        this.durableSeq = firstSeq - 1;
+        openSegment(firstSeq);
+        this.durableBuffer = buffer;
+    }
+
+    /**
+     * Returns whether a payload of the given size still fits in the current segment.
+     */
+    boolean hasRoomFor(int payloadLength) {
+        synchronized (appendLock) {
+            return buffer.remaining() >= HEADER_BYTES + payloadLength + Integer.BYTES;
+        }
+    }
+
+    /**
+     * Appends a record and returns its sequence number, starting a new segment if the current
+     * one is full. The record is not durable until {@link #sync(long)} has been called for it.
+     */
+    long append(byte[] payload) {
+        synchronized (appendLock) {
+            checkHealthy();
+            if (buffer.remaining() < HEADER_BYTES + payload.length + Integer.BYTES) {
+                if (HEADER_BYTES + payload.length + Integer.BYTES > segmentBytes) {
+                    throw new IllegalArgumentException("Journal record of " + payload.length
+                            + " bytes does not fit in a segment of " + segmentBytes);
+                }
+                // the unused tail of the full segment stays zero, which replay reads as its end
+                filled.add(buffer);
+                closeChannel();
+                openSegment(lastAppendedSeq + 1);
+            }
+            long seq = lastAppendedSeq + 1;
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            buffer.putInt(payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.putLong(seq);
+            buffer.put(payload);
+            lastAppendedSeq = seq;
+            return seq;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is on disk.
+     */
+    void sync(long seq) {
+        synchronized (syncLock) {
+            checkHealthy();
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target;
+            MappedByteBuffer current;
+            int position;
+            List<MappedByteBuffer> full;
+            synchronized (appendLock) {
+                target = lastAppendedSeq;
+                current = buffer;
+                position = buffer.position();
+                full = List.copyOf(filled);
+            }
+            try {
+                full.forEach(this::force);
+                force(current);
+            } catch (RuntimeException e) {
+                fail(e);
+                throw e;
+            }
+            synchronized (appendLock) {
+                // only appends add to the list, and only at the end
+                filled.subList(0, full.size()).clear();
+            }
+            durableSeq = target;
+            durableBuffer = current;
+            durablePosition = position;
+            syncCount++;
+        }
+    }
+
+    /**
+     * Sequence number of the last record appended.
+     */
+    long lastSeq() {
+        synchronized (appendLock) {
+            return lastAppendedSeq;
+        }
+    }
+
+    /**
+     * Number of fsyncs issued so far; compared with the number of appends it shows how many
+     * records each group commit covered.
+     */
+    long syncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable and starts a new segment, so that every older
+     * segment ends at or before the returned sequence number.
+     */
+    long roll() {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                checkHealthy();
+                try {
+                    filled.forEach(this::force);
+                    force(buffer);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    throw e;
+                }
+                filled.clear();
+                durableSeq = lastAppendedSeq;
+                closeChannel();
+                Path previous = segment;
+                openSegment(lastAppendedSeq + 1);
+                durableBuffer = buffer;
+                durablePosition = 0;
+                log.info("Rolled balance journal from {} to {}", previous.getFileName(), segment.getFileName());
+                return lastAppendedSeq;
+            }
+        }
+    }
+
+    /**
+     * Deletes the segments that start at or before {@code seq} other than the current one. Only
+     * call this with a sequence number returned by {@link #roll()} once a snapshot covers it.
+     */
+    void deleteSegmentsThrough(long seq) {
+        Path current;
+        synchronized (appendLock) {
+            current = segment;
+        }
+        for (Path file : segments(directory)) {
+            if (!file.equals(current) && firstSeqOf(file) <= seq) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (syncLock) {
+            synchronized (appendLock) {
+                if (!failed) {
+                    filled.forEach(this::force);
+                    force(buffer);
+                    filled.clear();
+                    durableSeq = lastAppendedSeq;
+                }
+                closeChannel();
+            }
+        }
+    }
+
+    void force(MappedByteBuffer mapped) {
+        mapped.force();
+    }
+
+    /**
+     * Replays every intact record with a sequence number above {@code afterSeq}, in order, and
+     * returns the highest sequence number seen.
+     */
+    static long replay(Path directory, long afterSeq, RecordHandler handler) {
+        long lastSeq = afterSeq;
+        for (Path file : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (mapped.remaining() >= HEADER_BYTES) {
+                    int length = mapped.getInt();
+                    if (length <= 0 || length > mapped.remaining() - Integer.BYTES - Long.BYTES) {
+                        break;
+                    }
+                    int checksum = mapped.getInt();
+                    long seq = mapped.getLong();
+                    byte[] payload = new byte[length];
+                    mapped.get(payload);
+                    CRC32C crc = new CRC32C();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        log.warn("Torn record {} in {}, ignoring the rest of the segment", seq, file.getFileName());
+                        break;
+                    }
+                    if (seq > lastSeq) {
+                        handler.handle(seq, payload);
+                        lastSeq = seq;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot replay journal segment " + file, e);
+            }
+        }
+        return lastSeq;
+    }
+
+    private void checkHealthy() {
+        if (failed) {
+            throw new IllegalStateException("Balance journal in " + directory + " failed an fsync, restart to recover");
+        }
+    }
+
+    /**
+     * Cuts the journal back to the last durable record. Called with the sync lock held.
+     */
+    private void fail(RuntimeException cause) {
+        synchronized (appendLock) {
+            failed = true;
+            log.error("Balance journal fsync failed after seq {}, discarding seq {} to {}",
+                    durableSeq, durableSeq + 1, lastAppendedSeq, cause);
+            List<MappedByteBuffer> unsynced = new ArrayList<>(filled);
+            unsynced.add(buffer);
+            for (MappedByteBuffer mapped : unsynced) {
+                int position = mapped == durableBuffer ? durablePosition : 0;
+                if (mapped.capacity() - position >= Integer.BYTES) {
+                    mapped.putInt(position, 0);
+                }
+                try {
+                    force(mapped);
+                } catch (RuntimeException e) {
+                    log.warn("Could not persist the cut of the balance journal", e);
+                }
+            }
+        }
+    }
+
+    private void openSegment(long firstSeq) {
+        try {
+            Files.createDirectories(directory);
+            segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+            // A segment with this name can only exist if nothing intact was written to it
+            // before a crash, so it is safe to start it over
+            channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open journal segment in " + directory, e);
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close journal segment {}", segment, e);
+        }
+    }
+
+    private static List<Path> segments(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list journal segments in " + directory, e);
+        }
+    }
+
+    private static long firstSeqOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete old journal segment {}", file, e);
+        }
+    }
+
+    @FunctionalInterface
+    interface RecordHandler {
+        void handle(long seq, byte[] payload);
+    }
+}
@@ -0,0 +1,76 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Point-in-time copy of every balance held by {@link InMemoryBalanceEngine}, tagged with the
+ * last journal sequence number it includes. Recovery loads the snapshot and replays only the
+ * journal records after it, which bounds restart time by the snapshot interval.
+ *
+ * <p>The file is written to a temporary name, forced to disk and atomically renamed, so a
+ * crash while snapshotting leaves the previous snapshot in place.
+ */
+record BalanceSnapshot(long seq, Map<UUID, Long> balances) {
+
+    private static final String FILE_NAME = "balances.snapshot";
+    private static final int MAGIC = 0x57424C53;
+
+    static Optional<BalanceSnapshot> read(Path directory) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a balance snapshot: " + file);
+            }
+            long seq = in.readLong();
+            int count = in.readInt();
+            Map<UUID, Long> balances = HashMap.newHashMap(count);
+            for (int i = 0; i < count; i++) {
+                balances.put(new UUID(in.readLong(), in.readLong()), in.readLong());
+            }
+            return Optional.of(new BalanceSnapshot(seq, balances));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read balance snapshot " + file, e);
+        }
+    }
+
+    static void write(Path directory, long seq, Map<UUID, long[]> balances) {
+        Path file = directory.resolve(FILE_NAME);
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(MAGIC);
+            out.writeLong(seq);
+            out.writeInt(balances.size());
+            for (Map.Entry<UUID, long[]> entry : balances.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeLong(entry.getValue()[0]);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write balance snapshot " + temporary, e);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot install balance snapshot " + file, e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.event.TransactionEventFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies journaled operations from {@link InMemoryBalanceEngine} into Postgres in batches.
+ *
+ * <p>Each batch is one database transaction: the {@code transactions} rows are inserted with
+ * JDBC batching, each touched wallet gets a single {@code wallet_balances} update with its
+ * latest balance, and the completed events are published so the outbox picks them up in the
+ * same commit. Inserts skip rows that clash with any unique constraint. A row whose id already
+ * exists was written before a crash and is neither written nor published again. A row whose
+ * idempotency key is already taken by another transaction cannot be written at all. It is parked:
+ * logged, counted and kept aside for an operator, while the rest of the batch goes through. A
+ * failed batch is retried as-is on the next run, preserving order.
+ *
+ * <p>Parking is a last resort: the engine checks {@link #isTaken} under the wallet lock before
+ * applying anything, so an operation whose key is already pending here, held by a failed attempt,
+ * or in Postgres is rejected instead of applied.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "wallet.engine.enabled", havingValue = "true")
+public class BalanceWriteBehind {
+
+    private static final String INSERT_TRANSACTION = """
+            INSERT INTO transactions (id, idempotency_key, type, status, wallet_id, user_id,
+                related_wallet_id, related_transaction_id, amount, currency, balance_after,
+                created_at, completed_at, description, fraud_check_id, fraud_risk_score, fraud_triggered_rules)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String EXISTS_TRANSACTION = "SELECT EXISTS (SELECT 1 FROM transactions WHERE id = ?)";
+
+    private static final String EXISTS_KEY = "SELECT EXISTS (SELECT 1 FROM transactions WHERE idempotency_key = ?)";
+
+    /**
+     * How long the key of a failed attempt stays reserved, well beyond the time its caller needs
+     * to save the FAILED row.
+     */
+    private static final long RESERVATION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final String UPDATE_BALANCE = """
+            UPDATE wallet_balances
+            SET balance = ?, version = version + 1, updated_at = now()
+            WHERE wallet_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final long intervalMs;
+
+    private final BlockingQueue<Transaction> queue = new LinkedBlockingQueue<>();
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+    // keys of attempts rejected under the wallet lock, whose FAILED row the caller saves afterwards
+    private final Map<String, Long> reservedKeys = new ConcurrentHashMap<>();
+    private final Queue<Transaction> parked = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("balance-write-behind").daemon().factory());
+    private List<Transaction> retryBatch = List.of();
+
+    public BalanceWriteBehind(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${wallet.engine.write-behind.batch-size:500}") int batchSize,
+            @Value("${wallet.engine.write-behind.interval-ms:5}") long intervalMs) {
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.intervalMs = intervalMs;
+        meterRegistry.gaugeCollectionSize("wallet.engine.write-behind.pending", List.of(), queue);
+        meterRegistry.gaugeCollectionSize("wallet.engine.write-behind.parked", List.of(), parked);
+    }
+
+    @PostConstruct
+    void start() {
+        executor.scheduleWithFixedDelay(this::drain, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+        flushAll();
+    }
+
+    /**
+     * Queues the legs of one journaled operation. Callers must enqueue in journal order.
+     */
+    public void enqueue(List<Transaction> legs) {
+        legs.forEach(leg -> pendingKeys.add(leg.getIdempotencyKey()));
+        queue.addAll(legs);
+    }
+
+    /**
+     * Whether a transaction with this idempotency key is journaled but not yet in Postgres,
+     * where {@code existsByIdempotencyKey} cannot see it.
+     */
+    public boolean isPending(String idempotencyKey) {
+        return pendingKeys.contains(idempotencyKey);
+    }
+
+    /**
+     * Whether the idempotency key already belongs to a transaction: pending here, reserved by a
+     * failed attempt, or in Postgres. A key is only removed from pending once its row is
+     * committed, so checked under the wallet lock this sees every key written since the caller's
+     * own lookup, however long ago that was.
+     */
+    public boolean isTaken(String idempotencyKey) {
+        return pendingKeys.contains(idempotencyKey)
+                || reservedKeys.containsKey(idempotencyKey)
+                || Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_KEY, Boolean.class, idempotencyKey));
+    }
+
+    /**
+     * Holds the key of an attempt rejected under the wallet lock, so a retry cannot be applied
+     * before the caller has saved the FAILED row that takes the key in Postgres.
+     */
+    public void reserve(String idempotencyKey) {
+        reservedKeys.put(idempotencyKey, System.nanoTime());
+    }
+
+    /**
+     * Transactions that could not be written because their idempotency key was already taken.
+     */
+    public List<Transaction> parked() {
+        return List.copyOf(parked);
+    }
+
+    /**
+     * Writes everything queued so far, used before a snapshot and on shutdown.
+     */
+    public synchronized void flushAll() {
+        while (!retryBatch.isEmpty() || !queue.isEmpty()) {
+            if (!writeNextBatch()) {
+                throw new IllegalStateException("Write-behind to Postgres is failing; cannot flush");
+            }
+        }
+    }
+
+    private synchronized void drain() {
+        if (!reservedKeys.isEmpty()) {
+            long expired = System.nanoTime() - RESERVATION_NANOS;
+            reservedKeys.values().removeIf(reservedAt -> reservedAt - expired < 0);
+        }
+        while ((!retryBatch.isEmpty() || !queue.isEmpty()) && writeNextBatch()) {
+            // keep going while batches succeed
+        }
+    }
+
+    private boolean writeNextBatch() {
+        List<Transaction> batch = retryBatch;
+        if (batch.isEmpty()) {
+            batch = new ArrayList<>(batchSize);
+            queue.drainTo(batch, batchSize);
+        }
+
+        long started = System.nanoTime();
+        List<Transaction> conflicting;
+        try {
+            conflicting = write(batch);
+        } catch (RuntimeException e) {
+            retryBatch = batch;
+            meterRegistry.counter("wallet.engine.write-behind.failures").increment();
+            log.error("Write-behind of {} transactions failed, will retry", batch.size(), e);
+            return false;
+        }
+        retryBatch = List.of();
+        batch.forEach(transaction -> pendingKeys.remove(transaction.getIdempotencyKey()));
+        conflicting.forEach(this::park);
+        meterRegistry.timer("wallet.engine.write-behind.batch").record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("wallet.engine.write-behind.rows").increment(batch.size());
+        return true;
+    }
+
+    /**
+     * Writes the batch in one transaction and returns the rows parked for a taken idempotency key.
+     */
+    private List<Transaction> write(List<Transaction> batch) {
+        Map<UUID, Transaction> latestByWallet = new LinkedHashMap<>();
+        batch.forEach(transaction -> latestByWallet.put(transaction.getWalletId(), transaction));
+
+        return transactionTemplate.execute(status -> {
+            int[][] counts = jdbcTemplate.batchUpdate(INSERT_TRANSACTION, batch, batch.size(), (statement, transaction) -> {
+                statement.setObject(1, transaction.getId());
+                statement.setString(2, transaction.getIdempotencyKey());
+                statement.setString(3, transaction.getType().name());
+                statement.setString(4, transaction.getStatus().name());
+                statement.setObject(5, transaction.getWalletId());
+                statement.setObject(6, transaction.getUserId());
+                statement.setObject(7, transaction.getRelatedWalletId(), Types.OTHER);
+                statement.setObject(8, transaction.getRelatedTransactionId(), Types.OTHER);
+                statement.setBigDecimal(9, transaction.getAmount());
+                statement.setString(10, transaction.getCurrency());
+                statement.setBigDecimal(11, transaction.getBalanceAfter());
+                statement.setTimestamp(12, Timestamp.from(transaction.getCreatedAt()));
+                statement.setTimestamp(13, Timestamp.from(transaction.getCompletedAt()));
+                statement.setString(14, transaction.getDescription());
+                statement.setObject(15, transaction.getFraudCheckId(), Types.OTHER);
+                statement.setObject(16, transaction.getFraudRiskScore(), Types.INTEGER);
+                statement.setString(17, transaction.getFraudTriggeredRules());
+            });
+
+            List<Transaction> latest = new ArrayList<>(latestByWallet.values());
+            jdbcTemplate.batchUpdate(UPDATE_BALANCE, latest, latest.size(), (statement, transaction) -> {
+                statement.setBigDecimal(1, transaction.getBalanceAfter());
+                statement.setObject(2, transaction.getWalletId());
+            });
+
+            List<Transaction> conflicting = new ArrayList<>();
+            int index = 0;
+            for (int[] chunk : counts) {
+                for (int count : chunk) {
+                    Transaction transaction = batch.get(index++);
+                    // a driver that reports SUCCESS_NO_INFO gives no way to tell, so count it as written
+                    if (count != 0) {
+                        eventPublisher.publishEvent(TransactionEventFactory.completed(transaction));
+                    } else if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                            EXISTS_TRANSACTION, Boolean.class, transaction.getId()))) {
+                        conflicting.add(transaction);
+                    }
+                }
+            }
+            return conflicting;
+        });
+    }
+
+    private void park(Transaction transaction) {
+        parked.add(transaction);
+        meterRegistry.counter("wallet.engine.write-behind.parked.total").increment();
+        log.error("Parked write-behind of transaction {} for wallet {}: idempotency key {} already belongs to another "
+                        + "transaction; {} {} with balance after {} is in the journal but not in Postgres",
+                transaction.getId(), transaction.getWalletId(), transaction.getIdempotencyKey(),
+                transaction.getType(), transaction.getAmount(), transaction.getBalanceAfter());
+    }
+}
@@ -0,0 +1,307 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.exception.DuplicateTransactionException;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import com.patorinaldi.wallet.transaction.service.BalanceWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional balance engine that keeps wallet balances in memory and makes each operation
+ * durable in a local write-ahead journal instead of a Postgres round trip.
+ *
+ * <p>An operation locks the wallets it touches, checks that its idempotency keys are not taken
+ * (a Postgres read, so a retry that raced a flush is caught) and the in-memory balance, appends
+ * the completed legs to the {@link BalanceJournal} and waits for the journal's group fsync; only
+ * then does it update the balance and hand the legs to {@link BalanceWriteBehind}. A failed
+ * fsync therefore leaves the balance untouched. Operations on different wallets share fsyncs;
+ * operations on the same wallet queue on its lock, so journal order matches balance order.
+ * Wallets missing from memory are loaded from Postgres before any lock is taken.
+ *
+ * <p>A snapshot is taken periodically and whenever a journal segment fills. It briefly stops
+ * operations to copy the balances and roll the journal to a new segment, then, with operations
+ * running again, flushes pending writes to Postgres, writes the copy to disk and drops the
+ * segments it covers. On start the latest snapshot is loaded and later journal records are
+ * replayed and re-queued for write-behind, so a crash loses nothing that was acknowledged.
+ *
+ * <p>The engine assumes it is the only writer of {@code wallet_balances}, i.e. a single
+ * transaction-service instance owns these wallets. Balance reads through the API may lag by
+ * the write-behind interval. Enable with {@code wallet.engine.enabled=true}.
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(name = "wallet.engine.enabled", havingValue = "true")
+public class InMemoryBalanceEngine implements BalanceWriter {
+
+    private final WalletBalanceRepository walletBalanceRepository;
+    private final BalanceWriteBehind writeBehind;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long snapshotIntervalMs;
+
+    // each balance array doubles as the lock of its wallet
+    private final Map<UUID, long[]> balances = new ConcurrentHashMap<>();
+    // operations hold the read side; a snapshot takes the write side to get a consistent cut
+    private final ReadWriteLock barrier = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("balance-snapshot").daemon().factory());
+    private final Counter appends;
+    private final Timer syncTimer;
+
+    private BalanceJournal journal;
+    private long snapshotSeq;
+
+    public InMemoryBalanceEngine(
+            WalletBalanceRepository walletBalanceRepository,
+            BalanceWriteBehind writeBehind,
+            MeterRegistry meterRegistry,
+            @Value("${wallet.engine.journal-dir:./data/balance-engine}") Path directory,
+            @Value("${wallet.engine.segment-bytes:67108864}") int segmentBytes,
+            @Value("${wallet.engine.snapshot-interval-ms:60000}") long snapshotIntervalMs) {
+
+        this.walletBalanceRepository = walletBalanceRepository;
+        this.writeBehind = writeBehind;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+        this.appends = meterRegistry.counter("wallet.engine.journal.appends");
+        this.syncTimer = meterRegistry.timer("wallet.engine.journal.sync");
+        meterRegistry.gauge("wallet.engine.journal.fsyncs", this, engine -> engine.journal == null ? 0 : engine.journal.syncCount());
+        meterRegistry.gauge("wallet.engine.wallets", this, engine -> engine.walletCount());
+    }
+
+    @PostConstruct
+    public synchronized void recover() {
+        long started = System.nanoTime();
+        BalanceSnapshot.read(directory).ifPresent(snapshot -> {
+            snapshot.balances().forEach((walletId, balance) -> balances.put(walletId, new long[]{balance}));
+            snapshotSeq = snapshot.seq();
+        });
+
+        List<Transaction> replayed = new ArrayList<>();
+        long lastSeq = BalanceJournal.replay(directory, snapshotSeq, (seq, payload) -> {
+            List<Transaction> legs = JournalCodec.decode(payload);
+            legs.forEach(leg -> balances.put(leg.getWalletId(), new long[]{JournalCodec.toUnscaled(leg.getBalanceAfter())}));
+            replayed.addAll(legs);
+        });
+        writeBehind.enqueue(replayed);
+
+        journal = new BalanceJournal(directory, segmentBytes, lastSeq + 1);
+        snapshotter.scheduleWithFixedDelay(this::snapshot, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+
+        log.info("Balance engine recovered {} wallets from snapshot seq {} and {} journaled transactions up to seq {} in {}ms",
+                balances.size(), snapshotSeq, replayed.size(), lastSeq, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshotter.shutdown();
+        snapshot();
+        barrier.writeLock().lock();
+        try {
+            journal.close();
+        } finally {
+            barrier.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Transaction completeDeposit(Transaction transaction) {
+        long[] balance = balanceOf(transaction.getWalletId());
+        barrier.readLock().lock();
+        try {
+            synchronized (balance) {
+                rejectTaken(transaction);
+                long newBalance = Math.addExact(balance[0], JournalCodec.toUnscaled(transaction.getAmount()));
+                prepare(transaction, newBalance);
+                journal(List.of(transaction));
+                balance[0] = newBalance;
+            }
+        } finally {
+            barrier.readLock().unlock();
+        }
+        return transaction;
+    }
+
+    @Override
+    public Transaction completeWithdrawal(Transaction transaction) {
+        long[] balance = balanceOf(transaction.getWalletId());
+        barrier.readLock().lock();
+        try {
+            synchronized (balance) {
+                rejectTaken(transaction);
+                long newBalance = debit(transaction, balance[0]);
+                prepare(transaction, newBalance);
+                journal(List.of(transaction));
+                balance[0] = newBalance;
+            }
+        } finally {
+            barrier.readLock().unlock();
+        }
+        return transaction;
+    }
+
+    @Override
+    public Transaction completeTransfer(Transaction transactionOut, Transaction transactionIn) {
+        long[] source = balanceOf(transactionOut.getWalletId());
+        long[] destination = balanceOf(transactionIn.getWalletId());
+        // lock both wallets in id order so opposite transfers cannot deadlock
+        boolean sourceFirst = transactionOut.getWalletId().compareTo(transactionIn.getWalletId()) <= 0;
+        barrier.readLock().lock();
+        try {
+            synchronized (sourceFirst ? source : destination) {
+                synchronized (sourceFirst ? destination : source) {
+                    rejectTaken(transactionOut);
+                    rejectTaken(transactionIn);
+                    long newSource = debit(transactionOut, source[0]);
+                    long newDestination = source == destination
+                            ? newSource + JournalCodec.toUnscaled(transactionIn.getAmount())
+                            : Math.addExact(destination[0], JournalCodec.toUnscaled(transactionIn.getAmount()));
+
+                    prepare(transactionOut, newSource);
+                    prepare(transactionIn, newDestination);
+                    transactionOut.setRelatedWalletId(transactionIn.getWalletId());
+                    transactionOut.setRelatedTransactionId(transactionIn.getId());
+                    transactionIn.setRelatedWalletId(transactionOut.getWalletId());
+                    transactionIn.setRelatedTransactionId(transactionOut.getId());
+
+                    journal(List.of(transactionOut, transactionIn));
+                    source[0] = newSource;
+                    destination[0] = newDestination;
+                }
+            }
+        } finally {
+            barrier.readLock().unlock();
+        }
+        return transactionOut;
+    }
+
+    /**
+     * Flushes pending writes to Postgres, persists all balances and drops the journal segments
+     * the snapshot covers. Operations only wait while the balances are copied.
+     */
+    public synchronized void snapshot() {
+        if (journal == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        long cutSeq;
+        Map<UUID, long[]> copy;
+        barrier.writeLock().lock();
+        try {
+            if (journal.lastSeq() == snapshotSeq) {
+                return;
+            }
+            cutSeq = journal.roll();
+            copy = HashMap.newHashMap(balances.size());
+            balances.forEach((walletId, balance) -> copy.put(walletId, new long[]{balance[0]}));
+        } finally {
+            barrier.writeLock().unlock();
+        }
+        long pausedNanos = System.nanoTime() - started;
+        writeBehind.flushAll();
+        BalanceSnapshot.write(directory, cutSeq, copy);
+        journal.deleteSegmentsThrough(cutSeq);
+        snapshotSeq = cutSeq;
+        log.info("Balance snapshot at seq {} with {} wallets took {}ms, operations paused for {}us",
+                cutSeq, copy.size(), (System.nanoTime() - started) / 1_000_000, pausedNanos / 1_000);
+    }
+
+    int walletCount() {
+        return balances.size();
+    }
+
+    private long[] balanceOf(UUID walletId) {
+        long[] balance = balances.get(walletId);
+        if (balance != null) {
+            return balance;
+        }
+        long loaded = walletBalanceRepository.findByWalletId(walletId)
+                .map(walletBalance -> JournalCodec.toUnscaled(walletBalance.getBalance()))
+                .orElseThrow(() -> {
+                    log.error("Wallet balance not found: {}", walletId);
+                    return new WalletBalanceNotFoundException(walletId);
+                });
+        // another caller may have loaded it meanwhile; the first one in wins
+        long[] existing = balances.putIfAbsent(walletId, new long[]{loaded});
+        return existing != null ? existing : balances.get(walletId);
+    }
+
+    private long debit(Transaction transaction, long balance) {
+        long unscaled = JournalCodec.toUnscaled(transaction.getAmount());
+        if (balance < unscaled) {
+            // the caller saves a FAILED row under this key once the lock is released
+            writeBehind.reserve(transaction.getIdempotencyKey());
+            throw new InsufficientBalanceException(transaction.getWalletId(), JournalCodec.toDecimal(balance),
+                    transaction.getAmount());
+        }
+        return balance - unscaled;
+    }
+
+    private void prepare(Transaction transaction, long newBalance) {
+        if (transaction.getId() == null) {
+            transaction.setId(UUID.randomUUID());
+        }
+        transaction.setCreatedAt(Instant.now());
+        transaction.complete(JournalCodec.toDecimal(newBalance));
+    }
+
+    private void journal(List<Transaction> legs) {
+        byte[] payload = JournalCodec.encode(legs);
+        if (!journal.hasRoomFor(payload.length)) {
+            requestSnapshot();
+        }
+        long seq = journal.append(payload);
+        appends.increment();
+        awaitDurable(seq);
+        writeBehind.enqueue(legs);
+    }
+
+    private void awaitDurable(long seq) {
+        long started = System.nanoTime();
+        journal.sync(seq);
+        syncTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void requestSnapshot() {
+        try {
+            snapshotter.execute(this::snapshot);
+        } catch (RejectedExecutionException e) {
+            // shutting down; the final snapshot covers the new segment
+        }
+    }
+
+    private void rejectTaken(Transaction transaction) {
+        if (writeBehind.isTaken(transaction.getIdempotencyKey())) {
+            log.warn("Duplicate transaction detected: {}", transaction.getIdempotencyKey());
+            throw new DuplicateTransactionException(transaction.getIdempotencyKey());
+        }
+    }
+}
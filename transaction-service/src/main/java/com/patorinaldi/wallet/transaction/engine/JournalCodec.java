@@ -0,0 +1,127 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary encoding of journal payloads and the fixed-point amounts the engine works with.
+ *
+ * <p>A payload holds the completed legs of one operation (one for deposits and withdrawals,
+ * two for transfers), so a transfer is journaled, and recovered, atomically. Amounts are
+ * stored as unscaled {@code long}s at the scale of the {@code numeric(19,4)} columns.
+ */
+final class JournalCodec {
+
+    static final int SCALE = 4;
+
+    private JournalCodec() {
+        // Utility class
+    }
+
+    static long toUnscaled(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal toDecimal(long unscaled) {
+        return BigDecimal.valueOf(unscaled, SCALE);
+    }
+
+    static byte[] encode(List<Transaction> legs) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * legs.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(legs.size());
+            for (Transaction leg : legs) {
+                writeUuid(out, leg.getId());
+                out.writeUTF(leg.getIdempotencyKey());
+                out.writeUTF(leg.getType().name());
+                writeUuid(out, leg.getWalletId());
+                writeUuid(out, leg.getUserId());
+                writeUuid(out, leg.getRelatedWalletId());
+                writeUuid(out, leg.getRelatedTransactionId());
+                out.writeLong(toUnscaled(leg.getAmount()));
+                out.writeLong(toUnscaled(leg.getBalanceAfter()));
+                writeString(out, leg.getCurrency());
+                writeString(out, leg.getDescription());
+                writeInstant(out, leg.getCreatedAt());
+                writeInstant(out, leg.getCompletedAt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<Transaction> decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = in.readUnsignedByte();
+            List<Transaction> legs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                legs.add(Transaction.builder()
+                        .id(readUuid(in))
+                        .idempotencyKey(in.readUTF())
+                        .type(TransactionType.valueOf(in.readUTF()))
+                        .status(TransactionStatus.COMPLETED)
+                        .walletId(readUuid(in))
+                        .userId(readUuid(in))
+                        .relatedWalletId(readUuid(in))
+                        .relatedTransactionId(readUuid(in))
+                        .amount(toDecimal(in.readLong()))
+                        .balanceAfter(toDecimal(in.readLong()))
+                        .currency(readString(in))
+                        .description(readString(in))
+                        .createdAt(readInstant(in))
+                        .completedAt(readInstant(in))
+                        .build());
+            }
+            return legs;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeLong(value.getEpochSecond());
+        out.writeInt(value.getNano());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+    }
+}
@@ -5,9 +5,12 @@ import lombok.*;
 import com.patorinaldi.wallet.common.enums.TransactionType;
 import com.patorinaldi.wallet.common.enums.TransactionStatus;
 import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.data.domain.Persistable;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 @Getter
@@ -17,11 +20,15 @@ import java.util.UUID;
 @NoArgsConstructor
 @Entity
 @Table(name = "transactions")
-public class Transaction {
+public class Transaction implements Persistable<UUID> {
 
+    /**
+     * Assigned on creation rather than by Hibernate, so both legs of a transfer can reference
+     * each other before they are inserted.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    private UUID id;
+    @Builder.Default
+    private UUID id = UUID.randomUUID();
 
     @Column(name = "idempotency_key", unique = true, nullable = false)
     private String idempotencyKey;
@@ -64,12 +71,47 @@ public class Transaction {
 
     private String errorMessage;
 
+    /**
+     * The synchronous fraud check fraud-service decided for this transaction, with its risk score
+     * and triggered rules, which the async analysis reuses; null when the check was pre-decided
+     * locally or failed open. Triggered rules are one comma-separated column.
+     */
+    @Column(name = "fraud_check_id")
+    private UUID fraudCheckId;
+
+    @Column(name = "fraud_risk_score")
+    private Integer fraudRiskScore;
+
+    @Column(name = "fraud_triggered_rules")
+    private String fraudTriggeredRules;
+
+    @Transient
+    private boolean persisted;
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        this.persisted = true;
+    }
+
     public void complete(BigDecimal newBalance) {
         this.status = TransactionStatus.COMPLETED;
         this.balanceAfter = newBalance;
         this.completedAt = Instant.now();
     }
 
+    public List<String> fraudTriggeredRuleCodes() {
+        if (fraudTriggeredRules == null) {
+            return null;
+        }
+        return fraudTriggeredRules.isEmpty() ? List.of() : Arrays.asList(fraudTriggeredRules.split(","));
+    }
+
     public void fail(String errorMessage) {
         this.status = TransactionStatus.FAILED;
         this.errorMessage = errorMessage;
@@ -0,0 +1,37 @@
+package com.patorinaldi.wallet.transaction.event;
+
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
+import com.patorinaldi.wallet.transaction.client.LocalFraudEvaluator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feeds the rules and risk profiles fraud-service pushes into {@link LocalFraudEvaluator}.
+ * Every instance needs its own copy, so each one consumes under its own group from the latest
+ * offset; fraud-service republishes the rules often enough for a new instance to catch up.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "fraud.local.enabled", havingValue = "true")
+public class FraudFeedListener {
+
+    private final LocalFraudEvaluator localFraudEvaluator;
+
+    @KafkaListener(topics = "fraud-rules", groupId = "transaction-service-rules-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void handleFraudRules(FraudRulesPublishedEvent event) {
+        log.debug("Received FraudRulesPublishedEvent with {} rules", event.rules().size());
+        localFraudEvaluator.updateRules(event);
+    }
+
+    @KafkaListener(topics = "wallet-risk-profile", groupId = "transaction-service-profiles-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void handleWalletRiskProfile(WalletRiskProfileEvent event) {
+        localFraudEvaluator.updateProfile(event);
+    }
+}
@@ -2,9 +2,9 @@ package com.patorinaldi.wallet.transaction.event;
 
 import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
 import com.patorinaldi.wallet.common.event.TransactionFailedEvent;
+import com.patorinaldi.wallet.common.outbox.OutboxWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
@@ -14,19 +14,23 @@ import org.springframework.transaction.event.TransactionalEventListener;
 @Slf4j
 public class KafkaEventPublisher {
 
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final OutboxWriter outboxWriter;
 
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    /**
+     * Keyed by wallet, so a wallet's transactions share a partition and reach consumers, such as
+     * the fraud service's batch listener, in the order they completed.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handleTransactionCompletedEvent (TransactionCompletedEvent event) {
         log.debug("Transaction completed Id: {}", event.transactionId());
-        kafkaTemplate.send("transaction-completed", event.transactionId().toString(), event);
-        log.info("Published TransactionCompletedEvent for Id: {}", event.transactionId());
+        outboxWriter.append("transaction-completed", event.walletId().toString(), event);
+        log.info("Queued TransactionCompletedEvent for Id: {}", event.transactionId());
     }
 
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
     public void handleTransactionFailedEvent  (TransactionFailedEvent event) {
         log.debug("Transaction failed Id: {}", event.transactionId());
-        kafkaTemplate.send("transaction-failed", event.transactionId().toString(), event);
-        log.info("Published TransactionFailedEvent  for Id: {}", event.transactionId());
+        outboxWriter.append("transaction-failed", event.transactionId().toString(), event);
+        log.info("Queued TransactionFailedEvent  for Id: {}", event.transactionId());
     }
 }
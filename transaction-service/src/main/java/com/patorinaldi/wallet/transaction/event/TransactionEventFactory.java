@@ -0,0 +1,54 @@
+package com.patorinaldi.wallet.transaction.event;
+
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.common.event.TransactionFailedEvent;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Builds the Kafka events for a finished {@link Transaction}, shared by every write path.
+ */
+public final class TransactionEventFactory {
+
+    private TransactionEventFactory() {
+        // Utility class
+    }
+
+    public static TransactionCompletedEvent completed(Transaction transaction) {
+        return TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(transaction.getId())
+                .type(transaction.getType())
+                .walletId(transaction.getWalletId())
+                .userId(transaction.getUserId())
+                .amount(transaction.getAmount())
+                .currency(transaction.getCurrency())
+                .balanceAfter(transaction.getBalanceAfter())
+                .relatedWalletId(transaction.getRelatedWalletId())
+                .relatedTransactionId(transaction.getRelatedTransactionId())
+                .description(transaction.getDescription())
+                .fraudCheckId(transaction.getFraudCheckId())
+                .fraudRiskScore(transaction.getFraudRiskScore())
+                .fraudTriggeredRules(transaction.fraudTriggeredRuleCodes())
+                .completedAt(Instant.now())
+                .build();
+    }
+
+    public static TransactionFailedEvent failed(Transaction transaction) {
+        return TransactionFailedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(transaction.getId())
+                .type(transaction.getType())
+                .walletId(transaction.getWalletId())
+                .userId(transaction.getUserId())
+                .amount(transaction.getAmount())
+                .currency(transaction.getCurrency())
+                .relatedTransactionId(transaction.getRelatedTransactionId())
+                .description(transaction.getDescription())
+                .failedAt(Instant.now())
+                .errorReason(transaction.getErrorMessage())
+                .build();
+    }
+}
@@ -3,18 +3,26 @@ package com.patorinaldi.wallet.transaction.event;
 import com.patorinaldi.wallet.common.event.UserBlockedEvent;
 import com.patorinaldi.wallet.transaction.entity.BlockedUser;
 import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
+import com.patorinaldi.wallet.transaction.service.BlockedUserIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Consumes {@code user-blocked} twice: once in the shared group, so exactly one instance stores
+ * the block, and once per instance, so every instance's {@link BlockedUserIndex} hears of it.
+ * The per-instance group starts from the latest offset; the index loads the table on start and
+ * reconciles anything missed in between.
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class UserBlockedEventListener {
 
     private final BlockedUserRepository blockedUserRepository;
+    private final BlockedUserIndex blockedUserIndex;
 
     @KafkaListener(topics = "user-blocked", groupId = "transaction-service")
     @Transactional
@@ -41,4 +49,10 @@ public class UserBlockedEventListener {
         log.warn("User {} added to blocked list. Reason: {}", event.userId(), event.reason());
 
     }
+
+    @KafkaListener(topics = "user-blocked", groupId = "transaction-service-blocks-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    public void indexUserBlocked(UserBlockedEvent event) {
+        blockedUserIndex.block(event.userId(), event.reason());
+    }
 }
@@ -23,4 +23,15 @@ public class InsufficientBalanceException extends RuntimeException {
         this.currentBalance = currentBalance;
         this.requestedAmount = requestedAmount;
     }
+
+    /**
+     * Recreates the error of a failed attempt from its stored message, for a retry of the same
+     * idempotency key. The balance at the time is not stored.
+     */
+    public InsufficientBalanceException(UUID walletId, BigDecimal requestedAmount, String message) {
+        super(message);
+        this.walletId = walletId;
+        this.currentBalance = null;
+        this.requestedAmount = requestedAmount;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.patorinaldi.wallet.transaction.exception;
+
+import lombok.Getter;
+
+import java.util.UUID;
+
+@Getter
+public class SameWalletTransferException extends RuntimeException {
+
+    private final UUID walletId;
+
+    public SameWalletTransferException(UUID walletId) {
+        super("Cannot transfer from wallet " + walletId + " to itself");
+        this.walletId = walletId;
+    }
+}
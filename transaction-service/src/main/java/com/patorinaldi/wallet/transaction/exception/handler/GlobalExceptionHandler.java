@@ -37,6 +37,25 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    @ExceptionHandler(SameWalletTransferException.class)
+    public ResponseEntity<ErrorResponse> handleSameWalletTransfer(
+            SameWalletTransferException ex,
+            HttpServletRequest request) {
+
+        log.warn("Same-wallet transfer rejected for {} {}: walletId={}",
+                request.getMethod(), request.getRequestURI(), ex.getWalletId());
+
+        ErrorResponse response = new ErrorResponse(
+                LocalDateTime.now(),
+                400,
+                "Bad Request",
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
+    }
+
     @ExceptionHandler({WalletBalanceNotFoundException.class, TransactionNotFoundException.class})
     public ResponseEntity<ErrorResponse> handleNotFound(
             RuntimeException ex,
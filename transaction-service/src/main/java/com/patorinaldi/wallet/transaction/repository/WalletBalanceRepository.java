@@ -1,8 +1,14 @@
 package com.patorinaldi.wallet.transaction.repository;
 
 import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,4 +20,72 @@ public interface WalletBalanceRepository extends JpaRepository<WalletBalance, UU
     boolean existsByWalletId(UUID walletId);
 
     List<WalletBalance> findByUserId(UUID userId);
+
+    /**
+     * Locks the given wallets' rows in wallet id order, so batches touching overlapping
+     * wallets always acquire them in the same sequence.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM WalletBalance w WHERE w.walletId IN :walletIds ORDER BY w.walletId")
+    List<WalletBalance> lockByWalletIdIn(@Param("walletIds") Collection<UUID> walletIds);
+
+    /**
+     * Adds {@code amount} in a single statement and returns the new balance,
+     * or empty when the wallet does not exist.
+     */
+    @Query(value = """
+            UPDATE wallet_balances
+            SET balance = balance + :amount, version = version + 1, updated_at = now()
+            WHERE wallet_id = :walletId
+            RETURNING balance
+            """, nativeQuery = true)
+    Optional<BigDecimal> creditAndGetBalance(@Param("walletId") UUID walletId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Subtracts {@code amount} only if the wallet holds at least that much and returns the new
+     * balance. Empty means the wallet does not exist or has insufficient funds; the row lock is
+     * held only for the duration of the statement's transaction, and no read-modify-write race
+     * with concurrent debits is possible.
+     */
+    @Query(value = """
+            UPDATE wallet_balances
+            SET balance = balance - :amount, version = version + 1, updated_at = now()
+            WHERE wallet_id = :walletId AND balance >= :amount
+            RETURNING balance
+            """, nativeQuery = true)
+    Optional<BigDecimal> debitIfSufficient(@Param("walletId") UUID walletId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Debits the source and credits the destination in one statement and returns both new
+     * balances. Rows are locked in wallet id order first, so opposite transfers cannot deadlock.
+     * Fewer than two rows means a wallet is missing or the source has insufficient funds, in
+     * which case the caller must roll back to undo the credit.
+     */
+    @Query(value = """
+            WITH locked AS (
+                SELECT wallet_id FROM wallet_balances
+                WHERE wallet_id IN (:sourceWalletId, :destinationWalletId)
+                ORDER BY wallet_id
+                FOR UPDATE
+            )
+            UPDATE wallet_balances w
+            SET balance = CASE WHEN w.wallet_id = :sourceWalletId THEN w.balance - :debit ELSE w.balance + :credit END,
+                version = w.version + 1,
+                updated_at = now()
+            FROM locked
+            WHERE w.wallet_id = locked.wallet_id
+              AND (w.wallet_id <> :sourceWalletId OR w.balance >= :debit)
+            RETURNING w.wallet_id AS "walletId", w.balance AS "balance"
+            """, nativeQuery = true)
+    List<BalanceChange> transferAndGetBalances(@Param("sourceWalletId") UUID sourceWalletId,
+                                               @Param("destinationWalletId") UUID destinationWalletId,
+                                               @Param("debit") BigDecimal debit,
+                                               @Param("credit") BigDecimal credit);
+
+    interface BalanceChange {
+
+        UUID getWalletId();
+
+        BigDecimal getBalance();
+    }
 }
@@ -0,0 +1,45 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a balance mutation that lost a row-lock race.
+ *
+ * <p>Each attempt must be a complete transaction, so this wraps calls into
+ * {@link TransactionPersistenceService} from outside. Every conflict is counted in
+ * {@code wallet.balance.conflicts} and every re-run in {@code wallet.balance.retries}, both
+ * tagged with the operation, so contention on {@code wallet_balances} shows up in metrics.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceConflictRetry {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet.balance.max-attempts:3}")
+    private int maxAttempts;
+
+    public <T> T execute(String operation, Supplier<T> mutation) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return mutation.get();
+            } catch (ConcurrencyFailureException e) {
+                meterRegistry.counter("wallet.balance.conflicts", "operation", operation).increment();
+                if (attempt >= maxAttempts) {
+                    log.warn("Giving up {} after {} conflicting attempts: {}", operation, attempt, e.getMessage());
+                    throw e;
+                }
+                meterRegistry.counter("wallet.balance.retries", "operation", operation).increment();
+                log.debug("Retrying {} after conflict (attempt {}): {}", operation, attempt, e.getMessage());
+            }
+        }
+    }
+}
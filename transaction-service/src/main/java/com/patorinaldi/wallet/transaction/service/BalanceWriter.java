@@ -0,0 +1,21 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+
+/**
+ * Applies a validated, fraud-checked transaction to the wallet balances and records it.
+ *
+ * <p>{@link TransactionPersistenceService} does this directly against Postgres; the optional
+ * in-memory engine ({@code wallet.engine.enabled}) journals it locally and writes Postgres
+ * behind. Both throw {@link com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException}
+ * and {@link com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException}
+ * without changing any state.
+ */
+public interface BalanceWriter {
+
+    Transaction completeDeposit(Transaction transaction);
+
+    Transaction completeWithdrawal(Transaction transaction);
+
+    Transaction completeTransfer(Transaction transactionOut, Transaction transactionIn);
+}
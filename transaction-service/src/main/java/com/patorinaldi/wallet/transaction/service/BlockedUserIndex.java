@@ -0,0 +1,155 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.entity.BlockedUser;
+import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of {@code blocked_user}, consulted on every write instead of the table.
+ *
+ * <p>The index is loaded before the application starts serving requests and then kept current by
+ * {@link com.patorinaldi.wallet.transaction.event.UserBlockedEventListener}, which every instance
+ * runs under its own consumer group, so each index sees every block, while storing the row is
+ * left to one instance of the shared group. Events missed while an instance starts, and rows
+ * changed outside the service, are covered by periodically reconciling the index against the
+ * table: missing blocks are added and blocks no longer in the table are dropped, each counted as
+ * drift. A block from an event may reach the index before the row is committed elsewhere, so it
+ * is only dropped once it has gone a whole reconcile interval without showing up in the table.
+ */
+@Slf4j
+@Component
+public class BlockedUserIndex {
+
+    private final BlockedUserRepository blockedUserRepository;
+    private final long reconcileIntervalMs;
+    private final long reconcileIntervalNanos;
+
+    private final Map<UUID, Block> blocks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("blocked-user-reconcile").daemon().factory());
+    private final Timer hydrationTimer;
+    private final Counter missing;
+    private final Counter stale;
+
+    public BlockedUserIndex(
+            BlockedUserRepository blockedUserRepository,
+            MeterRegistry meterRegistry,
+            @Value("${wallet.blocked-users.reconcile-interval-ms:60000}") long reconcileIntervalMs) {
+
+        this.blockedUserRepository = blockedUserRepository;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        this.reconcileIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reconcileIntervalMs);
+        this.hydrationTimer = meterRegistry.timer("wallet.blocked-users.hydration");
+        this.missing = meterRegistry.counter("wallet.blocked-users.drift", "kind", "missing");
+        this.stale = meterRegistry.counter("wallet.blocked-users.drift", "kind", "stale");
+        meterRegistry.gaugeMapSize("wallet.blocked-users.size", List.of(), blocks);
+    }
+
+    @PostConstruct
+    public void hydrate() {
+        long started = System.nanoTime();
+        for (BlockedUser blockedUser : blockedUserRepository.findAll()) {
+            blocks.putIfAbsent(blockedUser.getUserId(), new Block(blockedUser.getReason(), started));
+        }
+        long elapsed = System.nanoTime() - started;
+        hydrationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        reconciler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Blocked-user index loaded {} users in {}ms", blocks.size(), elapsed / 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    /**
+     * Returns the block on {@code userId}, if any, without touching the database.
+     */
+    public Optional<Block> find(UUID userId) {
+        return Optional.ofNullable(blocks.get(userId));
+    }
+
+    /**
+     * Adds a block, once the surrounding transaction commits if there is one, so a
+     * reconciliation never sees the block in the index before it can see the row.
+     */
+    public void block(UUID userId, String reason) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            blocks.put(userId, new Block(reason, System.nanoTime(), true));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                blocks.put(userId, new Block(reason, System.nanoTime(), true));
+            }
+        });
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * Brings the index in line with the table. Blocks added after the table was read are kept
+     * even if the read did not include them yet.
+     */
+    void reconcile() {
+        try {
+            long started = System.nanoTime();
+            Map<UUID, String> stored = new HashMap<>();
+            for (BlockedUser blockedUser : blockedUserRepository.findAll()) {
+                stored.put(blockedUser.getUserId(), blockedUser.getReason());
+            }
+
+            stored.forEach((userId, reason) -> {
+                if (blocks.putIfAbsent(userId, new Block(reason, started)) == null) {
+                    missing.increment();
+                    log.warn("Blocked-user index was missing user {}", userId);
+                }
+            });
+            blocks.entrySet().removeIf(entry -> {
+                long keepIfIndexedAfter = entry.getValue().fromEvent() ? started - reconcileIntervalNanos : started;
+                boolean drop = !stored.containsKey(entry.getKey()) && entry.getValue().indexedAt() - keepIfIndexedAfter < 0;
+                if (drop) {
+                    stale.increment();
+                    log.warn("Blocked-user index dropped user {} no longer in blocked_user", entry.getKey());
+                }
+                return drop;
+            });
+        } catch (RuntimeException e) {
+            log.error("Blocked-user index reconciliation failed", e);
+        }
+    }
+
+    /**
+     * @param indexedAt {@link System#nanoTime()} when the block entered the index
+     * @param fromEvent whether it came from an event rather than the table, so its row may not
+     *                  be committed yet
+     */
+    public record Block(String reason, long indexedAt, boolean fromEvent) {
+
+        public Block(String reason, long indexedAt) {
+            this(reason, indexedAt, false);
+        }
+    }
+}
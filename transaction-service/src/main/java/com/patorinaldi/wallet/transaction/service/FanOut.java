@@ -0,0 +1,53 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.web.RequestDeadline;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent steps of one request concurrently, each on its own virtual thread. The
+ * caller waits for every step and the first failure is rethrown as it was thrown. A failing step
+ * does not interrupt the others: they read from Postgres, and interrupting a thread blocked in
+ * JDBC can break its pooled connection, so a sibling runs to completion, bounded by the caller's
+ * {@link RequestDeadline}, and its result is discarded. No step outlives the call.
+ */
+final class FanOut {
+
+    private FanOut() {
+    }
+
+    static <A, B> Both<A, B> both(Supplier<A> first, Supplier<B> second) {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Future<A> a;
+        Future<B> b;
+        try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+            Supplier<A> firstStep = RequestDeadline.propagate(first);
+            Supplier<B> secondStep = RequestDeadline.propagate(second);
+            a = scope.submit(() -> step(firstStep, failure));
+            b = scope.submit(() -> step(secondStep, failure));
+        }
+        switch (failure.get()) {
+            case null -> { }
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new IllegalStateException(failure.get());
+        }
+        return new Both<>(a.resultNow(), b.resultNow());
+    }
+
+    private static <T> T step(Supplier<T> step, AtomicReference<Throwable> failure) {
+        try {
+            return step.get();
+        } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    record Both<A, B>(A first, B second) {
+    }
+}
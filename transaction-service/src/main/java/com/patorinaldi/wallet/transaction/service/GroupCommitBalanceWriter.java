@@ -0,0 +1,329 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.event.TransactionEventFactory;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Group-commit variant of the write path: operations arriving within a short window are
+ * applied together in one database transaction and callers wait for that shared commit.
+ *
+ * <p>A single committer thread collects operations for up to {@code window-ms} (or until
+ * {@code max-batch} is reached), locks every touched {@code wallet_balances} row with one
+ * {@code SELECT ... FOR UPDATE} in wallet id order, then applies the operations one by one in
+ * memory. An operation that fails its own checks, such as a withdrawal with insufficient
+ * funds, is dropped from the batch and only its caller sees the exception. The surviving
+ * transactions and balance changes are flushed with JDBC batching and committed once.
+ *
+ * <p>If the batch itself fails to commit, for example on a duplicate idempotency key, each
+ * operation is retried on its own through {@link TransactionPersistenceService} so a single
+ * bad row cannot fail its neighbours.
+ *
+ * <p>Callers wait at most {@code submit-timeout-ms}. An operation still queued at that point is
+ * withdrawn; one already in a batch may yet commit, and the caller is told so. If an
+ * {@link Error} kills the committer thread, its batch has rolled back, so those callers get an
+ * exception, and a new committer takes over the queue.
+ *
+ * <p>Enable with {@code wallet.group-commit.enabled=true}; per-wallet lanes add nothing in this
+ * mode and should be disabled. The in-memory balance engine replaces this writer, so it is not
+ * created while {@code wallet.engine.enabled=true}.
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(name = "wallet.group-commit.enabled", havingValue = "true")
+@ConditionalOnProperty(name = "wallet.engine.enabled", havingValue = "false", matchIfMissing = true)
+public class GroupCommitBalanceWriter implements BalanceWriter {
+
+    private final TransactionPersistenceService persistenceService;
+    private final TransactionRepository transactionRepository;
+    private final WalletBalanceRepository walletBalanceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final long submitTimeoutMs;
+
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+    private final Timer batchTimer;
+    private final DistributionSummary batchSize;
+    private final Counter fallbacks;
+    private final Counter restarts;
+    private volatile Thread committer;
+    private volatile boolean running = true;
+    // only touched by the committer thread, including its uncaught exception handler
+    private List<Operation> inFlight = List.of();
+
+    public GroupCommitBalanceWriter(
+            TransactionPersistenceService persistenceService,
+            TransactionRepository transactionRepository,
+            WalletBalanceRepository walletBalanceRepository,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${wallet.group-commit.window-ms:2}") long windowMs,
+            @Value("${wallet.group-commit.max-batch:256}") int maxBatch,
+            @Value("${wallet.group-commit.submit-timeout-ms:5000}") long submitTimeoutMs) {
+
+        this.persistenceService = persistenceService;
+        this.transactionRepository = transactionRepository;
+        this.walletBalanceRepository = walletBalanceRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = maxBatch;
+        this.submitTimeoutMs = submitTimeoutMs;
+        this.batchTimer = meterRegistry.timer("wallet.group-commit.batch");
+        this.batchSize = meterRegistry.summary("wallet.group-commit.batch.size");
+        this.fallbacks = meterRegistry.counter("wallet.group-commit.fallbacks");
+        this.restarts = meterRegistry.counter("wallet.group-commit.restarts");
+        meterRegistry.gaugeCollectionSize("wallet.group-commit.pending", List.of(), queue);
+    }
+
+    @PostConstruct
+    void start() {
+        startCommitter();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        Thread current = committer;
+        if (current != null) {
+            current.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    @Override
+    public Transaction completeDeposit(Transaction transaction) {
+        return submit(new Operation(transaction, null));
+    }
+
+    @Override
+    public Transaction completeWithdrawal(Transaction transaction) {
+        return submit(new Operation(transaction, null));
+    }
+
+    @Override
+    public Transaction completeTransfer(Transaction transactionOut, Transaction transactionIn) {
+        return submit(new Operation(transactionOut, transactionIn));
+    }
+
+    private Transaction submit(Operation operation) {
+        if (!running) {
+            throw new IllegalStateException("Group commit is shutting down");
+        }
+        queue.add(operation);
+        try {
+            return operation.result().get(submitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Group commit failed", e.getCause());
+        } catch (TimeoutException e) {
+            if (queue.remove(operation)) {
+                throw new IllegalStateException("Group commit did not pick up the operation within "
+                        + submitTimeoutMs + "ms");
+            }
+            throw new IllegalStateException("Group commit did not finish within " + submitTimeoutMs
+                    + "ms; the operation may still commit");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for group commit", e);
+        }
+    }
+
+    private void startCommitter() {
+        committer = Thread.ofPlatform().name("balance-group-commit").daemon()
+                .uncaughtExceptionHandler(this::committerDied)
+                .start(this::run);
+    }
+
+    private void committerDied(Thread thread, Throwable error) {
+        restarts.increment();
+        log.error("Group commit thread died, failing {} in-flight operations and restarting it", inFlight.size(), error);
+        // the batch transaction rolled back on the way out
+        inFlight.forEach(operation -> operation.result()
+                .completeExceptionally(new IllegalStateException("Group commit failed", error)));
+        inFlight = List.of();
+        if (running) {
+            startCommitter();
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Operation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    commit(collect(first));
+                    inFlight = List.of();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Group commit loop failed", e);
+            }
+        }
+    }
+
+    private List<Operation> collect(Operation first) throws InterruptedException {
+        List<Operation> batch = new ArrayList<>();
+        inFlight = batch;
+        batch.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatch) {
+            long remaining = deadline - System.nanoTime();
+            Operation next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    void commit(List<Operation> batch) {
+        long started = System.nanoTime();
+        List<Operation> applied;
+        try {
+            applied = transactionTemplate.execute(status -> apply(batch));
+        } catch (RuntimeException e) {
+            fallbacks.increment();
+            log.warn("Group commit of {} operations failed, applying them one by one", batch.size(), e);
+            batch.stream()
+                    .filter(operation -> !operation.result().isDone())
+                    .forEach(this::commitAlone);
+            return;
+        }
+        applied.forEach(operation -> operation.result().complete(operation.primary()));
+        batchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+    }
+
+    private List<Operation> apply(List<Operation> batch) {
+        Set<UUID> walletIds = new TreeSet<>();
+        batch.forEach(operation -> operation.legs().forEach(leg -> walletIds.add(leg.getWalletId())));
+        Map<UUID, WalletBalance> balances = walletBalanceRepository.lockByWalletIdIn(walletIds).stream()
+                .collect(Collectors.toMap(WalletBalance::getWalletId, Function.identity()));
+
+        List<Operation> applied = new ArrayList<>(batch.size());
+        List<Transaction> legs = new ArrayList<>();
+        for (Operation operation : batch) {
+            try {
+                applyOne(operation, balances);
+            } catch (InsufficientBalanceException | WalletBalanceNotFoundException e) {
+                operation.result().completeExceptionally(e);
+                continue;
+            }
+            applied.add(operation);
+            legs.addAll(operation.legs());
+        }
+
+        transactionRepository.saveAll(legs);
+        applied.forEach(operation -> operation.legs()
+                .forEach(leg -> eventPublisher.publishEvent(TransactionEventFactory.completed(leg))));
+        return applied;
+    }
+
+    private void applyOne(Operation operation, Map<UUID, WalletBalance> balances) {
+        Transaction primary = operation.primary();
+        WalletBalance wallet = balanceOf(balances, primary.getWalletId());
+        if (operation.counterpart() != null) {
+            WalletBalance destination = balanceOf(balances, operation.counterpart().getWalletId());
+            wallet.debit(primary.getAmount());
+            primary.complete(wallet.getBalance());
+            destination.credit(operation.counterpart().getAmount());
+            operation.counterpart().complete(destination.getBalance());
+            link(primary, operation.counterpart());
+        } else if (primary.getType() == TransactionType.WITHDRAWAL) {
+            wallet.debit(primary.getAmount());
+            primary.complete(wallet.getBalance());
+        } else {
+            wallet.credit(primary.getAmount());
+            primary.complete(wallet.getBalance());
+        }
+    }
+
+    private WalletBalance balanceOf(Map<UUID, WalletBalance> balances, UUID walletId) {
+        WalletBalance walletBalance = balances.get(walletId);
+        if (walletBalance == null) {
+            log.error("Wallet balance not found: {}", walletId);
+            throw new WalletBalanceNotFoundException(walletId);
+        }
+        return walletBalance;
+    }
+
+    private void link(Transaction transactionOut, Transaction transactionIn) {
+        transactionOut.setRelatedWalletId(transactionIn.getWalletId());
+        transactionOut.setRelatedTransactionId(transactionIn.getId());
+        transactionIn.setRelatedWalletId(transactionOut.getWalletId());
+        transactionIn.setRelatedTransactionId(transactionOut.getId());
+    }
+
+    private void commitAlone(Operation operation) {
+        // Legs marked persisted by the rolled-back flush would turn the retry into a merge
+        operation.legs().forEach(leg -> leg.setPersisted(false));
+        try {
+            Transaction primary = operation.primary();
+            Transaction result;
+            if (operation.counterpart() != null) {
+                result = persistenceService.completeTransfer(primary, operation.counterpart());
+            } else if (primary.getType() == TransactionType.WITHDRAWAL) {
+                result = persistenceService.completeWithdrawal(primary);
+            } else {
+                result = persistenceService.completeDeposit(primary);
+            }
+            operation.result().complete(result);
+        } catch (RuntimeException e) {
+            operation.result().completeExceptionally(e);
+        }
+    }
+
+    record Operation(Transaction primary, Transaction counterpart, CompletableFuture<Transaction> result) {
+
+        Operation(Transaction primary, Transaction counterpart) {
+            this(primary, counterpart, new CompletableFuture<>());
+        }
+
+        List<Transaction> legs() {
+            return counterpart == null ? List.of(primary) : List.of(primary, counterpart);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.transaction.dto.TransactionResponse;
+import com.patorinaldi.wallet.transaction.exception.DuplicateTransactionException;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.mapper.TransactionMapper;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency for the write API, enforced by the unique constraint on
+ * {@code transactions.idempotency_key} rather than a lookup before every write.
+ *
+ * <p>A retried request is answered with the original {@link TransactionResponse}: first from a
+ * {@link ReplayCache} of recent responses, then from the database when an
+ * {@link IdempotencyKeyFilter} of keys this instance has seen says the key may exist. Either way
+ * the retry never reaches the fraud service or locks a row. A key the filter has never seen
+ * skips the lookup and goes straight to the write; if it collides on insert, the original row
+ * is loaded and replayed instead. The filter and cache only save work; correctness comes from
+ * the constraint.
+ *
+ * <p>A key whose original attempt failed is answered with that attempt's
+ * {@link InsufficientBalanceException}, not with the FAILED row as if it had succeeded. A key
+ * reused for a different wallet or amount is rejected with
+ * {@link DuplicateTransactionException}. With the in-memory balance engine enabled, rows are
+ * inserted after the response has been sent, so every key missing from the cache is looked up.
+ */
+@Slf4j
+@Component
+public class IdempotencyGuard {
+
+    private static final String DUPLICATE_KEY_DETAIL = "Key (idempotency_key)=";
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionMapper transactionMapper;
+    private final IdempotencyKeyFilter filter;
+    private final ReplayCache cache;
+    private final boolean lookupAlways;
+
+    private final Counter skipped;
+    private final Counter found;
+    private final Counter falsePositives;
+    private final Counter conflicts;
+    private final Counter cacheReplays;
+    private final Counter databaseReplays;
+    private final Timer lookupTimer;
+
+    public IdempotencyGuard(
+            TransactionRepository transactionRepository,
+            TransactionMapper transactionMapper,
+            MeterRegistry meterRegistry,
+            @Value("${wallet.idempotency.bloom.capacity:1000000}") int capacity,
+            @Value("${wallet.idempotency.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${wallet.idempotency.replay.max-entries:100000}") int replayMaxEntries,
+            @Value("${wallet.idempotency.replay.ttl-ms:600000}") long replayTtlMs,
+            @Value("${wallet.engine.enabled:false}") boolean lookupAlways) {
+
+        this.transactionRepository = transactionRepository;
+        this.transactionMapper = transactionMapper;
+        this.filter = new IdempotencyKeyFilter(capacity, falsePositiveRate);
+        this.cache = new ReplayCache(replayMaxEntries, TimeUnit.MILLISECONDS.toNanos(replayTtlMs), System::nanoTime);
+        this.lookupAlways = lookupAlways;
+        this.skipped = meterRegistry.counter("wallet.idempotency.lookups", "result", "skipped");
+        this.found = meterRegistry.counter("wallet.idempotency.lookups", "result", "found");
+        this.falsePositives = meterRegistry.counter("wallet.idempotency.lookups", "result", "false_positive");
+        this.conflicts = meterRegistry.counter("wallet.idempotency.conflicts");
+        this.cacheReplays = meterRegistry.counter("wallet.idempotency.replays", "source", "cache");
+        this.databaseReplays = meterRegistry.counter("wallet.idempotency.replays", "source", "database");
+        this.lookupTimer = meterRegistry.timer("wallet.idempotency.lookup");
+        meterRegistry.gauge("wallet.idempotency.bloom.false-positive-rate", this, IdempotencyGuard::falsePositiveRate);
+        meterRegistry.gauge("wallet.idempotency.lookup.saved-ms", this, IdempotencyGuard::savedMillis);
+        meterRegistry.gauge("wallet.idempotency.replay.size", cache, ReplayCache::size);
+        log.info("Idempotency key filter sized for {} keys at {} false positives ({} bits per generation)",
+                capacity, falsePositiveRate, filter.bitsPerGeneration());
+    }
+
+    /**
+     * Returns the original response if {@code lookupKey} was already used, or empty for a new
+     * request.
+     *
+     * @throws DuplicateTransactionException if the key was used for a different wallet or amount
+     * @throws InsufficientBalanceException if the original attempt failed
+     */
+    public Optional<TransactionResponse> replay(String idempotencyKey, String lookupKey, UUID walletId, BigDecimal amount) {
+        Optional<TransactionResponse> cached = cache.get(lookupKey);
+        if (cached.isPresent()) {
+            cacheReplays.increment();
+            return Optional.of(verified(cached.get(), idempotencyKey, walletId, amount));
+        }
+        if (!lookupAlways && !filter.mightContain(lookupKey)) {
+            skipped.increment();
+            return Optional.empty();
+        }
+
+        Optional<TransactionResponse> original = findOriginal(lookupKey);
+        if (original.isEmpty()) {
+            if (!lookupAlways) {
+                falsePositives.increment();
+            }
+            return Optional.empty();
+        }
+        found.increment();
+        databaseReplays.increment();
+        return Optional.of(verified(original.get(), idempotencyKey, walletId, amount));
+    }
+
+    /**
+     * Caches the response of a finished write, committed or failed, for replay; a failed one is
+     * replayed as its error.
+     */
+    public void remember(String lookupKey, TransactionResponse response) {
+        cache.put(lookupKey, response);
+    }
+
+    /**
+     * Remembers keys a write was attempted for. A key recorded without a row, because the
+     * write failed before its insert, costs one lookup if the client retries it.
+     */
+    public void record(String... keys) {
+        for (String key : keys) {
+            filter.add(key);
+        }
+    }
+
+    /**
+     * Answers a write that lost the insert race on its idempotency key with the winner's
+     * response. Any other integrity violation is rethrown.
+     */
+    public TransactionResponse replayConflict(DataIntegrityViolationException e, String idempotencyKey,
+                                              String lookupKey, UUID walletId, BigDecimal amount) {
+        if (!isDuplicateKey(e)) {
+            throw e;
+        }
+        conflicts.increment();
+        log.warn("Idempotency key collided on insert, replaying original: {}", idempotencyKey);
+        TransactionResponse original = findOriginal(lookupKey)
+                .orElseThrow(() -> new DuplicateTransactionException(idempotencyKey));
+        return verified(original, idempotencyKey, walletId, amount);
+    }
+
+    private Optional<TransactionResponse> findOriginal(String lookupKey) {
+        long started = System.nanoTime();
+        Optional<TransactionResponse> original = transactionRepository.findByIdempotencyKey(lookupKey)
+                .map(transactionMapper::toResponse);
+        lookupTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        original.ifPresent(response -> cache.put(lookupKey, response));
+        return original;
+    }
+
+    private TransactionResponse verified(TransactionResponse original, String idempotencyKey,
+                                         UUID walletId, BigDecimal amount) {
+        if (!original.walletId().equals(walletId) || original.amount().compareTo(amount) != 0) {
+            log.warn("Idempotency key {} reused for a different request", idempotencyKey);
+            throw new DuplicateTransactionException(idempotencyKey);
+        }
+        if (original.status() == TransactionStatus.FAILED) {
+            log.info("Replaying failure of transaction {} for idempotency key {}", original.id(), idempotencyKey);
+            throw new InsufficientBalanceException(original.walletId(), original.amount(), original.errorMessage());
+        }
+        log.info("Replaying transaction {} for idempotency key {}", original.id(), idempotencyKey);
+        return original;
+    }
+
+    private static boolean isDuplicateKey(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains(DUPLICATE_KEY_DETAIL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double falsePositiveRate() {
+        double negatives = skipped.count() + falsePositives.count();
+        return negatives == 0 ? 0.0 : falsePositives.count() / negatives;
+    }
+
+    private double savedMillis() {
+        return skipped.count() * lookupTimer.mean(TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,107 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over recently used idempotency keys. A negative answer is definite, a positive
+ * one may be wrong with roughly the configured probability.
+ *
+ * <p>Keys are added to the current generation; once it holds {@code capacity} keys it becomes
+ * the previous generation and a fresh one is started, so the filter always covers the last
+ * {@code capacity} to {@code 2 * capacity} keys and its false-positive rate does not degrade
+ * as keys accumulate. Safe for concurrent use without locking on the read path.
+ */
+final class IdempotencyKeyFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final int capacity;
+    private final int bits;
+    private final int hashes;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    IdempotencyKeyFilter(int capacity, double falsePositiveRate) {
+        this.capacity = capacity;
+        this.bits = (int) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * LN2));
+        this.current = new Generation(bits);
+        this.previous = new Generation(bits);
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        return current.mightContain(hash) || previous.mightContain(hash);
+    }
+
+    void add(String key) {
+        Generation generation = current;
+        generation.add(hash(key));
+        if (generation.count.incrementAndGet() >= capacity) {
+            rotate(generation);
+        }
+    }
+
+    int bitsPerGeneration() {
+        return bits;
+    }
+
+    private synchronized void rotate(Generation full) {
+        if (current == full) {
+            previous = full;
+            current = new Generation(bits);
+        }
+    }
+
+    /**
+     * FNV-1a over the key's characters, finished with the MurmurHash3 mixer so the two halves
+     * used for double hashing are independent enough.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private final class Generation {
+
+        private final AtomicLongArray words;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Generation(int bits) {
+            this.words = new AtomicLongArray((bits + 63) / 64);
+        }
+
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                long mask = 1L << bit;
+                words.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.dto.TransactionResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Responses of recent writes keyed by idempotency key, bounded by entry count (least recently
+ * used entries are evicted first) and by time since the write. Retried requests are answered
+ * from here without touching the database.
+ */
+final class ReplayCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    ReplayCache(int maxEntries, long ttlNanos, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ReplayCache.this.maxEntries;
+            }
+        };
+    }
+
+    synchronized Optional<TransactionResponse> get(String idempotencyKey) {
+        Entry entry = entries.get(idempotencyKey);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (clock.getAsLong() - entry.storedAt() > ttlNanos) {
+            entries.remove(idempotencyKey);
+            return Optional.empty();
+        }
+        return Optional.of(entry.response());
+    }
+
+    synchronized void put(String idempotencyKey, TransactionResponse response) {
+        entries.put(idempotencyKey, new Entry(response, clock.getAsLong()));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private record Entry(TransactionResponse response, long storedAt) {
+    }
+}
@@ -1,24 +1,151 @@
 package com.patorinaldi.wallet.transaction.service;
 
 import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.event.TransactionEventFactory;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException;
 import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository.BalanceChange;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Owns the short database transactions of the write path.
+ *
+ * <p>{@link TransactionService} runs validation, the blocked-user check and the remote fraud
+ * check without holding a connection, and only then calls into this service. Balances are
+ * changed with single conditional {@code UPDATE} statements that check funds and return the
+ * new balance, so concurrent writers to the same wallet wait on the row lock rather than
+ * failing an optimistic version check.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class TransactionPersistenceService {
+public class TransactionPersistenceService implements BalanceWriter {
 
     private final TransactionRepository transactionRepository;
+    private final WalletBalanceRepository walletBalanceRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    @Transactional
+    public Transaction completeDeposit(Transaction transaction) {
+        BigDecimal newBalance = credit(transaction.getWalletId(), transaction.getAmount());
+        transaction.complete(newBalance);
+
+        transactionRepository.save(transaction);
+
+        eventPublisher.publishEvent(TransactionEventFactory.completed(transaction));
+
+        log.info("Deposit completed successfully for wallet: {}, new balance: {}",
+                transaction.getWalletId(), newBalance);
+        return transaction;
+    }
+
+    @Override
+    @Transactional
+    public Transaction completeWithdrawal(Transaction transaction) {
+        BigDecimal newBalance = debit(transaction.getWalletId(), transaction.getAmount());
+        transaction.complete(newBalance);
+
+        transactionRepository.save(transaction);
+
+        eventPublisher.publishEvent(TransactionEventFactory.completed(transaction));
+
+        log.info("Withdrawal completed successfully for wallet: {}, new balance: {}",
+                transaction.getWalletId(), newBalance);
+        return transaction;
+    }
+
+    /**
+     * Moves funds between two wallets. Both balances change in one conditional statement that
+     * locks the rows in wallet id order, and both legs are inserted in one JDBC batch with their
+     * cross references already set. If the debit fails, the credit is rolled back with the
+     * transaction.
+     */
+    @Override
+    @Transactional
+    public Transaction completeTransfer(Transaction transactionOut, Transaction transactionIn) {
+        UUID sourceWalletId = transactionOut.getWalletId();
+        UUID destinationWalletId = transactionIn.getWalletId();
+
+        Map<UUID, BigDecimal> balances = walletBalanceRepository.transferAndGetBalances(
+                        sourceWalletId, destinationWalletId, transactionOut.getAmount(), transactionIn.getAmount())
+                .stream()
+                .collect(Collectors.toMap(BalanceChange::getWalletId, BalanceChange::getBalance));
+        if (balances.size() < 2) {
+            throw transferFailure(sourceWalletId, destinationWalletId, transactionOut.getAmount());
+        }
+        BigDecimal sourceBalance = balances.get(sourceWalletId);
+        BigDecimal destinationBalance = balances.get(destinationWalletId);
+
+        transactionOut.complete(sourceBalance);
+        transactionOut.setRelatedWalletId(destinationWalletId);
+        transactionOut.setRelatedTransactionId(transactionIn.getId());
+
+        transactionIn.complete(destinationBalance);
+        transactionIn.setRelatedWalletId(sourceWalletId);
+        transactionIn.setRelatedTransactionId(transactionOut.getId());
+
+        transactionRepository.saveAll(List.of(transactionOut, transactionIn));
+
+        eventPublisher.publishEvent(TransactionEventFactory.completed(transactionOut));
+        eventPublisher.publishEvent(TransactionEventFactory.completed(transactionIn));
+
+        log.info("Transfer completed successfully for source wallet: {}, new balance: {}, destination wallet: {}, new balance: {}",
+                sourceWalletId, sourceBalance, destinationWalletId, destinationBalance);
+        return transactionOut;
+    }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void saveFailedTransaction(Transaction transaction) {
         transactionRepository.save(transaction);
+        eventPublisher.publishEvent(TransactionEventFactory.failed(transaction));
         log.info("Failed transaction saved: {}", transaction.getId());
     }
 
+    private BigDecimal credit(UUID walletId, BigDecimal amount) {
+        return walletBalanceRepository.creditAndGetBalance(walletId, amount)
+                .orElseThrow(() -> {
+                    log.error("Wallet balance not found: {}", walletId);
+                    return new WalletBalanceNotFoundException(walletId);
+                });
+    }
+
+    private RuntimeException transferFailure(UUID sourceWalletId, UUID destinationWalletId, BigDecimal amount) {
+        if (!walletBalanceRepository.existsByWalletId(destinationWalletId)) {
+            log.error("Wallet balance not found: {}", destinationWalletId);
+            return new WalletBalanceNotFoundException(destinationWalletId);
+        }
+        return walletBalanceRepository.findByWalletId(sourceWalletId)
+                .<RuntimeException>map(walletBalance -> new InsufficientBalanceException(sourceWalletId, walletBalance.getBalance(), amount))
+                .orElseGet(() -> {
+                    log.error("Wallet balance not found: {}", sourceWalletId);
+                    return new WalletBalanceNotFoundException(sourceWalletId);
+                });
+    }
+
+    private BigDecimal debit(UUID walletId, BigDecimal amount) {
+        return walletBalanceRepository.debitIfSufficient(walletId, amount)
+                .orElseThrow(() -> {
+                    WalletBalance walletBalance = walletBalanceRepository.findByWalletId(walletId)
+                            .orElseThrow(() -> {
+                                log.error("Wallet balance not found: {}", walletId);
+                                return new WalletBalanceNotFoundException(walletId);
+                            });
+                    return new InsufficientBalanceException(walletId, walletBalance.getBalance(), amount);
+                });
+    }
 }
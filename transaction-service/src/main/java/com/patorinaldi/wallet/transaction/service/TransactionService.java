@@ -2,8 +2,6 @@ package com.patorinaldi.wallet.transaction.service;
 
 import com.patorinaldi.wallet.common.enums.TransactionStatus;
 import com.patorinaldi.wallet.common.enums.TransactionType;
-import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
-import com.patorinaldi.wallet.common.event.TransactionFailedEvent;
 import com.patorinaldi.wallet.transaction.dto.*;
 import com.patorinaldi.wallet.transaction.entity.Transaction;
 import com.patorinaldi.wallet.transaction.entity.WalletBalance;
@@ -13,19 +11,20 @@ import com.patorinaldi.wallet.transaction.mapper.TransactionMapper;
 import com.patorinaldi.wallet.transaction.client.FraudCheckRequest;
 import com.patorinaldi.wallet.transaction.client.FraudCheckResponse;
 import com.patorinaldi.wallet.transaction.client.FraudClient;
-import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
+import com.patorinaldi.wallet.transaction.client.LocalFraudEvaluator;
 import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
 import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -37,31 +36,31 @@ public class TransactionService {
     private final WalletBalanceRepository walletBalanceRepository;
     private final TransactionMapper transactionMapper;
     private final TransactionPersistenceService persistenceService;
+    private final BalanceWriter balanceWriter;
     private final BalanceMapper balanceMapper;
-    private final ApplicationEventPublisher eventPublisher;
-    private final BlockedUserRepository blockedUserRepository;
+    private final BlockedUserIndex blockedUserIndex;
     private final FraudClient fraudClient;
+    private final LocalFraudEvaluator localFraudEvaluator;
+    private final BalanceConflictRetry balanceConflictRetry;
+    private final WalletLanes walletLanes;
+    private final IdempotencyGuard idempotencyGuard;
 
-    @Transactional
     public TransactionResponse deposit(DepositRequest request) {
 
         log.info("Processing deposit for wallet: {}, amount: {}",
                 request.walletId(), request.amount());
 
-        if (transactionRepository.existsByIdempotencyKey(request.idempotencyKey())) {
-            log.warn("Duplicate transaction detected: {}", request.idempotencyKey());
-            throw new DuplicateTransactionException(request.idempotencyKey());
+        Optional<TransactionResponse> replayed = idempotencyGuard.replay(
+                request.idempotencyKey(), request.idempotencyKey(), request.walletId(), request.amount());
+        if (replayed.isPresent()) {
+            return replayed.get();
         }
 
-        WalletBalance walletBalance = walletBalanceRepository.findByWalletId(request.walletId())
-                .orElseThrow(() -> {
-                    log.error("Wallet balance not found: {}", request.walletId());
-                    return new WalletBalanceNotFoundException(request.walletId());
-                });
+        WalletBalance walletBalance = findWalletBalance(request.walletId(), "Wallet");
 
         validateUserNotBlocked(walletBalance.getUserId());
 
-        performFraudCheck(walletBalance.getWalletId(), walletBalance.getUserId(),
+        SyncFraudDecision fraudDecision = performFraudCheck(walletBalance.getWalletId(), walletBalance.getUserId(),
                 request.amount(), TransactionType.DEPOSIT, walletBalance.getCurrency());
 
         Transaction transaction = Transaction.builder()
@@ -73,43 +72,41 @@ public class TransactionService {
                 .userId(walletBalance.getUserId())
                 .currency(walletBalance.getCurrency())
                 .description(request.description())
+                .fraudCheckId(fraudDecision.checkId())
+                .fraudRiskScore(fraudDecision.riskScore())
+                .fraudTriggeredRules(fraudDecision.triggeredRules())
                 .build();
 
-        walletBalance.credit(transaction.getAmount());
-        transaction.complete(walletBalance.getBalance());
-
-        transactionRepository.save(transaction);
-        walletBalanceRepository.save(walletBalance);
-
-        TransactionCompletedEvent event = buildCompletedEvent(transaction);
-        eventPublisher.publishEvent(event);
-
-        log.info("Deposit completed successfully for wallet: {}, new balance: {}",
-                walletBalance.getWalletId(), walletBalance.getBalance());
-
-        return transactionMapper.toResponse(transaction);
+        try {
+            TransactionResponse response = transactionMapper.toResponse(walletLanes.run(transaction.getWalletId(),
+                    () -> balanceConflictRetry.execute("deposit",
+                            () -> balanceWriter.completeDeposit(transaction))));
+            idempotencyGuard.remember(request.idempotencyKey(), response);
+            return response;
+        } catch (DataIntegrityViolationException e) {
+            return idempotencyGuard.replayConflict(e, request.idempotencyKey(),
+                    request.idempotencyKey(), request.walletId(), request.amount());
+        } finally {
+            idempotencyGuard.record(request.idempotencyKey());
+        }
     }
 
-    @Transactional
     public TransactionResponse withdrawal(WithdrawalRequest request) {
 
         log.info("Processing withdrawal for wallet: {}, amount: {}",
                 request.walletId(), request.amount());
 
-        if (transactionRepository.existsByIdempotencyKey(request.idempotencyKey())) {
-            log.warn("Duplicate transaction detected: {}", request.idempotencyKey());
-            throw new DuplicateTransactionException(request.idempotencyKey());
+        Optional<TransactionResponse> replayed = idempotencyGuard.replay(
+                request.idempotencyKey(), request.idempotencyKey(), request.walletId(), request.amount());
+        if (replayed.isPresent()) {
+            return replayed.get();
         }
 
-        WalletBalance walletBalance = walletBalanceRepository.findByWalletId(request.walletId())
-                .orElseThrow(() -> {
-                    log.error("Wallet balance not found: {}", request.walletId());
-                    return new WalletBalanceNotFoundException(request.walletId());
-                });
+        WalletBalance walletBalance = findWalletBalance(request.walletId(), "Wallet");
 
         validateUserNotBlocked(walletBalance.getUserId());
 
-        performFraudCheck(walletBalance.getWalletId(), walletBalance.getUserId(),
+        SyncFraudDecision fraudDecision = performFraudCheck(walletBalance.getWalletId(), walletBalance.getUserId(),
                 request.amount(), TransactionType.WITHDRAWAL, walletBalance.getCurrency());
 
         Transaction transaction = Transaction.builder()
@@ -121,60 +118,72 @@ public class TransactionService {
                 .userId(walletBalance.getUserId())
                 .currency(walletBalance.getCurrency())
                 .description(request.description())
+                .fraudCheckId(fraudDecision.checkId())
+                .fraudRiskScore(fraudDecision.riskScore())
+                .fraudTriggeredRules(fraudDecision.triggeredRules())
                 .build();
 
         try {
-            walletBalance.debit(transaction.getAmount());
-            transaction.complete(walletBalance.getBalance());
-            transactionRepository.save(transaction);
-            walletBalanceRepository.save(walletBalance);
-            log.info("Withdrawal completed successfully for wallet: {}, new balance: {}",
-                    walletBalance.getWalletId(), walletBalance.getBalance());
-            TransactionCompletedEvent event = buildCompletedEvent(transaction);
-            eventPublisher.publishEvent(event);
+            TransactionResponse response = transactionMapper.toResponse(walletLanes.run(transaction.getWalletId(),
+                    () -> balanceConflictRetry.execute("withdrawal",
+                            () -> balanceWriter.completeWithdrawal(transaction))));
+            idempotencyGuard.remember(request.idempotencyKey(), response);
+            return response;
+        } catch (DataIntegrityViolationException e) {
+            return idempotencyGuard.replayConflict(e, request.idempotencyKey(),
+                    request.idempotencyKey(), request.walletId(), request.amount());
         } catch (InsufficientBalanceException e) {
             log.error("Insufficient balance for withdrawal...");
             transaction.fail(e.getMessage());
-            persistenceService.saveFailedTransaction(transaction);
-            TransactionFailedEvent event = buildFailedEvent(transaction);
-            eventPublisher.publishEvent(event);
+            try {
+                persistenceService.saveFailedTransaction(transaction);
+            } catch (DataIntegrityViolationException conflict) {
+                return idempotencyGuard.replayConflict(conflict, request.idempotencyKey(),
+                        request.idempotencyKey(), request.walletId(), request.amount());
+            }
+            idempotencyGuard.remember(request.idempotencyKey(), transactionMapper.toResponse(transaction));
             throw e;
+        } finally {
+            idempotencyGuard.record(request.idempotencyKey());
         }
-
-        return transactionMapper.toResponse(transaction);
     }
 
-    @Transactional
     public TransactionResponse transfer(TransferRequest request) {
 
         log.info("Processing transfer from wallet: {} to wallet: {}, amount: {}",
                 request.sourceWalletId(), request.destinationWalletId(), request.amount());
 
+        // the balance statement moves funds between two rows; a wallet paying itself has one
+        if (request.sourceWalletId().equals(request.destinationWalletId())) {
+            throw new SameWalletTransferException(request.sourceWalletId());
+        }
+
         String outKey = request.idempotencyKey() + ":out";
         String inKey = request.idempotencyKey() + ":in";
 
-        if (transactionRepository.existsByIdempotencyKey(outKey) || transactionRepository.existsByIdempotencyKey(inKey)) {
-            log.warn("Duplicate transaction detected: {}", request.idempotencyKey());
-            throw new DuplicateTransactionException(request.idempotencyKey());
+        Optional<TransactionResponse> replayed = idempotencyGuard.replay(
+                request.idempotencyKey(), outKey, request.sourceWalletId(), request.amount());
+        if (replayed.isPresent()) {
+            return replayed.get();
         }
 
-        WalletBalance sourceWalletBalance = walletBalanceRepository.findByWalletId(request.sourceWalletId())
-                .orElseThrow(() -> {
-                    log.error("Source wallet balance not found: {}", request.sourceWalletId());
-                    return new WalletBalanceNotFoundException(request.sourceWalletId());
-                });
-
-        WalletBalance destinationWalletBalance = walletBalanceRepository.findByWalletId(request.destinationWalletId())
-                .orElseThrow(() -> {
-                    log.error("Destination wallet balance not found: {}", request.destinationWalletId());
-                    return new WalletBalanceNotFoundException(request.destinationWalletId());
+        // The source side's fraud call overlaps the destination lookup; a failure is thrown once both are done
+        FanOut.Both<CheckedWallet, WalletBalance> wallets = FanOut.both(
+                () -> {
+                    WalletBalance source = findWalletBalance(request.sourceWalletId(), "Source wallet");
+                    validateUserNotBlocked(source.getUserId());
+                    SyncFraudDecision fraudDecision = performFraudCheck(source.getWalletId(), source.getUserId(),
+                            request.amount(), TransactionType.TRANSFER_OUT, source.getCurrency());
+                    return new CheckedWallet(source, fraudDecision);
+                },
+                () -> {
+                    WalletBalance destination = findWalletBalance(request.destinationWalletId(), "Destination wallet");
+                    validateUserNotBlocked(destination.getUserId());
+                    return destination;
                 });
-
-        validateUserNotBlocked(sourceWalletBalance.getUserId());
-        validateUserNotBlocked(destinationWalletBalance.getUserId());
-
-        performFraudCheck(sourceWalletBalance.getWalletId(), sourceWalletBalance.getUserId(),
-                request.amount(), TransactionType.TRANSFER_OUT, sourceWalletBalance.getCurrency());
+        WalletBalance sourceWalletBalance = wallets.first().balance();
+        SyncFraudDecision fraudDecision = wallets.first().fraudDecision();
+        WalletBalance destinationWalletBalance = wallets.second();
 
         Transaction transactionOut = Transaction.builder()
                 .amount(request.amount())
@@ -185,6 +194,9 @@ public class TransactionService {
                 .userId(sourceWalletBalance.getUserId())
                 .currency(sourceWalletBalance.getCurrency())
                 .description(request.description())
+                .fraudCheckId(fraudDecision.checkId())
+                .fraudRiskScore(fraudDecision.riskScore())
+                .fraudTriggeredRules(fraudDecision.triggeredRules())
                 .build();
 
         Transaction transactionIn = Transaction.builder()
@@ -199,44 +211,28 @@ public class TransactionService {
                 .build();
 
         try {
-            sourceWalletBalance.debit(transactionOut.getAmount());
-            destinationWalletBalance.credit(transactionIn.getAmount());
-            transactionOut.complete(sourceWalletBalance.getBalance());
-            transactionIn.complete(destinationWalletBalance.getBalance());
-
-            transactionRepository.save(transactionOut);
-            transactionRepository.save(transactionIn);
-
-            transactionOut.setRelatedWalletId(transactionIn.getWalletId());
-            transactionOut.setRelatedTransactionId(transactionIn.getId());
-
-            transactionIn.setRelatedWalletId(transactionOut.getWalletId());
-            transactionIn.setRelatedTransactionId(transactionOut.getId());
-
-            transactionRepository.save(transactionOut);
-            transactionRepository.save(transactionIn);
-
-            walletBalanceRepository.save(sourceWalletBalance);
-            walletBalanceRepository.save(destinationWalletBalance);
-            log.info("Transfer completed successfully for source wallet: {}, new balance: {}, destination wallet: {}, new balance: {}",
-                    sourceWalletBalance.getWalletId(), sourceWalletBalance.getBalance(),
-                    destinationWalletBalance.getWalletId(), destinationWalletBalance.getBalance());
-
-            TransactionCompletedEvent eventOut = buildCompletedEvent(transactionOut);
-            eventPublisher.publishEvent(eventOut);
-            TransactionCompletedEvent eventIn = buildCompletedEvent(transactionIn);
-            eventPublisher.publishEvent(eventIn);
-
+            TransactionResponse response = transactionMapper.toResponse(walletLanes.run(transactionOut.getWalletId(), transactionIn.getWalletId(),
+                    () -> balanceConflictRetry.execute("transfer",
+                            () -> balanceWriter.completeTransfer(transactionOut, transactionIn))));
+            idempotencyGuard.remember(outKey, response);
+            return response;
+        } catch (DataIntegrityViolationException e) {
+            return idempotencyGuard.replayConflict(e, request.idempotencyKey(),
+                    outKey, request.sourceWalletId(), request.amount());
         } catch (InsufficientBalanceException e) {
             log.error("Insufficient balance for transfer...");
             transactionOut.fail(e.getMessage());
-            persistenceService.saveFailedTransaction(transactionOut);
-            TransactionFailedEvent event = buildFailedEvent(transactionOut);
-            eventPublisher.publishEvent(event);
+            try {
+                persistenceService.saveFailedTransaction(transactionOut);
+            } catch (DataIntegrityViolationException conflict) {
+                return idempotencyGuard.replayConflict(conflict, request.idempotencyKey(),
+                        outKey, request.sourceWalletId(), request.amount());
+            }
+            idempotencyGuard.remember(outKey, transactionMapper.toResponse(transactionOut));
             throw e;
+        } finally {
+            idempotencyGuard.record(outKey, inKey);
         }
-
-        return transactionMapper.toResponse(transactionOut);
     }
 
     @Transactional(readOnly = true)
@@ -268,56 +264,41 @@ public class TransactionService {
         );
     }
 
-    private TransactionCompletedEvent buildCompletedEvent(Transaction transaction) {
-        return TransactionCompletedEvent.builder()
-                .eventId(UUID.randomUUID())
-                .transactionId(transaction.getId())
-                .type(transaction.getType())
-                .walletId(transaction.getWalletId())
-                .userId(transaction.getUserId())
-                .amount(transaction.getAmount())
-                .currency(transaction.getCurrency())
-                .balanceAfter(transaction.getBalanceAfter())
-                .relatedWalletId(transaction.getRelatedWalletId())
-                .relatedTransactionId(transaction.getRelatedTransactionId())
-                .description(transaction.getDescription())
-                .completedAt(Instant.now())
-                .build();
-    }
-
-    private TransactionFailedEvent buildFailedEvent(Transaction transaction) {
-        return TransactionFailedEvent.builder()
-                .eventId(UUID.randomUUID())
-                .transactionId(transaction.getId())
-                .type(transaction.getType())
-                .walletId(transaction.getWalletId())
-                .userId(transaction.getUserId())
-                .amount(transaction.getAmount())
-                .currency(transaction.getCurrency())
-                .relatedTransactionId(transaction.getRelatedTransactionId())
-                .description(transaction.getDescription())
-                .failedAt(Instant.now())
-                .errorReason(transaction.getErrorMessage())
-                .build();
+    private WalletBalance findWalletBalance(UUID walletId, String label) {
+        return walletBalanceRepository.findByWalletId(walletId)
+                .orElseThrow(() -> {
+                    log.error("{} balance not found: {}", label, walletId);
+                    return new WalletBalanceNotFoundException(walletId);
+                });
     }
 
     private void validateUserNotBlocked(UUID userId) {
-        blockedUserRepository.findById(userId).ifPresent(blocked -> {
-            log.warn("Transaction rejected - user {} is blocked: {}", userId, blocked.getReason());
-            throw new UserBlockedException(userId, blocked.getReason());
+        blockedUserIndex.find(userId).ifPresent(blocked -> {
+            log.warn("Transaction rejected - user {} is blocked: {}", userId, blocked.reason());
+            throw new UserBlockedException(userId, blocked.reason());
         });
     }
 
-    private void performFraudCheck(UUID walletId, UUID userId, BigDecimal amount,
+    /**
+     * Runs the synchronous fraud check and returns fraud-service's decision, to be kept on the
+     * transaction for the async analysis, or {@link SyncFraudDecision#NONE} if the decision was
+     * made here, locally or by failing open.
+     */
+    private SyncFraudDecision performFraudCheck(UUID walletId, UUID userId, BigDecimal amount,
                                    TransactionType type, String currency) {
         log.debug("Performing sync fraud check for wallet: {}, amount: {}, type: {}",
                 walletId, amount, type);
 
         FraudCheckRequest fraudRequest = new FraudCheckRequest(
-                walletId, userId, amount, type, currency
+                walletId, userId, amount, type, currency, UUID.randomUUID()
         );
 
-        FraudCheckResponse response = fraudClient.checkTransaction(fraudRequest);
+        Optional<FraudCheckResponse> preDecided = localFraudEvaluator.preDecide(fraudRequest);
+        FraudCheckResponse response = preDecided.orElseGet(() -> fraudClient.checkTransaction(fraudRequest));
+        boolean decidedByService = preDecided.isEmpty() && !response.isServiceUnavailable();
+        if (response.isServiceUnavailable()) {
+            response = localFraudEvaluator.evaluateDuringOutage(fraudRequest).orElse(response);
+        }
 
         if (response.isBlocked()) {
             log.warn("Transaction blocked by fraud detection for wallet: {}. Risk score: {}, Rules: {}",
@@ -329,6 +310,20 @@ public class TransactionService {
             log.warn("Transaction flagged for wallet: {}. Risk score: {}, Rules: {}. Proceeding with transaction.",
                     walletId, response.riskScore(), response.triggeredRules());
         }
+
+        if (!decidedByService) {
+            return SyncFraudDecision.NONE;
+        }
+        List<String> triggeredRules = response.triggeredRules() == null ? List.of() : response.triggeredRules();
+        return new SyncFraudDecision(fraudRequest.checkId(), response.riskScore(), String.join(",", triggeredRules));
+    }
+
+    private record CheckedWallet(WalletBalance balance, SyncFraudDecision fraudDecision) {
+    }
+
+    private record SyncFraudDecision(UUID checkId, Integer riskScore, String triggeredRules) {
+
+        private static final SyncFraudDecision NONE = new SyncFraudDecision(null, null, null);
     }
 
 }
\ No newline at end of file
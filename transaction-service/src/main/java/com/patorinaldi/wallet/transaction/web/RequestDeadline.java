@@ -0,0 +1,58 @@
+package com.patorinaldi.wallet.transaction.web;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The point in time by which the API request being served on this thread must be answered.
+ * Set by {@link RequestDeadlineFilter}; downstream calls size their timeouts from
+ * {@link #remaining()} instead of a fixed value. Work handed to other threads carries the
+ * deadline along via {@link #propagate}.
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    public static void start(Duration budget) {
+        DEADLINE_NANOS.set(System.nanoTime() + budget.toNanos());
+    }
+
+    public static void clear() {
+        DEADLINE_NANOS.remove();
+    }
+
+    /**
+     * Time left until the deadline, negative once it has passed, or empty outside an API request.
+     */
+    public static Optional<Duration> remaining() {
+        Long deadline = DEADLINE_NANOS.get();
+        return deadline == null ? Optional.empty() : Optional.of(Duration.ofNanos(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Wraps {@code step} so that it runs under the calling thread's deadline, whichever thread runs it.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> step) {
+        Long deadline = DEADLINE_NANOS.get();
+        if (deadline == null) {
+            return step;
+        }
+        return () -> {
+            Long previous = DEADLINE_NANOS.get();
+            DEADLINE_NANOS.set(deadline);
+            try {
+                return step.get();
+            } finally {
+                if (previous == null) {
+                    DEADLINE_NANOS.remove();
+                } else {
+                    DEADLINE_NANOS.set(previous);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.patorinaldi.wallet.transaction.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Starts a {@link RequestDeadline} of {@code wallet.api.deadline-ms} for every API request.
+ * A caller that has less time left (a gateway, or a client retrying) can shorten it with the
+ * X-Request-Timeout-Ms header; it cannot extend it.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long deadlineMs;
+
+    public RequestDeadlineFilter(@Value("${wallet.api.deadline-ms:2000}") long deadlineMs) {
+        this.deadlineMs = deadlineMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            RequestDeadline.start(Duration.ofMillis(Math.min(deadlineMs, requestedTimeoutMs(request))));
+            chain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    private long requestedTimeoutMs(HttpServletRequest request) {
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (header == null || header.isBlank()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Math.max(0, Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.patorinaldi.wallet.transaction;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.transaction.dto.DepositRequest;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.client.RestTestClient;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the workload of {@link WalletLaneThroughputIntegrationTest} with the in-memory balance
+ * engine enabled, so the two tests' reported figures compare the journaled write path with
+ * the JPA one. Also checks that write-behind converges Postgres to the engine's balances.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class BalanceEngineThroughputIntegrationTest {
+
+    private static final int CLIENTS = 32;
+    private static final int OPERATIONS = 2000;
+
+    @LocalServerPort
+    private int port;
+
+    private static WireMockServer wireMockServer;
+
+    @TempDir
+    static Path journalDirectory;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("fraud.service.url", () -> "http://localhost:" + wireMockServer.port());
+        registry.add("wallet.engine.enabled", () -> "true");
+        registry.add("wallet.engine.journal-dir", () -> journalDirectory.toString());
+    }
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private RestTestClient restTestClient;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void stopWireMock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        restTestClient = RestTestClient.bindToServer()
+                .baseUrl("http://localhost:" + port)
+                .build();
+
+        transactionRepository.deleteAll();
+        walletBalanceRepository.deleteAll();
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("""
+                                {
+                                    "riskScore": 0,
+                                    "decision": "APPROVE",
+                                    "triggeredRules": [],
+                                    "message": "Transaction approved"
+                                }
+                                """)));
+    }
+
+    @ParameterizedTest(name = "{0} wallets")
+    @ValueSource(ints = {1, 10, 1000})
+    void shouldJournalEveryDepositAndWriteBehindToPostgres(int walletCount) throws Exception {
+        // Given
+        List<WalletBalance> wallets = new ArrayList<>();
+        for (int i = 0; i < walletCount; i++) {
+            wallets.add(walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                    UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ZERO, "USD")));
+        }
+        long[] latencies = new long[OPERATIONS];
+        double conflictsBefore = balanceConflicts();
+
+        // When
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CLIENTS)) {
+            List<CompletableFuture<Void>> deposits = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                int operation = i;
+                UUID walletId = wallets.get(i % walletCount).getWalletId();
+                deposits.add(CompletableFuture.runAsync(() -> {
+                    long requestStarted = System.nanoTime();
+                    deposit(walletId);
+                    latencies[operation] = System.nanoTime() - requestStarted;
+                }, executor));
+            }
+            CompletableFuture.allOf(deposits.toArray(CompletableFuture[]::new)).join();
+        }
+        long elapsedMillis = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+
+        Arrays.sort(latencies);
+        Timer laneWait = meterRegistry.find("wallet.lane.wait").timer();
+        double conflicts = balanceConflicts() - conflictsBefore;
+        String measurement = String.format(
+                "wallets=%d, clients=%d, operations=%d, throughput=%d ops/s, p50=%dms, p99=%dms, " +
+                        "max lane wait=%.1fms, balance conflicts=%.0f",
+                walletCount, CLIENTS, OPERATIONS, OPERATIONS * 1000L / elapsedMillis,
+                latencies[OPERATIONS / 2] / 1_000_000, latencies[OPERATIONS * 99 / 100] / 1_000_000,
+                laneWait == null ? 0.0 : laneWait.max(TimeUnit.MILLISECONDS), conflicts);
+
+        // Then
+        BigDecimal expected = new BigDecimal("1.00").multiply(BigDecimal.valueOf(OPERATIONS));
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+            BigDecimal total = walletBalanceRepository.findAll().stream()
+                    .map(WalletBalance::getBalance)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            assertEquals(0, expected.compareTo(total), "Write-behind must converge: " + measurement);
+            assertEquals(OPERATIONS, transactionRepository.count(), measurement);
+        });
+        assertEquals(0.0, conflicts, measurement);
+    }
+
+    private double balanceConflicts() {
+        return meterRegistry.find("wallet.balance.conflicts").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    private void deposit(UUID walletId) {
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("1.00"), "Engine benchmark");
+        restTestClient.post()
+                .uri("/api/transactions/deposit")
+                .body(request)
+                .exchange()
+                .expectStatus().isCreated();
+    }
+}
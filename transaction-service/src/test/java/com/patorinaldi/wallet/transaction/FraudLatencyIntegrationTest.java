@@ -0,0 +1,178 @@
+package com.patorinaldi.wallet.transaction;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.transaction.dto.BalanceResponse;
+import com.patorinaldi.wallet.transaction.dto.DepositRequest;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.client.RestTestClient;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Injects latency into the fraud service and measures how the write path uses the
+ * connection pool. The pool is deliberately smaller than the number of concurrent
+ * writers: if a connection were held across the fraud call, writers would queue on the
+ * pool and reads would stall behind them.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class FraudLatencyIntegrationTest {
+
+    private static final int POOL_SIZE = 4;
+    private static final int CONCURRENT_WRITERS = 16;
+    private static final int FRAUD_LATENCY_MS = 1500;
+
+    @LocalServerPort
+    private int port;
+
+    private static WireMockServer wireMockServer;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> POOL_SIZE);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("fraud.service.url", () -> "http://localhost:" + wireMockServer.port());
+        registry.add("fraud.service.timeout-ms", () -> "5000");
+    }
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private RestTestClient restTestClient;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void stopWireMock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        restTestClient = RestTestClient.bindToServer()
+                .baseUrl("http://localhost:" + port)
+                .build();
+
+        transactionRepository.deleteAll();
+        walletBalanceRepository.deleteAll();
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(FRAUD_LATENCY_MS)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("""
+                                {
+                                    "riskScore": 0,
+                                    "decision": "APPROVE",
+                                    "triggeredRules": [],
+                                    "message": "Transaction approved"
+                                }
+                                """)));
+    }
+
+    @Test
+    void shouldNotHoldConnectionsWhileWaitingOnSlowFraudService() throws Exception {
+        // Given
+        List<WalletBalance> wallets = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_WRITERS; i++) {
+            wallets.add(walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                    UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("100.00"), "USD")));
+        }
+        HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+
+        // When
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_WRITERS)) {
+            List<CompletableFuture<Void>> writes = wallets.stream()
+                    .map(wallet -> CompletableFuture.runAsync(() -> deposit(wallet.getWalletId()), executor))
+                    .toList();
+
+            Thread.sleep(FRAUD_LATENCY_MS / 3);
+            int activeWhileWaiting = hikari.getHikariPoolMXBean().getActiveConnections();
+
+            long readStarted = System.nanoTime();
+            restTestClient.get()
+                    .uri("/api/transactions/balances/" + wallets.getFirst().getWalletId())
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(BalanceResponse.class);
+            long readMillis = (System.nanoTime() - readStarted) / 1_000_000;
+
+            CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+            String measurement = String.format(
+                    "fraud latency=%dms, pool=%d, writers=%d, active connections while waiting=%d, " +
+                            "balance read=%dms, total=%dms, throughput=%d ops/s",
+                    FRAUD_LATENCY_MS, POOL_SIZE, CONCURRENT_WRITERS, activeWhileWaiting,
+                    readMillis, elapsedMillis, CONCURRENT_WRITERS * 1000L / Math.max(elapsedMillis, 1));
+
+            // Then
+            assertEquals(0, activeWhileWaiting, "No connection should be held across the fraud call: " + measurement);
+            assertTrue(readMillis < FRAUD_LATENCY_MS / 2, "Balance reads must not queue behind writers: " + measurement);
+            assertTrue(elapsedMillis < 2L * FRAUD_LATENCY_MS,
+                    "Writers should overlap their fraud calls instead of serialising on the pool: " + measurement);
+        }
+
+        assertEquals(CONCURRENT_WRITERS, transactionRepository.count());
+    }
+
+    private void deposit(UUID walletId) {
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("10.00"), "Latency test");
+        restTestClient.post()
+                .uri("/api/transactions/deposit")
+                .body(request)
+                .exchange()
+                .expectStatus().isCreated();
+    }
+}
@@ -0,0 +1,194 @@
+package com.patorinaldi.wallet.transaction;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.transaction.dto.DepositRequest;
+import com.patorinaldi.wallet.transaction.dto.WithdrawalRequest;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.client.RestTestClient;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the workload of {@link WalletLaneThroughputIntegrationTest} with group commit enabled
+ * and lanes disabled, so the two tests' reported figures compare one commit per request with
+ * one commit per window. Every tenth request is an overdraft that must fail on its own without
+ * taking the deposits batched alongside it down.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class GroupCommitThroughputIntegrationTest {
+
+    private static final int CLIENTS = 32;
+    private static final int OPERATIONS = 2000;
+    private static final int OVERDRAFT_EVERY = 10;
+
+    @LocalServerPort
+    private int port;
+
+    private static WireMockServer wireMockServer;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("fraud.service.url", () -> "http://localhost:" + wireMockServer.port());
+        registry.add("wallet.group-commit.enabled", () -> "true");
+        registry.add("wallet.group-commit.window-ms", () -> "2");
+        registry.add("wallet.lanes.enabled", () -> "false");
+    }
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private RestTestClient restTestClient;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void stopWireMock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        restTestClient = RestTestClient.bindToServer()
+                .baseUrl("http://localhost:" + port)
+                .build();
+
+        transactionRepository.deleteAll();
+        walletBalanceRepository.deleteAll();
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("""
+                                {
+                                    "riskScore": 0,
+                                    "decision": "APPROVE",
+                                    "triggeredRules": [],
+                                    "message": "Transaction approved"
+                                }
+                                """)));
+    }
+
+    @ParameterizedTest(name = "{0} wallets")
+    @ValueSource(ints = {1, 10, 1000})
+    void shouldCommitDepositsInBatchesAndIsolateOverdrafts(int walletCount) throws Exception {
+        // Given
+        List<WalletBalance> wallets = new ArrayList<>();
+        for (int i = 0; i < walletCount; i++) {
+            wallets.add(walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                    UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ZERO, "USD")));
+        }
+        long[] latencies = new long[OPERATIONS];
+
+        // When
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CLIENTS)) {
+            List<CompletableFuture<Void>> deposits = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS; i++) {
+                int operation = i;
+                UUID walletId = wallets.get(i % walletCount).getWalletId();
+                deposits.add(CompletableFuture.runAsync(() -> {
+                    long requestStarted = System.nanoTime();
+                    if (operation % OVERDRAFT_EVERY == OVERDRAFT_EVERY - 1) {
+                        overdraft(walletId);
+                    } else {
+                        deposit(walletId);
+                    }
+                    latencies[operation] = System.nanoTime() - requestStarted;
+                }, executor));
+            }
+            CompletableFuture.allOf(deposits.toArray(CompletableFuture[]::new)).join();
+        }
+        long elapsedMillis = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+
+        Arrays.sort(latencies);
+        DistributionSummary batchSize = meterRegistry.find("wallet.group-commit.batch.size").summary();
+        String measurement = String.format(
+                "wallets=%d, clients=%d, operations=%d, throughput=%d ops/s, p50=%dms, p99=%dms, " +
+                        "mean batch=%.1f, max batch=%.0f",
+                walletCount, CLIENTS, OPERATIONS, OPERATIONS * 1000L / elapsedMillis,
+                latencies[OPERATIONS / 2] / 1_000_000, latencies[OPERATIONS * 99 / 100] / 1_000_000,
+                batchSize == null ? 0.0 : batchSize.mean(), batchSize == null ? 0.0 : batchSize.max());
+
+        // Then
+        int deposits = OPERATIONS - OPERATIONS / OVERDRAFT_EVERY;
+        BigDecimal expected = new BigDecimal("1.00").multiply(BigDecimal.valueOf(deposits));
+        BigDecimal total = walletBalanceRepository.findAll().stream()
+                .map(WalletBalance::getBalance)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, expected.compareTo(total), measurement);
+        assertEquals(OPERATIONS, transactionRepository.count(), measurement);
+    }
+
+    private void deposit(UUID walletId) {
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("1.00"), "Group commit benchmark");
+        restTestClient.post()
+                .uri("/api/transactions/deposit")
+                .body(request)
+                .exchange()
+                .expectStatus().isCreated();
+    }
+
+    private void overdraft(UUID walletId) {
+        WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, new BigDecimal("1000000.00"), "Overdraft");
+        restTestClient.post()
+                .uri("/api/transactions/withdrawal")
+                .body(request)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -167,7 +167,7 @@ public class TransactionServiceIntegrationTest {
     }
 
     @Test
-    void shouldRejectDuplicateDeposit() {
+    void shouldReplayDuplicateDeposit() {
         // Given
         WalletBalance wallet = setupWalletWithBalance(new BigDecimal("100.00"));
         String idempotencyKey = "TEST-DEPOSIT-001";
@@ -179,26 +179,30 @@ public class TransactionServiceIntegrationTest {
         );
 
         // First deposit
-        restTestClient.post()
+        TransactionResponse original = restTestClient.post()
                 .uri("/api/transactions/deposit")
                 .body(request)
                 .exchange()
-                .expectStatus().isCreated();
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
+                .returnResult()
+                .getResponseBody();
 
-        // When - try duplicate
-        ErrorResponse errorResponse = restTestClient.post()
+        // When - retry with the same key
+        TransactionResponse replayed = restTestClient.post()
                 .uri("/api/transactions/deposit")
                 .body(request)
                 .exchange()
-                .expectStatus().isEqualTo(409)
-                .expectBody(ErrorResponse.class)
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
                 .returnResult()
                 .getResponseBody();
 
         // Then
-        assertNotNull(errorResponse);
-        assertEquals(409, errorResponse.status());
-        assertTrue(errorResponse.message().contains("Transaction already exists"));
+        assertNotNull(original);
+        assertNotNull(replayed);
+        assertEquals(original.id(), replayed.id());
+        assertEquals(0, original.balanceAfter().compareTo(replayed.balanceAfter()));
 
         // Verify only one transaction exists
         assertEquals(1, transactionRepository.findAll().size());
@@ -208,6 +212,34 @@ public class TransactionServiceIntegrationTest {
         assertEquals(new BigDecimal("150.0000"), updatedWallet.getBalance());
     }
 
+    @Test
+    void shouldRejectIdempotencyKeyReusedForDifferentAmount() {
+        // Given
+        WalletBalance wallet = setupWalletWithBalance(new BigDecimal("100.00"));
+        String idempotencyKey = "TEST-DEPOSIT-REUSED";
+
+        restTestClient.post()
+                .uri("/api/transactions/deposit")
+                .body(TestDataBuilder.createDepositRequest(wallet.getWalletId(), new BigDecimal("50.00"), "Test deposit", idempotencyKey))
+                .exchange()
+                .expectStatus().isCreated();
+
+        // When
+        ErrorResponse errorResponse = restTestClient.post()
+                .uri("/api/transactions/deposit")
+                .body(TestDataBuilder.createDepositRequest(wallet.getWalletId(), new BigDecimal("80.00"), "Test deposit", idempotencyKey))
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody(ErrorResponse.class)
+                .returnResult()
+                .getResponseBody();
+
+        // Then
+        assertNotNull(errorResponse);
+        assertTrue(errorResponse.message().contains("Transaction already exists"));
+        assertEquals(1, transactionRepository.findAll().size());
+    }
+
     // ========== WITHDRAWAL TESTS ==========
 
     @Test
@@ -308,7 +340,7 @@ public class TransactionServiceIntegrationTest {
     }
 
     @Test
-    void shouldRejectDuplicateWithdrawal() {
+    void shouldReplayDuplicateWithdrawal() {
         // Given
         WalletBalance wallet = setupWalletWithBalance(new BigDecimal("100.00"));
         String idempotencyKey = "TEST-WITHDRAWAL-001";
@@ -320,25 +352,29 @@ public class TransactionServiceIntegrationTest {
         );
 
         // First withdrawal
-        restTestClient.post()
+        TransactionResponse original = restTestClient.post()
                 .uri("/api/transactions/withdrawal")
                 .body(request)
                 .exchange()
-                .expectStatus().isCreated();
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
+                .returnResult()
+                .getResponseBody();
 
-        // When - try duplicate
-        ErrorResponse errorResponse = restTestClient.post()
+        // When - retry with the same key
+        TransactionResponse replayed = restTestClient.post()
                 .uri("/api/transactions/withdrawal")
                 .body(request)
                 .exchange()
-                .expectStatus().isEqualTo(409)
-                .expectBody(ErrorResponse.class)
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
                 .returnResult()
                 .getResponseBody();
 
         // Then
-        assertNotNull(errorResponse);
-        assertEquals(409, errorResponse.status());
+        assertNotNull(original);
+        assertNotNull(replayed);
+        assertEquals(original.id(), replayed.id());
 
         // Verify only one transaction exists
         assertEquals(1, transactionRepository.findAll().size());
@@ -511,7 +547,7 @@ public class TransactionServiceIntegrationTest {
     }
 
     @Test
-    void shouldRejectDuplicateTransfer() {
+    void shouldReplayDuplicateTransfer() {
         // Given
         WalletBalance sourceWallet = setupWalletWithBalance(new BigDecimal("200.00"));
         WalletBalance destWallet = setupWalletWithBalance(new BigDecimal("50.00"));
@@ -526,25 +562,29 @@ public class TransactionServiceIntegrationTest {
         );
 
         // First transfer
-        restTestClient.post()
+        TransactionResponse original = restTestClient.post()
                 .uri("/api/transactions/transfer")
                 .body(request)
                 .exchange()
-                .expectStatus().isCreated();
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
+                .returnResult()
+                .getResponseBody();
 
-        // When - try duplicate
-        ErrorResponse errorResponse = restTestClient.post()
+        // When - retry with the same key
+        TransactionResponse replayed = restTestClient.post()
                 .uri("/api/transactions/transfer")
                 .body(request)
                 .exchange()
-                .expectStatus().isEqualTo(409)
-                .expectBody(ErrorResponse.class)
+                .expectStatus().isCreated()
+                .expectBody(TransactionResponse.class)
                 .returnResult()
                 .getResponseBody();
 
         // Then
-        assertNotNull(errorResponse);
-        assertEquals(409, errorResponse.status());
+        assertNotNull(original);
+        assertNotNull(replayed);
+        assertEquals(original.id(), replayed.id());
 
         // Verify only original two transactions exist (OUT and IN)
         assertEquals(2, transactionRepository.findAll().size());
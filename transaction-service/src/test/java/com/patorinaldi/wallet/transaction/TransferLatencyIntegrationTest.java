@@ -0,0 +1,186 @@
+package com.patorinaldi.wallet.transaction;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.transaction.dto.TransferRequest;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.client.RestTestClient;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Injects latency into wallet lookups and the fraud service and measures transfer latency.
+ * Run one after another, the two lookups and the fraud call would take at least
+ * {@code 2 * DB_LATENCY_MS + FRAUD_LATENCY_MS}; with the destination lookup overlapping the
+ * source lookup and fraud call, a transfer should take about {@code DB_LATENCY_MS + FRAUD_LATENCY_MS}.
+ */
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TransferLatencyIntegrationTest {
+
+    private static final long DB_LATENCY_MS = 40;
+    private static final int FRAUD_LATENCY_MS = 80;
+    private static final int WARMUP = 10;
+    private static final int TRANSFERS = 100;
+
+    @LocalServerPort
+    private int port;
+
+    private static WireMockServer wireMockServer;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("fraud.service.url", () -> "http://localhost:" + wireMockServer.port());
+        registry.add("fraud.service.timeout-ms", () -> "5000");
+    }
+
+    @TestConfiguration
+    static class SlowWalletLookups {
+
+        @Bean
+        static BeanPostProcessor slowWalletLookupPostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof WalletBalanceRepository repository)) {
+                        return bean;
+                    }
+                    return Proxy.newProxyInstance(WalletBalanceRepository.class.getClassLoader(),
+                            new Class<?>[]{WalletBalanceRepository.class},
+                            (proxy, method, args) -> {
+                                if (method.getName().equals("findByWalletId")) {
+                                    Thread.sleep(DB_LATENCY_MS);
+                                }
+                                try {
+                                    return method.invoke(repository, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                            });
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletBalanceRepository walletBalanceRepository;
+
+    private RestTestClient restTestClient;
+
+    @BeforeAll
+    static void startWireMock() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterAll
+    static void stopWireMock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setup() {
+        restTestClient = RestTestClient.bindToServer()
+                .baseUrl("http://localhost:" + port)
+                .build();
+
+        transactionRepository.deleteAll();
+        walletBalanceRepository.deleteAll();
+        wireMockServer.resetAll();
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(FRAUD_LATENCY_MS)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("""
+                                {
+                                    "riskScore": 0,
+                                    "decision": "APPROVE",
+                                    "triggeredRules": [],
+                                    "message": "Transaction approved"
+                                }
+                                """)));
+    }
+
+    @Test
+    void shouldOverlapDestinationLookupWithFraudCheck() {
+        // Given
+        WalletBalance source = walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("100000.00"), "USD"));
+        WalletBalance destination = walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("0.00"), "USD"));
+        for (int i = 0; i < WARMUP; i++) {
+            transfer(source, destination);
+        }
+
+        // When
+        long[] latencies = new long[TRANSFERS];
+        for (int i = 0; i < TRANSFERS; i++) {
+            long started = System.nanoTime();
+            transfer(source, destination);
+            latencies[i] = (System.nanoTime() - started) / 1_000_000;
+        }
+
+        // Then
+        Arrays.sort(latencies);
+        long p50 = latencies[TRANSFERS / 2];
+        long p99 = latencies[TRANSFERS * 99 / 100];
+        long sequential = 2 * DB_LATENCY_MS + FRAUD_LATENCY_MS;
+        String measurement = String.format("db latency=%dms, fraud latency=%dms, sequential floor=%dms, p50=%dms, p99=%dms",
+                DB_LATENCY_MS, FRAUD_LATENCY_MS, sequential, p50, p99);
+
+        assertTrue(p50 < sequential, "Transfers should not pay for both lookups and the fraud call in turn: " + measurement);
+        assertEquals(2L * (WARMUP + TRANSFERS), transactionRepository.count());
+    }
+
+    private void transfer(WalletBalance source, WalletBalance destination) {
+        TransferRequest request = TestDataBuilder.createTransferRequest(
+                source.getWalletId(), destination.getWalletId(), new BigDecimal("1.00"), "Latency test");
+        restTestClient.post()
+                .uri("/api/transactions/transfer")
+                .body(request)
+                .exchange()
+                .expectStatus().isCreated();
+    }
+}
@@ -0,0 +1,115 @@
+package com.patorinaldi.wallet.transaction;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.outbox.OutboxEvent;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import com.patorinaldi.wallet.transaction.service.TransactionPersistenceService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts the statements Hibernate prepares for one transfer. The transfer itself should cost
+ * a single balance update and a single batched insert of both legs, with no follow-up update
+ * to link them; the two outbox rows are counted separately.
+ */
+@Testcontainers
+@SpringBootTest
+public class TransferStatementCountIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static KafkaContainer kafka = new KafkaContainer(DockerImageName.parse("confluentinc/cp-kafka:7.4.0"));
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.kafka.bootstrap-servers", kafka::getBootstrapServers);
+        registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> "true");
+    }
+
+    @Autowired
+    private TransactionPersistenceService persistenceService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        transactionRepository.deleteAll();
+        walletBalanceRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void completeTransfer_shouldUseOneUpdateAndOneBatchedInsert() {
+        // Given
+        WalletBalance source = walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("100.00"), "USD"));
+        WalletBalance destination = walletBalanceRepository.save(TestDataBuilder.createWalletBalance(
+                UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("0.00"), "USD"));
+        Transaction transactionOut = TestDataBuilder.createTransaction(TransactionType.TRANSFER_OUT, TransactionStatus.PENDING,
+                source.getWalletId(), source.getUserId(), new BigDecimal("40.00"), "USD", "STATS-KEY:out");
+        Transaction transactionIn = TestDataBuilder.createTransaction(TransactionType.TRANSFER_IN, TransactionStatus.PENDING,
+                destination.getWalletId(), destination.getUserId(), new BigDecimal("40.00"), "USD", "STATS-KEY:in");
+        statistics.clear();
+
+        // When
+        persistenceService.completeTransfer(transactionOut, transactionIn);
+
+        // Then
+        EntityStatistics transactions = statistics.getEntityStatistics(Transaction.class.getName());
+        EntityStatistics walletBalances = statistics.getEntityStatistics(WalletBalance.class.getName());
+        long outboxInserts = statistics.getEntityStatistics(OutboxEvent.class.getName()).getInsertCount();
+        long transferStatements = statistics.getPrepareStatementCount() - outboxInserts;
+        String measurement = String.format("prepared=%d, outbox inserts=%d, transaction inserts=%d, transaction updates=%d",
+                statistics.getPrepareStatementCount(), outboxInserts,
+                transactions.getInsertCount(), transactions.getUpdateCount());
+
+        assertEquals(2, transactions.getInsertCount(), measurement);
+        assertEquals(0, transactions.getUpdateCount(), measurement);
+        assertEquals(0, transactions.getFetchCount() + transactions.getLoadCount(), measurement);
+        assertEquals(0, walletBalances.getUpdateCount(), measurement);
+        assertTrue(transferStatements <= 2, measurement);
+
+        Transaction savedOut = transactionRepository.findById(transactionOut.getId()).orElseThrow();
+        assertEquals(transactionIn.getId(), savedOut.getRelatedTransactionId());
+        assertEquals(0, new BigDecimal("60.00").compareTo(savedOut.getBalanceAfter()));
+        assertEquals(0, new BigDecimal("40.00").compareTo(
+                walletBalanceRepository.findByWalletId(destination.getWalletId()).orElseThrow().getBalance()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFraudProtocolTest {
+
+    private static final String JSON_APPROVE = """
+            {"riskScore": 0, "decision": "APPROVE", "triggeredRules": [], "message": "Transaction approved"}
+            """;
+
+    private WireMockServer wireMockServer;
+    private FraudClientImpl client;
+
+    @BeforeEach
+    void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+        client = new FraudClientImpl(WebClient.builder(), new SimpleMeterRegistry(),
+                "http://localhost:" + wireMockServer.port(), List.of(), 5_000, 0, true, false, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void checkTransaction_shouldUseBinaryLayout_whenServiceSupportsIt() {
+        // Given
+        stubBinary(FraudCheckWireFormat.encode(
+                new FraudCheckWireFormat.Verdict(55, "FLAG", List.of("LARGE_AMOUNT", "HIGH_VELOCITY"))));
+        FraudCheckRequest request = request("USD");
+
+        // When
+        FraudCheckResponse response = client.checkTransaction(request);
+
+        // Then
+        assertTrue(response.isFlagged());
+        assertEquals(55, response.riskScore());
+        assertEquals(List.of("LARGE_AMOUNT", "HIGH_VELOCITY"), response.triggeredRules());
+        assertEquals("Transaction flagged for review", response.message());
+
+        byte[] sent = wireMockServer.findAll(postRequestedFor(urlEqualTo("/api/fraud/check"))).getFirst().getBody();
+        FraudCheckWireFormat.Check check = FraudCheckWireFormat.decodeCheck(sent);
+        assertEquals(request.walletId(), check.walletId());
+        assertEquals(0, request.amount().compareTo(check.amount()));
+    }
+
+    @Test
+    void checkTransaction_shouldSwitchToJson_whenServiceRejectsBinaryLayout() {
+        // Given
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE))
+                .willReturn(aResponse().withStatus(415)));
+        stubJson();
+
+        // When
+        FraudCheckResponse first = client.checkTransaction(request("USD"));
+        FraudCheckResponse second = client.checkTransaction(request("USD"));
+
+        // Then
+        assertTrue(first.isApproved());
+        assertTrue(second.isApproved());
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE)));
+        wireMockServer.verify(2, postRequestedFor(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", containing(MediaType.APPLICATION_JSON_VALUE)));
+    }
+
+    @Test
+    void checkTransaction_shouldSendJson_whenCheckHasNoBinaryForm() {
+        // Given
+        stubJson();
+
+        // When
+        FraudCheckResponse response = client.checkTransaction(request("usdt"));
+
+        // Then
+        assertTrue(response.isApproved());
+        wireMockServer.verify(0, postRequestedFor(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE)));
+    }
+
+    private void stubBinary(byte[] verdict) {
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", FraudCheckWireFormat.MEDIA_TYPE)
+                        .withBody(verdict)));
+    }
+
+    private void stubJson() {
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", containing(MediaType.APPLICATION_JSON_VALUE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody(JSON_APPROVE)));
+    }
+
+    private static FraudCheckRequest request(String currency) {
+        return new FraudCheckRequest(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("15000.00"),
+                TransactionType.WITHDRAWAL, currency);
+    }
+}
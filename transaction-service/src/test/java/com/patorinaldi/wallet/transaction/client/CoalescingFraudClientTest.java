@@ -0,0 +1,128 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingFraudClientTest {
+
+    /**
+     * Answers each check with its own wallet id as the message, so callers can tell their
+     * result apart from their neighbours'.
+     */
+    static final String ECHO_BATCH_BODY = """
+            {"results": [{{#each (jsonPath request.body '$.checks') as |check|}}{{#unless @first}},{{/unless}}
+                {"riskScore": 0, "decision": "APPROVE", "triggeredRules": [], "message": "{{check.walletId}}"}{{/each}}
+            ]}
+            """;
+
+    private WireMockServer wireMockServer;
+    private SimpleMeterRegistry meterRegistry;
+    private CoalescingFraudClient client;
+
+    @BeforeEach
+    void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+        meterRegistry = new SimpleMeterRegistry();
+        client = new CoalescingFraudClient(WebClient.builder(), meterRegistry,
+                "http://localhost:" + wireMockServer.port(), 10_000, 50, 128);
+        client.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        client.stop();
+        wireMockServer.stop();
+    }
+
+    @Test
+    void checkTransaction_shouldCoalesceConcurrentChecksIntoOneBatch() {
+        // Given
+        stubBatch(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .withBody(ECHO_BATCH_BODY)
+                .withTransformers("response-template"));
+        List<FraudCheckRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(request());
+        }
+
+        // When
+        List<FraudCheckResponse> responses = checkConcurrently(requests);
+
+        // Then
+        for (int i = 0; i < requests.size(); i++) {
+            assertEquals(requests.get(i).walletId().toString(), responses.get(i).message());
+            assertTrue(responses.get(i).isApproved());
+        }
+        wireMockServer.verify(1, postRequestedFor(urlEqualTo("/api/fraud/check/batch")));
+        assertEquals(8.0, meterRegistry.summary("fraud.client.batch.size").totalAmount());
+    }
+
+    @Test
+    void checkTransaction_shouldFailEveryCheckInBatch_whenBatchCallFails() {
+        // Given
+        stubBatch(aResponse().withStatus(503));
+
+        // When
+        CompletionException exception = assertThrows(CompletionException.class,
+                () -> checkConcurrently(List.of(request(), request())));
+
+        // Then
+        assertInstanceOf(WebClientResponseException.class, exception.getCause());
+    }
+
+    @Test
+    void checkTransaction_shouldFail_whenResultCountDoesNotMatch() {
+        // Given
+        stubBatch(aResponse()
+                .withStatus(200)
+                .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .withBody("{\"results\": []}"));
+
+        // When & Then
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> client.checkTransaction(request()));
+        assertTrue(exception.getMessage().contains("0 results for 1 checks"));
+    }
+
+    private void stubBatch(ResponseDefinitionBuilder response) {
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check/batch")).willReturn(response));
+    }
+
+    private List<FraudCheckResponse> checkConcurrently(List<FraudCheckRequest> requests) {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<FraudCheckResponse>> futures = requests.stream()
+                    .map(request -> CompletableFuture.supplyAsync(() -> client.checkTransaction(request), executor))
+                    .toList();
+            return futures.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    static FraudCheckRequest request() {
+        return new FraudCheckRequest(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("100.00"),
+                TransactionType.DEPOSIT, "USD");
+    }
+}
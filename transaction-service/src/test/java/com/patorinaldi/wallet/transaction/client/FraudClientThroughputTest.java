@@ -0,0 +1,109 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the single-call and coalescing clients against a fraud service with a fixed cost
+ * per HTTP call and a bounded worker pool, the two costs batching amortises.
+ */
+class FraudClientThroughputTest {
+
+    private static final int SERVER_THREADS = 20;
+    private static final int CALL_LATENCY_MS = 20;
+    private static final int CALLERS = 200;
+    private static final int CHECKS = 400;
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig()
+                .dynamicPort()
+                .containerThreads(SERVER_THREADS));
+        wireMockServer.start();
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(CALL_LATENCY_MS)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody("""
+                                {"riskScore": 0, "decision": "APPROVE", "triggeredRules": [], "message": "Transaction approved"}
+                                """)));
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check/batch"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(CALL_LATENCY_MS)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody(CoalescingFraudClientTest.ECHO_BATCH_BODY)
+                        .withTransformers("response-template")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void coalescingClient_shouldOutperformSingleCallClient() throws InterruptedException {
+        // Given
+        String url = "http://localhost:" + wireMockServer.port();
+        FraudClientImpl single = new FraudClientImpl(WebClient.builder(), new SimpleMeterRegistry(), url, List.of(),
+                10_000, 0, false, false, 10);
+        CoalescingFraudClient coalescing = new CoalescingFraudClient(WebClient.builder(), new SimpleMeterRegistry(),
+                url, 10_000, 2, 128);
+        coalescing.start();
+
+        // When
+        Result singleResult = run(single);
+        Result coalescingResult = run(coalescing);
+        coalescing.stop();
+
+        // Then
+        String measurement = String.format("single: %s; coalescing: %s", singleResult, coalescingResult);
+        assertTrue(coalescingResult.throughput() > singleResult.throughput(), measurement);
+        assertTrue(wireMockServer.countRequestsMatching(postRequestedFor(urlEqualTo("/api/fraud/check/batch")).build())
+                .getCount() < CHECKS / 4, measurement);
+    }
+
+    private static Result run(FraudClient client) {
+        long[] latencies = new long[CHECKS];
+        long started = System.nanoTime();
+        try (ExecutorService callers = Executors.newFixedThreadPool(CALLERS, Thread.ofVirtual().factory())) {
+            List<CompletableFuture<Void>> checks = IntStream.range(0, CHECKS)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                        long checkStarted = System.nanoTime();
+                        assertTrue(client.checkTransaction(CoalescingFraudClientTest.request()).isApproved());
+                        latencies[i] = (System.nanoTime() - checkStarted) / 1_000_000;
+                    }, callers))
+                    .toList();
+            CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new)).join();
+        }
+        long elapsedMillis = Math.max((System.nanoTime() - started) / 1_000_000, 1);
+        Arrays.sort(latencies);
+        return new Result(CHECKS * 1000L / elapsedMillis, latencies[CHECKS / 2], latencies[CHECKS * 99 / 100]);
+    }
+
+    private record Result(long throughput, long p50, long p99) {
+        @Override
+        public String toString() {
+            return String.format("%d checks/s, p50=%dms, p99=%dms", throughput, p50, p99);
+        }
+    }
+}
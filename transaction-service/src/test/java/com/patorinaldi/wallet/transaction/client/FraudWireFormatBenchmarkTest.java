@@ -0,0 +1,149 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.fraud.FraudCheckWireFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the JSON and binary fraud check layouts: payload size, the client's encode and decode
+ * cost per call, and round trip against a local stub of the fraud service.
+ */
+class FraudWireFormatBenchmarkTest {
+
+    private static final int CODEC_WARMUP = 20_000;
+    private static final int CODEC_ITERATIONS = 100_000;
+    private static final int RTT_WARMUP = 50;
+    private static final int RTT_CALLS = 300;
+    private static final String JSON_VERDICT = """
+            {"riskScore":55,"decision":"FLAG","triggeredRules":["LARGE_AMOUNT","HIGH_VELOCITY"],"message":"Transaction flagged for review"}""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FraudCheckRequest request = new FraudCheckRequest(UUID.randomUUID(), UUID.randomUUID(),
+            new BigDecimal("15000.00"), TransactionType.TRANSFER_OUT, "USD");
+    private final FraudCheckWireFormat.Verdict verdict = new FraudCheckWireFormat.Verdict(55, "FLAG",
+            List.of("LARGE_AMOUNT", "HIGH_VELOCITY"));
+
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    void setup() {
+        wireMockServer = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        wireMockServer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        wireMockServer.stop();
+    }
+
+    @Test
+    void binaryLayout_shouldBeSmallerAndCheaperToCodeThanJson() throws Exception {
+        // Given
+        byte[] jsonRequest = objectMapper.writeValueAsBytes(request);
+        byte[] jsonResponse = JSON_VERDICT.getBytes(StandardCharsets.UTF_8);
+        byte[] binaryRequest = FraudCheckWireFormat.encode(check());
+        byte[] binaryResponse = FraudCheckWireFormat.encode(verdict);
+
+        // When
+        long jsonNanos = nanosPerOp(() -> {
+            objectMapper.writeValueAsBytes(request);
+            objectMapper.readValue(jsonResponse, FraudCheckResponse.class);
+        });
+        long binaryNanos = nanosPerOp(() -> {
+            FraudCheckWireFormat.encode(check());
+            FraudCheckWireFormat.decodeVerdict(binaryResponse);
+        });
+
+        // Then
+        String measurement = String.format(
+                "json: %d+%d bytes, %dns per call; binary: %d+%d bytes, %dns per call",
+                jsonRequest.length, jsonResponse.length, jsonNanos,
+                binaryRequest.length, binaryResponse.length, binaryNanos);
+        assertTrue(binaryRequest.length + binaryResponse.length < (jsonRequest.length + jsonResponse.length) / 4,
+                measurement);
+        assertTrue(binaryNanos < jsonNanos, measurement);
+    }
+
+    @Test
+    void binaryLayout_shouldNotSlowDownRoundTripAgainstLocalService() {
+        // Given
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", FraudCheckWireFormat.MEDIA_TYPE)
+                        .withBody(FraudCheckWireFormat.encode(verdict))));
+        wireMockServer.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", containing(MediaType.APPLICATION_JSON_VALUE))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withBody(JSON_VERDICT)));
+        String url = "http://localhost:" + wireMockServer.port();
+
+        // When
+        long[] json = roundTrips(new FraudClientImpl(WebClient.builder(), new SimpleMeterRegistry(), url, List.of(),
+                5_000, 0, false, false, 10));
+        long[] binary = roundTrips(new FraudClientImpl(WebClient.builder(), new SimpleMeterRegistry(), url, List.of(),
+                5_000, 0, true, false, 10));
+
+        // Then
+        String measurement = String.format("json: p50=%dus, p99=%dus; binary: p50=%dus, p99=%dus",
+                json[RTT_CALLS / 2], json[RTT_CALLS * 99 / 100], binary[RTT_CALLS / 2], binary[RTT_CALLS * 99 / 100]);
+        assertTrue(binary[RTT_CALLS / 2] <= json[RTT_CALLS / 2] * 2, measurement);
+        wireMockServer.verify(RTT_WARMUP + RTT_CALLS, postRequestedFor(urlEqualTo("/api/fraud/check"))
+                .withHeader("Content-Type", equalTo(FraudCheckWireFormat.MEDIA_TYPE)));
+    }
+
+    private long[] roundTrips(FraudClient client) {
+        for (int i = 0; i < RTT_WARMUP; i++) {
+            assertTrue(client.checkTransaction(request).isFlagged());
+        }
+        long[] micros = new long[RTT_CALLS];
+        for (int i = 0; i < RTT_CALLS; i++) {
+            long started = System.nanoTime();
+            assertTrue(client.checkTransaction(request).isFlagged());
+            micros[i] = (System.nanoTime() - started) / 1_000;
+        }
+        Arrays.sort(micros);
+        return micros;
+    }
+
+    private static long nanosPerOp(CodecStep step) throws Exception {
+        for (int i = 0; i < CODEC_WARMUP; i++) {
+            step.run();
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < CODEC_ITERATIONS; i++) {
+            step.run();
+        }
+        return (System.nanoTime() - started) / CODEC_ITERATIONS;
+    }
+
+    private FraudCheckWireFormat.Check check() {
+        return new FraudCheckWireFormat.Check(request.walletId(), request.userId(), request.amount(),
+                request.transactionType(), request.currency());
+    }
+
+    @FunctionalInterface
+    private interface CodecStep {
+        void run() throws Exception;
+    }
+}
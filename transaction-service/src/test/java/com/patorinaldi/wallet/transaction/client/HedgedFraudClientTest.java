@@ -0,0 +1,163 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.web.RequestDeadline;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedFraudClientTest {
+
+    private static final String APPROVE = """
+            {"riskScore": 0, "decision": "APPROVE", "triggeredRules": [], "message": "Transaction approved"}
+            """;
+
+    private WireMockServer first;
+    private WireMockServer second;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        first = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        second = new WireMockServer(WireMockConfiguration.wireMockConfig().dynamicPort());
+        first.start();
+        second.start();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestDeadline.clear();
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    void checkTransaction_shouldSpreadChecksOverReplicas() {
+        // Given
+        stubApprove(first, 0);
+        stubApprove(second, 0);
+        FraudClientImpl client = client(5_000, 0, false);
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            client.checkTransaction(request());
+        }
+
+        // Then
+        first.verify(2, postRequestedFor(urlEqualTo("/api/fraud/check")));
+        second.verify(2, postRequestedFor(urlEqualTo("/api/fraud/check")));
+    }
+
+    @Test
+    void checkTransaction_shouldHedgeToOtherReplica_whenFirstIsSlowerThanP95() {
+        // Given
+        stubApprove(first, 0);
+        stubApprove(second, 0);
+        FraudClientImpl client = client(5_000, 0, true);
+        for (int i = 0; i < 40; i++) {
+            client.checkTransaction(request());
+        }
+        first.resetAll();
+        stubApprove(first, 2_000);
+
+        // When
+        long started = System.nanoTime();
+        FraudCheckResponse a = client.checkTransaction(request());
+        FraudCheckResponse b = client.checkTransaction(request());
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        // Then
+        assertTrue(a.isApproved());
+        assertTrue(b.isApproved());
+        assertTrue(elapsedMillis < 1_500, "slow replica should have been hedged, took " + elapsedMillis + "ms");
+        assertTrue(meterRegistry.counter("fraud.client.hedge.sent").count() >= 1);
+        assertTrue(meterRegistry.counter("fraud.client.hedge.won").count() >= 1);
+        assertEquals(42.0, meterRegistry.counter("fraud.client.calls").count());
+    }
+
+    @Test
+    void checkTransaction_shouldNotHedge_untilLatencyIsKnown() {
+        // Given
+        stubApprove(first, 300);
+        FraudClientImpl client = new FraudClientImpl(WebClient.builder(), meterRegistry, url(first), List.of(),
+                5_000, 0, false, true, 10);
+
+        // When
+        FraudCheckResponse response = client.checkTransaction(request());
+
+        // Then
+        assertTrue(response.isApproved());
+        assertEquals(0.0, meterRegistry.counter("fraud.client.hedge.sent").count());
+        first.verify(1, postRequestedFor(urlEqualTo("/api/fraud/check")));
+    }
+
+    @Test
+    void checkTransaction_shouldSkipCall_whenRequestDeadlineIsSpent() {
+        // Given
+        stubApprove(first, 0);
+        FraudClientImpl client = client(5_000, 100, false);
+        RequestDeadline.start(Duration.ofMillis(50));
+
+        // When
+        FraudCheckResponse response = client.checkTransaction(request());
+
+        // Then
+        assertTrue(response.isServiceUnavailable());
+        assertEquals(1.0, meterRegistry.counter("fraud.client.budget.exhausted").count());
+        first.verify(0, postRequestedFor(urlEqualTo("/api/fraud/check")));
+    }
+
+    @Test
+    void checkTransaction_shouldGiveUpAtRequestDeadline_whenShorterThanTimeout() {
+        // Given
+        stubApprove(first, 2_000);
+        stubApprove(second, 2_000);
+        FraudClientImpl client = client(5_000, 0, false);
+        RequestDeadline.start(Duration.ofMillis(300));
+
+        // When
+        long started = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> client.checkTransaction(request()));
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        // Then
+        assertTrue(elapsedMillis < 1_500, "call should stop at the deadline, took " + elapsedMillis + "ms");
+    }
+
+    private FraudClientImpl client(long timeoutMs, long deadlineReserveMs, boolean hedge) {
+        return new FraudClientImpl(WebClient.builder(), meterRegistry, url(first), List.of(url(second)),
+                timeoutMs, deadlineReserveMs, false, hedge, 10);
+    }
+
+    private static void stubApprove(WireMockServer server, int delayMs) {
+        server.stubFor(post(urlEqualTo("/api/fraud/check"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                        .withFixedDelay(delayMs)
+                        .withBody(APPROVE)));
+    }
+
+    private static String url(WireMockServer server) {
+        return "http://localhost:" + server.port();
+    }
+
+    private static FraudCheckRequest request() {
+        return new FraudCheckRequest(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("100.00"),
+                TransactionType.DEPOSIT, "USD");
+    }
+}
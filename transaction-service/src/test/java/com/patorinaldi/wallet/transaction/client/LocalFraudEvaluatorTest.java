@@ -0,0 +1,244 @@
+package com.patorinaldi.wallet.transaction.client;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.FraudRulesPublishedEvent;
+import com.patorinaldi.wallet.common.event.WalletRiskProfileEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalFraudEvaluatorTest {
+
+    private final UUID walletId = UUID.randomUUID();
+
+    private SimpleMeterRegistry meterRegistry;
+    private LocalFraudEvaluator evaluator;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        evaluator = new LocalFraudEvaluator(meterRegistry, true, 0, 2, 300_000, 3_600_000);
+    }
+
+    @Test
+    void preDecide_shouldApproveLowRiskCheckWithoutRpc() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 1));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.preDecide(request("150.00"));
+
+        // Then
+        assertTrue(response.isPresent());
+        assertTrue(response.get().isApproved());
+        assertEquals(1.0, meterRegistry.counter("fraud.local.rpc.skipped").count());
+    }
+
+    @Test
+    void preDecide_shouldRequireRpc_whenNothingHasBeenPushed() {
+        // When
+        Optional<FraudCheckResponse> response = evaluator.preDecide(request("10.00"));
+
+        // Then
+        assertTrue(response.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("fraud.local.rpc.required", "reason", "no_rules").count());
+    }
+
+    @Test
+    void preDecide_shouldRequireRpc_whenAnyRuleWouldTrigger() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofHours(1)), "100.00", 1));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.preDecide(request("150.00"));
+
+        // Then
+        assertTrue(response.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("fraud.local.rpc.required", "reason", "risk").count());
+    }
+
+    @Test
+    void preDecide_shouldRequireRpc_whenRulesAreStale() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now().minus(Duration.ofMinutes(10))));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 1));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.preDecide(request("150.00"));
+
+        // Then
+        assertTrue(response.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("fraud.local.rpc.required", "reason", "stale_rules").count());
+    }
+
+    @Test
+    void preDecide_shouldCountLocalApprovalsAndHeadroomTowardsVelocity() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 8));
+
+        // When
+        Optional<FraudCheckResponse> first = evaluator.preDecide(request("100.00"));
+        Optional<FraudCheckResponse> second = evaluator.preDecide(request("100.00"));
+
+        // Then - 8 pushed + 1 local + 2 headroom is over HIGH_VELOCITY's limit of 10
+        assertTrue(first.isPresent());
+        assertTrue(second.isEmpty());
+    }
+
+    @Test
+    void preDecide_shouldDoNothing_whenDisabled() {
+        // Given
+        LocalFraudEvaluator disabled = new LocalFraudEvaluator(meterRegistry, false, 0, 2, 300_000, 3_600_000);
+        disabled.updateRules(defaultRules(Instant.now()));
+        disabled.updateProfile(profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 1));
+
+        // When & Then
+        assertTrue(disabled.preDecide(request("150.00")).isEmpty());
+    }
+
+    @Test
+    void evaluateDuringOutage_shouldBlock_whenLocalScoreReachesBlockThreshold() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofHours(1)), "100.00", 1));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.evaluateDuringOutage(request("60000.00"));
+
+        // Then - LARGE_AMOUNT 30 + VERY_LARGE_AMOUNT 50 + NEW_WALLET 15 + UNUSUAL_AMOUNT 20
+        assertTrue(response.isPresent());
+        assertTrue(response.get().isBlocked());
+        assertEquals(115, response.get().riskScore());
+    }
+
+    @Test
+    void evaluateDuringOutage_shouldApprove_whenProfileShowsLowRisk() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now().minus(Duration.ofHours(2))));
+        evaluator.updateProfile(profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 1));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.evaluateDuringOutage(request("150.00"));
+
+        // Then
+        assertTrue(response.isPresent());
+        assertTrue(response.get().isApproved());
+        assertEquals(1.0, meterRegistry.counter("fraud.local.outage", "decision", "APPROVE").count());
+    }
+
+    @Test
+    void evaluateDuringOutage_shouldFlagAtLeast_whenProfileIsMissing() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+
+        // When
+        Optional<FraudCheckResponse> response = evaluator.evaluateDuringOutage(request("150.00"));
+
+        // Then
+        assertTrue(response.isPresent());
+        assertTrue(response.get().isFlagged());
+    }
+
+    @Test
+    void evaluateDuringOutage_shouldReturnEmpty_whenNoRulesReceived() {
+        // When & Then
+        assertTrue(evaluator.evaluateDuringOutage(request("150.00")).isEmpty());
+    }
+
+    @Test
+    void updateProfile_shouldIgnoreOlderSnapshot() {
+        // Given
+        evaluator.updateRules(defaultRules(Instant.now()));
+        WalletRiskProfileEvent newer = profile(Instant.now().minus(Duration.ofDays(30)), "100.00", 1);
+        WalletRiskProfileEvent older = WalletRiskProfileEvent.builder()
+                .walletId(walletId)
+                .firstSeenAt(Instant.now().minus(Duration.ofMinutes(5)))
+                .averageAmount(new BigDecimal("1.00"))
+                .recentActivity(List.of())
+                .asOf(newer.asOf().minusSeconds(60))
+                .build();
+
+        // When
+        evaluator.updateProfile(newer);
+        evaluator.updateProfile(older);
+
+        // Then
+        assertTrue(evaluator.preDecide(request("150.00")).isPresent());
+    }
+
+    @Test
+    void evictExpired_shouldDropProfilesPastTtl() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LocalFraudEvaluator shortLived = new LocalFraudEvaluator(registry, true, 0, 2, 300_000, 1_000);
+        shortLived.updateRules(defaultRules(Instant.now()));
+        shortLived.updateProfile(WalletRiskProfileEvent.builder()
+                .walletId(walletId)
+                .firstSeenAt(Instant.now().minus(Duration.ofDays(30)))
+                .recentActivity(List.of())
+                .asOf(Instant.now().minusSeconds(5))
+                .build());
+
+        assertEquals(1.0, registry.get("fraud.local.profiles").gauge().value());
+
+        // When
+        shortLived.evictExpired();
+
+        // Then
+        assertEquals(0.0, registry.get("fraud.local.profiles").gauge().value());
+    }
+
+    private FraudCheckRequest request(String amount) {
+        return new FraudCheckRequest(walletId, UUID.randomUUID(), new BigDecimal(amount), TransactionType.DEPOSIT, "USD");
+    }
+
+    private WalletRiskProfileEvent profile(Instant firstSeenAt, String averageAmount, int recentTransactions) {
+        Instant now = Instant.now();
+        List<Instant> recentActivity = new ArrayList<>();
+        for (int i = 0; i < recentTransactions; i++) {
+            recentActivity.add(now.minusSeconds(60L * (i + 1)));
+        }
+        return WalletRiskProfileEvent.builder()
+                .walletId(walletId)
+                .firstSeenAt(firstSeenAt)
+                .averageAmount(new BigDecimal(averageAmount))
+                .recentActivity(recentActivity)
+                .asOf(now)
+                .build();
+    }
+
+    private static FraudRulesPublishedEvent defaultRules(Instant publishedAt) {
+        return FraudRulesPublishedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .rules(List.of(
+                        rule("LARGE_AMOUNT", "AMOUNT_THRESHOLD", "10000", 30, null),
+                        rule("VERY_LARGE_AMOUNT", "AMOUNT_THRESHOLD", "50000", 50, null),
+                        rule("HIGH_VELOCITY", "VELOCITY", "10", 25, 60),
+                        rule("EXTREME_VELOCITY", "VELOCITY", "20", 40, 60),
+                        rule("NEW_WALLET", "NEW_ACCOUNT", null, 15, 1440),
+                        rule("UNUSUAL_AMOUNT", "UNUSUAL_PATTERN", "3", 20, null)))
+                .flagThreshold(50)
+                .blockThreshold(80)
+                .publishedAt(publishedAt)
+                .build();
+    }
+
+    private static FraudRulesPublishedEvent.Rule rule(String code, String type, String threshold, int score,
+                                                      Integer windowMinutes) {
+        return new FraudRulesPublishedEvent.Rule(code, type, threshold == null ? null : new BigDecimal(threshold),
+                score, windowMinutes);
+    }
+}
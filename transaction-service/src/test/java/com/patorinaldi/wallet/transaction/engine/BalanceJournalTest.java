@@ -0,0 +1,199 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceJournalTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_shouldReturnRecordsInOrderAfterUncleanStop() {
+        // Given
+        BalanceJournal journal = new BalanceJournal(directory, SEGMENT_BYTES, 1);
+        journal.append(bytes("first"));
+        long second = journal.append(bytes("second"));
+        journal.sync(second);
+
+        // When
+        List<String> replayed = new ArrayList<>();
+        long lastSeq = BalanceJournal.replay(directory, 0, (seq, payload) -> replayed.add(seq + ":" + text(payload)));
+
+        // Then
+        assertEquals(2, lastSeq);
+        assertEquals(List.of("1:first", "2:second"), replayed);
+    }
+
+    @Test
+    void replay_shouldSkipRecordsCoveredBySnapshot() {
+        // Given
+        BalanceJournal journal = new BalanceJournal(directory, SEGMENT_BYTES, 1);
+        for (int i = 0; i < 5; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        journal.close();
+
+        // When
+        List<Long> replayed = new ArrayList<>();
+        long lastSeq = BalanceJournal.replay(directory, 3, (seq, payload) -> replayed.add(seq));
+
+        // Then
+        assertEquals(5, lastSeq);
+        assertEquals(List.of(4L, 5L), replayed);
+    }
+
+    @Test
+    void replay_shouldStopAtTornRecord() throws Exception {
+        // Given
+        BalanceJournal journal = new BalanceJournal(directory, SEGMENT_BYTES, 1);
+        journal.append(bytes("intact"));
+        journal.close();
+        long tornOffset = BalanceJournal.HEADER_BYTES + bytes("intact").length;
+        Path segment;
+        try (var files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(BalanceJournal.HEADER_BYTES + 4)
+                    .putInt(4).putInt(0xDEAD).putLong(2).put(bytes("half"))
+                    .flip();
+            channel.write(torn, tornOffset);
+        }
+
+        // When
+        List<Long> replayed = new ArrayList<>();
+        long lastSeq = BalanceJournal.replay(directory, 0, (seq, payload) -> replayed.add(seq));
+
+        // Then
+        assertEquals(1, lastSeq);
+        assertEquals(List.of(1L), replayed);
+    }
+
+    @Test
+    void append_shouldStartNewSegment_whenCurrentIsFull() throws Exception {
+        // Given - room for two of these records per segment
+        int segmentBytes = 2 * (BalanceJournal.HEADER_BYTES + 8) + Integer.BYTES;
+        BalanceJournal journal = new BalanceJournal(directory, segmentBytes, 1);
+
+        // When
+        long last = 0;
+        for (int i = 0; i < 5; i++) {
+            last = journal.append(bytes("record-" + i));
+        }
+        journal.sync(last);
+
+        // Then
+        try (var files = Files.list(directory)) {
+            assertEquals(3, files.count());
+        }
+        List<String> replayed = new ArrayList<>();
+        assertEquals(5, BalanceJournal.replay(directory, 0, (seq, payload) -> replayed.add(text(payload))));
+        assertEquals(List.of("record-0", "record-1", "record-2", "record-3", "record-4"), replayed);
+    }
+
+    @Test
+    void roll_shouldStartNewSegment_andDeleteOnlySegmentsItCovers() throws Exception {
+        // Given
+        BalanceJournal journal = new BalanceJournal(directory, SEGMENT_BYTES, 1);
+        journal.append(bytes("before"));
+
+        // When
+        long cutSeq = journal.roll();
+        journal.append(bytes("after"));
+        journal.deleteSegmentsThrough(cutSeq);
+        journal.close();
+
+        // Then
+        assertEquals(1, cutSeq);
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        List<String> replayed = new ArrayList<>();
+        BalanceJournal.replay(directory, cutSeq, (seq, payload) -> replayed.add(text(payload)));
+        assertEquals(List.of("after"), replayed);
+    }
+
+    @Test
+    void sync_shouldDiscardUnsyncedRecordsAndStopTheJournal_whenFsyncFails() {
+        // Given
+        AtomicBoolean diskFailing = new AtomicBoolean();
+        BalanceJournal journal = new BalanceJournal(directory, SEGMENT_BYTES, 1) {
+            @Override
+            void force(MappedByteBuffer mapped) {
+                if (diskFailing.get()) {
+                    throw new UncheckedIOException(new IOException("disk gone"));
+                }
+                super.force(mapped);
+            }
+        };
+        journal.sync(journal.append(bytes("durable")));
+        long lost = journal.append(bytes("lost"));
+
+        // When
+        diskFailing.set(true);
+        assertThrows(UncheckedIOException.class, () -> journal.sync(lost));
+
+        // Then
+        assertThrows(IllegalStateException.class, () -> journal.append(bytes("refused")));
+        assertThrows(IllegalStateException.class, () -> journal.sync(lost));
+        List<String> replayed = new ArrayList<>();
+        BalanceJournal.replay(directory, 0, (seq, payload) -> replayed.add(text(payload)));
+        assertEquals(List.of("durable"), replayed);
+    }
+
+    @Test
+    void sync_shouldCoverConcurrentAppendsWithFewerFsyncs() throws Exception {
+        // Given
+        BalanceJournal journal = new BalanceJournal(directory, 4 * 1024 * 1024, 1);
+        int writers = 16;
+        int appendsPerWriter = 200;
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < appendsPerWriter; i++) {
+                        journal.sync(journal.append(bytes("payload")));
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        }
+
+        // Then
+        long appends = (long) writers * appendsPerWriter;
+        assertEquals(appends, BalanceJournal.replay(directory, 0, (seq, payload) -> { }));
+        assertTrue(journal.syncCount() <= appends,
+                "fsyncs=" + journal.syncCount() + " for " + appends + " appends");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] payload) {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
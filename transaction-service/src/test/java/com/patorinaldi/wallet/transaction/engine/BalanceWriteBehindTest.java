@@ -0,0 +1,126 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceWriteBehindTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private BalanceWriteBehind writeBehind;
+
+    @BeforeEach
+    void setup() {
+        writeBehind = new BalanceWriteBehind(jdbcTemplate, transactionManager, eventPublisher, meterRegistry, 500, 5);
+    }
+
+    @Test
+    void flushAll_shouldParkRowWhoseKeyIsTaken_andWriteTheRest() {
+        // Given - one new row, one replayed after a crash, one whose key another transaction holds
+        Transaction written = transaction();
+        Transaction replayed = transaction();
+        Transaction conflicting = transaction();
+        when(jdbcTemplate.batchUpdate(contains("INSERT INTO transactions"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenReturn(new int[][]{{1, 0, 0}});
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(replayed.getId()))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(conflicting.getId()))).thenReturn(false);
+        writeBehind.enqueue(List.of(written, replayed, conflicting));
+
+        // When
+        writeBehind.flushAll();
+
+        // Then
+        ArgumentCaptor<TransactionCompletedEvent> published = ArgumentCaptor.forClass(TransactionCompletedEvent.class);
+        verify(eventPublisher).publishEvent(published.capture());
+        assertEquals(written.getId(), published.getValue().transactionId());
+        assertEquals(List.of(conflicting), writeBehind.parked());
+        assertFalse(writeBehind.isPending(conflicting.getIdempotencyKey()));
+        assertEquals(1.0, meterRegistry.get("wallet.engine.write-behind.parked").gauge().value());
+    }
+
+    @Test
+    void flushAll_shouldNotRetryBatch_afterParking() {
+        // Given
+        Transaction conflicting = transaction();
+        when(jdbcTemplate.batchUpdate(contains("INSERT INTO transactions"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenReturn(new int[][]{{0}});
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq(conflicting.getId()))).thenReturn(false);
+        writeBehind.enqueue(List.of(conflicting));
+
+        // When
+        writeBehind.flushAll();
+        writeBehind.flushAll();
+
+        // Then
+        verify(jdbcTemplate, times(1)).batchUpdate(contains("INSERT INTO transactions"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void isTaken_shouldCheckPostgres_onceKeyHasBeenFlushed() {
+        // Given
+        Transaction flushed = transaction();
+        when(jdbcTemplate.batchUpdate(contains("INSERT INTO transactions"), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenReturn(new int[][]{{1}});
+        when(jdbcTemplate.queryForObject(contains("idempotency_key"), eq(Boolean.class),
+                eq(flushed.getIdempotencyKey()))).thenReturn(true);
+        writeBehind.enqueue(List.of(flushed));
+
+        // When
+        writeBehind.flushAll();
+
+        // Then
+        assertFalse(writeBehind.isPending(flushed.getIdempotencyKey()));
+        assertTrue(writeBehind.isTaken(flushed.getIdempotencyKey()));
+    }
+
+    @Test
+    void isTaken_shouldHoldReservedKey_untilItsFailedRowIsSaved() {
+        // Given
+        writeBehind.reserve("FAILED-KEY");
+
+        // When & Then
+        assertTrue(writeBehind.isTaken("FAILED-KEY"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static Transaction transaction() {
+        Transaction transaction = TestDataBuilder.createTransaction(TransactionType.DEPOSIT, TransactionStatus.COMPLETED,
+                UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("10.00"), "USD", "KEY-" + UUID.randomUUID());
+        transaction.setId(UUID.randomUUID());
+        return transaction;
+    }
+}
@@ -0,0 +1,221 @@
+package com.patorinaldi.wallet.transaction.engine;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.exception.DuplicateTransactionException;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryBalanceEngineTest {
+
+    private static final int SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Mock
+    private BalanceWriteBehind writeBehind;
+
+    private final UUID walletA = UUID.randomUUID();
+    private final UUID walletB = UUID.randomUUID();
+
+    @BeforeEach
+    void setup() {
+        lenient().when(walletBalanceRepository.findByWalletId(walletA)).thenReturn(Optional.of(
+                TestDataBuilder.createWalletBalance(walletA, UUID.randomUUID(), BigDecimal.ZERO, "USD")));
+        lenient().when(walletBalanceRepository.findByWalletId(walletB)).thenReturn(Optional.of(
+                TestDataBuilder.createWalletBalance(walletB, UUID.randomUUID(), BigDecimal.ZERO, "USD")));
+    }
+
+    @Test
+    void recover_shouldRestoreBalancesAndRequeueTransactions_afterCrash() {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "100.00"));
+        engine.completeWithdrawal(transaction(TransactionType.WITHDRAWAL, walletA, "30.00"));
+        engine.completeTransfer(
+                transaction(TransactionType.TRANSFER_OUT, walletA, "20.00"),
+                transaction(TransactionType.TRANSFER_IN, walletB, "20.00"));
+        // Crash: no snapshot, no journal close, nothing written to Postgres
+
+        // When
+        BalanceWriteBehind recoveredWriteBehind = mock(BalanceWriteBehind.class);
+        InMemoryBalanceEngine recovered = startEngine(recoveredWriteBehind);
+        Transaction withdrawal = recovered.completeWithdrawal(transaction(TransactionType.WITHDRAWAL, walletA, "50.00"));
+        Transaction deposit = recovered.completeDeposit(transaction(TransactionType.DEPOSIT, walletB, "1.00"));
+
+        // Then
+        assertEquals(0, new BigDecimal("0").compareTo(withdrawal.getBalanceAfter()));
+        assertEquals(0, new BigDecimal("21").compareTo(deposit.getBalanceAfter()));
+        verify(walletBalanceRepository, times(1)).findByWalletId(walletA);
+        verify(walletBalanceRepository, times(1)).findByWalletId(walletB);
+
+        ArgumentCaptor<List<Transaction>> requeued = captor();
+        verify(recoveredWriteBehind, atLeastOnce()).enqueue(requeued.capture());
+        List<Transaction> replayed = requeued.getAllValues().getFirst();
+        assertEquals(4, replayed.size());
+        assertEquals(TransactionStatus.COMPLETED, replayed.getFirst().getStatus());
+        assertEquals(replayed.get(3).getId(), replayed.get(2).getRelatedTransactionId());
+    }
+
+    @Test
+    void recover_shouldOnlyReplayJournalAfterSnapshot() {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "100.00"));
+        engine.snapshot();
+        engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "5.00"));
+
+        // When
+        BalanceWriteBehind recoveredWriteBehind = mock(BalanceWriteBehind.class);
+        InMemoryBalanceEngine recovered = startEngine(recoveredWriteBehind);
+        Transaction next = recovered.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00"));
+
+        // Then
+        verify(writeBehind).flushAll();
+        assertEquals(0, new BigDecimal("106").compareTo(next.getBalanceAfter()));
+        ArgumentCaptor<List<Transaction>> requeued = captor();
+        verify(recoveredWriteBehind, atLeastOnce()).enqueue(requeued.capture());
+        assertEquals(1, requeued.getAllValues().getFirst().size());
+    }
+
+    @Test
+    void completeWithdrawal_shouldRejectWithoutJournaling_whenInsufficientBalance() {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "10.00"));
+
+        // When & Then
+        assertThrows(InsufficientBalanceException.class,
+                () -> engine.completeWithdrawal(transaction(TransactionType.WITHDRAWAL, walletA, "10.01")));
+        verify(writeBehind).reserve(startsWith("KEY-"));
+        BalanceWriteBehind recoveredWriteBehind = mock(BalanceWriteBehind.class);
+        startEngine(recoveredWriteBehind);
+        ArgumentCaptor<List<Transaction>> requeued = captor();
+        verify(recoveredWriteBehind).enqueue(requeued.capture());
+        assertEquals(1, requeued.getValue().size());
+    }
+
+    @Test
+    void completeDeposit_shouldRejectKeyStillWaitingForWriteBehind() {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        when(writeBehind.isTaken("DUP-KEY")).thenReturn(true);
+        Transaction transaction = transaction(TransactionType.DEPOSIT, walletA, "10.00");
+        transaction.setIdempotencyKey("DUP-KEY");
+
+        // When & Then
+        assertThrows(DuplicateTransactionException.class, () -> engine.completeDeposit(transaction));
+        verify(writeBehind, never()).enqueue(List.of(transaction));
+    }
+
+    @Test
+    void completeTransfer_shouldRejectRetryWhoseKeyWasFlushed_withoutMovingBalance() {
+        // Given - the first attempt was flushed after the retry's own lookup missed it
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "50.00"));
+        Transaction retryOut = transaction(TransactionType.TRANSFER_OUT, walletA, "20.00");
+        retryOut.setIdempotencyKey("FLUSHED-KEY");
+        when(writeBehind.isTaken("FLUSHED-KEY")).thenReturn(true);
+
+        // When & Then
+        assertThrows(DuplicateTransactionException.class, () -> engine.completeTransfer(
+                retryOut, transaction(TransactionType.TRANSFER_IN, walletB, "20.00")));
+        Transaction next = engine.completeWithdrawal(transaction(TransactionType.WITHDRAWAL, walletA, "50.00"));
+        assertEquals(0, BigDecimal.ZERO.compareTo(next.getBalanceAfter()));
+    }
+
+    @Test
+    void completeDeposit_shouldNotWaitForAnotherWalletBeingLoaded() throws Exception {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind);
+        UUID slowWallet = UUID.randomUUID();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(walletBalanceRepository.findByWalletId(slowWallet)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return Optional.of(TestDataBuilder.createWalletBalance(slowWallet, UUID.randomUUID(), BigDecimal.ZERO, "USD"));
+        });
+        CompletableFuture<Transaction> slow = CompletableFuture.supplyAsync(
+                () -> engine.completeDeposit(transaction(TransactionType.DEPOSIT, slowWallet, "1.00")));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // When
+        Transaction deposit = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "5.00")));
+
+        // Then
+        assertEquals(0, new BigDecimal("5").compareTo(deposit.getBalanceAfter()));
+        release.countDown();
+        assertEquals(0, BigDecimal.ONE.compareTo(slow.get(5, TimeUnit.SECONDS).getBalanceAfter()));
+    }
+
+    @Test
+    void journal_shouldSnapshotInTheBackground_whenSegmentFills() {
+        // Given
+        InMemoryBalanceEngine engine = startEngine(writeBehind, 1024);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            engine.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00"));
+        }
+
+        // Then
+        verify(writeBehind, timeout(5_000).atLeastOnce()).flushAll();
+        BalanceWriteBehind recoveredWriteBehind = mock(BalanceWriteBehind.class);
+        InMemoryBalanceEngine recovered = startEngine(recoveredWriteBehind, 1024);
+        Transaction next = recovered.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00"));
+        assertEquals(0, new BigDecimal("21").compareTo(next.getBalanceAfter()));
+        verify(walletBalanceRepository, times(1)).findByWalletId(walletA);
+    }
+
+    private InMemoryBalanceEngine startEngine(BalanceWriteBehind writeBehind) {
+        return startEngine(writeBehind, SEGMENT_BYTES);
+    }
+
+    private InMemoryBalanceEngine startEngine(BalanceWriteBehind writeBehind, int segmentBytes) {
+        InMemoryBalanceEngine engine = new InMemoryBalanceEngine(
+                walletBalanceRepository, writeBehind, new SimpleMeterRegistry(), directory, segmentBytes, 3_600_000);
+        engine.recover();
+        return engine;
+    }
+
+    private Transaction transaction(TransactionType type, UUID walletId, String amount) {
+        return TestDataBuilder.createTransaction(type, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal(amount), "USD", "KEY-" + UUID.randomUUID());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Transaction>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
@@ -0,0 +1,49 @@
+package com.patorinaldi.wallet.transaction.event;
+
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.common.outbox.OutboxWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaEventPublisherTest {
+
+    @Mock
+    private OutboxWriter outboxWriter;
+
+    @InjectMocks
+    private KafkaEventPublisher publisher;
+
+    @Test
+    void handleTransactionCompletedEvent_shouldKeyByWallet() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        TransactionCompletedEvent event = TransactionCompletedEvent.builder()
+                .eventId(UUID.randomUUID())
+                .transactionId(UUID.randomUUID())
+                .type(TransactionType.DEPOSIT)
+                .walletId(walletId)
+                .userId(UUID.randomUUID())
+                .amount(new BigDecimal("100.00"))
+                .currency("USD")
+                .balanceAfter(new BigDecimal("100.00"))
+                .completedAt(Instant.now())
+                .build();
+
+        // When
+        publisher.handleTransactionCompletedEvent(event);
+
+        // Then
+        verify(outboxWriter).append("transaction-completed", walletId.toString(), event);
+    }
+}
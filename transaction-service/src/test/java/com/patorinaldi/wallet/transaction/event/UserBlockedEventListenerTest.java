@@ -3,6 +3,7 @@ package com.patorinaldi.wallet.transaction.event;
 import com.patorinaldi.wallet.common.event.UserBlockedEvent;
 import com.patorinaldi.wallet.transaction.entity.BlockedUser;
 import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
+import com.patorinaldi.wallet.transaction.service.BlockedUserIndex;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -22,6 +23,9 @@ class UserBlockedEventListenerTest {
     @Mock
     private BlockedUserRepository blockedUserRepository;
 
+    @Mock
+    private BlockedUserIndex blockedUserIndex;
+
     @InjectMocks
     private UserBlockedEventListener listener;
 
@@ -57,6 +61,7 @@ class UserBlockedEventListenerTest {
                 blocked.getRiskScore().equals(riskScore) &&
                 blocked.getBlockedAt().equals(blockedAt)
         ));
+        verifyNoInteractions(blockedUserIndex);
     }
 
     @Test
@@ -82,5 +87,26 @@ class UserBlockedEventListenerTest {
         // Then
         verify(blockedUserRepository).existsByTriggeredByTransactionId(transactionId);
         verify(blockedUserRepository, never()).save(any(BlockedUser.class));
+        verifyNoInteractions(blockedUserIndex);
+    }
+
+    @Test
+    void indexUserBlocked_shouldOnlyUpdateIndex() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        UserBlockedEvent event = UserBlockedEvent.builder()
+                .userId(userId)
+                .triggeredByTransactionId(UUID.randomUUID())
+                .reason("Fraud detected")
+                .riskScore(85)
+                .blockedAt(Instant.now())
+                .build();
+
+        // When
+        listener.indexUserBlocked(event);
+
+        // Then
+        verify(blockedUserIndex).block(userId, "Fraud detected");
+        verifyNoInteractions(blockedUserRepository);
     }
 }
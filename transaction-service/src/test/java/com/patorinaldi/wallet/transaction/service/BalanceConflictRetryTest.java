@@ -0,0 +1,73 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BalanceConflictRetryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private BalanceConflictRetry balanceConflictRetry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        balanceConflictRetry = new BalanceConflictRetry(meterRegistry);
+        ReflectionTestUtils.setField(balanceConflictRetry, "maxAttempts", 3);
+    }
+
+    @Test
+    void execute_shouldRetryConflictsAndCountThem() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        String result = balanceConflictRetry.execute("deposit", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new CannotAcquireLockException("lock timeout");
+            }
+            return "done";
+        });
+
+        // Then
+        assertEquals("done", result);
+        assertEquals(3, calls.get());
+        assertEquals(2.0, meterRegistry.counter("wallet.balance.conflicts", "operation", "deposit").count());
+        assertEquals(2.0, meterRegistry.counter("wallet.balance.retries", "operation", "deposit").count());
+    }
+
+    @Test
+    void execute_shouldRethrowAfterMaxAttempts() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When & Then
+        assertThrows(CannotAcquireLockException.class, () -> balanceConflictRetry.execute("transfer", () -> {
+            calls.incrementAndGet();
+            throw new CannotAcquireLockException("deadlock detected");
+        }));
+        assertEquals(3, calls.get());
+        assertEquals(3.0, meterRegistry.counter("wallet.balance.conflicts", "operation", "transfer").count());
+        assertEquals(2.0, meterRegistry.counter("wallet.balance.retries", "operation", "transfer").count());
+    }
+
+    @Test
+    void execute_shouldNotRetryOtherFailures() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When & Then
+        assertThrows(IllegalStateException.class, () -> balanceConflictRetry.execute("withdrawal", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.counter("wallet.balance.conflicts", "operation", "withdrawal").count());
+    }
+}
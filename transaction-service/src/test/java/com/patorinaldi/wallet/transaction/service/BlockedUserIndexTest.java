@@ -0,0 +1,154 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.entity.BlockedUser;
+import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BlockedUserIndexTest {
+
+    @Mock
+    private BlockedUserRepository blockedUserRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BlockedUserIndex index;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        index = new BlockedUserIndex(blockedUserRepository, meterRegistry, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+    }
+
+    @Test
+    void hydrate_shouldLoadBlockedUsersFromTable() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        when(blockedUserRepository.findAll()).thenReturn(List.of(blockedUser(userId, "Fraud detected")));
+
+        // When
+        index.hydrate();
+
+        // Then
+        assertEquals("Fraud detected", index.find(userId).orElseThrow().reason());
+        assertTrue(index.find(UUID.randomUUID()).isEmpty());
+        assertEquals(1.0, meterRegistry.get("wallet.blocked-users.size").gauge().value());
+        assertEquals(1, meterRegistry.get("wallet.blocked-users.hydration").timer().count());
+    }
+
+    @Test
+    void find_shouldNotQueryTable_afterHydration() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        when(blockedUserRepository.findAll()).thenReturn(List.of());
+        index.hydrate();
+
+        // When
+        index.block(userId, "Fraud detected");
+
+        // Then
+        assertTrue(index.find(userId).isPresent());
+        verify(blockedUserRepository, times(1)).findAll();
+        verifyNoMoreInteractions(blockedUserRepository);
+    }
+
+    @Test
+    void reconcile_shouldAddMissingAndDropStaleBlocks() {
+        // Given
+        UUID removed = UUID.randomUUID();
+        UUID added = UUID.randomUUID();
+        when(blockedUserRepository.findAll())
+                .thenReturn(List.of(blockedUser(removed, "Fraud detected")))
+                .thenReturn(List.of(blockedUser(added, "Manual block")));
+        index.hydrate();
+
+        // When
+        index.reconcile();
+
+        // Then
+        assertTrue(index.find(removed).isEmpty());
+        assertEquals("Manual block", index.find(added).orElseThrow().reason());
+        assertEquals(1.0, meterRegistry.counter("wallet.blocked-users.drift", "kind", "missing").count());
+        assertEquals(1.0, meterRegistry.counter("wallet.blocked-users.drift", "kind", "stale").count());
+    }
+
+    @Test
+    void reconcile_shouldKeepBlocksAddedAfterTableWasRead() {
+        // Given
+        UUID userId = UUID.randomUUID();
+        when(blockedUserRepository.findAll())
+                .thenReturn(List.of())
+                .thenAnswer(invocation -> {
+                    index.block(userId, "Fraud detected");
+                    return List.of();
+                });
+        index.hydrate();
+
+        // When
+        index.reconcile();
+
+        // Then
+        assertTrue(index.find(userId).isPresent());
+        assertEquals(0.0, meterRegistry.counter("wallet.blocked-users.drift", "kind", "stale").count());
+    }
+
+    @Test
+    void reconcile_shouldKeepBlockFromEvent_whileItsRowMayStillBeCommitting() {
+        // Given - another instance stores the row; this one only hears the event
+        UUID userId = UUID.randomUUID();
+        when(blockedUserRepository.findAll()).thenReturn(List.of());
+        index.hydrate();
+        index.block(userId, "Fraud detected");
+
+        // When
+        index.reconcile();
+
+        // Then
+        assertTrue(index.find(userId).isPresent());
+        assertEquals(0.0, meterRegistry.counter("wallet.blocked-users.drift", "kind", "stale").count());
+    }
+
+    @Test
+    void reconcile_shouldDropBlockFromEvent_onceRowIsMissingForAnInterval() {
+        // Given
+        index.shutdown();
+        index = new BlockedUserIndex(blockedUserRepository, meterRegistry, 0);
+        UUID userId = UUID.randomUUID();
+        when(blockedUserRepository.findAll()).thenReturn(List.of());
+        index.block(userId, "Fraud detected");
+
+        // When
+        index.reconcile();
+
+        // Then
+        assertTrue(index.find(userId).isEmpty());
+        assertEquals(1.0, meterRegistry.counter("wallet.blocked-users.drift", "kind", "stale").count());
+    }
+
+    private static BlockedUser blockedUser(UUID userId, String reason) {
+        return BlockedUser.builder()
+                .userId(userId)
+                .triggeredByTransactionId(UUID.randomUUID())
+                .reason(reason)
+                .riskScore(90)
+                .blockedAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException;
+import com.patorinaldi.wallet.transaction.web.RequestDeadline;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FanOutTest {
+
+    @Test
+    void both_shouldRunStepsConcurrently() {
+        // Given
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        // When
+        FanOut.Both<String, Integer> result = FanOut.both(
+                () -> {
+                    awaitOther(bothStarted);
+                    return "source";
+                },
+                () -> {
+                    awaitOther(bothStarted);
+                    return 42;
+                });
+
+        // Then
+        assertEquals("source", result.first());
+        assertEquals(42, result.second());
+    }
+
+    @Test
+    void both_shouldLetOtherStepFinish_thenRethrowFirstFailure() {
+        // Given
+        WalletBalanceNotFoundException notFound = new WalletBalanceNotFoundException(UUID.randomUUID());
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+
+        // When
+        WalletBalanceNotFoundException thrown = assertThrows(WalletBalanceNotFoundException.class, () -> FanOut.both(
+                () -> {
+                    try {
+                        failed.await(5, TimeUnit.SECONDS);
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                        throw new IllegalStateException("interrupted", e);
+                    }
+                    finished.set(true);
+                    throw new IllegalStateException("later failure");
+                },
+                () -> {
+                    failed.countDown();
+                    throw notFound;
+                }));
+
+        // Then
+        assertSame(notFound, thrown);
+        assertFalse(interrupted.get());
+        assertTrue(finished.get());
+    }
+
+    @Test
+    void both_shouldRunStepsUnderCallersDeadline() {
+        // Given
+        RequestDeadline.start(Duration.ofSeconds(30));
+
+        // When
+        FanOut.Both<Optional<Duration>, Optional<Duration>> result;
+        try {
+            result = FanOut.both(RequestDeadline::remaining, RequestDeadline::remaining);
+        } finally {
+            RequestDeadline.clear();
+        }
+
+        // Then
+        assertTrue(result.first().orElseThrow().compareTo(Duration.ofSeconds(25)) > 0);
+        assertTrue(result.second().orElseThrow().compareTo(Duration.ofSeconds(25)) > 0);
+    }
+
+    private static void awaitOther(CountDownLatch bothStarted) {
+        bothStarted.countDown();
+        try {
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "steps did not overlap");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GroupCommitBalanceWriterTest {
+
+    @Mock
+    private TransactionPersistenceService persistenceService;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GroupCommitBalanceWriter writer;
+
+    private final UUID walletA = UUID.randomUUID();
+    private final UUID walletB = UUID.randomUUID();
+    private WalletBalance balanceA;
+    private WalletBalance balanceB;
+
+    @BeforeEach
+    void setup() {
+        writer = new GroupCommitBalanceWriter(persistenceService, transactionRepository, walletBalanceRepository,
+                eventPublisher, transactionManager, new SimpleMeterRegistry(), 200, 64, 5_000);
+        balanceA = TestDataBuilder.createWalletBalance(walletA, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        balanceB = TestDataBuilder.createWalletBalance(walletB, UUID.randomUUID(), new BigDecimal("10.00"), "USD");
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(walletBalanceRepository.lockByWalletIdIn(anyCollection())).thenReturn(List.of(balanceA, balanceB));
+    }
+
+    @Test
+    void commit_shouldApplyOperationsInOrderWithinOneTransaction() throws Exception {
+        // Given
+        GroupCommitBalanceWriter.Operation deposit = operation(TransactionType.DEPOSIT, walletB, "5.00");
+        GroupCommitBalanceWriter.Operation withdrawal = operation(TransactionType.WITHDRAWAL, walletB, "15.00");
+        GroupCommitBalanceWriter.Operation transfer = new GroupCommitBalanceWriter.Operation(
+                transaction(TransactionType.TRANSFER_OUT, walletA, "30.00"),
+                transaction(TransactionType.TRANSFER_IN, walletB, "30.00"));
+
+        // When
+        writer.commit(List.of(deposit, withdrawal, transfer));
+
+        // Then
+        assertEquals(0, new BigDecimal("15.00").compareTo(deposit.result().get().getBalanceAfter()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(withdrawal.result().get().getBalanceAfter()));
+        Transaction transferOut = transfer.result().get();
+        assertEquals(0, new BigDecimal("70.00").compareTo(transferOut.getBalanceAfter()));
+        assertEquals(0, new BigDecimal("30.00").compareTo(transfer.counterpart().getBalanceAfter()));
+        assertEquals(transfer.counterpart().getId(), transferOut.getRelatedTransactionId());
+        assertEquals(transferOut.getId(), transfer.counterpart().getRelatedTransactionId());
+
+        verify(walletBalanceRepository, times(1)).lockByWalletIdIn(anyCollection());
+        verify(transactionRepository, times(1)).saveAll(anyList());
+        verify(transactionManager, times(1)).commit(any());
+        verify(eventPublisher, times(4)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void commit_shouldFailOnlyTheOperationWithInsufficientBalance() throws Exception {
+        // Given
+        GroupCommitBalanceWriter.Operation overdraft = operation(TransactionType.WITHDRAWAL, walletB, "10.01");
+        GroupCommitBalanceWriter.Operation deposit = operation(TransactionType.DEPOSIT, walletA, "1.00");
+
+        // When
+        writer.commit(List.of(overdraft, deposit));
+
+        // Then
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> overdraft.result().get());
+        assertInstanceOf(InsufficientBalanceException.class, failure.getCause());
+        assertEquals(0, new BigDecimal("101.00").compareTo(deposit.result().get().getBalanceAfter()));
+        assertEquals(0, new BigDecimal("10.00").compareTo(balanceB.getBalance()));
+        verify(transactionRepository).saveAll(List.of(deposit.primary()));
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    void commit_shouldApplyEachOperationAlone_whenBatchFails() throws Exception {
+        // Given
+        GroupCommitBalanceWriter.Operation duplicate = operation(TransactionType.DEPOSIT, walletA, "1.00");
+        GroupCommitBalanceWriter.Operation deposit = operation(TransactionType.DEPOSIT, walletB, "2.00");
+        when(transactionRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(persistenceService.completeDeposit(duplicate.primary()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(persistenceService.completeDeposit(deposit.primary())).thenReturn(deposit.primary());
+
+        // When
+        writer.commit(List.of(duplicate, deposit));
+
+        // Then
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> duplicate.result().get());
+        assertInstanceOf(DataIntegrityViolationException.class, failure.getCause());
+        assertSame(deposit.primary(), deposit.result().get());
+        assertFalse(deposit.primary().isPersisted());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void completeDeposit_shouldGroupConcurrentCallersIntoOneBatch() throws Exception {
+        // Given
+        writer.start();
+        int callers = 8;
+
+        // When
+        List<Transaction> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(callers)) {
+            List<CompletableFuture<Transaction>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> writer.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00")), executor));
+            }
+            for (CompletableFuture<Transaction> future : futures) {
+                results.add(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            writer.stop();
+        }
+
+        // Then
+        assertEquals(callers, results.size());
+        assertEquals(0, new BigDecimal("108.00").compareTo(balanceA.getBalance()));
+        verify(transactionManager, atMost(2)).commit(any());
+    }
+
+    @Test
+    void completeDeposit_shouldTimeOutAndWithdrawOperation_whenCommitterDoesNotPickItUp() throws Exception {
+        // Given - a committer that never runs
+        GroupCommitBalanceWriter stalled = new GroupCommitBalanceWriter(persistenceService, transactionRepository,
+                walletBalanceRepository, eventPublisher, transactionManager, new SimpleMeterRegistry(), 200, 64, 50);
+
+        // When
+        IllegalStateException timeout = assertThrows(IllegalStateException.class,
+                () -> stalled.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00")));
+
+        // Then - the withdrawn operation is not committed once a committer does run
+        assertTrue(timeout.getMessage().contains("did not pick up"));
+        stalled.start();
+        stalled.stop();
+        verifyNoInteractions(transactionRepository);
+    }
+
+    @Test
+    void completeDeposit_shouldFailInFlightBatchAndRestartCommitter_whenErrorKillsIt() throws Exception {
+        // Given
+        when(walletBalanceRepository.lockByWalletIdIn(anyCollection()))
+                .thenThrow(new OutOfMemoryError("simulated"))
+                .thenReturn(List.of(balanceA, balanceB));
+        writer.start();
+
+        // When
+        IllegalStateException failed;
+        Transaction next;
+        try {
+            failed = assertThrows(IllegalStateException.class,
+                    () -> writer.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "1.00")));
+            next = writer.completeDeposit(transaction(TransactionType.DEPOSIT, walletA, "2.00"));
+        } finally {
+            writer.stop();
+        }
+
+        // Then
+        assertInstanceOf(OutOfMemoryError.class, failed.getCause());
+        assertEquals(0, new BigDecimal("102.00").compareTo(next.getBalanceAfter()));
+    }
+
+    private GroupCommitBalanceWriter.Operation operation(TransactionType type, UUID walletId, String amount) {
+        return new GroupCommitBalanceWriter.Operation(transaction(type, walletId, amount), null);
+    }
+
+    private Transaction transaction(TransactionType type, UUID walletId, String amount) {
+        return TestDataBuilder.createTransaction(type, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal(amount), "USD", "KEY-" + UUID.randomUUID());
+    }
+}
@@ -0,0 +1,218 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.common.enums.TransactionStatus;
+import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.transaction.dto.TransactionResponse;
+import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.exception.DuplicateTransactionException;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.mapper.TransactionMapper;
+import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyGuardTest {
+
+    private static final UUID WALLET_ID = UUID.randomUUID();
+    private static final BigDecimal AMOUNT = new BigDecimal("50.00");
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private TransactionMapper transactionMapper;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyGuard guard;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new IdempotencyGuard(transactionRepository, transactionMapper, meterRegistry,
+                1000, 0.01, 100, 60_000, false);
+    }
+
+    @Test
+    void replay_shouldSkipLookup_whenKeyNeverSeen() {
+        // When
+        Optional<TransactionResponse> replayed = guard.replay("NEW-KEY", "NEW-KEY", WALLET_ID, AMOUNT);
+
+        // Then
+        assertTrue(replayed.isEmpty());
+        verify(transactionRepository, never()).findByIdempotencyKey(anyString());
+        assertEquals(1.0, meterRegistry.counter("wallet.idempotency.lookups", "result", "skipped").count());
+    }
+
+    @Test
+    void replay_shouldReturnRememberedResponse_withoutLookup() {
+        // Given
+        TransactionResponse original = response(WALLET_ID, AMOUNT);
+        guard.record("KEY");
+        guard.remember("KEY", original);
+
+        // When
+        Optional<TransactionResponse> replayed = guard.replay("KEY", "KEY", WALLET_ID, new BigDecimal("50"));
+
+        // Then
+        assertSame(original, replayed.orElseThrow());
+        verify(transactionRepository, never()).findByIdempotencyKey(anyString());
+        assertEquals(1.0, meterRegistry.counter("wallet.idempotency.replays", "source", "cache").count());
+    }
+
+    @Test
+    void replay_shouldLoadOriginalFromDatabase_whenRecordedKeyNotCached() {
+        // Given
+        Transaction transaction = new Transaction();
+        TransactionResponse original = response(WALLET_ID, AMOUNT);
+        guard.record("KEY:out", "KEY:in");
+        when(transactionRepository.findByIdempotencyKey("KEY:out")).thenReturn(Optional.of(transaction));
+        when(transactionMapper.toResponse(transaction)).thenReturn(original);
+
+        // When
+        Optional<TransactionResponse> first = guard.replay("KEY", "KEY:out", WALLET_ID, AMOUNT);
+        Optional<TransactionResponse> second = guard.replay("KEY", "KEY:out", WALLET_ID, AMOUNT);
+
+        // Then
+        assertSame(original, first.orElseThrow());
+        assertSame(original, second.orElseThrow());
+        verify(transactionRepository, times(1)).findByIdempotencyKey("KEY:out");
+        assertEquals(1.0, meterRegistry.counter("wallet.idempotency.replays", "source", "database").count());
+    }
+
+    @Test
+    void replay_shouldCountFalsePositive_whenRecordedKeyHasNoRow() {
+        // Given
+        guard.record("FAILED-BEFORE-INSERT");
+        when(transactionRepository.findByIdempotencyKey("FAILED-BEFORE-INSERT")).thenReturn(Optional.empty());
+
+        // When
+        Optional<TransactionResponse> replayed = guard.replay("FAILED-BEFORE-INSERT", "FAILED-BEFORE-INSERT", WALLET_ID, AMOUNT);
+
+        // Then
+        assertTrue(replayed.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("wallet.idempotency.lookups", "result", "false_positive").count());
+    }
+
+    @Test
+    void replay_shouldRethrowOriginalError_whenRememberedAttemptFailed() {
+        // Given
+        TransactionResponse failed = response(TransactionStatus.FAILED, "Insufficient balance in wallet");
+        guard.remember("KEY", failed);
+
+        // When & Then
+        InsufficientBalanceException exception = assertThrows(InsufficientBalanceException.class,
+                () -> guard.replay("KEY", "KEY", WALLET_ID, AMOUNT));
+        assertEquals("Insufficient balance in wallet", exception.getMessage());
+        assertEquals(WALLET_ID, exception.getWalletId());
+    }
+
+    @Test
+    void replayConflict_shouldRethrowOriginalError_whenWinnerFailed() {
+        // Given
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("could not execute statement",
+                new SQLException("ERROR: duplicate key value violates unique constraint \"uk_transactions_key\"\n"
+                        + "  Detail: Key (idempotency_key)=(KEY) already exists."));
+        Transaction transaction = new Transaction();
+        when(transactionRepository.findByIdempotencyKey("KEY")).thenReturn(Optional.of(transaction));
+        when(transactionMapper.toResponse(transaction))
+                .thenReturn(response(TransactionStatus.FAILED, "Insufficient balance in wallet"));
+
+        // When & Then
+        assertThrows(InsufficientBalanceException.class,
+                () -> guard.replayConflict(violation, "KEY", "KEY", WALLET_ID, AMOUNT));
+    }
+
+    @Test
+    void replay_shouldThrowDuplicate_whenKeyReusedForDifferentAmount() {
+        // Given
+        guard.remember("KEY", response(WALLET_ID, AMOUNT));
+
+        // When & Then
+        DuplicateTransactionException exception = assertThrows(DuplicateTransactionException.class,
+                () -> guard.replay("KEY", "KEY", WALLET_ID, new BigDecimal("75.00")));
+        assertTrue(exception.getMessage().contains("KEY"));
+    }
+
+    @Test
+    void replay_shouldThrowDuplicate_whenKeyReusedForDifferentWallet() {
+        // Given
+        guard.remember("KEY", response(WALLET_ID, AMOUNT));
+
+        // When & Then
+        assertThrows(DuplicateTransactionException.class,
+                () -> guard.replay("KEY", "KEY", UUID.randomUUID(), AMOUNT));
+    }
+
+    @Test
+    void replay_shouldAlwaysLookUp_whenInsertsAreDeferred() {
+        // Given
+        IdempotencyGuard engineGuard = new IdempotencyGuard(transactionRepository, transactionMapper,
+                new SimpleMeterRegistry(), 1000, 0.01, 100, 60_000, true);
+
+        // When
+        engineGuard.replay("NEW-KEY", "NEW-KEY", WALLET_ID, AMOUNT);
+
+        // Then
+        verify(transactionRepository).findByIdempotencyKey("NEW-KEY");
+    }
+
+    @Test
+    void replayConflict_shouldReturnWinnerOfUniqueViolationOnIdempotencyKey() {
+        // Given
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("could not execute statement",
+                new SQLException("ERROR: duplicate key value violates unique constraint \"uk_transactions_key\"\n"
+                        + "  Detail: Key (idempotency_key)=(KEY) already exists."));
+        Transaction transaction = new Transaction();
+        TransactionResponse winner = response(WALLET_ID, AMOUNT);
+        when(transactionRepository.findByIdempotencyKey("KEY")).thenReturn(Optional.of(transaction));
+        when(transactionMapper.toResponse(transaction)).thenReturn(winner);
+
+        // When
+        TransactionResponse response = guard.replayConflict(violation, "KEY", "KEY", WALLET_ID, AMOUNT);
+
+        // Then
+        assertSame(winner, response);
+        assertEquals(1.0, meterRegistry.counter("wallet.idempotency.conflicts").count());
+        assertSame(winner, guard.replay("KEY", "KEY", WALLET_ID, AMOUNT).orElseThrow());
+    }
+
+    @Test
+    void replayConflict_shouldRethrowOtherIntegrityViolations() {
+        // Given
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("not-null violation",
+                new SQLException("ERROR: null value in column \"amount\" violates not-null constraint"));
+
+        // When & Then
+        assertSame(violation, assertThrows(DataIntegrityViolationException.class,
+                () -> guard.replayConflict(violation, "KEY", "KEY", WALLET_ID, AMOUNT)));
+        verify(transactionRepository, never()).findByIdempotencyKey(anyString());
+    }
+
+    private static TransactionResponse response(UUID walletId, BigDecimal amount) {
+        return new TransactionResponse(UUID.randomUUID(), TransactionType.DEPOSIT, TransactionStatus.COMPLETED,
+                walletId, UUID.randomUUID(), amount, "USD", amount, "Test", Instant.now(), Instant.now(),
+                null, null, null);
+    }
+
+    private static TransactionResponse response(TransactionStatus status, String errorMessage) {
+        return new TransactionResponse(UUID.randomUUID(), TransactionType.WITHDRAWAL, status,
+                WALLET_ID, UUID.randomUUID(), AMOUNT, "USD", null, "Test", Instant.now(), Instant.now(),
+                errorMessage, null, null);
+    }
+}
@@ -0,0 +1,69 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyKeyFilterTest {
+
+    @Test
+    void mightContain_shouldNeverMissAddedKeys() {
+        // Given
+        IdempotencyKeyFilter filter = new IdempotencyKeyFilter(10_000, 0.01);
+
+        // When
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("KEY-" + i);
+        }
+
+        // Then
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("KEY-" + i), "KEY-" + i);
+        }
+    }
+
+    @Test
+    void mightContain_shouldStayNearConfiguredFalsePositiveRate() {
+        // Given
+        IdempotencyKeyFilter filter = new IdempotencyKeyFilter(10_000, 0.01);
+        for (int i = 0; i < 9_999; i++) {
+            filter.add(UUID.randomUUID().toString());
+        }
+
+        // When
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < 0.02, "false positive rate " + rate);
+    }
+
+    @Test
+    void add_shouldForgetOldestKeysAfterTwoGenerations() {
+        // Given
+        IdempotencyKeyFilter filter = new IdempotencyKeyFilter(100, 0.001);
+        filter.add("OLDEST");
+
+        // When
+        for (int i = 0; i < 99; i++) {
+            filter.add("FIRST-" + i);
+        }
+        boolean afterOneRotation = filter.mightContain("OLDEST");
+        for (int i = 0; i < 100; i++) {
+            filter.add("SECOND-" + i);
+        }
+
+        // Then
+        assertTrue(afterOneRotation);
+        assertFalse(filter.mightContain("OLDEST"));
+        assertTrue(filter.mightContain("SECOND-0"));
+    }
+}
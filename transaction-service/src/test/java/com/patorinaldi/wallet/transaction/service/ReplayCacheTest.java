@@ -0,0 +1,49 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import com.patorinaldi.wallet.transaction.dto.TransactionResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ReplayCacheTest {
+
+    @Test
+    void get_shouldExpireEntriesAfterTtl() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        ReplayCache cache = new ReplayCache(10, 1_000, clock::get);
+        TransactionResponse response = mock(TransactionResponse.class);
+        cache.put("KEY", response);
+
+        // When
+        clock.set(1_000);
+        boolean presentAtTtl = cache.get("KEY").isPresent();
+        clock.set(1_001);
+
+        // Then
+        assertTrue(presentAtTtl);
+        assertTrue(cache.get("KEY").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedBeyondMaxEntries() {
+        // Given
+        ReplayCache cache = new ReplayCache(2, Long.MAX_VALUE, () -> 0L);
+        cache.put("A", mock(TransactionResponse.class));
+        cache.put("B", mock(TransactionResponse.class));
+        cache.get("A");
+
+        // When
+        cache.put("C", mock(TransactionResponse.class));
+
+        // Then
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("A").isPresent());
+        assertTrue(cache.get("B").isEmpty());
+        assertTrue(cache.get("C").isPresent());
+    }
+}
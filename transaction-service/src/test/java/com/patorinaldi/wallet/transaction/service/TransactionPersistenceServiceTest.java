@@ -2,21 +2,31 @@ package com.patorinaldi.wallet.transaction.service;
 
 import com.patorinaldi.wallet.common.enums.TransactionStatus;
 import com.patorinaldi.wallet.common.enums.TransactionType;
+import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
+import com.patorinaldi.wallet.common.event.TransactionFailedEvent;
 import com.patorinaldi.wallet.transaction.entity.Transaction;
+import com.patorinaldi.wallet.transaction.entity.WalletBalance;
+import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundException;
 import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
 import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository.BalanceChange;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class TransactionPersistenceServiceTest {
@@ -24,6 +34,12 @@ class TransactionPersistenceServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private WalletBalanceRepository walletBalanceRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private TransactionPersistenceService transactionPersistenceService;
 
@@ -48,5 +64,202 @@ class TransactionPersistenceServiceTest {
 
         // Then
         verify(transactionRepository).save(failedTransaction);
+        verify(eventPublisher).publishEvent(any(TransactionFailedEvent.class));
+    }
+
+    @Test
+    void completeDeposit_shouldCreditAtomicallyAndPublishEvent() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        Transaction transaction = TestDataBuilder.createTransaction(
+                TransactionType.DEPOSIT, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal("50.00"), "USD", "TEST-KEY");
+
+        when(walletBalanceRepository.creditAndGetBalance(walletId, new BigDecimal("50.00")))
+                .thenReturn(Optional.of(new BigDecimal("150.00")));
+
+        // When
+        Transaction result = transactionPersistenceService.completeDeposit(transaction);
+
+        // Then
+        assertEquals(TransactionStatus.COMPLETED, result.getStatus());
+        assertEquals(new BigDecimal("150.00"), result.getBalanceAfter());
+        verify(transactionRepository).save(transaction);
+        verify(walletBalanceRepository, never()).findByWalletId(any());
+        verify(walletBalanceRepository, never()).save(any());
+        verify(eventPublisher).publishEvent(any(TransactionCompletedEvent.class));
+    }
+
+    @Test
+    void completeDeposit_shouldThrowNotFound_whenBalanceRowDisappeared() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        Transaction transaction = TestDataBuilder.createTransaction(
+                TransactionType.DEPOSIT, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal("50.00"), "USD", "TEST-KEY");
+
+        when(walletBalanceRepository.creditAndGetBalance(any(), any())).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(WalletBalanceNotFoundException.class,
+                () -> transactionPersistenceService.completeDeposit(transaction));
+        verify(transactionRepository, never()).save(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void completeWithdrawal_shouldDebitAtomically_whenFundsSufficient() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        Transaction transaction = TestDataBuilder.createTransaction(
+                TransactionType.WITHDRAWAL, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal("30.00"), "USD", "TEST-KEY");
+
+        when(walletBalanceRepository.debitIfSufficient(walletId, new BigDecimal("30.00")))
+                .thenReturn(Optional.of(new BigDecimal("70.00")));
+
+        // When
+        Transaction result = transactionPersistenceService.completeWithdrawal(transaction);
+
+        // Then
+        assertEquals(TransactionStatus.COMPLETED, result.getStatus());
+        assertEquals(new BigDecimal("70.00"), result.getBalanceAfter());
+        verify(transactionRepository).save(transaction);
+        verify(eventPublisher).publishEvent(any(TransactionCompletedEvent.class));
+    }
+
+    @Test
+    void completeWithdrawal_shouldThrowWithoutWriting_whenInsufficientBalance() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, new BigDecimal("50.00"), "USD");
+        Transaction transaction = TestDataBuilder.createTransaction(
+                TransactionType.WITHDRAWAL, TransactionStatus.PENDING,
+                walletId, userId, new BigDecimal("100.00"), "USD", "TEST-KEY");
+
+        when(walletBalanceRepository.debitIfSufficient(walletId, new BigDecimal("100.00"))).thenReturn(Optional.empty());
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+
+        // When & Then
+        InsufficientBalanceException exception = assertThrows(InsufficientBalanceException.class,
+                () -> transactionPersistenceService.completeWithdrawal(transaction));
+        assertEquals(new BigDecimal("50.00"), exception.getCurrentBalance());
+        verify(transactionRepository, never()).save(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void completeWithdrawal_shouldThrowNotFound_whenWalletMissing() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        Transaction transaction = TestDataBuilder.createTransaction(
+                TransactionType.WITHDRAWAL, TransactionStatus.PENDING,
+                walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD", "TEST-KEY");
+
+        when(walletBalanceRepository.debitIfSufficient(any(), any())).thenReturn(Optional.empty());
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(WalletBalanceNotFoundException.class,
+                () -> transactionPersistenceService.completeWithdrawal(transaction));
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    void completeTransfer_shouldMoveFundsAndInsertLinkedLegsOnce() {
+        // Given
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID destWalletId = UUID.randomUUID();
+        Transaction transactionOut = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_OUT, TransactionStatus.PENDING,
+                sourceWalletId, UUID.randomUUID(), new BigDecimal("75.00"), "USD", "TEST-KEY:out");
+        Transaction transactionIn = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_IN, TransactionStatus.PENDING,
+                destWalletId, UUID.randomUUID(), new BigDecimal("75.00"), "USD", "TEST-KEY:in");
+
+        when(walletBalanceRepository.transferAndGetBalances(
+                sourceWalletId, destWalletId, new BigDecimal("75.00"), new BigDecimal("75.00")))
+                .thenReturn(List.of(
+                        balanceChange(sourceWalletId, new BigDecimal("125.00")),
+                        balanceChange(destWalletId, new BigDecimal("175.00"))));
+
+        // When
+        Transaction result = transactionPersistenceService.completeTransfer(transactionOut, transactionIn);
+
+        // Then
+        assertSame(transactionOut, result);
+        assertEquals(new BigDecimal("125.00"), transactionOut.getBalanceAfter());
+        assertEquals(new BigDecimal("175.00"), transactionIn.getBalanceAfter());
+        assertEquals(transactionIn.getId(), transactionOut.getRelatedTransactionId());
+        assertEquals(transactionOut.getId(), transactionIn.getRelatedTransactionId());
+        assertEquals(destWalletId, transactionOut.getRelatedWalletId());
+        assertEquals(sourceWalletId, transactionIn.getRelatedWalletId());
+        verify(transactionRepository).saveAll(List.of(transactionOut, transactionIn));
+        verify(transactionRepository, never()).save(any());
+        verify(eventPublisher, times(2)).publishEvent(any(TransactionCompletedEvent.class));
+    }
+
+    @Test
+    void completeTransfer_shouldNotSaveLegs_whenSourceHasInsufficientFunds() {
+        // Given
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID destWalletId = UUID.randomUUID();
+        WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, UUID.randomUUID(), new BigDecimal("5.00"), "USD");
+        Transaction transactionOut = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_OUT, TransactionStatus.PENDING,
+                sourceWalletId, sourceWallet.getUserId(), new BigDecimal("10.00"), "USD", "TEST-KEY:out");
+        Transaction transactionIn = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_IN, TransactionStatus.PENDING,
+                destWalletId, UUID.randomUUID(), new BigDecimal("10.00"), "USD", "TEST-KEY:in");
+
+        when(walletBalanceRepository.transferAndGetBalances(any(), any(), any(), any()))
+                .thenReturn(List.of(balanceChange(destWalletId, new BigDecimal("110.00"))));
+        when(walletBalanceRepository.existsByWalletId(destWalletId)).thenReturn(true);
+        when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
+
+        // When & Then
+        InsufficientBalanceException exception = assertThrows(InsufficientBalanceException.class,
+                () -> transactionPersistenceService.completeTransfer(transactionOut, transactionIn));
+        assertEquals(new BigDecimal("5.00"), exception.getCurrentBalance());
+        verify(transactionRepository, never()).saveAll(any());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void completeTransfer_shouldThrowNotFound_whenDestinationMissing() {
+        // Given
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID destWalletId = UUID.randomUUID();
+        Transaction transactionOut = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_OUT, TransactionStatus.PENDING,
+                sourceWalletId, UUID.randomUUID(), new BigDecimal("10.00"), "USD", "TEST-KEY:out");
+        Transaction transactionIn = TestDataBuilder.createTransaction(
+                TransactionType.TRANSFER_IN, TransactionStatus.PENDING,
+                destWalletId, UUID.randomUUID(), new BigDecimal("10.00"), "USD", "TEST-KEY:in");
+
+        when(walletBalanceRepository.transferAndGetBalances(any(), any(), any(), any()))
+                .thenReturn(List.of(balanceChange(sourceWalletId, new BigDecimal("90.00"))));
+        when(walletBalanceRepository.existsByWalletId(destWalletId)).thenReturn(false);
+
+        // When & Then
+        WalletBalanceNotFoundException exception = assertThrows(WalletBalanceNotFoundException.class,
+                () -> transactionPersistenceService.completeTransfer(transactionOut, transactionIn));
+        assertTrue(exception.getMessage().contains(destWalletId.toString()));
+        verify(transactionRepository, never()).saveAll(any());
+    }
+
+    private static BalanceChange balanceChange(UUID walletId, BigDecimal balance) {
+        return new BalanceChange() {
+            @Override
+            public UUID getWalletId() {
+                return walletId;
+            }
+
+            @Override
+            public BigDecimal getBalance() {
+                return balance;
+            }
+        };
     }
 }
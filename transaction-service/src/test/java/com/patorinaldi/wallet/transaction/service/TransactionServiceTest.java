@@ -2,16 +2,16 @@ package com.patorinaldi.wallet.transaction.service;
 
 import com.patorinaldi.wallet.common.enums.TransactionStatus;
 import com.patorinaldi.wallet.common.enums.TransactionType;
-import com.patorinaldi.wallet.common.event.TransactionCompletedEvent;
-import com.patorinaldi.wallet.common.event.TransactionFailedEvent;
 import com.patorinaldi.wallet.transaction.dto.*;
 import com.patorinaldi.wallet.transaction.entity.Transaction;
 import com.patorinaldi.wallet.transaction.entity.WalletBalance;
-import com.patorinaldi.wallet.transaction.entity.BlockedUser;
+import com.patorinaldi.wallet.transaction.client.FraudCheckRequest;
 import com.patorinaldi.wallet.transaction.client.FraudCheckResponse;
 import com.patorinaldi.wallet.transaction.client.FraudClient;
+import com.patorinaldi.wallet.transaction.client.LocalFraudEvaluator;
 import com.patorinaldi.wallet.transaction.exception.DuplicateTransactionException;
 import com.patorinaldi.wallet.transaction.exception.InsufficientBalanceException;
+import com.patorinaldi.wallet.transaction.exception.SameWalletTransferException;
 import com.patorinaldi.wallet.transaction.exception.TransactionBlockedByFraudException;
 import com.patorinaldi.wallet.transaction.exception.TransactionNotFoundException;
 import com.patorinaldi.wallet.transaction.exception.UserBlockedException;
@@ -19,15 +19,17 @@ import com.patorinaldi.wallet.transaction.exception.WalletBalanceNotFoundExcepti
 import com.patorinaldi.wallet.transaction.helper.TestDataBuilder;
 import com.patorinaldi.wallet.transaction.mapper.BalanceMapper;
 import com.patorinaldi.wallet.transaction.mapper.TransactionMapper;
-import com.patorinaldi.wallet.transaction.repository.BlockedUserRepository;
 import com.patorinaldi.wallet.transaction.repository.TransactionRepository;
 import com.patorinaldi.wallet.transaction.repository.WalletBalanceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -38,6 +40,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -63,13 +67,22 @@ class TransactionServiceTest {
     private BalanceMapper balanceMapper;
 
     @Mock
-    private ApplicationEventPublisher eventPublisher;
+    private BlockedUserIndex blockedUserIndex;
 
     @Mock
-    private BlockedUserRepository blockedUserRepository;
+    private FraudClient fraudClient;
 
     @Mock
-    private FraudClient fraudClient;
+    private LocalFraudEvaluator localFraudEvaluator;
+
+    @Mock
+    private IdempotencyGuard idempotencyGuard;
+
+    @Spy
+    private BalanceConflictRetry balanceConflictRetry = new BalanceConflictRetry(new SimpleMeterRegistry());
+
+    @Spy
+    private WalletLanes walletLanes = new WalletLanes(new SimpleMeterRegistry(), true, 4);
 
     @InjectMocks
     private TransactionService transactionService;
@@ -87,11 +100,9 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, depositAmount, "Test deposit");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
-        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletBalanceRepository.save(any(WalletBalance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionMapper.toResponse(any(Transaction.class))).thenReturn(mock(TransactionResponse.class));
 
         // When
@@ -99,45 +110,113 @@ class TransactionServiceTest {
 
         // Then
         assertNotNull(response);
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey());
+        verify(idempotencyGuard).replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount());
         verify(walletBalanceRepository).findByWalletId(walletId);
-        verify(transactionRepository).save(any(Transaction.class));
-        verify(walletBalanceRepository).save(walletBalance);
+        verify(persistenceService).completeDeposit(argThat(tx ->
+                tx.getType() == TransactionType.DEPOSIT &&
+                tx.getStatus() == TransactionStatus.PENDING &&
+                tx.getWalletId().equals(walletId) &&
+                tx.getUserId().equals(userId) &&
+                tx.getAmount().equals(depositAmount)
+        ));
         verify(transactionMapper).toResponse(any(Transaction.class));
-        verify(eventPublisher).publishEvent(any(TransactionCompletedEvent.class));
+        verify(transactionRepository, never()).save(any());
+        verify(walletBalanceRepository, never()).save(any());
+    }
+
+    @Test
+    void deposit_shouldCallFraudServiceBeforeOpeningWriteTransaction() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        UUID userId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test deposit");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        transactionService.deposit(request);
+
+        // Then
+        var inOrder = inOrder(blockedUserIndex, fraudClient, persistenceService);
+        inOrder.verify(blockedUserIndex).find(userId);
+        inOrder.verify(fraudClient).checkTransaction(any());
+        inOrder.verify(persistenceService).completeDeposit(any(Transaction.class));
+    }
+
+    @Test
+    void deposit_shouldReplayOriginalResponse_whenIdempotencyKeyExists() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test");
+        TransactionResponse original = mock(TransactionResponse.class);
+
+        when(idempotencyGuard.replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount()))
+                .thenReturn(Optional.of(original));
+
+        // When
+        TransactionResponse response = transactionService.deposit(request);
 
-        assertEquals(new BigDecimal("150.00"), walletBalance.getBalance());
+        // Then
+        assertSame(original, response);
+        verify(fraudClient, never()).checkTransaction(any());
+        verify(walletBalanceRepository, never()).findByWalletId(any());
+        verify(persistenceService, never()).completeDeposit(any());
     }
 
     @Test
-    void deposit_shouldThrowDuplicateException_whenIdempotencyKeyExists() {
+    void deposit_shouldThrowDuplicateException_whenIdempotencyKeyReusedForDifferentRequest() {
         // Given
         UUID walletId = UUID.randomUUID();
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(true);
+        when(idempotencyGuard.replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount()))
+                .thenThrow(new DuplicateTransactionException(request.idempotencyKey()));
 
         // When & Then
         assertThrows(DuplicateTransactionException.class, () -> transactionService.deposit(request));
-
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey());
         verify(walletBalanceRepository, never()).findByWalletId(any());
         verify(transactionRepository, never()).save(any());
     }
 
+    @Test
+    void deposit_shouldReplayWinner_whenInsertHitsUniqueConstraint() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test");
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("duplicate key");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenThrow(violation);
+        TransactionResponse winner = mock(TransactionResponse.class);
+        when(idempotencyGuard.replayConflict(violation, request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount()))
+                .thenReturn(winner);
+
+        // When
+        TransactionResponse response = transactionService.deposit(request);
+
+        // Then
+        assertSame(winner, response);
+        verify(idempotencyGuard).record(request.idempotencyKey());
+        verify(idempotencyGuard, never()).remember(anyString(), any());
+    }
+
     @Test
     void deposit_shouldThrowNotFoundException_whenWalletNotFound() {
         // Given
         UUID walletId = UUID.randomUUID();
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.empty());
 
         // When & Then
         assertThrows(WalletBalanceNotFoundException.class, () -> transactionService.deposit(request));
 
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey());
+        verify(idempotencyGuard).replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount());
         verify(walletBalanceRepository).findByWalletId(walletId);
         verify(transactionRepository, never()).save(any());
     }
@@ -155,11 +234,9 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, withdrawalAmount, "Test withdrawal");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
-        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletBalanceRepository.save(any(WalletBalance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(persistenceService.completeWithdrawal(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionMapper.toResponse(any(Transaction.class))).thenReturn(mock(TransactionResponse.class));
 
         // When
@@ -167,13 +244,13 @@ class TransactionServiceTest {
 
         // Then
         assertNotNull(response);
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey());
+        verify(idempotencyGuard).replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount());
         verify(walletBalanceRepository).findByWalletId(walletId);
-        verify(transactionRepository).save(any(Transaction.class));
-        verify(walletBalanceRepository).save(walletBalance);
-        verify(eventPublisher).publishEvent(any(TransactionCompletedEvent.class));
-
-        assertEquals(new BigDecimal("70.00"), walletBalance.getBalance());
+        verify(persistenceService).completeWithdrawal(argThat(tx ->
+                tx.getType() == TransactionType.WITHDRAWAL &&
+                tx.getAmount().equals(withdrawalAmount)
+        ));
+        verify(persistenceService, never()).saveFailedTransaction(any());
     }
 
     @Test
@@ -187,9 +264,10 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, withdrawalAmount, "Test withdrawal");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeWithdrawal(any(Transaction.class)))
+                .thenThrow(new InsufficientBalanceException(walletId, initialBalance, withdrawalAmount));
 
         // When & Then
         assertThrows(InsufficientBalanceException.class, () -> transactionService.withdrawal(request));
@@ -198,24 +276,27 @@ class TransactionServiceTest {
                 tx.getStatus() == TransactionStatus.FAILED &&
                 tx.getErrorMessage() != null
         ));
-        verify(eventPublisher).publishEvent(any(TransactionFailedEvent.class));
         verify(walletBalanceRepository, never()).save(any(WalletBalance.class));
 
         assertEquals(initialBalance, walletBalance.getBalance());
     }
 
     @Test
-    void withdrawal_shouldThrowDuplicateException_whenIdempotencyKeyExists() {
+    void withdrawal_shouldReplayOriginalResponse_whenIdempotencyKeyExists() {
         // Given
         UUID walletId = UUID.randomUUID();
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, new BigDecimal("30.00"), "Test");
+        TransactionResponse original = mock(TransactionResponse.class);
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(true);
+        when(idempotencyGuard.replay(request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount()))
+                .thenReturn(Optional.of(original));
 
-        // When & Then
-        assertThrows(DuplicateTransactionException.class, () -> transactionService.withdrawal(request));
+        // When
+        TransactionResponse response = transactionService.withdrawal(request);
 
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey());
+        // Then
+        assertSame(original, response);
+        verify(fraudClient, never()).checkTransaction(any());
         verify(walletBalanceRepository, never()).findByWalletId(any());
     }
 
@@ -225,7 +306,6 @@ class TransactionServiceTest {
         UUID walletId = UUID.randomUUID();
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, new BigDecimal("30.00"), "Test");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.empty());
 
         // When & Then
@@ -252,18 +332,11 @@ class TransactionServiceTest {
         WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, destUserId, destBalance, "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, transferAmount, "Test transfer");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey() + ":out")).thenReturn(false);
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey() + ":in")).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
         when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
         when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
-        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> {
-            Transaction tx = invocation.getArgument(0);
-            if (tx.getId() == null) {
-                tx.setId(UUID.randomUUID());
-            }
-            return tx;
-        });
+        when(persistenceService.completeTransfer(any(Transaction.class), any(Transaction.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionMapper.toResponse(any(Transaction.class))).thenReturn(mock(TransactionResponse.class));
 
         // When
@@ -271,16 +344,107 @@ class TransactionServiceTest {
 
         // Then
         assertNotNull(response);
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey() + ":out");
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey() + ":in");
+        verify(idempotencyGuard).replay(request.idempotencyKey(), request.idempotencyKey() + ":out", sourceWalletId, request.amount());
         verify(walletBalanceRepository).findByWalletId(sourceWalletId);
         verify(walletBalanceRepository).findByWalletId(destWalletId);
-        verify(transactionRepository, times(4)).save(any(Transaction.class)); // 2 initial saves + 2 saves with links
-        verify(walletBalanceRepository, times(2)).save(any(WalletBalance.class));
-        verify(eventPublisher, times(2)).publishEvent(any(TransactionCompletedEvent.class)); // One for OUT, one for IN
+        verify(persistenceService).completeTransfer(
+                argThat(out -> out.getType() == TransactionType.TRANSFER_OUT &&
+                        out.getWalletId().equals(sourceWalletId) &&
+                        out.getIdempotencyKey().equals(request.idempotencyKey() + ":out")),
+                argThat(in -> in.getType() == TransactionType.TRANSFER_IN &&
+                        in.getWalletId().equals(destWalletId) &&
+                        in.getIdempotencyKey().equals(request.idempotencyKey() + ":in"))
+        );
+        verify(transactionRepository, never()).save(any());
+    }
 
-        assertEquals(new BigDecimal("125.00"), sourceWallet.getBalance());
-        assertEquals(new BigDecimal("125.00"), destWallet.getBalance());
+    @Test
+    void transfer_shouldRunFraudCheckWhileDestinationIsLoading() {
+        // Given
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID destWalletId = UUID.randomUUID();
+        WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, UUID.randomUUID(), new BigDecimal("200.00"), "USD");
+        WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, UUID.randomUUID(), new BigDecimal("50.00"), "USD");
+        TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("75.00"), "Test");
+        CountDownLatch fraudCalled = new CountDownLatch(1);
+
+        when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
+        when(walletBalanceRepository.findByWalletId(destWalletId)).thenAnswer(invocation -> {
+            assertTrue(fraudCalled.await(5, TimeUnit.SECONDS), "fraud check should not wait for the destination lookup");
+            return Optional.of(destWallet);
+        });
+        when(fraudClient.checkTransaction(any())).thenAnswer(invocation -> {
+            fraudCalled.countDown();
+            return createApprovedFraudResponse();
+        });
+        when(persistenceService.completeTransfer(any(Transaction.class), any(Transaction.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(transactionMapper.toResponse(any(Transaction.class))).thenReturn(mock(TransactionResponse.class));
+
+        // When
+        TransactionResponse response = transactionService.transfer(request);
+
+        // Then
+        assertNotNull(response);
+        verify(persistenceService).completeTransfer(
+                argThat(out -> out.getWalletId().equals(sourceWalletId)),
+                argThat(in -> in.getWalletId().equals(destWalletId)));
+    }
+
+    @Test
+    void withdrawal_shouldReplayWinner_whenFailedTransactionHitsUniqueConstraint() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        BigDecimal initialBalance = new BigDecimal("50.00");
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), initialBalance, "USD");
+        WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, new BigDecimal("100.00"), "Test withdrawal");
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("duplicate key");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeWithdrawal(any(Transaction.class)))
+                .thenThrow(new InsufficientBalanceException(walletId, initialBalance, request.amount()));
+        doThrow(violation).when(persistenceService).saveFailedTransaction(any(Transaction.class));
+        TransactionResponse winner = mock(TransactionResponse.class);
+        when(idempotencyGuard.replayConflict(violation, request.idempotencyKey(), request.idempotencyKey(), walletId, request.amount()))
+                .thenReturn(winner);
+
+        // When
+        TransactionResponse response = transactionService.withdrawal(request);
+
+        // Then
+        assertSame(winner, response);
+        verify(idempotencyGuard).record(request.idempotencyKey());
+        verify(idempotencyGuard, never()).remember(anyString(), any());
+    }
+
+    @Test
+    void transfer_shouldReplayWinner_whenFailedTransactionHitsUniqueConstraint() {
+        // Given
+        UUID sourceWalletId = UUID.randomUUID();
+        UUID destWalletId = UUID.randomUUID();
+        BigDecimal sourceBalance = new BigDecimal("50.00");
+        WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, UUID.randomUUID(), sourceBalance, "USD");
+        WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, UUID.randomUUID(), BigDecimal.ZERO, "USD");
+        TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("100.00"), "Test transfer");
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("duplicate key");
+
+        when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
+        when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
+        when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeTransfer(any(Transaction.class), any(Transaction.class)))
+                .thenThrow(new InsufficientBalanceException(sourceWalletId, sourceBalance, request.amount()));
+        doThrow(violation).when(persistenceService).saveFailedTransaction(any(Transaction.class));
+        TransactionResponse winner = mock(TransactionResponse.class);
+        when(idempotencyGuard.replayConflict(violation, request.idempotencyKey(), request.idempotencyKey() + ":out",
+                sourceWalletId, request.amount())).thenReturn(winner);
+
+        // When
+        TransactionResponse response = transactionService.transfer(request);
+
+        // Then
+        assertSame(winner, response);
+        verify(idempotencyGuard, never()).remember(anyString(), any());
     }
 
     @Test
@@ -298,10 +462,11 @@ class TransactionServiceTest {
         WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, destUserId, destBalance, "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, transferAmount, "Test transfer");
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
         when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
         when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
+        when(persistenceService.completeTransfer(any(Transaction.class), any(Transaction.class)))
+                .thenThrow(new InsufficientBalanceException(sourceWalletId, sourceBalance, transferAmount));
 
         // When & Then
         assertThrows(InsufficientBalanceException.class, () -> transactionService.transfer(request));
@@ -310,28 +475,43 @@ class TransactionServiceTest {
                 tx.getType() == TransactionType.TRANSFER_OUT &&
                 tx.getStatus() == TransactionStatus.FAILED
         ));
-        verify(eventPublisher).publishEvent(any(TransactionFailedEvent.class));
 
         assertEquals(sourceBalance, sourceWallet.getBalance());
         assertEquals(destBalance, destWallet.getBalance());
     }
 
     @Test
-    void transfer_shouldThrowDuplicateException_whenEitherKeyExists() {
+    void transfer_shouldReplayOutgoingLeg_whenIdempotencyKeyExists() {
         // Given
         UUID sourceWalletId = UUID.randomUUID();
         UUID destWalletId = UUID.randomUUID();
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("50.00"), "Test");
+        TransactionResponse original = mock(TransactionResponse.class);
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey() + ":out")).thenReturn(true);
+        when(idempotencyGuard.replay(request.idempotencyKey(), request.idempotencyKey() + ":out", sourceWalletId, request.amount()))
+                .thenReturn(Optional.of(original));
 
-        // When & Then
-        assertThrows(DuplicateTransactionException.class, () -> transactionService.transfer(request));
+        // When
+        TransactionResponse response = transactionService.transfer(request);
 
-        verify(transactionRepository).existsByIdempotencyKey(request.idempotencyKey() + ":out");
+        // Then
+        assertSame(original, response);
+        verify(fraudClient, never()).checkTransaction(any());
         verify(walletBalanceRepository, never()).findByWalletId(any());
     }
 
+    @Test
+    void transfer_shouldRejectTransferToSameWallet_beforeAnyWork() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        TransferRequest request = TestDataBuilder.createTransferRequest(walletId, walletId, new BigDecimal("50.00"), "Test");
+
+        // When & Then
+        assertThrows(SameWalletTransferException.class, () -> transactionService.transfer(request));
+
+        verifyNoInteractions(idempotencyGuard, walletBalanceRepository, fraudClient, persistenceService);
+    }
+
     @Test
     void transfer_shouldThrowNotFoundException_whenSourceWalletNotFound() {
         // Given
@@ -339,8 +519,9 @@ class TransactionServiceTest {
         UUID destWalletId = UUID.randomUUID();
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("50.00"), "Test");
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.empty());
+        // the destination lookup runs concurrently and may be cancelled before it starts
+        lenient().when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.empty());
 
         // When & Then
         assertThrows(WalletBalanceNotFoundException.class, () -> transactionService.transfer(request));
@@ -357,9 +538,9 @@ class TransactionServiceTest {
         WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, sourceUserId, new BigDecimal("200.00"), "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("50.00"), "Test");
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
         when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.empty());
+        lenient().when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
 
         // When & Then
         assertThrows(WalletBalanceNotFoundException.class, () -> transactionService.transfer(request));
@@ -503,11 +684,10 @@ class TransactionServiceTest {
         UUID userId = UUID.randomUUID();
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, new BigDecimal("100.00"), "USD");
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Test");
-        BlockedUser blocked = BlockedUser.builder().userId(userId).reason("Fraud detected").build();
+        BlockedUserIndex.Block blocked = new BlockedUserIndex.Block("Fraud detected", 0L);
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
-        when(blockedUserRepository.findById(userId)).thenReturn(Optional.of(blocked));
+        when(blockedUserIndex.find(userId)).thenReturn(Optional.of(blocked));
 
         // When & Then
         UserBlockedException ex = assertThrows(UserBlockedException.class,
@@ -516,7 +696,7 @@ class TransactionServiceTest {
         assertTrue(ex.getMessage().contains("blocked"));
         verify(transactionRepository, never()).save(any());
         verify(walletBalanceRepository, never()).save(any());
-        verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(persistenceService);
     }
 
     @Test
@@ -526,11 +706,10 @@ class TransactionServiceTest {
         UUID userId = UUID.randomUUID();
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, new BigDecimal("100.00"), "USD");
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, new BigDecimal("30.00"), "Test");
-        BlockedUser blocked = BlockedUser.builder().userId(userId).reason("Fraud detected").build();
+        BlockedUserIndex.Block blocked = new BlockedUserIndex.Block("Fraud detected", 0L);
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
-        when(blockedUserRepository.findById(userId)).thenReturn(Optional.of(blocked));
+        when(blockedUserIndex.find(userId)).thenReturn(Optional.of(blocked));
 
         // When & Then
         UserBlockedException ex = assertThrows(UserBlockedException.class,
@@ -539,7 +718,7 @@ class TransactionServiceTest {
         assertTrue(ex.getMessage().contains("blocked"));
         verify(transactionRepository, never()).save(any());
         verify(walletBalanceRepository, never()).save(any());
-        verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(persistenceService);
     }
 
     @Test
@@ -553,12 +732,12 @@ class TransactionServiceTest {
         WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, sourceUserId, new BigDecimal("200.00"), "USD");
         WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, destUserId, new BigDecimal("50.00"), "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("75.00"), "Test");
-        BlockedUser blocked = BlockedUser.builder().userId(sourceUserId).reason("Fraud detected").build();
+        BlockedUserIndex.Block blocked = new BlockedUserIndex.Block("Fraud detected", 0L);
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
-        when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
-        when(blockedUserRepository.findById(sourceUserId)).thenReturn(Optional.of(blocked));
+        lenient().when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
+        when(blockedUserIndex.find(sourceUserId)).thenReturn(Optional.of(blocked));
+        lenient().when(blockedUserIndex.find(destUserId)).thenReturn(Optional.empty());
 
         // When & Then
         UserBlockedException ex = assertThrows(UserBlockedException.class,
@@ -567,7 +746,7 @@ class TransactionServiceTest {
         assertTrue(ex.getMessage().contains("blocked"));
         verify(transactionRepository, never()).save(any());
         verify(walletBalanceRepository, never()).save(any());
-        verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(persistenceService);
     }
 
     @Test
@@ -581,13 +760,13 @@ class TransactionServiceTest {
         WalletBalance sourceWallet = TestDataBuilder.createWalletBalance(sourceWalletId, sourceUserId, new BigDecimal("200.00"), "USD");
         WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, destUserId, new BigDecimal("50.00"), "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, new BigDecimal("75.00"), "Test");
-        BlockedUser blocked = BlockedUser.builder().userId(destUserId).reason("Fraud detected").build();
+        BlockedUserIndex.Block blocked = new BlockedUserIndex.Block("Fraud detected", 0L);
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
         when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
-        when(blockedUserRepository.findById(sourceUserId)).thenReturn(Optional.empty());
-        when(blockedUserRepository.findById(destUserId)).thenReturn(Optional.of(blocked));
+        when(blockedUserIndex.find(sourceUserId)).thenReturn(Optional.empty());
+        when(blockedUserIndex.find(destUserId)).thenReturn(Optional.of(blocked));
+        lenient().when(fraudClient.checkTransaction(any())).thenReturn(createApprovedFraudResponse());
 
         // When & Then
         UserBlockedException ex = assertThrows(UserBlockedException.class,
@@ -596,7 +775,7 @@ class TransactionServiceTest {
         assertTrue(ex.getMessage().contains("blocked"));
         verify(transactionRepository, never()).save(any());
         verify(walletBalanceRepository, never()).save(any());
-        verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(persistenceService);
     }
 
     // ========== FRAUD DETECTION TESTS ==========
@@ -612,7 +791,6 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, depositAmount, "Large deposit");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createBlockedFraudResponse());
 
@@ -624,7 +802,7 @@ class TransactionServiceTest {
         assertEquals(walletId, ex.getWalletId());
         verify(transactionRepository, never()).save(any());
         verify(walletBalanceRepository, never()).save(any());
-        verify(eventPublisher, never()).publishEvent(any());
+        verifyNoInteractions(persistenceService);
     }
 
     @Test
@@ -638,7 +816,6 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         WithdrawalRequest request = TestDataBuilder.createWithdrawalRequest(walletId, withdrawalAmount, "Large withdrawal");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createBlockedFraudResponse());
 
@@ -647,7 +824,7 @@ class TransactionServiceTest {
                 () -> transactionService.withdrawal(request));
 
         assertTrue(ex.getMessage().contains("blocked by fraud"));
-        verify(transactionRepository, never()).save(any());
+        verifyNoInteractions(persistenceService);
     }
 
     @Test
@@ -665,9 +842,8 @@ class TransactionServiceTest {
         WalletBalance destWallet = TestDataBuilder.createWalletBalance(destWalletId, destUserId, destBalance, "USD");
         TransferRequest request = TestDataBuilder.createTransferRequest(sourceWalletId, destWalletId, transferAmount, "Large transfer");
 
-        when(transactionRepository.existsByIdempotencyKey(anyString())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(sourceWalletId)).thenReturn(Optional.of(sourceWallet));
-        when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
+        lenient().when(walletBalanceRepository.findByWalletId(destWalletId)).thenReturn(Optional.of(destWallet));
         when(fraudClient.checkTransaction(any())).thenReturn(createBlockedFraudResponse());
 
         // When & Then
@@ -689,11 +865,9 @@ class TransactionServiceTest {
         WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, userId, initialBalance, "USD");
         DepositRequest request = TestDataBuilder.createDepositRequest(walletId, depositAmount, "Flagged deposit");
 
-        when(transactionRepository.existsByIdempotencyKey(request.idempotencyKey())).thenReturn(false);
         when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
         when(fraudClient.checkTransaction(any())).thenReturn(createFlaggedFraudResponse());
-        when(transactionRepository.save(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletBalanceRepository.save(any(WalletBalance.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
         when(transactionMapper.toResponse(any(Transaction.class))).thenReturn(mock(TransactionResponse.class));
 
         // When
@@ -701,8 +875,105 @@ class TransactionServiceTest {
 
         // Then - Transaction should proceed even if flagged
         assertNotNull(response);
-        verify(transactionRepository).save(any(Transaction.class));
-        verify(eventPublisher).publishEvent(any(TransactionCompletedEvent.class));
+        verify(persistenceService).completeDeposit(any(Transaction.class));
+    }
+
+    @Test
+    void deposit_shouldCarryFraudDecision_whenFraudServiceDecides() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("15000.00"), "Flagged deposit");
+        ArgumentCaptor<FraudCheckRequest> checkCaptor = ArgumentCaptor.forClass(FraudCheckRequest.class);
+        ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(checkCaptor.capture())).thenReturn(createFlaggedFraudResponse());
+        when(persistenceService.completeDeposit(transactionCaptor.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        transactionService.deposit(request);
+
+        // Then
+        assertNotNull(checkCaptor.getValue().checkId());
+        assertEquals(checkCaptor.getValue().checkId(), transactionCaptor.getValue().getFraudCheckId());
+        assertEquals(55, transactionCaptor.getValue().getFraudRiskScore());
+        assertEquals(List.of("LARGE_AMOUNT"), transactionCaptor.getValue().fraudTriggeredRuleCodes());
+    }
+
+    @Test
+    void deposit_shouldNotCarryFraudDecision_whenFraudServiceIsUnavailable() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Deposit");
+        ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(FraudCheckResponse.serviceUnavailable());
+        when(persistenceService.completeDeposit(transactionCaptor.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        transactionService.deposit(request);
+
+        // Then
+        assertNull(transactionCaptor.getValue().getFraudCheckId());
+        assertNull(transactionCaptor.getValue().getFraudRiskScore());
+        assertNull(transactionCaptor.getValue().fraudTriggeredRuleCodes());
+    }
+
+    @Test
+    void deposit_shouldSkipFraudService_whenApprovedLocally() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Low risk deposit");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(localFraudEvaluator.preDecide(any())).thenReturn(Optional.of(createApprovedFraudResponse()));
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        transactionService.deposit(request);
+
+        // Then
+        verifyNoInteractions(fraudClient);
+        verify(persistenceService).completeDeposit(any(Transaction.class));
+    }
+
+    @Test
+    void deposit_shouldUseLocalDecision_whenFraudServiceIsUnavailable() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("60000.00"), "Large deposit");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(FraudCheckResponse.serviceUnavailable());
+        when(localFraudEvaluator.evaluateDuringOutage(any())).thenReturn(Optional.of(createBlockedFraudResponse()));
+
+        // When & Then
+        assertThrows(TransactionBlockedByFraudException.class, () -> transactionService.deposit(request));
+        verifyNoInteractions(persistenceService);
+    }
+
+    @Test
+    void deposit_shouldKeepFailOpenFlag_whenNothingIsKnownLocally() {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        WalletBalance walletBalance = TestDataBuilder.createWalletBalance(walletId, UUID.randomUUID(), new BigDecimal("100.00"), "USD");
+        DepositRequest request = TestDataBuilder.createDepositRequest(walletId, new BigDecimal("50.00"), "Deposit");
+
+        when(walletBalanceRepository.findByWalletId(walletId)).thenReturn(Optional.of(walletBalance));
+        when(fraudClient.checkTransaction(any())).thenReturn(FraudCheckResponse.serviceUnavailable());
+        when(persistenceService.completeDeposit(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        transactionService.deposit(request);
+
+        // Then
+        verify(localFraudEvaluator).evaluateDuringOutage(any());
+        verify(persistenceService).completeDeposit(any(Transaction.class));
     }
 
     // ========== HELPER METHODS ==========
@@ -0,0 +1,120 @@
+package com.patorinaldi.wallet.transaction.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletLanesTest {
+
+    private static final int LANES = 8;
+
+    private final WalletLanes walletLanes = new WalletLanes(new SimpleMeterRegistry(), true, LANES);
+
+    @Test
+    void run_shouldAdmitOneWriterPerWalletAtATime() throws Exception {
+        // Given
+        UUID walletId = UUID.randomUUID();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                writes.add(CompletableFuture.runAsync(() -> walletLanes.run(walletId, () -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    Thread.onSpinWait();
+                    return active.decrementAndGet();
+                }), executor));
+            }
+            CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertEquals(1, maxActive.get());
+    }
+
+    @Test
+    void run_shouldLetWalletsOnDifferentLanesProceedInParallel() throws Exception {
+        // Given
+        UUID first = UUID.randomUUID();
+        UUID second = walletOnOtherLane(first);
+        CountDownLatch bothInside = new CountDownLatch(2);
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            CompletableFuture<Boolean> a = CompletableFuture.supplyAsync(
+                    () -> walletLanes.run(first, () -> awaitLatch(bothInside)), executor);
+            CompletableFuture<Boolean> b = CompletableFuture.supplyAsync(
+                    () -> walletLanes.run(second, () -> awaitLatch(bothInside)), executor);
+
+            // Then
+            assertTrue(a.get(5, TimeUnit.SECONDS));
+            assertTrue(b.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void run_shouldNotDeadlockOnOppositeTransfers() throws Exception {
+        // Given
+        UUID first = UUID.randomUUID();
+        UUID second = walletOnOtherLane(first);
+        AtomicInteger completed = new AtomicInteger();
+
+        // When
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<CompletableFuture<Void>> transfers = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                boolean forward = i % 2 == 0;
+                transfers.add(CompletableFuture.runAsync(() -> walletLanes.run(
+                        forward ? first : second, forward ? second : first, completed::incrementAndGet), executor));
+            }
+            CompletableFuture.allOf(transfers.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertEquals(500, completed.get());
+    }
+
+    @Test
+    void run_shouldPassThrough_whenDisabled() {
+        // Given
+        WalletLanes disabled = new WalletLanes(new SimpleMeterRegistry(), false, LANES);
+        UUID walletId = UUID.randomUUID();
+
+        // When
+        String result = disabled.run(walletId, () -> disabled.run(walletId, () -> "nested"));
+
+        // Then
+        assertEquals("nested", result);
+    }
+
+    private UUID walletOnOtherLane(UUID walletId) {
+        UUID candidate = UUID.randomUUID();
+        while (walletLanes.laneOf(candidate) == walletLanes.laneOf(walletId)) {
+            candidate = UUID.randomUUID();
+        }
+        return candidate;
+    }
+
+    private boolean awaitLatch(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}